@@ -18,35 +18,12 @@
 package org.hortonmachine.nww.layers.defaults.raster;
 
 import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.Rectangle;
-import java.awt.RenderingHints;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 
-import javax.imageio.ImageIO;
-
-import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
-import org.geotools.coverage.grid.io.AbstractGridFormat;
-import org.geotools.coverage.grid.io.GridFormatFinder;
-import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.map.GridReaderLayer;
-import org.geotools.map.MapContent;
-import org.geotools.referencing.crs.DefaultGeographicCRS;
-import org.geotools.renderer.GTRenderer;
-import org.geotools.renderer.lite.StreamingRenderer;
-import org.geotools.styling.RasterSymbolizer;
-import org.geotools.styling.SLD;
-import org.geotools.styling.Style;
-import org.hortonmachine.gears.io.rasterreader.OmsRasterReader;
-import org.hortonmachine.gears.io.vectorreader.OmsVectorReader;
-import org.hortonmachine.gears.utils.CrsUtilities;
-import org.hortonmachine.gears.utils.SldUtilities;
 import org.hortonmachine.gears.utils.files.FileUtilities;
-import org.hortonmachine.gears.utils.images.ImageUtilities;
 import org.hortonmachine.nww.layers.defaults.NwwLayer;
 import org.hortonmachine.nww.utils.NwwUtilities;
 import org.hortonmachine.nww.utils.cache.CacheUtils;
@@ -75,10 +52,24 @@ public class GridCoverageNwwLayer extends BasicMercatorTiledImageLayer implement
 
     private static final int TILESIZE = 256;
 
+    private static final int NUM_LEVELS = 22;
+
+    /**
+     * The difference between the tiles zoom and the worldwind level number.
+     */
+    private static final int ZOOM_OFFSET = 3;
+
     private Coordinate centerCoordinate;
 
+    private final GridCoverageTileRenderer tileRenderer;
+
     public GridCoverageNwwLayer( File gridCoverageFile, Integer tileSize, Color colorToMakeTransparent ) throws Exception {
-        super(makeLevels(gridCoverageFile, getRenderer(gridCoverageFile), tileSize, colorToMakeTransparent));
+        this(gridCoverageFile, getTileRenderer(gridCoverageFile, tileSize, colorToMakeTransparent));
+    }
+
+    private GridCoverageNwwLayer( File gridCoverageFile, GridCoverageTileRenderer tileRenderer ) throws Exception {
+        super(makeLevels(gridCoverageFile, tileRenderer));
+        this.tileRenderer = tileRenderer;
         this.layerName = FileUtilities.getNameWithoutExtention(gridCoverageFile);
 
         // ReferencedEnvelope envelope =
@@ -99,41 +90,29 @@ public class GridCoverageNwwLayer extends BasicMercatorTiledImageLayer implement
 
     }
 
-    private static GTRenderer getRenderer( File rasterFile ) {
-
-        AbstractGridFormat format = GridFormatFinder.findFormat(rasterFile);
-        AbstractGridCoverage2DReader coverageReader = format.getReader(rasterFile);
-
-        MapContent mapContent = new MapContent();
-        try {
-
-            Style rasterStyle = SldUtilities.getStyleFromFile(rasterFile);
-            if (rasterStyle == null) {
-                RasterSymbolizer sym = SldUtilities.sf.getDefaultRasterSymbolizer();
-                rasterStyle = SLD.wrapSymbolizers(sym);
-            }
-
-            GridReaderLayer layer = new GridReaderLayer(coverageReader, rasterStyle);
-            mapContent.addLayer(layer);
-            mapContent.getViewport().setCoordinateReferenceSystem(CrsUtilities.WGS84);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        GTRenderer renderer = new StreamingRenderer();
-        renderer.setMapContent(mapContent);
-        return renderer;
-    }
-
-    private static LevelSet makeLevels( File imsf, GTRenderer renderer, Integer tileSize, Color colorToMakeTransparent ) throws MalformedURLException {
-        AVList params = new AVListImpl();
+    private static GridCoverageTileRenderer getTileRenderer( File rasterFile, Integer tileSize, Color colorToMakeTransparent ) {
         if (tileSize == null || tileSize < 256) {
             tileSize = TILESIZE;
         }
+        File cacheFolder = new File(CacheUtils.getCacheRoot(), getCacheRelativePath(rasterFile));
+        if (!cacheFolder.exists()) {
+            cacheFolder.mkdirs();
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        return new GridCoverageTileRenderer(rasterFile, cacheFolder, tileSize, NUM_LEVELS - 1 + ZOOM_OFFSET,
+                colorToMakeTransparent, threads);
+    }
 
-        int finalTileSize = tileSize;
-
+    private static String getCacheRelativePath( File imsf ) {
         String tilesPart = "-tiles";
-        String cacheRelativePath = "imagemosaics/" + imsf.getName() + tilesPart;
+        return "imagemosaics/" + imsf.getName() + tilesPart;
+    }
+
+    private static LevelSet makeLevels( File imsf, GridCoverageTileRenderer tileRenderer ) throws MalformedURLException {
+        AVList params = new AVListImpl();
+        int finalTileSize = tileRenderer.getTileSize();
+
+        String cacheRelativePath = getCacheRelativePath(imsf);
 
         String urlString = imsf.toURI().toURL().toExternalForm();
         params.setValue(AVKey.URL, urlString);
@@ -145,20 +124,15 @@ public class GridCoverageNwwLayer extends BasicMercatorTiledImageLayer implement
 
         final String imageFormat = "png";
         params.setValue(AVKey.FORMAT_SUFFIX, "." + imageFormat);
-        params.setValue(AVKey.NUM_LEVELS, 22);
+        params.setValue(AVKey.NUM_LEVELS, NUM_LEVELS);
         params.setValue(AVKey.NUM_EMPTY_LEVELS, 0);
         params.setValue(AVKey.LEVEL_ZERO_TILE_DELTA, new LatLon(Angle.fromDegrees(22.5d), Angle.fromDegrees(45d)));
         params.setValue(AVKey.SECTOR, new MercatorSector(-1.0, 1.0, Angle.NEG180, Angle.POS180));
-        File cacheRoot = CacheUtils.getCacheRoot();
-        final File cacheFolder = new File(cacheRoot, cacheRelativePath);
-        if (!cacheFolder.exists()) {
-            cacheFolder.mkdirs();
-        }
 
         params.setValue(AVKey.TILE_URL_BUILDER, new TileUrlBuilder(){
 
             public URL getURL( Tile tile, String altImageFormat ) throws MalformedURLException {
-                int zoom = tile.getLevelNumber() + 3;
+                int zoom = tile.getLevelNumber() + ZOOM_OFFSET;
                 Sector sector = tile.getSector();
                 double north = sector.getMaxLatitude().degrees;
                 double south = sector.getMinLatitude().degrees;
@@ -170,30 +144,9 @@ public class GridCoverageNwwLayer extends BasicMercatorTiledImageLayer implement
                 int x = tileNumber[0];
                 int y = tileNumber[1];
 
-                Rectangle imageBounds = new Rectangle(0, 0, finalTileSize, finalTileSize);
-                BufferedImage image = new BufferedImage(imageBounds.width, imageBounds.height, BufferedImage.TYPE_INT_RGB);
-                Graphics2D gr = image.createGraphics();
-                gr.setPaint(Color.WHITE);
-                gr.fill(imageBounds);
-                gr.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
                 try {
-                    synchronized (renderer) {
-                        renderer.paint(gr, imageBounds,
-                                new ReferencedEnvelope(west, east, south, north, DefaultGeographicCRS.WGS84));
-                        File tileImageFolderFile = new File(cacheFolder, zoom + File.separator + x);
-                        if (!tileImageFolderFile.exists()) {
-                            tileImageFolderFile.mkdirs();
-                        }
-                        File imgFile = new File(tileImageFolderFile, y + ".png");
-                        if (!imgFile.exists()) {
-                            if (colorToMakeTransparent != null) {
-                                image = ImageUtilities.makeColorTransparent(image, colorToMakeTransparent);
-                            }
-                            ImageIO.write(image, "png", imgFile);
-                        }
-                        return imgFile.toURI().toURL();
-                    }
+                    File imgFile = tileRenderer.getTile(zoom, x, y, west, east, south, north);
+                    return imgFile.toURI().toURL();
                 } catch (IOException e) {
                     e.printStackTrace();
                     return null;
@@ -204,6 +157,12 @@ public class GridCoverageNwwLayer extends BasicMercatorTiledImageLayer implement
         return new LevelSet(params);
     }
 
+    @Override
+    public void dispose() {
+        super.dispose();
+        tileRenderer.dispose();
+    }
+
     public String toString() {
         return layerName;
     }
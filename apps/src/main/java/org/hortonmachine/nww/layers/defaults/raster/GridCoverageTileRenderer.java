@@ -0,0 +1,449 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.nww.layers.defaults.raster;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.geotools.coverage.grid.io.AbstractGridCoverage2DReader;
+import org.geotools.coverage.grid.io.AbstractGridFormat;
+import org.geotools.coverage.grid.io.GridFormatFinder;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.GridReaderLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.renderer.GTRenderer;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.RasterSymbolizer;
+import org.geotools.styling.SLD;
+import org.geotools.styling.Style;
+import org.hortonmachine.gears.modules.r.tmsgenerator.MBTilesHelper;
+import org.hortonmachine.gears.utils.CrsUtilities;
+import org.hortonmachine.gears.utils.SldUtilities;
+import org.hortonmachine.gears.utils.images.ImageUtilities;
+
+/**
+ * Renders the png tiles of a grid coverage into a tile cache folder.
+ *
+ * <p>The coverage is opened once and shared by a pool of renderers, so that
+ * tiles are rendered concurrently. Around every requested tile the neighbours
+ * and the tiles of the next zoom level are rendered in background, as long as
+ * the bounded prefetch queue has room. The recently rendered tiles are kept
+ * encoded in memory, prefetched tiles are written to the cache folder only
+ * once they are requested.</p>
+ *
+ * <p>The prefetch uses less threads than there are renderers, so a requested
+ * tile never has to wait for the prefetched ones to free a renderer.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+class GridCoverageTileRenderer {
+
+    /**
+     * The maximum number of tiles waiting to be prefetched.
+     */
+    private static final int PREFETCH_QUEUE_SIZE = 64;
+
+    /**
+     * The maximum size of the encoded tiles kept in memory.
+     */
+    private static final long MEMORY_CACHE_BYTES = 64 * 1024 * 1024;
+
+    private static final AtomicInteger POOLS_COUNT = new AtomicInteger();
+
+    private final AbstractGridCoverage2DReader coverageReader;
+    private final BlockingQueue<GTRenderer> renderers;
+    private final ThreadPoolExecutor prefetchExecutor;
+    private final ConcurrentHashMap<String, FutureTask<byte[]>> pendingTiles = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, byte[]> recentTiles = new LinkedHashMap<>(256, 0.75f, true);
+    private long recentTilesBytes = 0;
+    private final long memoryCacheBytes;
+
+    private final File cacheFolder;
+    private final int tileSize;
+    private final int maxZoom;
+    private final Color colorToMakeTransparent;
+    private ReferencedEnvelope coverageBounds;
+
+    /**
+     * Create the renderer.
+     *
+     * @param rasterFile the coverage file.
+     * @param cacheFolder the folder in which the tiles are stored as <code>zoom/x/y.png</code>.
+     * @param tileSize the tile size in pixels.
+     * @param maxZoom the maximum zoom level tiles are prefetched for.
+     * @param colorToMakeTransparent the color to make transparent, can be <code>null</code>.
+     * @param threads the number of tiles rendered concurrently.
+     */
+    GridCoverageTileRenderer( File rasterFile, File cacheFolder, int tileSize, int maxZoom, Color colorToMakeTransparent,
+            int threads ) {
+        this.cacheFolder = cacheFolder;
+        this.tileSize = tileSize;
+        this.maxZoom = maxZoom;
+        this.colorToMakeTransparent = colorToMakeTransparent;
+        this.memoryCacheBytes = MEMORY_CACHE_BYTES;
+        if (threads < 1) {
+            threads = 1;
+        }
+
+        AbstractGridFormat format = GridFormatFinder.findFormat(rasterFile);
+        coverageReader = format.getReader(rasterFile);
+
+        Style rasterStyle = null;
+        try {
+            rasterStyle = SldUtilities.getStyleFromFile(rasterFile);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        if (rasterStyle == null) {
+            RasterSymbolizer sym = SldUtilities.sf.getDefaultRasterSymbolizer();
+            rasterStyle = SLD.wrapSymbolizers(sym);
+        }
+        try {
+            coverageBounds = new ReferencedEnvelope(coverageReader.getOriginalEnvelope()).transform(DefaultGeographicCRS.WGS84,
+                    true);
+        } catch (Exception e) {
+            // without bounds every tile is prefetched
+            coverageBounds = null;
+        }
+
+        int renderersCount = getRenderersCount(threads);
+        renderers = new ArrayBlockingQueue<>(renderersCount);
+        for( int i = 0; i < renderersCount; i++ ) {
+            MapContent mapContent = new MapContent();
+            try {
+                mapContent.addLayer(new GridReaderLayer(coverageReader, rasterStyle));
+                mapContent.getViewport().setCoordinateReferenceSystem(CrsUtilities.WGS84);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            GTRenderer renderer = new StreamingRenderer();
+            renderer.setMapContent(mapContent);
+            renderers.add(renderer);
+        }
+        prefetchExecutor = createPrefetchExecutor(threads);
+    }
+
+    /**
+     * Create a renderer without coverage, the tiles are drawn by
+     * {@link #paint(GTRenderer, Graphics2D, Rectangle, double, double, double, double)}.
+     *
+     * @param cacheFolder the folder in which the tiles are stored as <code>zoom/x/y.png</code>.
+     * @param tileSize the tile size in pixels.
+     * @param maxZoom the maximum zoom level tiles are prefetched for.
+     * @param threads the number of tiles rendered concurrently.
+     * @param memoryCacheBytes the maximum size of the encoded tiles kept in memory.
+     */
+    GridCoverageTileRenderer( File cacheFolder, int tileSize, int maxZoom, int threads, long memoryCacheBytes ) {
+        this.cacheFolder = cacheFolder;
+        this.tileSize = tileSize;
+        this.maxZoom = maxZoom;
+        this.colorToMakeTransparent = null;
+        this.memoryCacheBytes = memoryCacheBytes;
+        if (threads < 1) {
+            threads = 1;
+        }
+        coverageReader = null;
+        coverageBounds = null;
+
+        int renderersCount = getRenderersCount(threads);
+        renderers = new ArrayBlockingQueue<>(renderersCount);
+        for( int i = 0; i < renderersCount; i++ ) {
+            renderers.add(new StreamingRenderer());
+        }
+        prefetchExecutor = createPrefetchExecutor(threads);
+    }
+
+    /**
+     * The prefetch threads, always one less than the renderers.
+     */
+    private static int getPrefetchThreads( int threads ) {
+        return Math.max(1, threads - 1);
+    }
+
+    private static int getRenderersCount( int threads ) {
+        return Math.max(threads, getPrefetchThreads(threads) + 1);
+    }
+
+    private static ThreadPoolExecutor createPrefetchExecutor( int threads ) {
+        final int poolNumber = POOLS_COUNT.incrementAndGet();
+        ThreadFactory threadFactory = new ThreadFactory(){
+            private final AtomicInteger threadsCount = new AtomicInteger();
+            public Thread newThread( Runnable runnable ) {
+                Thread thread = new Thread(runnable,
+                        "coverage tiles " + poolNumber + "-" + threadsCount.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        };
+        int prefetchThreads = getPrefetchThreads(threads);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(prefetchThreads, prefetchThreads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(PREFETCH_QUEUE_SIZE), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return the tile size in pixels.
+     */
+    int getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Get the image file of a tile, rendering it if necessary.
+     *
+     * <p>Once the tile is available, its neighbours and children are queued for prefetching.</p>
+     *
+     * @param zoom the zoom level.
+     * @param x the tile column.
+     * @param y the tile row.
+     * @param west the west bound of the tile.
+     * @param east the east bound of the tile.
+     * @param south the south bound of the tile.
+     * @param north the north bound of the tile.
+     * @return the tile image file.
+     * @throws IOException
+     */
+    File getTile( int zoom, int x, int y, double west, double east, double south, double north ) throws IOException {
+        File imgFile = getTileFile(zoom, x, y);
+        if (!imgFile.exists()) {
+            String key = getKey(zoom, x, y);
+            byte[] png = getRecentTile(key);
+            if (png == null) {
+                png = render(key, west, east, south, north, false);
+            }
+            File tileFolder = imgFile.getParentFile();
+            if (!tileFolder.exists()) {
+                tileFolder.mkdirs();
+            }
+            synchronized (this) {
+                if (!imgFile.exists()) {
+                    File tmpFile = new File(tileFolder, y + "." + Thread.currentThread().getId() + ".tmp");
+                    Files.write(tmpFile.toPath(), png);
+                    if (!tmpFile.renameTo(imgFile)) {
+                        tmpFile.delete();
+                    }
+                }
+            }
+        }
+
+        prefetch(zoom, x, y);
+        return imgFile;
+    }
+
+    /**
+     * Stop the prefetching and release the coverage.
+     */
+    void dispose() {
+        prefetchExecutor.shutdownNow();
+        pendingTiles.clear();
+        synchronized (recentTiles) {
+            recentTiles.clear();
+            recentTilesBytes = 0;
+        }
+        if (coverageReader != null) {
+            coverageReader.dispose();
+        }
+    }
+
+    private void prefetch( int zoom, int x, int y ) {
+        int tilesCount = 1 << zoom;
+        for( int dy = -1; dy <= 1; dy++ ) {
+            for( int dx = -1; dx <= 1; dx++ ) {
+                if (dx == 0 && dy == 0) {
+                    continue;
+                }
+                int nx = (x + dx + tilesCount) % tilesCount;
+                int ny = y + dy;
+                if (ny >= 0 && ny < tilesCount) {
+                    prefetchTile(zoom, nx, ny);
+                }
+            }
+        }
+        if (zoom < maxZoom) {
+            for( int dy = 0; dy <= 1; dy++ ) {
+                for( int dx = 0; dx <= 1; dx++ ) {
+                    prefetchTile(zoom + 1, 2 * x + dx, 2 * y + dy);
+                }
+            }
+        }
+    }
+
+    private void prefetchTile( int zoom, int x, int y ) {
+        if (prefetchExecutor.isShutdown() || prefetchExecutor.getQueue().remainingCapacity() == 0) {
+            return;
+        }
+        final double west = MBTilesHelper.tile2lon(x, zoom);
+        final double east = MBTilesHelper.tile2lon(x + 1, zoom);
+        final double south = MBTilesHelper.tile2lat(y + 1, zoom);
+        final double north = MBTilesHelper.tile2lat(y, zoom);
+        if (coverageBounds != null && (east < coverageBounds.getMinX() || west > coverageBounds.getMaxX()
+                || north < coverageBounds.getMinY() || south > coverageBounds.getMaxY())) {
+            return;
+        }
+        final String key = getKey(zoom, x, y);
+        if (pendingTiles.containsKey(key) || hasRecentTile(key) || getTileFile(zoom, x, y).exists()) {
+            return;
+        }
+        try {
+            prefetchExecutor.execute(new Runnable(){
+                public void run() {
+                    try {
+                        render(key, west, east, south, north, true);
+                    } catch (IOException e) {
+                        // the tile is rendered again when requested
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the queue is full, the tile is rendered when requested
+        }
+    }
+
+    /**
+     * Render a tile, or wait for it if it is already being rendered.
+     */
+    byte[] render( final String key, final double west, final double east, final double south, final double north,
+            boolean isPrefetch ) throws IOException {
+        FutureTask<byte[]> task = new FutureTask<>(new Callable<byte[]>(){
+            public byte[] call() throws Exception {
+                byte[] png = renderPng(west, east, south, north);
+                addRecentTile(key, png);
+                return png;
+            }
+        });
+        FutureTask<byte[]> pendingTask = pendingTiles.putIfAbsent(key, task);
+        if (pendingTask == null) {
+            try {
+                task.run();
+            } finally {
+                pendingTiles.remove(key, task);
+            }
+        } else if (isPrefetch) {
+            return null;
+        } else {
+            task = pendingTask;
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private byte[] renderPng( double west, double east, double south, double north ) throws Exception {
+        Rectangle imageBounds = new Rectangle(0, 0, tileSize, tileSize);
+        BufferedImage image = new BufferedImage(imageBounds.width, imageBounds.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D gr = image.createGraphics();
+        gr.setPaint(Color.WHITE);
+        gr.fill(imageBounds);
+        gr.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        GTRenderer renderer = renderers.take();
+        try {
+            paint(renderer, gr, imageBounds, west, east, south, north);
+        } finally {
+            renderers.put(renderer);
+            gr.dispose();
+        }
+
+        if (colorToMakeTransparent != null) {
+            image = ImageUtilities.makeColorTransparent(image, colorToMakeTransparent);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Paint a tile with one of the pooled renderers.
+     */
+    void paint( GTRenderer renderer, Graphics2D gr, Rectangle imageBounds, double west, double east, double south,
+            double north ) {
+        renderer.paint(gr, imageBounds, new ReferencedEnvelope(west, east, south, north, DefaultGeographicCRS.WGS84));
+    }
+
+    byte[] getRecentTile( String key ) {
+        synchronized (recentTiles) {
+            return recentTiles.get(key);
+        }
+    }
+
+    private boolean hasRecentTile( String key ) {
+        synchronized (recentTiles) {
+            return recentTiles.containsKey(key);
+        }
+    }
+
+    void addRecentTile( String key, byte[] png ) {
+        synchronized (recentTiles) {
+            byte[] previous = recentTiles.put(key, png);
+            if (previous != null) {
+                recentTilesBytes -= previous.length;
+            }
+            recentTilesBytes += png.length;
+            Iterator<Entry<String, byte[]>> iterator = recentTiles.entrySet().iterator();
+            while( recentTilesBytes > memoryCacheBytes && iterator.hasNext() ) {
+                Entry<String, byte[]> eldest = iterator.next();
+                recentTilesBytes -= eldest.getValue().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    private File getTileFile( int zoom, int x, int y ) {
+        return new File(cacheFolder, zoom + File.separator + x + File.separator + y + ".png");
+    }
+
+    static String getKey( int zoom, int x, int y ) {
+        return zoom + "/" + x + "/" + y;
+    }
+}
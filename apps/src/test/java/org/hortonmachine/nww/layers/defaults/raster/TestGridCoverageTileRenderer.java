@@ -0,0 +1,259 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.nww.layers.defaults.raster;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.renderer.GTRenderer;
+import org.hortonmachine.gears.modules.r.tmsgenerator.MBTilesHelper;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the cache, the deduplication and the prefetch of the {@link GridCoverageTileRenderer}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestGridCoverageTileRenderer extends TestCase {
+
+    private static final int ZOOM = 3;
+
+    private File cacheFolder;
+
+    @Override
+    protected void setUp() throws Exception {
+        cacheFolder = Files.createTempDirectory("hm_tiles").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll(cacheFolder);
+    }
+
+    public void testRequestedTileCached() throws Exception {
+        CountingRenderer tileRenderer = new CountingRenderer(cacheFolder, ZOOM, 2, Long.MAX_VALUE);
+        try {
+            File tile = getTile(tileRenderer, 2, 3);
+            assertTrue(tile.exists());
+            assertEquals(new File(cacheFolder, ZOOM + File.separator + 2 + File.separator + 3 + ".png"), tile);
+            assertEquals(1, tileRenderer.count(2, 3));
+
+            // from the folder
+            getTile(tileRenderer, 2, 3);
+            assertEquals(1, tileRenderer.count(2, 3));
+
+            // from memory
+            assertTrue(tile.delete());
+            getTile(tileRenderer, 2, 3);
+            assertTrue(tile.exists());
+            assertEquals(1, tileRenderer.count(2, 3));
+        } finally {
+            tileRenderer.dispose();
+        }
+    }
+
+    public void testNeighboursPrefetched() throws Exception {
+        CountingRenderer tileRenderer = new CountingRenderer(cacheFolder, ZOOM, 2, Long.MAX_VALUE);
+        try {
+            getTile(tileRenderer, 0, 4);
+            // 8 neighbours, the columns wrap around the dateline
+            tileRenderer.awaitRendered(9);
+            for( int dy = -1; dy <= 1; dy++ ) {
+                for( int dx = -1; dx <= 1; dx++ ) {
+                    int x = (dx + 8) % 8;
+                    assertEquals(1, tileRenderer.count(x, 4 + dy));
+                    if (dx != 0 || dy != 0) {
+                        // prefetched tiles are written only once requested
+                        assertFalse(tileFile(x, 4 + dy).exists());
+                        assertNotNull(tileRenderer.getRecentTile(GridCoverageTileRenderer.getKey(ZOOM, x, 4 + dy)));
+                    }
+                }
+            }
+
+            File tile = getTile(tileRenderer, 7, 5);
+            assertTrue(tile.exists());
+            assertEquals(1, tileRenderer.count(7, 5));
+        } finally {
+            tileRenderer.dispose();
+        }
+    }
+
+    public void testConcurrentRequestsRenderedOnce() throws Exception {
+        final CountingRenderer tileRenderer = new CountingRenderer(cacheFolder, ZOOM, 4, Long.MAX_VALUE);
+        tileRenderer.blockTile(1, 1);
+        ExecutorService requests = Executors.newFixedThreadPool(4);
+        try {
+            Future< ? >[] futures = new Future< ? >[4];
+            for( int i = 0; i < futures.length; i++ ) {
+                futures[i] = requests.submit(() -> getTile(tileRenderer, 1, 1));
+            }
+            tileRenderer.awaitBlocked(1);
+            tileRenderer.release.countDown();
+            for( Future< ? > future : futures ) {
+                assertEquals(tileFile(1, 1), future.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, tileRenderer.count(1, 1));
+        } finally {
+            tileRenderer.release.countDown();
+            requests.shutdownNow();
+            tileRenderer.dispose();
+        }
+    }
+
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        GridCoverageTileRenderer tileRenderer = new CountingRenderer(cacheFolder, ZOOM, 1, 30);
+        try {
+            tileRenderer.addRecentTile("a", new byte[10]);
+            tileRenderer.addRecentTile("b", new byte[10]);
+            tileRenderer.addRecentTile("c", new byte[10]);
+            assertNotNull(tileRenderer.getRecentTile("a"));
+
+            tileRenderer.addRecentTile("d", new byte[10]);
+            assertNull(tileRenderer.getRecentTile("b"));
+            assertNotNull(tileRenderer.getRecentTile("c"));
+
+            // a replaced tile counts only with its new size
+            tileRenderer.addRecentTile("a", new byte[15]);
+            assertNull(tileRenderer.getRecentTile("d"));
+            assertEquals(15, tileRenderer.getRecentTile("a").length);
+            assertEquals(10, tileRenderer.getRecentTile("c").length);
+
+            // larger than the whole cache, not kept
+            tileRenderer.addRecentTile("e", new byte[31]);
+            assertNull(tileRenderer.getRecentTile("e"));
+            assertNull(tileRenderer.getRecentTile("a"));
+            assertNull(tileRenderer.getRecentTile("c"));
+        } finally {
+            tileRenderer.dispose();
+        }
+    }
+
+    public void testPrefetchLeavesRendererForRequests() throws Exception {
+        for( int threads : new int[]{1, 2, 3} ) {
+            final CountingRenderer tileRenderer = new CountingRenderer(cacheFolder, ZOOM, threads, Long.MAX_VALUE);
+            tileRenderer.blockPrefetch = true;
+            ExecutorService requests = Executors.newSingleThreadExecutor();
+            try {
+                getTile(tileRenderer, 1, 1);
+                // all the prefetch threads stuck
+                tileRenderer.awaitBlocked(Math.max(1, threads - 1));
+                Future<File> far = requests.submit(() -> getTile(tileRenderer, 5, 6));
+                assertEquals(tileFile(5, 6), far.get(10, TimeUnit.SECONDS));
+            } finally {
+                tileRenderer.release.countDown();
+                requests.shutdownNow();
+                tileRenderer.dispose();
+            }
+            deleteAll(cacheFolder);
+        }
+    }
+
+    private File getTile( GridCoverageTileRenderer tileRenderer, int x, int y ) throws Exception {
+        return tileRenderer.getTile(ZOOM, x, y, MBTilesHelper.tile2lon(x, ZOOM), MBTilesHelper.tile2lon(x + 1, ZOOM),
+                MBTilesHelper.tile2lat(y + 1, ZOOM), MBTilesHelper.tile2lat(y, ZOOM));
+    }
+
+    private File tileFile( int x, int y ) {
+        return new File(cacheFolder, ZOOM + File.separator + x + File.separator + y + ".png");
+    }
+
+    private static void deleteAll( File file ) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for( File child : files ) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Counts the painted tiles, optionally blocking the painting of some.
+     */
+    private static class CountingRenderer extends GridCoverageTileRenderer {
+        private final ConcurrentHashMap<String, AtomicInteger> painted = new ConcurrentHashMap<>();
+        private final AtomicInteger rendered = new AtomicInteger();
+        private final AtomicInteger blocked = new AtomicInteger();
+        volatile String blockTile;
+        volatile boolean blockPrefetch;
+        final CountDownLatch release = new CountDownLatch(1);
+
+        CountingRenderer( File cacheFolder, int maxZoom, int threads, long memoryCacheBytes ) {
+            super(cacheFolder, 8, maxZoom, threads, memoryCacheBytes);
+        }
+
+        @Override
+        void paint( GTRenderer renderer, Graphics2D gr, Rectangle imageBounds, double west, double east, double south,
+                double north ) {
+            String bounds = west + "/" + north;
+            painted.computeIfAbsent(bounds, k -> new AtomicInteger()).incrementAndGet();
+            if (bounds.equals(blockTile) || (blockPrefetch && Thread.currentThread().getName().startsWith("coverage tiles"))) {
+                blocked.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        void addRecentTile( String key, byte[] png ) {
+            super.addRecentTile(key, png);
+            rendered.incrementAndGet();
+        }
+
+        void blockTile( int x, int y ) {
+            blockTile = MBTilesHelper.tile2lon(x, ZOOM) + "/" + MBTilesHelper.tile2lat(y, ZOOM);
+        }
+
+        int count( int x, int y ) {
+            AtomicInteger count = painted.get(MBTilesHelper.tile2lon(x, ZOOM) + "/" + MBTilesHelper.tile2lat(y, ZOOM));
+            return count == null ? 0 : count.get();
+        }
+
+        void awaitRendered( int count ) throws InterruptedException {
+            await(rendered, count);
+            assertEquals(count, rendered.get());
+        }
+
+        void awaitBlocked( int count ) throws InterruptedException {
+            await(blocked, count);
+        }
+
+        private static void await( AtomicInteger counter, int count ) throws InterruptedException {
+            long end = System.currentTimeMillis() + 10000;
+            while( counter.get() < count && System.currentTimeMillis() < end ) {
+                Thread.sleep(10);
+            }
+            assertTrue(counter.get() >= count);
+        }
+    }
+
+}
@@ -18,10 +18,8 @@
 package org.hortonmachine.gears;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -30,17 +28,14 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import org.hortonmachine.gears.libs.modules.ClassField;
-import org.scannotation.AnnotationDB;
+import org.hortonmachine.gears.libs.modules.ModulesIndex;
 import org.scannotation.ClasspathUrlFinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import oms3.Access;
-import oms3.ComponentAccess;
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Documentation;
-import oms3.annotations.Execute;
 import oms3.annotations.Keywords;
 import oms3.annotations.Label;
 import oms3.annotations.License;
@@ -148,15 +143,9 @@ public class JGrassGears {
 
             // logger.debug("base class url: " + baseclassUrl);
 
-            AnnotationDB db = new AnnotationDB();
-            db.scanArchives(baseclassUrl);
-
-            Map<String, Set<String>> annotationIndex = db.getAnnotationIndex();
-            Set<String> simpleClasses = annotationIndex.get(Execute.class.getName());
+            ModulesIndex modulesIndex = new ModulesIndex(baseclassUrl);
+            Set<String> simpleClasses = modulesIndex.getModuleClassNames("org.hortonmachine.gears");
             for( String className : simpleClasses ) {
-                if (!className.startsWith("org.hortonmachine.gears")) {
-                    continue;
-                }
                 // logger.debug("check: " + className);
                 int lastDot = className.lastIndexOf('.');
                 String name = className.substring(lastDot + 1);
@@ -203,59 +192,11 @@ public class JGrassGears {
 
                 classNames.add(moduleName);
 
-                List<ClassField> tmpfields = new ArrayList<>();
-                Object annotatedObject = moduleClass.newInstance();
-                ComponentAccess cA = new ComponentAccess(annotatedObject);
-                Collection<Access> inputs = cA.inputs();
-                for( Access access : inputs ) {
-                    Field field = access.getField();
-                    String name = field.getName();
-                    Description descriptionAnnot = field.getAnnotation(Description.class);
-                    String description = name;
-                    if (descriptionAnnot != null) {
-                        description = descriptionAnnot.value();
-                        if (description == null) {
-                            description = name;
-                        }
-                    }
-                    Class< ? > fieldClass = field.getType();
-                    ClassField cf = new ClassField();
-                    cf.isIn = true;
-                    cf.fieldName = name;
-                    cf.fieldDescription = description;
-                    cf.fieldClass = fieldClass;
-                    cf.parentClass = moduleClass;
-                    cf.parentClassStatus = statusString;
-                    if (!fieldNamesList.contains(name)) {
-                        fieldNamesList.add(name);
-                    }
-                    tmpfields.add(cf);
-
-                }
-                Collection<Access> outputs = cA.outputs();
-                for( Access access : outputs ) {
-                    Field field = access.getField();
-                    String name = field.getName();
-                    Description descriptionAnnot = field.getAnnotation(Description.class);
-                    String description = name;
-                    if (descriptionAnnot != null) {
-                        description = descriptionAnnot.value();
-                        if (description == null) {
-                            description = name;
-                        }
-                    }
-                    Class< ? > fieldClass = field.getType();
-                    ClassField cf = new ClassField();
-                    cf.isOut = true;
-                    cf.fieldName = name;
-                    cf.fieldDescription = description;
-                    cf.fieldClass = fieldClass;
-                    cf.parentClass = moduleClass;
-                    cf.parentClassStatus = statusString;
-                    if (!fieldNamesList.contains(name)) {
-                        fieldNamesList.add(name);
+                List<ClassField> tmpfields = modulesIndex.getFields(moduleClass, statusString);
+                for( ClassField classField : tmpfields ) {
+                    if (!fieldNamesList.contains(classField.fieldName)) {
+                        fieldNamesList.add(classField.fieldName);
                     }
-                    tmpfields.add(cf);
                 }
                 moduleName2Fields.put(moduleName, tmpfields);
             }
@@ -263,7 +204,7 @@ public class JGrassGears {
             allFields = (String[]) fieldNamesList.toArray(new String[fieldNamesList.size()]);
             Collections.sort(classNames);
             allClasses = (String[]) classNames.toArray(new String[classNames.size()]);
-        } catch (InstantiationException | IllegalAccessException | IOException e) {
+        } catch (Exception e) {
             e.printStackTrace();
         }
     }
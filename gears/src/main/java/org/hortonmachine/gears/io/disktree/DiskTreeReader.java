@@ -22,18 +22,32 @@ import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import com.vividsolutions.jts.JTSVersion;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jts.io.WKBReader;
 
 /**
  * Reader for the Sort-Tile-Recursive disk index.
  * 
+ * <p>Both format versions are supported. Files in the packed format are 
+ * queried through {@link #query(Envelope)} directly on the memory mapped index,
+ * without building the tree in memory.</p>
+ * 
  * @author Andrea Antonello (www.hydrologis.com)
  * @see IDiskTree
  */
-public class DiskTreeReader implements IDiskTree {
+public class DiskTreeReader implements IDiskTree, AutoCloseable {
 
     private final String path;
 
@@ -41,6 +55,28 @@ public class DiskTreeReader implements IDiskTree {
 
     private RandomAccessFile raf = null;
 
+    private int formatVersion;
+
+    private long indexAddress;
+
+    private long indexSize;
+
+    private MappedByteBuffer indexBuffer;
+
+    private MappedByteBuffer geometriesBuffer;
+
+    private long geometriesStart;
+
+    private int nodeSize;
+
+    private int itemsCount;
+
+    private int[] levelEnds;
+
+    private int entriesStart;
+
+    private WKBReader wkbReader;
+
     /**
      * Constructor.
      * 
@@ -51,13 +87,16 @@ public class DiskTreeReader implements IDiskTree {
     }
 
     /**
-     * Reads the {@link STRtree} object from the file.
+     * Open the file, read the header and check the format version.
      * 
-     * @return the quadtree, holding envelops and geometry positions in the file.
-     * @throws Exception
+     * <p>This is called by the other methods if necessary.</p>
+     * 
+     * @throws IOException
      */
-    public STRtree readIndex() throws Exception {
-
+    public void open() throws IOException {
+        if (raf != null) {
+            return;
+        }
         File file = new File(path);
         raf = new RandomAccessFile(file, "r");
 
@@ -66,10 +105,73 @@ public class DiskTreeReader implements IDiskTree {
 
         long position = INDEX_ADDRESS_POSITION;
         raf.seek(position);
-        long indexAddress = raf.readLong();
+        indexAddress = raf.readLong();
         position = INDEX_ADDRESS_POSITION + INDEX_ADDRESS_SIZE;
         raf.seek(position);
-        long indexSize = raf.readLong();
+        indexSize = raf.readLong();
+
+        formatVersion = FORMAT_SERIALIZED;
+        if (indexSize >= 20) {
+            raf.seek(indexAddress);
+            if (raf.readInt() == PACKED_INDEX_MAGIC) {
+                formatVersion = raf.readInt();
+                openPacked();
+            }
+        }
+    }
+
+    private void openPacked() throws IOException {
+        FileChannel channel = raf.getChannel();
+        indexBuffer = channel.map(MapMode.READ_ONLY, indexAddress, indexSize);
+        nodeSize = indexBuffer.getInt(8);
+        itemsCount = indexBuffer.getInt(12);
+        int levels = indexBuffer.getInt(16);
+        levelEnds = new int[levels];
+        for( int i = 0; i < levels; i++ ) {
+            levelEnds[i] = indexBuffer.getInt(20 + 4 * i);
+        }
+        entriesStart = 20 + 4 * levels;
+
+        geometriesStart = INDEX_ADDRESS_POSITION + INDEX_ADDRESS_SIZE + INDEX_LENGTH_SIZE;
+        long geometriesSize = indexAddress - geometriesStart;
+        if (geometriesSize <= Integer.MAX_VALUE) {
+            geometriesBuffer = channel.map(MapMode.READ_ONLY, geometriesStart, geometriesSize);
+        }
+        wkbReader = new WKBReader();
+    }
+
+    /**
+     * @return the format version of the file, {@link IDiskTree#FORMAT_SERIALIZED} or {@link IDiskTree#FORMAT_PACKED}.
+     * @throws IOException
+     */
+    public int getFormatVersion() throws IOException {
+        open();
+        return formatVersion;
+    }
+
+    /**
+     * Reads the {@link STRtree} object from the file.
+     * 
+     * <p>For files in the packed format the tree is built from the index entries,
+     * use {@link #query(Envelope)} to avoid that.</p>
+     * 
+     * @return the quadtree, holding envelops and geometry positions in the file.
+     * @throws Exception
+     */
+    public STRtree readIndex() throws Exception {
+        open();
+        if (indexObj != null) {
+            return indexObj;
+        }
+        if (formatVersion == FORMAT_PACKED) {
+            STRtree tree = new STRtree(Math.max(itemsCount, 2));
+            for( int i = 0; i < itemsCount; i++ ) {
+                int entry = entriesStart + i * PACKED_ENTRY_SIZE;
+                tree.insert(getEntryEnvelope(entry), new long[]{getEntryValue(entry), getEntrySize(entry)});
+            }
+            indexObj = tree;
+            return indexObj;
+        }
 
         raf.seek(indexAddress);
         byte[] indexBytes = new byte[(int) indexSize];
@@ -83,6 +185,98 @@ public class DiskTreeReader implements IDiskTree {
         return indexObj;
     }
 
+    /**
+     * Get the position and size of the geometries with an envelope intersecting a given one.
+     * 
+     * @param envelope the envelope to query.
+     * @return the list of [position of geom on disk, size of the geom on disk] arrays.
+     * @throws Exception
+     */
+    @SuppressWarnings("rawtypes")
+    public List<long[]> query( Envelope envelope ) throws Exception {
+        open();
+        List<long[]> result = new ArrayList<long[]>();
+        if (formatVersion != FORMAT_PACKED) {
+            List items = readIndex().query(envelope);
+            for( Object item : items ) {
+                if (item instanceof long[]) {
+                    result.add((long[]) item);
+                }
+            }
+            return result;
+        }
+        if (itemsCount == 0) {
+            return result;
+        }
+
+        double qMinX = envelope.getMinX();
+        double qMinY = envelope.getMinY();
+        double qMaxX = envelope.getMaxX();
+        double qMaxY = envelope.getMaxY();
+
+        // stack of [first entry, end entry, level] ranges to check
+        int[] stack = new int[3 * 64];
+        int stackSize = 0;
+        int topLevel = levelEnds.length - 1;
+        stack[stackSize++] = topLevel > 0 ? levelEnds[topLevel - 1] : 0;
+        stack[stackSize++] = levelEnds[topLevel];
+        stack[stackSize++] = topLevel;
+        while( stackSize > 0 ) {
+            int level = stack[--stackSize];
+            int end = stack[--stackSize];
+            int first = stack[--stackSize];
+            for( int i = first; i < end; i++ ) {
+                int entry = entriesStart + i * PACKED_ENTRY_SIZE;
+                if (indexBuffer.getDouble(entry) > qMaxX || indexBuffer.getDouble(entry + 8) > qMaxY
+                        || indexBuffer.getDouble(entry + 16) < qMinX || indexBuffer.getDouble(entry + 24) < qMinY) {
+                    continue;
+                }
+                long value = getEntryValue(entry);
+                long size = getEntrySize(entry);
+                if (level == 0) {
+                    result.add(new long[]{value, size});
+                } else {
+                    if (stackSize + 3 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[stackSize++] = (int) value;
+                    stack[stackSize++] = (int) (value + size);
+                    stack[stackSize++] = level - 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the geometries with an envelope intersecting a given one.
+     * 
+     * @param envelope the envelope to query.
+     * @return the list of geometries.
+     * @throws Exception
+     */
+    public List<Geometry> queryGeometries( Envelope envelope ) throws Exception {
+        List<long[]> positions = query(envelope);
+        List<Geometry> geometries = new ArrayList<Geometry>(positions.size());
+        for( long[] posSize : positions ) {
+            geometries.add(pickGeometry(posSize[0], posSize[1]));
+        }
+        return geometries;
+    }
+
+    private Envelope getEntryEnvelope( int entry ) {
+        return new Envelope(indexBuffer.getDouble(entry), indexBuffer.getDouble(entry + 16), indexBuffer.getDouble(entry + 8),
+                indexBuffer.getDouble(entry + 24));
+    }
+
+    private long getEntryValue( int entry ) {
+        return indexBuffer.getLong(entry + 32);
+    }
+
+    private long getEntrySize( int entry ) {
+        return indexBuffer.getLong(entry + 40);
+    }
+
     private void checkVersions() throws IOException {
         int fileMajor = raf.readInt();
         int fileMinor = raf.readInt();
@@ -97,7 +291,8 @@ public class DiskTreeReader implements IDiskTree {
     }
 
     /**
-     * Reads a single geomtry, using the info from the quadtree read in {@link #readIndex()}.
+     * Reads a single geomtry, using the info from the quadtree read in {@link #readIndex()} 
+     * or from {@link #query(Envelope)}.
      * 
      * @param position the position of the geom to read.
      * @param size the size of the geom to read.
@@ -105,20 +300,63 @@ public class DiskTreeReader implements IDiskTree {
      * @throws Exception
      */
     public Geometry pickGeometry( long position, long size ) throws Exception {
+        open();
         byte[] geomBytes = new byte[(int) size];
-        raf.seek(position);
-        raf.read(geomBytes);
+        if (formatVersion == FORMAT_PACKED && geometriesBuffer != null) {
+            ByteBuffer duplicate = geometriesBuffer.duplicate();
+            duplicate.position((int) (position - geometriesStart));
+            duplicate.get(geomBytes);
+        } else {
+            raf.seek(position);
+            raf.readFully(geomBytes);
+        }
 
+        if (formatVersion == FORMAT_PACKED) {
+            return fromRecord(geomBytes);
+        }
         ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(geomBytes));
         return (Geometry) in.readObject();
     }
 
+    private Geometry fromRecord( byte[] record ) throws Exception {
+        ByteBuffer bb = ByteBuffer.wrap(record);
+        int wkbSize = bb.getInt();
+        byte[] wkb = new byte[wkbSize];
+        bb.get(wkb);
+        Geometry geometry = wkbReader.read(wkb);
+        byte userDataType = bb.get();
+        switch( userDataType ) {
+        case USERDATA_INTEGER:
+            geometry.setUserData(bb.getInt());
+            break;
+        case USERDATA_LONG:
+            geometry.setUserData(bb.getLong());
+            break;
+        case USERDATA_DOUBLE:
+            geometry.setUserData(bb.getDouble());
+            break;
+        case USERDATA_STRING:
+            byte[] strBytes = new byte[bb.getInt()];
+            bb.get(strBytes);
+            geometry.setUserData(new String(strBytes, StandardCharsets.UTF_8));
+            break;
+        default:
+            break;
+        }
+        return geometry;
+    }
+
     /**
      * Closes the filehandle.
      * 
      * @throws IOException
      */
     public void close() throws IOException {
-        raf.close();
+        indexBuffer = null;
+        geometriesBuffer = null;
+        if (raf != null) {
+            raf.close();
+            raf = null;
+        }
     }
 }
@@ -18,15 +18,21 @@
 package org.hortonmachine.gears.io.disktree;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
 
 import com.vividsolutions.jts.JTSVersion;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jts.io.WKBWriter;
 
 /**
  * Writer for the quadtree disk index.
@@ -36,8 +42,17 @@ import com.vividsolutions.jts.index.strtree.STRtree;
  */
 public class DiskTreeWriter implements IDiskTree {
 
+    /**
+     * The default max number of children of a node of the packed index.
+     */
+    public static final int DEFAULT_NODE_SIZE = 16;
+
     private final String path;
 
+    private int formatVersion = FORMAT_PACKED;
+
+    private int nodeSize = DEFAULT_NODE_SIZE;
+
     /**
      * Constructor.
      * 
@@ -47,13 +62,246 @@ public class DiskTreeWriter implements IDiskTree {
         this.path = path;
     }
 
+    /**
+     * Set the format to write.
+     * 
+     * @param formatVersion {@link IDiskTree#FORMAT_PACKED} (default) or {@link IDiskTree#FORMAT_SERIALIZED}.
+     */
+    public void setFormatVersion( int formatVersion ) {
+        if (formatVersion != FORMAT_PACKED && formatVersion != FORMAT_SERIALIZED) {
+            throw new IllegalArgumentException("Unsupported format version: " + formatVersion);
+        }
+        this.formatVersion = formatVersion;
+    }
+
+    /**
+     * Set the max number of children of a node of the packed index.
+     * 
+     * @param nodeSize the node size, at least 2.
+     */
+    public void setNodeSize( int nodeSize ) {
+        if (nodeSize < 2) {
+            throw new IllegalArgumentException("The node size needs to be at least 2.");
+        }
+        this.nodeSize = nodeSize;
+    }
+
     /**
      * Writes an array of {@link Geometry}s to the disk.
      * 
+     * <p>The supported user data of the geometries for the packed format are
+     * <code>null</code>, {@link Integer}, {@link Long}, {@link Double} and {@link String}.</p>
+     * 
      * @param geometries the array of geoms to write.
      * @throws IOException
      */
     public void writeGeometries( Geometry[] geometries ) throws IOException {
+        if (formatVersion == FORMAT_PACKED) {
+            writePacked(geometries);
+        } else {
+            writeSerialized(geometries);
+        }
+    }
+
+    private void writePacked( Geometry[] geometries ) throws IOException {
+        File file = new File(path);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.writeChars("jts");
+            raf.writeInt(JTSVersion.MAJOR);
+            raf.writeInt(JTSVersion.MINOR);
+
+            long geometriesStart = INDEX_ADDRESS_POSITION + INDEX_ADDRESS_SIZE + INDEX_LENGTH_SIZE;
+            raf.seek(geometriesStart);
+
+            int count = 0;
+            double[] bounds = new double[4 * geometries.length];
+            long[] positions = new long[geometries.length];
+            long[] sizes = new long[geometries.length];
+
+            WKBWriter wkbWriter = new WKBWriter();
+            long fileIndex = geometriesStart;
+            for( Geometry geometry : geometries ) {
+                if (geometry.isEmpty()) {
+                    continue;
+                }
+                byte[] geomBytes = toRecord(wkbWriter, geometry);
+                raf.write(geomBytes);
+
+                Envelope envelope = geometry.getEnvelopeInternal();
+                bounds[4 * count] = envelope.getMinX();
+                bounds[4 * count + 1] = envelope.getMinY();
+                bounds[4 * count + 2] = envelope.getMaxX();
+                bounds[4 * count + 3] = envelope.getMaxY();
+                positions[count] = fileIndex;
+                sizes[count] = geomBytes.length;
+                count++;
+
+                fileIndex = fileIndex + geomBytes.length;
+            }
+
+            byte[] indexBytes = packIndex(count, bounds, positions, sizes);
+            raf.write(indexBytes);
+
+            raf.seek(INDEX_ADDRESS_POSITION);
+            raf.writeLong(fileIndex);
+            raf.writeLong(indexBytes.length);
+        }
+    }
+
+    /**
+     * Create the bytes of a geometry record: WKB size, WKB and user data.
+     */
+    private byte[] toRecord( WKBWriter wkbWriter, Geometry geometry ) throws IOException {
+        byte[] wkb = wkbWriter.write(geometry);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(wkb.length + 16);
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(wkb.length);
+        out.write(wkb);
+        Object userData = geometry.getUserData();
+        if (userData == null) {
+            out.writeByte(USERDATA_NULL);
+        } else if (userData instanceof Integer) {
+            out.writeByte(USERDATA_INTEGER);
+            out.writeInt((Integer) userData);
+        } else if (userData instanceof Long) {
+            out.writeByte(USERDATA_LONG);
+            out.writeLong((Long) userData);
+        } else if (userData instanceof Double) {
+            out.writeByte(USERDATA_DOUBLE);
+            out.writeDouble((Double) userData);
+        } else if (userData instanceof String) {
+            byte[] strBytes = ((String) userData).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(USERDATA_STRING);
+            out.writeInt(strBytes.length);
+            out.write(strBytes);
+        } else {
+            throw new IllegalArgumentException("Unsupported user data type for the packed format: " + userData.getClass());
+        }
+        out.close();
+        return bos.toByteArray();
+    }
+
+    /**
+     * Build the packed tree bottom up. At each level the entries are sorted 
+     * Sort-Tile-Recursive and grouped by node size into the entries of the next level.
+     */
+    private byte[] packIndex( int count, double[] bounds, long[] positions, long[] sizes ) {
+        // entries of the whole tree, level by level
+        int maxEntries = count;
+        for( int levelCount = count; levelCount > 1; ) {
+            levelCount = (levelCount + nodeSize - 1) / nodeSize;
+            maxEntries += levelCount;
+        }
+        double[] treeBounds = new double[4 * Math.max(maxEntries, 1)];
+        long[] treeValues = new long[Math.max(maxEntries, 1)];
+        long[] treeSizes = new long[Math.max(maxEntries, 1)];
+        int[] levelEnds = new int[64];
+        int levels = 0;
+
+        // leaves
+        Integer[] order = strOrder(bounds, count);
+        for( int i = 0; i < count; i++ ) {
+            int src = order[i];
+            System.arraycopy(bounds, 4 * src, treeBounds, 4 * i, 4);
+            treeValues[i] = positions[src];
+            treeSizes[i] = sizes[src];
+        }
+        levelEnds[levels++] = count;
+
+        int levelStart = 0;
+        int levelEnd = count;
+        while( levelEnd - levelStart > 1 ) {
+            int levelCount = levelEnd - levelStart;
+            int parentStart = levelEnd;
+            int parentCount = (levelCount + nodeSize - 1) / nodeSize;
+
+            // sort the nodes of the current level before grouping them
+            if (levelStart > 0) {
+                double[] levelBounds = Arrays.copyOfRange(treeBounds, 4 * levelStart, 4 * levelEnd);
+                long[] levelValues = Arrays.copyOfRange(treeValues, levelStart, levelEnd);
+                long[] levelSizes = Arrays.copyOfRange(treeSizes, levelStart, levelEnd);
+                Integer[] levelOrder = strOrder(levelBounds, levelCount);
+                for( int i = 0; i < levelCount; i++ ) {
+                    int src = levelOrder[i];
+                    System.arraycopy(levelBounds, 4 * src, treeBounds, 4 * (levelStart + i), 4);
+                    treeValues[levelStart + i] = levelValues[src];
+                    treeSizes[levelStart + i] = levelSizes[src];
+                }
+            }
+
+            for( int p = 0; p < parentCount; p++ ) {
+                int firstChild = levelStart + p * nodeSize;
+                int lastChild = Math.min(firstChild + nodeSize, levelEnd);
+                double minX = Double.POSITIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY;
+                double maxY = Double.NEGATIVE_INFINITY;
+                for( int c = firstChild; c < lastChild; c++ ) {
+                    minX = Math.min(minX, treeBounds[4 * c]);
+                    minY = Math.min(minY, treeBounds[4 * c + 1]);
+                    maxX = Math.max(maxX, treeBounds[4 * c + 2]);
+                    maxY = Math.max(maxY, treeBounds[4 * c + 3]);
+                }
+                int index = parentStart + p;
+                treeBounds[4 * index] = minX;
+                treeBounds[4 * index + 1] = minY;
+                treeBounds[4 * index + 2] = maxX;
+                treeBounds[4 * index + 3] = maxY;
+                treeValues[index] = firstChild;
+                treeSizes[index] = lastChild - firstChild;
+            }
+            levelStart = parentStart;
+            levelEnd = parentStart + parentCount;
+            levelEnds[levels++] = levelEnd;
+        }
+
+        int entries = levelEnd;
+        ByteBuffer bb = ByteBuffer.allocate(20 + 4 * levels + PACKED_ENTRY_SIZE * entries);
+        bb.putInt(PACKED_INDEX_MAGIC);
+        bb.putInt(FORMAT_PACKED);
+        bb.putInt(nodeSize);
+        bb.putInt(count);
+        bb.putInt(levels);
+        for( int i = 0; i < levels; i++ ) {
+            bb.putInt(levelEnds[i]);
+        }
+        for( int i = 0; i < entries; i++ ) {
+            bb.putDouble(treeBounds[4 * i]);
+            bb.putDouble(treeBounds[4 * i + 1]);
+            bb.putDouble(treeBounds[4 * i + 2]);
+            bb.putDouble(treeBounds[4 * i + 3]);
+            bb.putLong(treeValues[i]);
+            bb.putLong(treeSizes[i]);
+        }
+        return bb.array();
+    }
+
+    /**
+     * Get the Sort-Tile-Recursive order of envelopes: sorted by x center into
+     * vertical slices of whole nodes, each slice sorted by y center.
+     */
+    private Integer[] strOrder( double[] bounds, int count ) {
+        Integer[] order = new Integer[count];
+        for( int i = 0; i < count; i++ ) {
+            order[i] = i;
+        }
+        Comparator<Integer> xComparator = ( i1, i2 ) -> Double.compare(bounds[4 * i1] + bounds[4 * i1 + 2],
+                bounds[4 * i2] + bounds[4 * i2 + 2]);
+        Comparator<Integer> yComparator = ( i1, i2 ) -> Double.compare(bounds[4 * i1 + 1] + bounds[4 * i1 + 3],
+                bounds[4 * i2 + 1] + bounds[4 * i2 + 3]);
+        Arrays.sort(order, xComparator);
+
+        int nodesCount = (count + nodeSize - 1) / nodeSize;
+        int slicesCount = (int) Math.ceil(Math.sqrt(nodesCount));
+        int sliceSize = nodeSize * (int) Math.ceil((double) nodesCount / Math.max(slicesCount, 1));
+        for( int start = 0; start < count; start += sliceSize ) {
+            Arrays.sort(order, start, Math.min(start + sliceSize, count), yComparator);
+        }
+        return order;
+    }
+
+    private void writeSerialized( Geometry[] geometries ) throws IOException {
         File file = new File(path);
         RandomAccessFile raf = null;
         try {
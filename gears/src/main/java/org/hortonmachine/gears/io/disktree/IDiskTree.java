@@ -40,6 +40,33 @@ package org.hortonmachine.gears.io.disktree;
  * envelope.
  * </p>
  * 
+ * <p>
+ * The header is the same for all the format versions. In version 1 the geometries 
+ * and the tree are java serialized. In version 2 ({@link #FORMAT_PACKED}) the 
+ * geometries are stored as:
+ * 
+ * <ul>
+ *  <li>4 bytes for the size of the WKB</li>
+ *  <li>the WKB of the geometry</li>
+ *  <li>1 byte for the type of the user data (see the USERDATA_* constants), followed by its value</li>
+ * </ul>
+ * 
+ * and the index, which can be queried directly from a memory mapped buffer, as:
+ * 
+ * <ul>
+ *  <li>4 bytes containing {@link #PACKED_INDEX_MAGIC}, which tells the versions apart</li>
+ *  <li>4 bytes for the format version</li>
+ *  <li>4 bytes for the node size (max number of children of a node)</li>
+ *  <li>4 bytes for the number of geometries</li>
+ *  <li>4 bytes for the number of levels of the tree</li>
+ *  <li>4 bytes per level for the index of the entry after the last of the level</li>
+ *  <li>the entries, level by level from the leaves to the root, each made of 
+ *      4 doubles for minx, miny, maxx, maxy, 8 bytes for the geometry position (leaves) 
+ *      or the index of the first child entry (nodes) and 8 bytes for the geometry size 
+ *      (leaves) or the number of children (nodes)</li>
+ * </ul>
+ * </p>
+ * 
  * <p>Example write usage:
  * 
  * <pre>
@@ -89,4 +116,30 @@ public interface IDiskTree {
      * Byte size of the index length.
      */
     long INDEX_LENGTH_SIZE = 8;
+
+    /**
+     * Format with java serialized geometries and tree.
+     */
+    int FORMAT_SERIALIZED = 1;
+
+    /**
+     * Format with WKB geometries and a packed flat tree.
+     */
+    int FORMAT_PACKED = 2;
+
+    /**
+     * Magic number at the start of the packed index ('HMRT').
+     */
+    int PACKED_INDEX_MAGIC = 0x484D5254;
+
+    /**
+     * Byte size of an entry of the packed index.
+     */
+    int PACKED_ENTRY_SIZE = 48;
+
+    byte USERDATA_NULL = 0;
+    byte USERDATA_INTEGER = 1;
+    byte USERDATA_LONG = 2;
+    byte USERDATA_DOUBLE = 3;
+    byte USERDATA_STRING = 4;
 }
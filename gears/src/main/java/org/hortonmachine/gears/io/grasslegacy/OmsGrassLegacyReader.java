@@ -113,6 +113,7 @@ public class OmsGrassLegacyReader extends HMModel {
             reader.setReaderType(MapReader.RASTER_READER);
             reader.setOutputDataObject(new double[0][0]);
             reader.setDataWindow(inWindow);
+            reader.setParameter("threads", getDefaultThreadsNum());
 
             reader.open(mapEnvironment.getCELL().getAbsolutePath());
             if (reader.hasMoreData(pm)) {
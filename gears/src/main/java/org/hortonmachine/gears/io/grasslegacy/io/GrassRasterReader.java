@@ -24,18 +24,24 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.BitSet;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 import org.hortonmachine.gears.i18n.GearsMessageHandler;
 import org.hortonmachine.gears.io.grasslegacy.map.attribute.AttributeTable;
 import org.hortonmachine.gears.io.grasslegacy.map.color.ColorMapBuffer;
-import org.hortonmachine.gears.io.grasslegacy.utils.FileUtilities;
 import org.hortonmachine.gears.io.grasslegacy.utils.GrassLegacyConstans;
 import org.hortonmachine.gears.io.grasslegacy.utils.JlsTokenizer;
 import org.hortonmachine.gears.io.grasslegacy.utils.Window;
@@ -47,6 +53,13 @@ import org.hortonmachine.gears.libs.monitor.IHMProgressMonitor;
  * transformation of any of those into int, float and double matrixes, as well as in the ByteBuffers
  * of the same tipes.
  * </p>
+ * <p>
+ * The rows are decoded straight into the double matrix, by several threads if the
+ * <code>threads</code> parameter is set. Setting the <code>bandrows</code> parameter the data
+ * window is returned in bands of that many rows, one for every {@link #hasMoreData(IHMProgressMonitor)}
+ * and {@link #getNextData()} couple, so that large maps can be processed without holding the
+ * whole matrix in memory. {@link #getBandFirstRow()} gives the position of the current band.
+ * </p>
  * 
  * @author Andrea Antonello - www.hydrologis.com
  * @since 1.1.0
@@ -103,16 +116,29 @@ public class GrassRasterReader extends MapReader {
 
     private boolean isOldIntegerMap = false;
 
-    // private ByteBuffer rowCache = null;
-    private int rowCacheRow = -1;
-
-    private int firstDataRow = -1;
-
     private final double[] range = new double[]{1000000.0, -1000000.0}; // min,
 
     // max
 
-    private final double[] dataRange = new double[]{Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+    /**
+     * Comment for <code>threads</code> the number of threads decoding the rows
+     */
+    private int threads = 1;
+
+    /**
+     * Comment for <code>bandRows</code> the number of rows of the returned bands, -1 to return
+     * the whole data window at once
+     */
+    private int bandRows = -1;
+
+    /* the data window row of the band to read next */
+    private int nextBandRow = 0;
+
+    /* the data window row of the last band read */
+    private int bandFirstRow = 0;
+
+    /* true if a band has been read and not yet returned */
+    private boolean isBandRead = false;
 
     /* Storage for cell category descriptive information */
     private AttributeTable attTable = null;
@@ -177,6 +203,8 @@ public class GrassRasterReader extends MapReader {
             /* Ok. Get ready to read data */
             moreData = true;
         }
+        nextBandRow = 0;
+        isBandRead = false;
 
         hasChanged(false);
 
@@ -193,6 +221,9 @@ public class GrassRasterReader extends MapReader {
         }
         hasChanged(true);
         moreData = true;
+        nextBandRow = 0;
+        isBandRead = false;
+        outputData = null;
     }
 
     /**
@@ -254,104 +285,28 @@ public class GrassRasterReader extends MapReader {
      */
     public boolean hasMoreData( IHMProgressMonitor monitor ) throws Exception {
         try {
-            if (dataWindow != null && moreData == true) {
-
-                outputData = new double[dataWindow.getRows()][dataWindow.getCols()];
-
-                /* Allocate the space for the map data. */
-                int bufferSize = dataWindow.getRows() * dataWindow.getCols() * numberOfBytesPerValue;
-
-                // System.out.println("retrieveing data in window: " +
-                // dataWindow.toString());
+            if (dataWindow != null && moreData == true && !isBandRead) {
+                int rows = dataWindow.getRows();
+                int bandFirst = nextBandRow;
+                int bandSize = bandRows > 0 ? Math.min(bandRows, rows - bandFirst) : rows - bandFirst;
+                if (bandSize <= 0) {
+                    moreData = false;
+                    return moreData;
+                }
 
+                outputData = new double[bandSize][dataWindow.getCols()];
                 try {
-                    /* Byte array that will hold a complete null row */
-                    byte[] nullRow = null;
-                    /* The rowDataArray holds the unpacked row data */
-                    byte[] rowDataCache = new byte[dataWindow.getCols() * numberOfBytesPerValue];
-                    /* The rowColorDataArray holds the unpacked row color data */
-                    byte[] rowColorDataCache = new byte[dataWindow.getCols() * 4];
-                    /* Reset row cache */
-                    // rowCache = ByteBuffer.allocate(fileWindow.getCols() *
-                    // ((rasterMapType == -2) ? 8 : 4));
-                    // if (logger.isDebugEnabled())
-                    // logger.debug("allocating rowDataArray["+rowDataArray.length+
-                    // "], rowCache["+rowCache.limit()+"]");
-                    rowCacheRow = -1;
-                    firstDataRow = -1;
-                    int rowindex = -1;
-                    /* Get a local reference to speed things up */
-                    int filerows = fileWindow.getRows();
-                    double filenorth = fileWindow.getNorth();
-                    double filensres = fileWindow.getNSResolution();
-                    double datanorth = dataWindow.getNorth();
-                    double datansres = dataWindow.getNSResolution();
-                    // double datansres2 = datansres / 2;
-                    /* Iterate through all the rows of the data window. */
-                    // int lastpos = 0;
-                    monitor.beginTask(GearsMessageHandler.getInstance().message("grass.legacy.reading") + filename, dataWindow //$NON-NLS-1$
-                            .getRows());
-                    int stepRowsForPercentage = dataWindow.getRows() / 100;
-                    for( double row = 0; row < dataWindow.getRows(); row++ ) {
-                        if (row % stepRowsForPercentage == 0.0)
-                            monitor.worked(stepRowsForPercentage);
-                        /*
-                         * Calculate the map file row for the current data window row.
-                         */
-                        double filerow = (filenorth - (datanorth - (row * datansres))) / filensres;
-                        filerow = Math.floor(filerow);
-                        // int filerow = (int) ((filenorth - (datanorth - (row *
-                        // datansres + datansres2))) / filensres);
-                        // System.out.print("FILENORTH="+filenorth+",
-                        // DATANORTH="+datanorth+", FILEROW="+row);
-                        if (filerow < 0 || filerow >= filerows) {
-                            // System.out.println(", NULL ROW");
-                            /*
-                             * If no data has been read yet, then increment first data row counter
-                             */
-                            if (firstDataRow == -1)
-                                rowindex++;
-                            /*
-                             * Write a null row to the raster buffer. To speed things up the first
-                             * time this is called it instantiates the buffer and fills it with null
-                             * values that are reused the other times.
-                             */
-                            if (nullRow == null)
-                                nullRow = initNullRow();
-                            ByteBuffer wrap = ByteBuffer.wrap(nullRow);
-                            for( int col = 0; col < dataWindow.getCols(); col++ ) {
-                                outputData[(int) row][col] = wrap.getDouble();
-                            }
-                        } else {
-                            // System.out.println(", DATA ROW");
-                            if (firstDataRow == -1)
-                                firstDataRow = rowindex + 1;
-                            /* Read row and put in raster buffer */
-                            if (filerow == rowCacheRow) {
-                                ByteBuffer wrap = ByteBuffer.wrap(rowDataCache);
-                                for( int col = 0; col < dataWindow.getCols(); col++ ) {
-                                    outputData[(int) row][col] = wrap.getDouble();
-                                }
-                            } else {
-                                readRasterRow((int) filerow, rowDataCache, rowColorDataCache);
-                                rowCacheRow = (int) filerow;
-                                ByteBuffer wrap = ByteBuffer.wrap(rowDataCache);
-                                for( int col = 0; col < dataWindow.getCols(); col++ ) {
-                                    outputData[(int) row][col] = wrap.getDouble();
-                                }
-                            }
-                        }
-                        // System.out.println("FILEROWS="+filerows+",
-                        // FILEROW="+filerow+", ROWCACHEROW="+rowCacheRow+",
-                        // ROW_COUNTER="+row);
+                    if (bandFirst == 0) {
+                        monitor.beginTask(GearsMessageHandler.getInstance().message("grass.legacy.reading") + filename, //$NON-NLS-1$
+                                rows);
+                    }
+                    readRows(bandFirst, outputData, monitor);
+                    bandFirstRow = bandFirst;
+                    nextBandRow = bandFirst + bandSize;
+                    isBandRead = true;
+                    if (nextBandRow == rows) {
+                        monitor.done();
                     }
-                    monitor.done();
-
-                    rowDataCache = null;
-                    rowColorDataCache = null;
-                    rowCacheRow = -1;
-                    nullRow = null;
-                    System.gc();
                 } catch (IOException e) {
                     moreData = false;
                 } catch (DataFormatException e) {
@@ -373,7 +328,8 @@ public class GrassRasterReader extends MapReader {
      * @see jgrass.io.MapReader#getNextData() returns the data in the required format
      */
     public Object getNextData() {
-        moreData = false;
+        isBandRead = false;
+        moreData = dataWindow != null && nextBandRow < dataWindow.getRows();
         if (dataObject instanceof double[][]) {
             return outputData;
         } else {
@@ -381,6 +337,13 @@ public class GrassRasterReader extends MapReader {
         }
     }
 
+    /**
+     * @return the data window row of the first row of the data last read.
+     */
+    public int getBandFirstRow() {
+        return bandFirstRow;
+    }
+
     public ColorMapBuffer getNextDataColor( int attColor ) {
         return null;
     }
@@ -425,6 +388,10 @@ public class GrassRasterReader extends MapReader {
         } else if (key.equals("matrixtype")) { //$NON-NLS-1$
             Integer dmtype = (Integer) obj;
             matrixType = dmtype.intValue();
+        } else if (key.equals("threads")) { //$NON-NLS-1$
+            threads = Math.max(1, ((Integer) obj).intValue());
+        } else if (key.equals("bandrows")) { //$NON-NLS-1$
+            bandRows = ((Integer) obj).intValue();
         }
     }
 
@@ -792,528 +759,297 @@ public class GrassRasterReader extends MapReader {
     }
 
     /**
-     * reads a row of data from the file into a byte array.
+     * Reads rows of the data window into a band.
      * 
-     * @param currentfilerow the current row to be extracted from the file
-     * @param rowDataCache the byte array to store the unpacked row data
-     * @return boolean TRUE for success, FALSE for failure.
+     * <p>The rows are decoded by {@link #threads} threads, each one taking care of a
+     * contiguous run of rows with its own buffers and inflater. The files are read
+     * through positional reads on their channels, which can be shared by the threads.</p>
+     * 
+     * @param firstRow the data window row of the first row of the band.
+     * @param band the band to fill, as many rows as the band length are read.
+     * @param monitor the progress monitor, worked for every decoded row.
      * @throws IOException
      * @throws DataFormatException
      */
-    private boolean readRasterRow( int currentfilerow, byte[] rowDataCache, byte[] rowColorDataCache ) throws IOException,
+    private void readRows( int firstRow, double[][] band, IHMProgressMonitor monitor ) throws IOException,
             DataFormatException {
-        ByteBuffer rowBuffer = ByteBuffer.wrap(rowDataCache);
-        ByteBuffer rowColorBuffer = ByteBuffer.wrap(rowColorDataCache);
+        int[] fileCols = getFileColumns();
+        int rowsCount = band.length;
+        if (threads < 2 || rowsCount < 2) {
+            int done = new RowsDecoder(firstRow, band, 0, rowsCount, fileCols).call();
+            monitor.worked(done);
+            return;
+        }
+
         /*
-         * Read the correct approximated row from the file. The row contents as saved in a cache for
-         * along with the row number. If the row requested is the row in the cache then we do not
-         * ned to read from the file.
+         * more chunks than threads, so that a thread hitting expensive rows doesn't keep the
+         * others waiting
          */
-
-        // int currentfilecol;
-        boolean iscompressed = (compressed == 1 ? true : false);
-
-        /* Data window geographic boundaries */
-        double activeewres = dataWindow.getWEResolution();
-        // double activeewres2 = activeewres / 2;
-        double activewest = dataWindow.getWest();
-
-        /* Map file geographic limits */
-        double filewest = fileWindow.getWest();
-        double fileewres = fileWindow.getWEResolution();
-
-        // System.out.println("currentfilerow="+currentfilerow+",
-        // fileWindow.getRows()="+fileWindow.getRows());
-
-        /* Reset row cache and read new row data */
-        ByteBuffer rowCache = ByteBuffer.allocate(fileWindow.getCols() * ((rasterMapType == -2) ? 8 : 4));
-        // rowCache.rewind();
-        getMapRow(currentfilerow, rowCache, iscompressed);
-        // rowCacheRow = currentfilerow;
-
-        // if the northing is inside the file boundaries, calculate the values
-        // for (double col = activewest; col < activeeast; col += activeewres)
-        for( double col = 0; col < dataWindow.getCols(); col++ ) {
-            /*
-             * Calculate the column value of the data to be extracted from the row
-             */
-            double x = (((activewest + (col * activeewres)) - filewest) / fileewres);
-            x = Math.floor(x);
-
-            // currentfilecol = (int) (((activewest + (col * activeewres +
-            // activeewres2)) - filewest) / fileewres);
-
-            if (x < 0 || x >= fileWindow.getCols()) {
-                // System.out.println("COL="+col+", X="+x+", NULL VALUE(1)");
-                /*
-                 * Depending on the map type we store a different 'NO VALUE' value.
-                 */
-                if (rasterMapType > 0) {
-                    /*
-                     * For integers the NaN pattern doesn't seem to so we we use the positive
-                     * infinite value.
-                     */
-                    rowBuffer.putInt(Integer.MAX_VALUE);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, Integer.MAX_VALUE);
-                } else if (rasterMapType == -1) {
-                    /* For floats we use the Not A Number (NAN) value. */
-                    rowBuffer.putFloat(Float.NaN);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, Float.NaN);
-                } else if (rasterMapType == -2) {
-                    /* For double values we use the NAN value. */
-                    rowBuffer.putDouble(Double.NaN);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, Double.NaN);
-                } else {
-                    /* Don't know what to do. Probably throw some exception? */
-                }
-            } else if (readNullValueAtRowCol(currentfilerow, (int) x)) {
-                // System.out.println("COL="+col+", X="+x+", NULL VALUE(2)");
-                /*
-                 * Depending on the map type we store a different 'NO VALUE' value.
-                 */
-                if (rasterMapType > 0) {
-                    /*
-                     * For integers the NaN pattern doesn't seem to so we we use the positive
-                     * infinite value.
-                     */
-                    rowBuffer.putInt(Integer.MAX_VALUE);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, Integer.MAX_VALUE);
-                } else if (rasterMapType == -1) {
-                    /* For floats we use the Not A Number (NAN) value. */
-                    rowBuffer.putFloat(Float.NaN);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, Float.NaN);
-                } else if (rasterMapType == -2) {
-                    /* For double values we use the NAN value. */
-                    rowBuffer.putDouble(Double.NaN);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, Double.NaN);
-                } else {
-                    /* Don't know what to do. Probably throw some exception? */
-                }
-            } else {
-                // System.out.println("COL="+col+", X="+x+", DATA VALUE");
-                rowCache.position((int) x * numberOfBytesPerValue);
-                if (rasterMapType > 0) {
-                    /* Integers */
-                    int cell = rowCache.getInt();
-                    // System.out.println("x="+easthing+", y="+northing+",
-                    // cell="+cell);
-                    // System.out.print(cell+" ");
-
-                    /* File is an integer map file with 0 = novalue */
-                    if (cell == 0 && isOldIntegerMap) {
-                        rowBuffer.putInt(Integer.MAX_VALUE);
-                        if (colorTable != null)
-                            colorTable.interpolateColorValue(rowColorBuffer, Integer.MAX_VALUE);
-                    } else {
-                        /* If map is a reclass then get the reclassed value */
-                        if (reclassTable != null) {
-                            cell = ((Integer) reclassTable.elementAt(cell)).intValue();
-                        }
-                        rowBuffer.putInt(cell);
-                        if (colorTable != null)
-                            colorTable.interpolateColorValue(rowColorBuffer, cell);
-                        /* Update data range value */
-                        if (cell < dataRange[0])
-                            dataRange[0] = cell;
-                        else if (cell > dataRange[1])
-                            dataRange[1] = cell;
-                    }
-                } else if (rasterMapType == -1) {
-                    /* Floating point map with float values. */
-                    float cell = rowCache.getFloat();
-                    if (reclassTable != null) {
-                        cell = ((Integer) reclassTable.elementAt((int) cell)).floatValue();
-                    }
-                    rowBuffer.putFloat(cell);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, cell);
-                    /* Update data range value */
-                    if (cell < dataRange[0])
-                        dataRange[0] = cell;
-                    else if (cell > dataRange[1])
-                        dataRange[1] = cell;
-                } else if (rasterMapType == -2) {
-                    /* Floating point map with double values. */
-                    /*
-                     * if (logger.isDebugEnabled()) logger.debug("RASTERREAD: rowCache size = " +
-                     * rowCache.capacity() / 8 + " position = " + rowCache.position() / 8 + " total
-                     * columns to read = " + dataWindow.getCols() + " actual column = " + col);
-                     */
-                    double cell = rowCache.getDouble();
-                    /*
-                     * if (logger.isDebugEnabled()) logger.debug("RASTERREAD: cell = " + cell);
-                     */
-                    if (reclassTable != null) {
-                        cell = ((Integer) reclassTable.elementAt((int) cell)).doubleValue();
+        int chunk = Math.max(1, rowsCount / (threads * 4));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for( int from = 0; from < rowsCount; from += chunk ) {
+                int to = Math.min(rowsCount, from + chunk);
+                futures.add(pool.submit(new RowsDecoder(firstRow, band, from, to, fileCols)));
+            }
+            for( Future<Integer> future : futures ) {
+                try {
+                    monitor.worked(future.get());
+                } catch (InterruptedException e) {
+                    throw new IOException("Interrupted while reading the map: " + filename);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof DataFormatException) {
+                        throw (DataFormatException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
                     }
-                    rowBuffer.putDouble(cell);
-                    if (colorTable != null)
-                        colorTable.interpolateColorValue(rowColorBuffer, cell);
-                    /* Update data range value */
-                    if (cell < dataRange[0])
-                        dataRange[0] = cell;
-                    else if (cell > dataRange[1])
-                        dataRange[1] = cell;
-                } else {
-                    /* Don't know what to do. Probably throw some exception? */
+                    throw new RuntimeException(cause);
                 }
             }
+        } finally {
+            pool.shutdownNow();
         }
-        // System.out.println();
-
-        return true;
     }
 
     /**
-     * SwingUtilities
+     * @return the column in the file of every column of the data window, -1 where the data
+     *         window column is outside of the file.
      */
-    private byte[] initNullRow() {
-        int len = dataWindow.getCols() * numberOfBytesPerValue;
-        byte[] nrow = new byte[len];
-
-        if (rasterMapType > 0) {
-            ByteBuffer src = ByteBuffer.allocate(4);
-            src.putInt(Integer.MAX_VALUE);
-            byte[] arr = src.array();
-            for( int i = 0; i < len; i += 4 )
-                System.arraycopy(arr, 0, nrow, i, 4);
-        } else if (rasterMapType == -1) {
-            ByteBuffer src = ByteBuffer.allocate(4);
-            src.putFloat(Float.NaN);
-            byte[] arr = src.array();
-            for( int i = 0; i < len; i += 4 )
-                System.arraycopy(arr, 0, nrow, i, 4);
-        } else if (rasterMapType == -2) {
-            ByteBuffer src = ByteBuffer.allocate(8);
-            src.putDouble(Double.NaN);
-            byte[] arr = src.array();
-            for( int i = 0; i < len; i += 8 )
-                System.arraycopy(arr, 0, nrow, i, 8);
+    private int[] getFileColumns() {
+        double activeewres = dataWindow.getWEResolution();
+        double activewest = dataWindow.getWest();
+        double filewest = fileWindow.getWest();
+        double fileewres = fileWindow.getWEResolution();
+        int[] fileCols = new int[dataWindow.getCols()];
+        for( int col = 0; col < fileCols.length; col++ ) {
+            double x = Math.floor((((activewest + (col * activeewres)) - filewest) / fileewres));
+            fileCols[col] = (x < 0 || x >= fileWindow.getCols()) ? -1 : (int) x;
         }
-
-        return nrow;
+        return fileCols;
     }
 
     /**
-     * read a row of the map from the active region
-     * 
-     * @param currentrow
-     * @param iscompressed
-     * @return
-     * @throws IOException
-     * @throws DataFormatException
+     * @return the file row of a data window row, -1 if the row is outside of the file.
      */
-    private void getMapRow( int currentrow, ByteBuffer rowdata, boolean iscompressed ) throws IOException, DataFormatException {
-        // if (logger.isDebugEnabled())
-        // {
-        // logger.debug("ACCESSING THE FILE at row: " + currentrow +
-        // ", rasterMapType = " + rasterMapType +
-        // ", numberOfBytesPerValue = " + numberOfBytesPerValue +
-        // ", iscompressed = " + iscompressed);
-        // }
-
-        if (iscompressed) {
-            /* Compressed maps */
-            if (rasterMapType == -2) {
-                /* Compressed double map */
-                readCompressedFPRowByNumber(rowdata, currentrow, addressesofrows, cellFile, numberOfBytesPerValue);
-            } else if (rasterMapType == -1) {
-                /* Compressed floating point map */
-                readCompressedFPRowByNumber(rowdata, currentrow, addressesofrows, cellFile, numberOfBytesPerValue);
-            } else if (rasterMapType > 0) {
-                /* Compressed integer map */
-                readCompressedIntegerRowByNumber(rowdata, currentrow, addressesofrows, cellFile);
-            } else {
-                // if (logger.isDebugEnabled())
-                // logger.error("format not double nor float");
-            }
-        } else {
-            if (rasterMapType < 0) {
-                /* Uncompressed floating point map */
-                readUncompressedFPRowByNumber(rowdata, currentrow, cellFile, numberOfBytesPerValue);
-            } else if (rasterMapType > 0) {
-                /* Uncompressed integer map */
-                readUncompressedIntegerRowByNumber(rowdata, currentrow, cellFile);
-            } else {
-                // if (logger.isDebugEnabled())
-                // logger.error("Unknown case, iscompressed=" + iscompressed
-                // + ", compressed=" + compressed + ", rasterMapType="
-                // + rasterMapType);
-            }
+    private int getFileRow( int row ) {
+        double filerow = (fileWindow.getNorth() - (dataWindow.getNorth() - (row * dataWindow.getNSResolution())))
+                / fileWindow.getNSResolution();
+        filerow = Math.floor(filerow);
+        if (filerow < 0 || filerow >= fileWindow.getRows()) {
+            return -1;
         }
-        return;
+        return (int) filerow;
     }
 
     /**
-     * read a row of data from a compressed floating point map
+     * Decodes a run of rows of a band.
      * 
-     * @param rn
-     * @param adrows
-     * @param outFile
-     * @param typeBytes
-     * @return the ByteBuffer containing the data
-     * @throws IOException
-     * @throws DataFormatException
+     * <p>Every decoder has its own buffers, so that decoders can run concurrently.</p>
      */
-    private void readCompressedFPRowByNumber( ByteBuffer rowdata, int rn, long[] adrows, RandomAccessFile thefile, int typeBytes )
-            throws DataFormatException, IOException {
-        int offset = (int) (adrows[rn + 1] - adrows[rn]);
-        /*
-         * The fact that the file is compressed does not mean that the row is compressed. If the
-         * first byte is 0 (49), then the row is compressed, otherwise (first byte = 48) the row has
-         * to be read in simple XDR uncompressed format.
-         */
-        byte[] tmp = new byte[offset - 1];
-        thefile.seek(adrows[rn]);
-        int firstbyte = (thefile.read() & 0xff);
-        if (firstbyte == 49) {
-            /* The row is compressed. */
-            // thefile.seek((long) adrows[rn] + 1);
-            thefile.read(tmp, 0, offset - 1);
-            Inflater decompresser = new Inflater();
-            decompresser.setInput(tmp, 0, tmp.length);
-            decompresser.inflate(rowdata.array());
-            decompresser.end();
-        } else if (firstbyte == 48) {
-            /* The row is NOT compressed */
-            // thefile.seek((long) (adrows[rn]));
-            // if (thefile.read() == 48)
-            // {
-            // thefile.seek((long) (adrows[rn] + 1));
-            thefile.read(rowdata.array(), 0, offset - 1);
-            // }
+    private class RowsDecoder implements Callable<Integer> {
+        private final int firstRow;
+        private final double[][] band;
+        private final int from;
+        private final int to;
+        private final int[] fileCols;
+
+        private final FileChannel cellChannel;
+        private final FileChannel nullChannel;
+        private final int fileColsCount;
+        private final double[] fileRowValues;
+        private final byte[] fileRowBytes;
+        private final byte[] nullRowBytes;
+        private byte[] readBytes = new byte[0];
+        private Inflater inflater;
+
+        RowsDecoder( int firstRow, double[][] band, int from, int to, int[] fileCols ) {
+            this.firstRow = firstRow;
+            this.band = band;
+            this.from = from;
+            this.to = to;
+            this.fileCols = fileCols;
+            cellChannel = cellFile.getChannel();
+            nullChannel = nullFile != null ? nullFile.getChannel() : null;
+            fileColsCount = fileWindow.getCols();
+            fileRowValues = new double[fileColsCount];
+            fileRowBytes = new byte[fileColsCount * (rasterMapType == -2 ? 8 : 4)];
+            nullRowBytes = nullChannel != null ? new byte[(fileColsCount + 7) / 8] : null;
         }
-    }
 
-    /**
-     * read a row of data from an uncompressed floating point map
-     * 
-     * @param rn
-     * @param outFile
-     * @param typeBytes
-     * @return the ByteBuffer containing the data
-     * @throws IOException
-     * @throws DataFormatException
-     */
-    private void readUncompressedFPRowByNumber( ByteBuffer rowdata, int rn, RandomAccessFile thefile, int typeBytes )
-            throws IOException, DataFormatException {
-        int datanumber = fileWindow.getCols() * typeBytes;
-        thefile.seek((rn * datanumber));
-
-        thefile.read(rowdata.array());
-    }
-
-    /**
-     * read a row of data from a compressed integer point map
-     * 
-     * @param rn
-     * @param adrows
-     * @param outFile
-     * @return the ByteBuffer containing the data
-     * @throws IOException
-     */
-    private void readCompressedIntegerRowByNumber( ByteBuffer rowdata, int rn, long[] adrows, RandomAccessFile thefile )
-            throws IOException, DataFormatException {
-        int offset = (int) (adrows[rn + 1] - adrows[rn]);
-
-        thefile.seek(adrows[rn]);
-        /*
-         * Read how many bytes the values are ex 1 => if encoded: 1 byte for the value and one byte
-         * for the count = 2 2 => if encoded: 2 bytes for the value and one byte for the count = 3
-         * etc... etc
-         */
-        int bytespervalue = (thefile.read() & 0xff);
-        ByteBuffer cell = ByteBuffer.allocate(bytespervalue);
-        int cellValue = 0;
-
-        /* Create the buffer in which read the compressed row */
-        byte[] tmp = new byte[offset - 1];
-        thefile.read(tmp);
-        ByteBuffer tmpBuffer = ByteBuffer.wrap(tmp);
-        tmpBuffer.order(ByteOrder.nativeOrder());
+        @Override
+        public Integer call() throws IOException, DataFormatException {
+            try {
+                int cachedFileRow = -1;
+                double[] cachedRow = null;
+                for( int i = from; i < to; i++ ) {
+                    double[] row = band[i];
+                    int fileRow = getFileRow(firstRow + i);
+                    if (fileRow == -1) {
+                        Arrays.fill(row, Double.NaN);
+                    } else if (fileRow == cachedFileRow) {
+                        /* the data window is finer than the file */
+                        System.arraycopy(cachedRow, 0, row, 0, row.length);
+                    } else {
+                        readFileRow(fileRow);
+                        for( int col = 0; col < row.length; col++ ) {
+                            int fileCol = fileCols[col];
+                            row[col] = fileCol == -1 ? Double.NaN : fileRowValues[fileCol];
+                        }
+                        cachedFileRow = fileRow;
+                        cachedRow = row;
+                    }
+                }
+                return to - from;
+            } finally {
+                if (inflater != null) {
+                    inflater.end();
+                }
+            }
+        }
 
-        /*
-         * Create the buffer in which read the decompressed row. The final decompressed row will
-         * always contain 4-byte integer values
+        /**
+         * Read a row of the file into {@link #fileRowValues}, with NaN for the novalues.
          */
-        if ((offset - 1) == (bytespervalue * fileWindow.getCols())) {
-            /* There is no compression in this row */
-            for( int i = 0; i < offset - 1; i = i + bytespervalue ) {
-                /* Read the value */
-                tmpBuffer.get(cell.array());
-
-                /*
-                 * Integers can be of 1, 2, or 4 bytes. As rasterBuffer expects 4 byte integers we
-                 * need to pad them with 0's. The order of the padding is determined by the
-                 * ByteOrder of the buffer.
-                 */
-                if (bytespervalue == 1) {
-                    cellValue = (cell.get(0) & 0xff);
-                } else if (bytespervalue == 2) {
-                    cellValue = cell.getShort(0);
-                } else if (bytespervalue == 4) {
-                    cellValue = cell.getInt(0);
+        private void readFileRow( int fileRow ) throws IOException, DataFormatException {
+            if (rasterMapType < 0) {
+                int typeBytes = numberOfBytesPerValue;
+                if (compressed == 1) {
+                    int length = readCompressedRow(fileRow);
+                    /*
+                     * The fact that the file is compressed does not mean that the row is compressed.
+                     * If the first byte is 49 the row is compressed, if it is 48 the row has to be
+                     * read in simple XDR uncompressed format.
+                     */
+                    int firstbyte = readBytes[0] & 0xff;
+                    if (firstbyte == 49) {
+                        if (inflater == null) {
+                            inflater = new Inflater();
+                        } else {
+                            inflater.reset();
+                        }
+                        inflater.setInput(readBytes, 1, length - 1);
+                        inflater.inflate(fileRowBytes, 0, fileColsCount * typeBytes);
+                    } else if (firstbyte == 48) {
+                        System.arraycopy(readBytes, 1, fileRowBytes, 0, Math.min(length - 1, fileColsCount * typeBytes));
+                    }
+                } else {
+                    long rowSize = (long) fileColsCount * typeBytes;
+                    readFully(cellChannel, ByteBuffer.wrap(fileRowBytes, 0, (int) rowSize), fileRow * rowSize);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(fileRowBytes);
+                for( int col = 0; col < fileColsCount; col++ ) {
+                    double cell = typeBytes == 8 ? buffer.getDouble() : buffer.getFloat();
+                    if (reclassTable != null) {
+                        cell = ((Integer) reclassTable.elementAt((int) cell)).doubleValue();
+                    }
+                    fileRowValues[col] = cell;
+                }
+            } else if (rasterMapType > 0) {
+                if (compressed == 1) {
+                    readCompressedIntegerRow(fileRow);
+                } else {
+                    long rowSize = (long) fileColsCount * rasterMapType;
+                    ensureReadBytes((int) rowSize);
+                    readFully(cellChannel, ByteBuffer.wrap(readBytes, 0, (int) rowSize), fileRow * rowSize);
+                    for( int col = 0; col < fileColsCount; col++ ) {
+                        fileRowValues[col] = toInteger(readBytes, col * rasterMapType, rasterMapType);
+                    }
+                }
+                for( int col = 0; col < fileColsCount; col++ ) {
+                    int cell = (int) fileRowValues[col];
+                    /* File is an integer map file with 0 = novalue */
+                    if (cell == 0 && isOldIntegerMap) {
+                        fileRowValues[col] = Double.NaN;
+                    } else if (reclassTable != null) {
+                        fileRowValues[col] = ((Integer) reclassTable.elementAt(cell)).intValue();
+                    }
                 }
-                // if (logger.isDebugEnabled()) logger.debug("tmpint=" + tmpint
-                // );
-                rowdata.putInt(cellValue);
             }
-        } else {
-            /*
-             * If the row is compressed, then the values appear in pairs (like couples a party). The
-             * couple is composed of the count and the value value (WARNING: this can be more than
-             * one byte). Therefore, knowing the length of the compressed row we can calculate the
-             * number of couples.
-             */
-            int couples = (offset - 1) / (1 + bytespervalue);
-
-            for( int i = 0; i < couples; i++ ) {
-                /* Read the count of values */
-                int count = (tmpBuffer.get() & 0xff);
 
-                /* Read the value */
-                tmpBuffer.get(cell.array());
-
-                /*
-                 * Integers can be of 1, 2, or 4 bytes. As rasterBuffer expects 4 byte integers we
-                 * need to pad them with 0's. The order of the padding is determined by the
-                 * ByteOrder of the buffer.
-                 */
-                if (bytespervalue == 1) {
-                    cellValue = (cell.get(0) & 0xff);
-                } else if (bytespervalue == 2) {
-                    cellValue = cell.getShort(0);
-                } else if (bytespervalue == 4) {
-                    cellValue = cell.getInt(0);
-                }
-                /*
-                 * Now write the cell value the required number of times to the raster row data
-                 * buffer.
-                 */
-                for( int j = 0; j < count; j++ ) {
-                    // // if (logger.isDebugEnabled()) logger.debug(" " +
-                    // tmpint);
-                    rowdata.putInt(cellValue);
+            if (nullChannel != null) {
+                readFully(nullChannel, ByteBuffer.wrap(nullRowBytes), (long) fileRow * nullRowBytes.length);
+                for( int col = 0; col < fileColsCount; col++ ) {
+                    if ((nullRowBytes[col >> 3] & (0x80 >> (col & 7))) != 0) {
+                        fileRowValues[col] = Double.NaN;
+                    }
                 }
             }
         }
-    }
 
-    /**
-     * read a row of data from an uncompressed integer map
-     * 
-     * @param rn
-     * @param thefile
-     * @return
-     * @throws IOException
-     * @throws DataFormatException
-     */
-    private void readUncompressedIntegerRowByNumber( ByteBuffer rowdata, int rn, RandomAccessFile thefile ) throws IOException,
-            DataFormatException {
-        int cellValue = 0;
-        ByteBuffer cell = ByteBuffer.allocate(rasterMapType);
-
-        /* The number of bytes that are inside a row in the file. */
-        int filerowsize = fileWindow.getCols() * rasterMapType;
-
-        /* Position the file pointer to read the row */
-        thefile.seek((rn * filerowsize));
-
-        /* Read the row of data from the file */
-        ByteBuffer tmpBuffer = ByteBuffer.allocate(filerowsize);
-        thefile.read(tmpBuffer.array());
+        /**
+         * Read the bytes of a compressed row as addressed in the header.
+         * 
+         * @return the number of bytes read into {@link #readBytes}.
+         */
+        private int readCompressedRow( int fileRow ) throws IOException {
+            int length = (int) (addressesofrows[fileRow + 1] - addressesofrows[fileRow]);
+            ensureReadBytes(length);
+            readFully(cellChannel, ByteBuffer.wrap(readBytes, 0, length), addressesofrows[fileRow]);
+            return length;
+        }
 
-        /*
-         * Transform the rasterMapType-size-values to a standard 4 bytes integer value
+        /**
+         * Read a row of a compressed integer map, whose first byte is the number of bytes of the
+         * values, followed by the plain values or by count/value couples.
          */
-        while( tmpBuffer.hasRemaining() ) {
-            // read the value
-            tmpBuffer.get(cell.array());
+        private void readCompressedIntegerRow( int fileRow ) throws IOException {
+            int length = readCompressedRow(fileRow);
+            int bytespervalue = readBytes[0] & 0xff;
+            if ((length - 1) == (bytespervalue * fileColsCount)) {
+                /* There is no compression in this row */
+                for( int col = 0; col < fileColsCount; col++ ) {
+                    fileRowValues[col] = toInteger(readBytes, 1 + col * bytespervalue, bytespervalue);
+                }
+            } else {
+                int couples = (length - 1) / (1 + bytespervalue);
+                int col = 0;
+                int position = 1;
+                for( int i = 0; i < couples; i++ ) {
+                    int count = readBytes[position] & 0xff;
+                    int cellValue = toInteger(readBytes, position + 1, bytespervalue);
+                    position += 1 + bytespervalue;
+                    for( int j = 0; j < count && col < fileColsCount; j++ ) {
+                        fileRowValues[col++] = cellValue;
+                    }
+                }
+            }
+        }
 
-            /*
-             * Integers can be of 1, 2, or 4 bytes. As rasterBuffer expects 4 byte integers we need
-             * to pad them with 0's. The order of the padding is determined by the ByteOrder of the
-             * buffer.
-             */
-            if (rasterMapType == 1) {
-                cellValue = (cell.get(0) & 0xff);
-            } else if (rasterMapType == 2) {
-                cellValue = cell.getShort(0);
-            } else if (rasterMapType == 4) {
-                cellValue = cell.getInt(0);
+        private void ensureReadBytes( int length ) {
+            if (readBytes.length < length) {
+                readBytes = new byte[length];
             }
-            // if (logger.isDebugEnabled()) logger.debug("tmpint=" + cellValue
-            // );
-            rowdata.putInt(cellValue);
         }
     }
 
     /**
-     * read the null value from the null file (if it exists) and returns the information about the
-     * particular cell (true if it is novalue, false if it is not a novalue
-     * 
-     * @param currentfilerow
-     * @param currentfilecol
-     * @return
+     * Integers can be of 1, 2, 3 or 4 bytes, stored big endian.
      */
-    private boolean readNullValueAtRowCol( int currentfilerow, int currentfilecol ) throws IOException {
-        /*
-         * If the null file doesn't exist and the map is an integer, than it is an old integer-map
-         * format, where the novalues are the cells that contain the values 0
-         */
-        if (nullFile != null) {
-            long byteperrow = (long) Math.ceil(fileWindow.getCols() / 8.0); // in the
-            // null
-            // map of
-            // cell_misc
-            long currentByte = (long) Math.ceil((currentfilecol + 1) / 8.0); // in the
-            // null
-            // map
-
-            // currentfilerow starts from 0, so it is the row before the one we
-            // need
-            long byteToRead = (byteperrow * currentfilerow) + currentByte;
-
-            nullFile.seek(byteToRead - 1);
-
-            int bitposition = (currentfilecol) % 8;
-
-            byte[] thetmp = new byte[1];
-            thetmp[0] = nullFile.readByte();
-            BitSet tmp = FileUtilities.fromByteArray(thetmp);
-
-            boolean theBit = tmp.get(7 - bitposition);
-            /*
-             * if (theBit) { System.out.println("1 at position: " + (7-bitposition) + " due to
-             * bitposition: " + bitposition); } else { System.out.println("0 at position: " +
-             * (7-bitposition) + " due to bitposition: " + bitposition); }
-             */
-            return theBit;
-
+    private static int toInteger( byte[] bytes, int offset, int bytesPerValue ) {
+        if (bytesPerValue == 1) {
+            return bytes[offset] & 0xff;
+        } else if (bytesPerValue == 2) {
+            return (short) (((bytes[offset] & 0xff) << 8) | (bytes[offset + 1] & 0xff));
         }
-        // else
-        // {
-        // /* There is no null file around */
-        // if (rasterMapType > 0)
-        // {
-        // // isOldIntegerMap = true;
-        // return false;
-        // }
-        // else
-        // {
-        // //throw some exception
-        // return false;
-        // }
-        //
-        // }
-        return false;
+        int value = 0;
+        for( int i = 0; i < bytesPerValue; i++ ) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
+    }
 
+    private static void readFully( FileChannel channel, ByteBuffer buffer, long position ) throws IOException {
+        while( buffer.hasRemaining() ) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
     }
 
     /**
@@ -28,8 +28,11 @@ import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope3D;
+import org.hortonmachine.gears.io.las.core.LasPointColumns;
+import org.hortonmachine.gears.io.las.core.LasPointFilter;
 import org.hortonmachine.gears.io.las.core.LasRecord;
 import org.hortonmachine.gears.io.las.index.LasIndexer;
+import org.hortonmachine.gears.libs.monitor.IHMProgressMonitor;
 import org.hortonmachine.gears.utils.geometry.GeometryUtilities;
 import org.hortonmachine.gears.utils.math.NumericsUtilities;
 import org.opengis.feature.simple.SimpleFeature;
@@ -129,6 +132,49 @@ public abstract class ALasDataManager implements AutoCloseable {
      */
     public abstract List<LasRecord> getPointsInGeometry( Geometry checkGeom, boolean doOnlyEnvelope ) throws Exception;
 
+    /**
+     * Get points inside a given geometry boundary as columns.
+     * 
+     * <p>This has the same semantic of {@link #getPointsInGeometry(Geometry, boolean)},
+     * the height over the dem, if available, is put in {@link LasPointColumns#groundElevation}.</p>
+     *
+     * @param checkGeom the {@link com.vividsolutions.jts.geom.Geometry} to use to check.
+     * @param doOnlyEnvelope check for the geom envelope instead of a intersection with it.
+     * @return the columns of the points contained in the supplied geometry.
+     * @throws Exception
+     */
+    public LasPointColumns getPointColumnsInGeometry( Geometry checkGeom, boolean doOnlyEnvelope ) throws Exception {
+        List<LasRecord> pointsList = getPointsInGeometry(checkGeom, doOnlyEnvelope);
+        LasPointColumns columns = new LasPointColumns(pointsList.size());
+        for( LasRecord lasRecord : pointsList ) {
+            columns.add(lasRecord);
+        }
+        return columns;
+    }
+
+    /**
+     * Stream the points inside a given geometry boundary to a consumer.
+     * 
+     * <p>Data managers that span several las files read them in parallel and pass 
+     * the points as chunks, so that the memory used does not depend on the number
+     * of points found. This implementation reads everything through 
+     * {@link #getPointColumnsInGeometry(Geometry, boolean)} and passes it as one chunk.</p>
+     *
+     * @param checkGeom the {@link com.vividsolutions.jts.geom.Geometry} to use to check.
+     * @param doOnlyEnvelope check for the geom envelope instead of a intersection with it.
+     * @param threads the max number of files read at the same time.
+     * @param doOrdered if <code>true</code>, the chunks are passed ordered by file name and 
+     *          position in the file, else as soon as they are available.
+     * @param pm the monitor, which also receives the reading throughput.
+     * @param consumer the consumer of the chunks.
+     * @throws Exception
+     */
+    public void scanPointsInGeometry( Geometry checkGeom, boolean doOnlyEnvelope, int threads, boolean doOrdered,
+            IHMProgressMonitor pm, ILasColumnsConsumer consumer ) throws Exception {
+        LasPointColumns columns = getPointColumnsInGeometry(checkGeom, doOnlyEnvelope);
+        consumer.consume(getFile().getName(), columns);
+    }
+
     /**
      * Retrieve all the trees envelopes that intersect the geometry.
      *
@@ -251,6 +297,20 @@ public abstract class ALasDataManager implements AutoCloseable {
         return newFeatures;
     }
 
+    /**
+     * Create a filter with the constraints set on this data manager.
+     *
+     * @return the filter to pass to the readers.
+     */
+    protected LasPointFilter getConstraintsFilter() {
+        LasPointFilter filter = new LasPointFilter();
+        filter.setIntensityRange(intensityRange);
+        filter.setReturnNumbers(impulses);
+        filter.setNumberOfReturns(impulsesNum);
+        filter.setClasses(classes);
+        return filter;
+    }
+
     /**
      * Check the point for constraints.
      *
@@ -0,0 +1,44 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.io.las;
+
+import org.hortonmachine.gears.io.las.core.LasPointColumns;
+
+/**
+ * Receiver of the chunks of points streamed by
+ * {@link ALasDataManager#scanPointsInGeometry(com.vividsolutions.jts.geom.Geometry, boolean, int, boolean, org.hortonmachine.gears.libs.monitor.IHMProgressMonitor, ILasColumnsConsumer)}.
+ *
+ * <p>The consumer is always called from the thread that started the scan,
+ * so it doesn't need to be thread safe.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public interface ILasColumnsConsumer {
+
+    /**
+     * Handle a chunk of points.
+     *
+     * <p>The columns are owned by the consumer once passed.</p>
+     *
+     * @param lasFileName the name of the las file the points come from.
+     * @param columns the points.
+     * @throws Exception
+     */
+    public void consume( String lasFileName, LasPointColumns columns ) throws Exception;
+
+}
@@ -20,7 +20,13 @@ package org.hortonmachine.gears.io.las;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -32,11 +38,14 @@ import org.geotools.geometry.jts.ReferencedEnvelope3D;
 import org.geotools.util.WeakValueHashMap;
 import org.hortonmachine.gears.io.las.core.ALasReader;
 import org.hortonmachine.gears.io.las.core.ILasHeader;
+import org.hortonmachine.gears.io.las.core.LasPointColumns;
+import org.hortonmachine.gears.io.las.core.LasPointFilter;
 import org.hortonmachine.gears.io.las.core.LasRecord;
 import org.hortonmachine.gears.io.las.index.LasIndexer;
 import org.hortonmachine.gears.io.las.index.OmsLasIndexReader;
 import org.hortonmachine.gears.io.las.index.strtree.STRtreeJGT;
 import org.hortonmachine.gears.libs.modules.HMConstants;
+import org.hortonmachine.gears.libs.monitor.IHMProgressMonitor;
 import org.hortonmachine.gears.utils.CrsUtilities;
 import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
 import org.hortonmachine.gears.utils.files.FileUtilities;
@@ -59,6 +68,12 @@ import com.vividsolutions.jts.index.strtree.ItemBoundable;
  * @author Andrea Antonello (www.hydrologis.com)
  */
 class LasFolderIndexDataManager extends ALasDataManager implements AutoCloseable {
+    /**
+     * The maximum number of points read at once from an index range and the
+     * number of points in the chunks passed to the consumer by the scan.
+     */
+    private static final int SCAN_CHUNK_SIZE = 100000;
+
     private WeakValueHashMap<String, Pair> fileName2LasReaderMap;
     private WeakValueHashMap<String, STRtreeJGT> fileName2IndexMap;
     private List<String> fileName4LasReaderMapSupport;
@@ -218,6 +233,236 @@ class LasFolderIndexDataManager extends ALasDataManager implements AutoCloseable
         return pointsListForTile;
     }
 
+    @Override
+    @SuppressWarnings("rawtypes")
+    public synchronized LasPointColumns getPointColumnsInGeometry( Geometry checkGeom, boolean doOnlyEnvelope )
+            throws Exception {
+        checkOpen();
+        LasPointColumns pointsForTile = new LasPointColumns(10000);
+        LasPointColumns readColumns = new LasPointColumns(10000);
+
+        Envelope env = checkGeom.getEnvelopeInternal();
+        PreparedGeometry preparedGeometry = null;
+        if (!doOnlyEnvelope) {
+            preparedGeometry = PreparedGeometryFactory.prepare(checkGeom);
+        }
+        LasPointFilter filter = getConstraintsFilter();
+        filter.setEnvelope(env);
+
+        List filesList = mainLasFolderIndex.query(env);
+        for( Object fileName : filesList ) {
+            if (fileName instanceof String) {
+                String name = (String) fileName;
+
+                Pair pair = fileName2LasReaderMap.get(name);
+                if (pair == null) {
+                    File lasFile = new File(lasFolder, name);
+                    File lasIndexFile = FileUtilities.substituteExtention(lasFile, "lasfix");
+
+                    if (lasIndexFile.exists()) {
+                        pair = getIndexPair(lasFile);
+                        if (pair != null) {
+                            fileName2LasReaderMap.put(name, pair);
+                            fileName4LasReaderMapSupport.add(name);
+                        }
+                    } else {
+                        continue;
+                    }
+                }
+
+                List addressesList = pair.strTree.query(env);
+                for( Object obj : addressesList ) {
+                    if (obj instanceof double[]) {
+                        double[] addresses = (double[]) obj;
+                        long from = (long) addresses[0];
+                        long to = (long) addresses[1];
+                        for( long start = from; start < to; start += SCAN_CHUNK_SIZE ) {
+                            readColumns.clear();
+                            pair.reader.readPointsAt(start, readCount(start, to), readColumns, filter);
+                            addPointsInGeometry(readColumns, pointsForTile, doOnlyEnvelope, preparedGeometry);
+                        }
+                    }
+                }
+            }
+        }
+        return pointsForTile;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void scanPointsInGeometry( Geometry checkGeom, boolean doOnlyEnvelope, int threads, boolean doOrdered,
+            IHMProgressMonitor pm, ILasColumnsConsumer consumer ) throws Exception {
+        checkOpen();
+        Envelope env = checkGeom.getEnvelopeInternal();
+
+        List<String> fileNames = new ArrayList<String>();
+        List filesList = mainLasFolderIndex.query(env);
+        for( Object fileName : filesList ) {
+            if (fileName instanceof String) {
+                String name = (String) fileName;
+                File lasIndexFile = FileUtilities.substituteExtention(new File(lasFolder, name), "lasfix");
+                if (lasIndexFile.exists()) {
+                    fileNames.add(name);
+                }
+            }
+        }
+        if (fileNames.isEmpty()) {
+            return;
+        }
+        if (doOrdered) {
+            Collections.sort(fileNames);
+        }
+
+        /*
+         * Workers put their chunks in bounded queues, so at most a few chunks per thread 
+         * are in memory. When ordered, each file has its own queue and the queues are 
+         * drained in file order: the pool starts the files in the same order, so the
+         * file being drained is always running or done.
+         */
+        int threadsNum = Math.max(1, Math.min(threads, fileNames.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(threadsNum);
+        BlockingQueue<ScanChunk> sharedQueue = new ArrayBlockingQueue<ScanChunk>(2 * threadsNum);
+        List<BlockingQueue<ScanChunk>> fileQueues = new ArrayList<BlockingQueue<ScanChunk>>();
+        for( String name : fileNames ) {
+            BlockingQueue<ScanChunk> queue = doOrdered ? new ArrayBlockingQueue<ScanChunk>(2) : sharedQueue;
+            fileQueues.add(queue);
+            pool.execute(() -> scanFile(name, checkGeom, env, doOnlyEnvelope, queue));
+        }
+
+        long startTime = System.currentTimeMillis();
+        long pointsCount = 0;
+        pm.beginTask("Reading points from " + fileNames.size() + " las files...", fileNames.size());
+        try {
+            int finishedFiles = 0;
+            while( finishedFiles < fileNames.size() ) {
+                if (pm.isCanceled()) {
+                    return;
+                }
+                BlockingQueue<ScanChunk> queue = doOrdered ? fileQueues.get(finishedFiles) : sharedQueue;
+                ScanChunk chunk = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (chunk == null) {
+                    continue;
+                }
+                if (chunk.error != null) {
+                    throw chunk.error;
+                }
+                if (chunk.columns != null && chunk.columns.size() > 0) {
+                    pointsCount += chunk.columns.size();
+                    consumer.consume(chunk.fileName, chunk.columns);
+                }
+                if (chunk.isLast) {
+                    finishedFiles++;
+                    pm.worked(1);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            pm.done();
+        }
+
+        double seconds = Math.max(System.currentTimeMillis() - startTime, 1) / 1000.0;
+        pm.message(String.format("Read %d points from %d files in %.1f s (%.0f points/s, %.2f files/s).", pointsCount,
+                fileNames.size(), seconds, pointsCount / seconds, fileNames.size() / seconds));
+    }
+
+    /**
+     * Read the points of a file with its own reader and put them in the queue in chunks.
+     * 
+     * <p>The last chunk is always put, also in case of errors, so that the 
+     * scan knows the file is done.</p>
+     */
+    @SuppressWarnings("rawtypes")
+    private void scanFile( String name, Geometry checkGeom, Envelope env, boolean doOnlyEnvelope,
+            BlockingQueue<ScanChunk> queue ) {
+        ScanChunk lastChunk = new ScanChunk(name, null, true);
+        try {
+            File lasFile = new File(lasFolder, name);
+            File lasIndexFile = FileUtilities.substituteExtention(lasFile, "lasfix");
+            STRtreeJGT lasIndex = OmsLasIndexReader.readIndex(lasIndexFile.getAbsolutePath());
+            PreparedGeometry preparedGeometry = null;
+            if (!doOnlyEnvelope) {
+                preparedGeometry = PreparedGeometryFactory.prepare(checkGeom);
+            }
+            LasPointFilter filter = getConstraintsFilter();
+            filter.setEnvelope(env);
+
+            LasPointColumns readColumns = new LasPointColumns(10000);
+            LasPointColumns chunkColumns = new LasPointColumns(SCAN_CHUNK_SIZE);
+            try (ALasReader reader = ALasReader.getReader(lasFile, crs)) {
+                reader.open();
+                List addressesList = lasIndex.query(env);
+                for( Object obj : addressesList ) {
+                    if (obj instanceof double[]) {
+                        double[] addresses = (double[]) obj;
+                        long from = (long) addresses[0];
+                        long to = (long) addresses[1];
+                        for( long start = from; start < to; start += SCAN_CHUNK_SIZE ) {
+                            readColumns.clear();
+                            reader.readPointsAt(start, readCount(start, to), readColumns, filter);
+                            addPointsInGeometry(readColumns, chunkColumns, doOnlyEnvelope, preparedGeometry);
+                            if (chunkColumns.size() >= SCAN_CHUNK_SIZE) {
+                                queue.put(new ScanChunk(name, chunkColumns, false));
+                                chunkColumns = new LasPointColumns(SCAN_CHUNK_SIZE);
+                            }
+                        }
+                    }
+                }
+            }
+            lastChunk = new ScanChunk(name, chunkColumns, true);
+        } catch (InterruptedException e) {
+            // the scan has been stopped
+            return;
+        } catch (Exception e) {
+            lastChunk.error = e;
+        }
+        try {
+            queue.put(lastChunk);
+        } catch (InterruptedException e) {
+            // the scan has been stopped
+        }
+    }
+
+    /**
+     * The number of points to read from <code>start</code>, at most {@link #SCAN_CHUNK_SIZE},
+     * so that the index ranges are read in pieces that fit the int count of the reader.
+     */
+    private static int readCount( long start, long to ) {
+        return (int) Math.min(to - start, SCAN_CHUNK_SIZE);
+    }
+
+    /**
+     * Copy the read points that pass the geometry and dem checks. The envelope
+     * and the constraints are already checked by the reader.
+     */
+    private void addPointsInGeometry( LasPointColumns readColumns, LasPointColumns pointsForTile, boolean doOnlyEnvelope,
+            PreparedGeometry preparedGeometry ) {
+        Coordinate c = new Coordinate();
+        for( int i = 0; i < readColumns.size(); i++ ) {
+            double x = readColumns.x[i];
+            double y = readColumns.y[i];
+            if (!doOnlyEnvelope) {
+                c.x = x;
+                c.y = y;
+                if (!preparedGeometry.contains(gf.createPoint(c))) {
+                    continue;
+                }
+            }
+            if (inDem != null) {
+                double value = CoverageUtilities.getValue(inDem, x, y);
+                if (HMConstants.isNovalue(value)) {
+                    continue;
+                }
+                double height = readColumns.z[i] - value;
+                if (height > elevThreshold) {
+                    int index = pointsForTile.add(readColumns, i);
+                    pointsForTile.groundElevation[index] = height;
+                }
+            } else {
+                pointsForTile.add(readColumns, i);
+            }
+        }
+    }
+
     /**
      * Retrieve all the trees envelopes that intersect the geometry.
      *
@@ -453,6 +698,19 @@ class LasFolderIndexDataManager extends ALasDataManager implements AutoCloseable
         fileName2LasReaderMap = null;
     }
 
+    private static class ScanChunk {
+        final String fileName;
+        final LasPointColumns columns;
+        final boolean isLast;
+        Exception error;
+
+        ScanChunk( String fileName, LasPointColumns columns, boolean isLast ) {
+            this.fileName = fileName;
+            this.columns = columns;
+            this.isLast = isLast;
+        }
+    }
+
     private class Pair {
         ALasReader reader;
         STRtreeJGT strTree;
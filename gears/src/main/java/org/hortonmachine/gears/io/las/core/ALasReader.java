@@ -119,4 +119,52 @@ public abstract class ALasReader extends Las implements AutoCloseable{
      */
     public abstract void setOverrideGpsTimeType( int type );
 
-}
\ No newline at end of file
+    /**
+     * Read the next points into columns.
+     * 
+     * <p>Points are appended to the columns until <code>maxPoints</code> points
+     * have been accepted or the data end. Readers might decode the points in bulk,
+     * therefore this should not be mixed with {@link #getNextPoint()} on the
+     * same reader. Reading is over when {@link #hasNextPoint()} returns <code>false</code>.</p>
+     * 
+     * @param columns the columns to append the points to.
+     * @param maxPoints the max number of points to add.
+     * @param filter an optional filter applied while decoding, or <code>null</code>.
+     * @return the number of points added.
+     * @throws IOException
+     */
+    public int readNextPoints( LasPointColumns columns, int maxPoints, LasPointFilter filter ) throws IOException {
+        int added = 0;
+        while( added < maxPoints && hasNextPoint() ) {
+            LasRecord dot = getNextPoint();
+            if (filter == null || filter.accept(dot)) {
+                columns.add(dot);
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Read a range of points into columns.
+     * 
+     * @param firstPoint the position of the first point to read, starting with 0.
+     * @param count the number of points to read.
+     * @param columns the columns to append the points to.
+     * @param filter an optional filter applied while decoding, or <code>null</code>.
+     * @return the number of points added.
+     * @throws IOException
+     */
+    public int readPointsAt( long firstPoint, int count, LasPointColumns columns, LasPointFilter filter ) throws IOException {
+        int added = 0;
+        for( long pointNum = firstPoint; pointNum < firstPoint + count; pointNum++ ) {
+            LasRecord dot = getPointAt(pointNum);
+            if (filter == null || filter.accept(dot)) {
+                columns.add(dot);
+                added++;
+            }
+        }
+        return added;
+    }
+
+}
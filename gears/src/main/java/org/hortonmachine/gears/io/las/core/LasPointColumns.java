@@ -0,0 +1,260 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.io.las.core;
+
+import java.util.Arrays;
+
+/**
+ * Las points stored by column in primitive arrays.
+ *
+ * <p>This is the batch counterpart of {@link LasRecord}: the readers append
+ * points to the columns instead of creating an object per point. The same
+ * instance can be cleared and reused for the next batch, the arrays grow only
+ * when more points than the current capacity are added.</p>
+ *
+ * <p>The arrays can be longer than {@link #size()}, only the first
+ * {@link #size()} positions are valid.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class LasPointColumns {
+    /**
+     * The x coordinates, with scale and offset already applied.
+     */
+    public double[] x;
+
+    /**
+     * The y coordinates, with scale and offset already applied.
+     */
+    public double[] y;
+
+    /**
+     * The z coordinates, with scale and offset already applied.
+     */
+    public double[] z;
+
+    /**
+     * The intensity values.
+     */
+    public short[] intensity;
+
+    /**
+     * The return numbers.
+     */
+    public byte[] returnNumber;
+
+    /**
+     * The number of returns of the pulse.
+     */
+    public byte[] numberOfReturns;
+
+    /**
+     * The classifications.
+     */
+    public byte[] classification;
+
+    /**
+     * The gps timestamps (-1 if not available).
+     */
+    public double[] gpsTime;
+
+    /**
+     * The red component of the color (100 if not available).
+     */
+    public short[] red;
+
+    /**
+     * The green component of the color (100 if not available).
+     */
+    public short[] green;
+
+    /**
+     * The blue component of the color (100 if not available).
+     */
+    public short[] blue;
+
+    /**
+     * The height over the ground (not contained in record and optional, NaN if not set).
+     */
+    public double[] groundElevation;
+
+    private int size = 0;
+
+    /**
+     * Create the columns with an initial capacity.
+     *
+     * @param initialCapacity the number of points that can be added before the arrays grow.
+     */
+    public LasPointColumns( int initialCapacity ) {
+        allocate(Math.max(initialCapacity, 1));
+    }
+
+    private void allocate( int capacity ) {
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        intensity = new short[capacity];
+        returnNumber = new byte[capacity];
+        numberOfReturns = new byte[capacity];
+        classification = new byte[capacity];
+        gpsTime = new double[capacity];
+        red = new short[capacity];
+        green = new short[capacity];
+        blue = new short[capacity];
+        groundElevation = new double[capacity];
+    }
+
+    /**
+     * @return the number of points in the columns.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of points the columns can contain without growing.
+     */
+    public int capacity() {
+        return x.length;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all the points, keeping the capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Make sure the columns can contain a given number of points.
+     *
+     * @param capacity the needed capacity.
+     */
+    public void ensureCapacity( int capacity ) {
+        if (capacity <= x.length) {
+            return;
+        }
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        intensity = Arrays.copyOf(intensity, capacity);
+        returnNumber = Arrays.copyOf(returnNumber, capacity);
+        numberOfReturns = Arrays.copyOf(numberOfReturns, capacity);
+        classification = Arrays.copyOf(classification, capacity);
+        gpsTime = Arrays.copyOf(gpsTime, capacity);
+        red = Arrays.copyOf(red, capacity);
+        green = Arrays.copyOf(green, capacity);
+        blue = Arrays.copyOf(blue, capacity);
+        groundElevation = Arrays.copyOf(groundElevation, capacity);
+    }
+
+    /**
+     * Add a point at the end of the columns.
+     *
+     * <p>The optional values (gps time, color, ground elevation) are
+     * set to the same defaults of {@link LasRecord}, the caller is
+     * supposed to set all the others.</p>
+     *
+     * @return the position of the new point.
+     */
+    public int append() {
+        if (size == x.length) {
+            ensureCapacity(size + (size >> 1) + 1);
+        }
+        int index = size++;
+        gpsTime[index] = -1;
+        red[index] = 100;
+        green[index] = 100;
+        blue[index] = 100;
+        groundElevation[index] = Double.NaN;
+        return index;
+    }
+
+    /**
+     * Add the content of a {@link LasRecord}.
+     *
+     * @param dot the record to add.
+     */
+    public void add( LasRecord dot ) {
+        int index = append();
+        x[index] = dot.x;
+        y[index] = dot.y;
+        z[index] = dot.z;
+        intensity[index] = dot.intensity;
+        returnNumber[index] = (byte) dot.returnNumber;
+        numberOfReturns[index] = (byte) dot.numberOfReturns;
+        classification[index] = dot.classification;
+        gpsTime[index] = dot.gpsTime;
+        red[index] = dot.color[0];
+        green[index] = dot.color[1];
+        blue[index] = dot.color[2];
+        groundElevation[index] = dot.groundElevation;
+    }
+
+    /**
+     * Add a point taken from other columns.
+     *
+     * @param other the columns to take the point from.
+     * @param otherIndex the position of the point in the other columns.
+     * @return the position of the new point.
+     */
+    public int add( LasPointColumns other, int otherIndex ) {
+        int index = append();
+        x[index] = other.x[otherIndex];
+        y[index] = other.y[otherIndex];
+        z[index] = other.z[otherIndex];
+        intensity[index] = other.intensity[otherIndex];
+        returnNumber[index] = other.returnNumber[otherIndex];
+        numberOfReturns[index] = other.numberOfReturns[otherIndex];
+        classification[index] = other.classification[otherIndex];
+        gpsTime[index] = other.gpsTime[otherIndex];
+        red[index] = other.red[otherIndex];
+        green[index] = other.green[otherIndex];
+        blue[index] = other.blue[otherIndex];
+        groundElevation[index] = other.groundElevation[otherIndex];
+        return index;
+    }
+
+    /**
+     * Create a {@link LasRecord} for a point, for code that still needs objects.
+     *
+     * @param index the position of the point.
+     * @return the new record.
+     */
+    public LasRecord toLasRecord( int index ) {
+        LasRecord dot = new LasRecord();
+        dot.x = x[index];
+        dot.y = y[index];
+        dot.z = z[index];
+        dot.intensity = intensity[index];
+        dot.returnNumber = returnNumber[index];
+        dot.numberOfReturns = numberOfReturns[index];
+        dot.classification = classification[index];
+        dot.gpsTime = gpsTime[index];
+        dot.color[0] = red[index];
+        dot.color[1] = green[index];
+        dot.color[2] = blue[index];
+        dot.groundElevation = groundElevation[index];
+        return dot;
+    }
+
+}
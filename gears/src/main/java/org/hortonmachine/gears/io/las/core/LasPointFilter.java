@@ -0,0 +1,160 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.io.las.core;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * Predicates applied by the readers while decoding points into {@link LasPointColumns}.
+ *
+ * <p>The position is checked first, so that the rest of the record is decoded
+ * only for points inside the envelope. Constraints that are not set accept
+ * every point.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class LasPointFilter {
+    private boolean hasEnvelope = false;
+    private double minX;
+    private double maxX;
+    private double minY;
+    private double maxY;
+
+    private double[] intensityRange;
+    private boolean[] returnNumbers;
+    private int numberOfReturns = -1;
+    private boolean[] classes;
+
+    /**
+     * Keep only the points inside an envelope (borders included).
+     *
+     * @param envelope the envelope.
+     */
+    public void setEnvelope( Envelope envelope ) {
+        if (envelope == null) {
+            hasEnvelope = false;
+            return;
+        }
+        minX = envelope.getMinX();
+        maxX = envelope.getMaxX();
+        minY = envelope.getMinY();
+        maxY = envelope.getMaxY();
+        hasEnvelope = true;
+    }
+
+    /**
+     * Keep only the points with intensity in a range (borders included).
+     *
+     * @param minMax the min and max intensity.
+     */
+    public void setIntensityRange( double[] minMax ) {
+        intensityRange = minMax;
+    }
+
+    /**
+     * Keep only the points with the given return numbers.
+     *
+     * @param returnNumbersToKeep the return numbers.
+     */
+    public void setReturnNumbers( double[] returnNumbersToKeep ) {
+        if (returnNumbersToKeep == null) {
+            returnNumbers = null;
+            return;
+        }
+        returnNumbers = new boolean[256];
+        for( double returnNumber : returnNumbersToKeep ) {
+            returnNumbers[(int) returnNumber & 0xFF] = true;
+        }
+    }
+
+    /**
+     * Keep only the points of pulses with a given number of returns.
+     *
+     * @param numberOfReturnsToKeep the number of returns or -1 to keep all.
+     */
+    public void setNumberOfReturns( int numberOfReturnsToKeep ) {
+        numberOfReturns = numberOfReturnsToKeep;
+    }
+
+    /**
+     * Keep only the points with the given classifications.
+     *
+     * @param classesToKeep the classifications.
+     */
+    public void setClasses( double[] classesToKeep ) {
+        if (classesToKeep == null) {
+            classes = null;
+            return;
+        }
+        classes = new boolean[256];
+        for( double classification : classesToKeep ) {
+            classes[(int) classification & 0xFF] = true;
+        }
+    }
+
+    /**
+     * Check the position of a point.
+     *
+     * @param x the x coordinate.
+     * @param y the y coordinate.
+     * @return <code>true</code> if the point is accepted.
+     */
+    public boolean acceptPosition( double x, double y ) {
+        if (!hasEnvelope) {
+            return true;
+        }
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    /**
+     * Check the attributes of a point.
+     *
+     * @param intensity the intensity.
+     * @param returnNumber the return number.
+     * @param pulseReturns the number of returns of the pulse.
+     * @param classification the classification.
+     * @return <code>true</code> if the point is accepted.
+     */
+    public boolean acceptAttributes( short intensity, int returnNumber, int pulseReturns, byte classification ) {
+        if (intensityRange != null && (intensity < intensityRange[0] || intensity > intensityRange[1])) {
+            return false;
+        }
+        if (returnNumbers != null && !returnNumbers[returnNumber & 0xFF]) {
+            return false;
+        }
+        if (numberOfReturns != -1 && pulseReturns != numberOfReturns) {
+            return false;
+        }
+        if (classes != null && !classes[classification & 0xFF]) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check a record.
+     *
+     * @param dot the record.
+     * @return <code>true</code> if the record is accepted.
+     */
+    public boolean accept( LasRecord dot ) {
+        return acceptPosition(dot.x, dot.y)
+                && acceptAttributes(dot.intensity, dot.returnNumber, dot.numberOfReturns, dot.classification);
+    }
+
+}
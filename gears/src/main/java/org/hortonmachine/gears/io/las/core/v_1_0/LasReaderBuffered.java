@@ -22,10 +22,14 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 
 import org.hortonmachine.gears.io.las.core.ALasReader;
 import org.hortonmachine.gears.io.las.core.ILasHeader;
+import org.hortonmachine.gears.io.las.core.LasPointColumns;
+import org.hortonmachine.gears.io.las.core.LasPointFilter;
 import org.hortonmachine.gears.io.las.core.LasRecord;
 import org.hortonmachine.gears.utils.CrsUtilities;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
@@ -36,6 +40,11 @@ import org.opengis.referencing.crs.CoordinateReferenceSystem;
  * @author Andrea Antonello (www.hydrologis.com)
  */
 public class LasReaderBuffered extends ALasReader {
+    /**
+     * The max size of a mapped window of the points section.
+     */
+    private static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+
     private final byte[] doubleDataArray = new byte[8];
     private final ByteBuffer doubleBb = ByteBuffer.wrap(doubleDataArray);
     private final byte[] longDataArray = new byte[4];
@@ -76,6 +85,10 @@ public class LasReaderBuffered extends ALasReader {
     private int bufferSizeInPointsNum;
     private int readBufferSize;
 
+    private MappedByteBuffer mappedPoints;
+    private long mappedFirstPoint;
+    private long mappedPointsCount;
+
     public LasReaderBuffered( File lasFile, CoordinateReferenceSystem crs ) throws Exception {
         this(lasFile, 100000, crs);
     }
@@ -124,6 +137,7 @@ public class LasReaderBuffered extends ALasReader {
 
     @Override
     public void close() throws Exception {
+        mappedPoints = null;
         if (fc != null && fc.isOpen())
             fc.close();
         if (fis != null)
@@ -323,6 +337,96 @@ public class LasReaderBuffered extends ALasReader {
         return dot;
     }
 
+    @Override
+    public int readNextPoints( LasPointColumns columns, int maxPoints, LasPointFilter filter ) throws IOException {
+        checkOpen();
+        int added = 0;
+        while( added < maxPoints && readRecords < records ) {
+            if (decodePoint(readRecords++, columns, filter)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    @Override
+    public int readPointsAt( long firstPoint, int count, LasPointColumns columns, LasPointFilter filter ) throws IOException {
+        checkOpen();
+        long lastPoint = Math.min(firstPoint + count, records);
+        int added = 0;
+        for( long pointNum = firstPoint; pointNum < lastPoint; pointNum++ ) {
+            if (decodePoint(pointNum, columns, filter)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Decode a point from the memory mapped points section.
+     * 
+     * <p>Only x and y are decoded before the envelope check and only the 
+     * attributes before the attributes check, so that rejected points cost little.</p>
+     * 
+     * @return <code>true</code> if the point was accepted and added to the columns.
+     */
+    private boolean decodePoint( long pointNum, LasPointColumns columns, LasPointFilter filter ) throws IOException {
+        int base = getMappedPosition(pointNum);
+        final MappedByteBuffer bb = mappedPoints;
+
+        final double xd = bb.getInt(base) * xScale + xOffset;
+        final double yd = bb.getInt(base + 4) * yScale + yOffset;
+        if (filter != null && !filter.acceptPosition(xd, yd)) {
+            return false;
+        }
+
+        final short intensity = bb.getShort(base + 12);
+        final byte b = bb.get(base + 14);
+        final byte returnNumber = (byte) (b & 0x07);
+        final byte numberOfReturns = (byte) ((b >> 3) & 0x07);
+        final byte classification = bb.get(base + 15);
+        if (filter != null && !filter.acceptAttributes(intensity, returnNumber, numberOfReturns, classification)) {
+            return false;
+        }
+
+        final int index = columns.append();
+        columns.x[index] = xd;
+        columns.y[index] = yd;
+        columns.z[index] = bb.getInt(base + 8) * zScale + zOffset;
+        columns.intensity[index] = intensity;
+        columns.returnNumber[index] = returnNumber;
+        columns.numberOfReturns[index] = numberOfReturns;
+        columns.classification[index] = classification;
+        if (header.pointDataFormat == 1) {
+            columns.gpsTime[index] = bb.getDouble(base + 20);
+        } else if (header.pointDataFormat == 2) {
+            columns.red[index] = bb.getShort(base + 20);
+            columns.green[index] = bb.getShort(base + 22);
+            columns.blue[index] = bb.getShort(base + 24);
+        } else if (header.pointDataFormat == 3) {
+            columns.gpsTime[index] = bb.getDouble(base + 20);
+            columns.red[index] = bb.getShort(base + 28);
+            columns.green[index] = bb.getShort(base + 30);
+            columns.blue[index] = bb.getShort(base + 32);
+        }
+        return true;
+    }
+
+    /**
+     * Get the position of a point inside the mapped window, mapping
+     * a new window of the points section if necessary.
+     */
+    private int getMappedPosition( long pointNum ) throws IOException {
+        if (mappedPoints == null || pointNum < mappedFirstPoint || pointNum >= mappedFirstPoint + mappedPointsCount) {
+            long pointsPerWindow = MAX_MAPPED_BYTES / recordLength;
+            mappedPointsCount = Math.min(pointsPerWindow, records - pointNum);
+            mappedFirstPoint = pointNum;
+            mappedPoints = fc.map(MapMode.READ_ONLY, offset + pointNum * recordLength, mappedPointsCount * recordLength);
+            mappedPoints.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return (int) ((pointNum - mappedFirstPoint) * recordLength);
+    }
+
     public LasRecord getPointAtAddress( long address ) throws IOException {
         fc.position(address);
         return getPoint();
@@ -0,0 +1,143 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.io.las.databases;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hortonmachine.dbs.compat.ASpatialDb;
+import org.hortonmachine.dbs.compat.EDb;
+import org.hortonmachine.gears.libs.exceptions.ModelsIllegalargumentException;
+import org.hortonmachine.gears.libs.modules.HMConstants;
+import org.hortonmachine.gears.libs.modules.HMModel;
+import org.hortonmachine.gears.libs.monitor.IHMProgressMonitor;
+
+import oms3.annotations.Author;
+import oms3.annotations.Description;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Keywords;
+import oms3.annotations.Label;
+import oms3.annotations.License;
+import oms3.annotations.Name;
+import oms3.annotations.Status;
+import oms3.annotations.UI;
+
+@Description("Rewrites the points blobs of an existing las database with the compact encoding (or back to plain).")
+@Author(name = "Andrea Antonello", contact = "www.hydrologis.com")
+@Keywords("las, lidar, spatialite, compression")
+@Label(HMConstants.LESTO + "/utilities")
+@Name("databaselascellscompressor")
+@Status(5)
+@License("http://www.gnu.org/licenses/gpl-3.0.html")
+public class DatabaseLasCellsCompressor extends HMModel {
+
+    @Description("The las database path.")
+    @UI(HMConstants.FILEIN_UI_HINT_GENERIC)
+    @In
+    public String inDatabasePath;
+
+    @Description("The database to use")
+    @UI("combo:" + "SPATIALITE" + "," + "H2GIS")
+    @In
+    public String pDbType = EDb.SPATIALITE.name();
+
+    @Description("The scale used to quantize the x and y of the points, the one of the original las files (mandatory unless decompressing).")
+    @In
+    public Double pXYScale;
+
+    @Description("The scale used to quantize the z of the points, the one of the original las files (mandatory unless decompressing).")
+    @In
+    public Double pZScale;
+
+    @Description("Flag to also deflate the encoded blobs.")
+    @In
+    public boolean doDeflate = false;
+
+    @Description("Flag to write the blobs back in the plain layout instead of encoding them.")
+    @In
+    public boolean doDecompress = false;
+
+    @Description("The number of cells rewritten per transaction.")
+    @In
+    public int pBatchSize = 1000;
+
+    @Execute
+    public void process() throws Exception {
+        checkNull(inDatabasePath);
+        if (!new File(inDatabasePath).exists()) {
+            throw new ModelsIllegalargumentException("The database file has to exist.", this);
+        }
+        if (pBatchSize < 1) {
+            throw new ModelsIllegalargumentException("The batch size needs to be > 0.", this);
+        }
+
+        LasCellBlobCodec codec = null;
+        if (!doDecompress) {
+            // the database doesn't keep the las scales and a wrong guess would silently lose precision
+            checkNull(pXYScale, pZScale);
+            if (pXYScale <= 0 || pZScale <= 0) {
+                throw new ModelsIllegalargumentException("The scales need to be > 0.", this);
+            }
+            codec = new LasCellBlobCodec(pXYScale, pXYScale, pZScale, doDeflate);
+        }
+
+        EDb edb = EDb.SPATIALITE;
+        if (pDbType.equals(EDb.H2GIS.name())) {
+            edb = EDb.H2GIS;
+        }
+        try (ASpatialDb db = edb.getSpatialDb()) {
+            db.open(inDatabasePath);
+            if (!LasSourcesTable.isLasDatabase(db)) {
+                throw new ModelsIllegalargumentException("The database is not a las database.", this);
+            }
+
+            List<LasSource> sources = LasSourcesTable.getLasSources(db);
+            for( LasSource source : sources ) {
+                pm.message("Rewriting the cells of: " + source.name);
+                // read and rewrite one batch of cells at a time, they come back decoded whatever their layout in the db
+                long[] ids = LasCellsTable.getLasCellIdsBySource(db, source.id);
+                pm.beginTask("Rewriting " + ids.length + " cells...", ids.length);
+                for( int from = 0, to; from < ids.length; from = to + 1 ) {
+                    to = (int) Math.min((long) from + pBatchSize, ids.length) - 1;
+                    List<LasCell> cells = LasCellsTable.getLasCellsBySource(db, source.id, ids[from], ids[to], true, true, true,
+                            true, true);
+                    List<LasCell> batch = new ArrayList<>(cells.size());
+                    for( LasCell cell : cells ) {
+                        if (cell != null) {
+                            batch.add(cell);
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        LasCellsTable.updateLasCellsBlobs(db, batch, codec);
+                    }
+                    pm.worked(to - from + 1);
+                }
+                pm.done();
+            }
+
+            if (edb == EDb.SPATIALITE) {
+                pm.beginTask("Reclaiming space...", IHMProgressMonitor.UNKNOWN);
+                db.executeInsertUpdateDeleteSql("VACUUM");
+                pm.done();
+            }
+        }
+    }
+
+}
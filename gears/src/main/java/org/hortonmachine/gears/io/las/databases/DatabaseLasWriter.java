@@ -135,6 +135,22 @@ public class DatabaseLasWriter extends HMModel {
     @In
     public boolean doAvoidIndex = false;
 
+    @Description("Flag to stream the points into the cells, keeping at most pMaxPointsInMemory points in memory.")
+    @In
+    public boolean doStreaming = false;
+
+    @Description("The max number of points to keep in memory when streaming.")
+    @In
+    public int pMaxPointsInMemory = StreamingLasCellsBuilder.DEFAULT_MAX_POINTS_IN_MEMORY;
+
+    @Description("Flag to store the points blobs encoded (quantized to the las scale and delta compressed).")
+    @In
+    public boolean doCompressBlobs = false;
+
+    @Description("Flag to also deflate the encoded blobs, smaller but slower to read.")
+    @In
+    public boolean doDeflateBlobs = false;
+
     @Description("Optional las list names to process only those (inside las folder).")
     @In
     public List<String> inLasNames;
@@ -148,6 +164,8 @@ public class DatabaseLasWriter extends HMModel {
 
     private ImageMosaicReader ortoReader;
 
+    private LasCellBlobCodec blobCodec;
+
     public boolean doVerbose = true;
     private static final String INTERRUPTED_BY_USER = "Interrupted by user.";
 
@@ -310,6 +328,11 @@ public class DatabaseLasWriter extends HMModel {
                 pm.errorMessage("No points found in: " + name);
                 return;
             }
+            blobCodec = null;
+            if (doCompressBlobs) {
+                double[] xyzScale = header.getXYZScale();
+                blobCodec = new LasCellBlobCodec(xyzScale[0], xyzScale[1], xyzScale[2], doDeflateBlobs);
+            }
             ReferencedEnvelope3D envelope = header.getDataEnvelope();
             ReferencedEnvelope env2d = new ReferencedEnvelope(envelope);
             Envelope2D e = new Envelope2D(env2d);
@@ -329,6 +352,12 @@ public class DatabaseLasWriter extends HMModel {
             GridGeometry2D gridGeometry = CoverageUtilities.gridGeometryFromRegionValues(north, south, east, west, cols, rows,
                     reader.getHeader().getCrs());
 
+            if (doStreaming) {
+                streamCells(spatialiteDb, file, sourceID, ortoGC, north, south, east, west, cols, rows);
+                insertLevels(spatialiteDb, sourceID, north, south, east, west);
+                return;
+            }
+
             List<LasRecord>[][] dotOnMatrixXY = new ArrayList[cols][rows];
             LasCell[][] lasCellsOnMatrixXY = new LasCell[cols][rows];
             if (doVerbose)
@@ -515,7 +544,7 @@ public class DatabaseLasWriter extends HMModel {
                         singleThreadExecutor.execute(new Runnable(){
                             public void run() {
                                 try {
-                                    LasCellsTable.insertLasCells(spatialiteDb, srid, processCells);
+                                    LasCellsTable.insertLasCells(spatialiteDb, srid, processCells, blobCodec);
                                     pm.worked(processCells.size());
                                 } catch (Exception e) {
                                     e.printStackTrace();
@@ -535,7 +564,7 @@ public class DatabaseLasWriter extends HMModel {
                 singleThreadExecutor.execute(new Runnable(){
                     public void run() {
                         try {
-                            LasCellsTable.insertLasCells(spatialiteDb, srid, processCells);
+                            LasCellsTable.insertLasCells(spatialiteDb, srid, processCells, blobCodec);
                             if (doVerbose)
                                 pm.worked(processCells.size());
                         } catch (Exception e) {
@@ -558,22 +587,45 @@ public class DatabaseLasWriter extends HMModel {
             else
                 pm.message("Done.");
 
-            if (pLevels > 0) {
-                for( int level = 1; level <= pLevels; level++ ) {
-                    if (pm.isCanceled()) {
-                        throw new RuntimeException(INTERRUPTED_BY_USER);
-                    }
-                    LasLevelsTable.createTable(spatialiteDb, srid, level, doAvoidIndex);
-                    if (level == 1) {
-                        insertFirstLevel(spatialiteDb, sourceID, north, south, east, west, level);
-                    } else {
-                        insertLevel(spatialiteDb, sourceID, north, south, east, west, level);
-                    }
-                }
-            }
+            insertLevels(spatialiteDb, sourceID, north, south, east, west);
+        }
 
+    }
+
+    /**
+     * Builds and writes the cells with {@link StreamingLasCellsBuilder}, without keeping the whole file in memory.
+     */
+    private void streamCells( final ASpatialDb spatialiteDb, File file, long sourceID, GridCoverage2D ortoGC, double north,
+            double south, double east, double west, int cols, int rows ) throws Exception {
+        StreamingLasCellsBuilder builder = new StreamingLasCellsBuilder(sourceID, west, east, south, north, cols, rows,
+                pCellsize);
+        builder.setMaxPointsInMemory(pMaxPointsInMemory);
+        builder.setThreads(getDefaultThreadsNum());
+        builder.setEmptyCells(doEmptyCells);
+        builder.setOrthophoto(ortoGC);
+        builder.setProgressMonitor(pm);
+        builder.build(file, crs, cells -> LasCellsTable.insertLasCells(spatialiteDb, srid, cells, blobCodec));
+        if (pm.isCanceled()) {
+            throw new RuntimeException(INTERRUPTED_BY_USER);
         }
+        LasSourcesTable.updateMinMaxIntensity(spatialiteDb, sourceID, builder.getMinIntensity(), builder.getMaxIntensity());
+    }
 
+    private void insertLevels( final ASpatialDb spatialiteDb, long sourceID, double north, double south, double east,
+            double west ) throws Exception {
+        if (pLevels > 0) {
+            for( int level = 1; level <= pLevels; level++ ) {
+                if (pm.isCanceled()) {
+                    throw new RuntimeException(INTERRUPTED_BY_USER);
+                }
+                LasLevelsTable.createTable(spatialiteDb, srid, level, doAvoidIndex);
+                if (level == 1) {
+                    insertFirstLevel(spatialiteDb, sourceID, north, south, east, west, level);
+                } else {
+                    insertLevel(spatialiteDb, sourceID, north, south, east, west, level);
+                }
+            }
+        }
     }
 
     private void insertFirstLevel( final ASpatialDb spatialiteDb, long sourceID, double north, double south, double east,
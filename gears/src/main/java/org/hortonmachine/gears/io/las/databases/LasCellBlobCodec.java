@@ -0,0 +1,454 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.io.las.databases;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact encoding of the blobs of a {@link LasCell}.
+ *
+ * <p>The blobs of a {@link LasCell} in memory always have the plain layout (big endian
+ * doubles and shorts, see {@link LasCell}). In the database they can be stored encoded:</p>
+ * <ul>
+ *  <li>positions are quantized with the las scale, relative to the first point of the cell,
+ *      and stored as deltas between consecutive points;</li>
+ *  <li>gps times are stored as deltas of their bits, so they are lossless;</li>
+ *  <li>intensities, classifications, returns and colors are stored as deltas;</li>
+ * </ul>
+ * <p>All the deltas are zigzag varints and the result can be further deflated.</p>
+ *
+ * <p>An encoded blob starts with a {@link #MAGIC} byte, the {@link #VERSION} and a flags byte.
+ * Plain blobs have a length fixed by the number of points and encoded blobs are only
+ * used when shorter, which is how the decode methods tell them apart. This allows
+ * databases to mix plain and encoded cells.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class LasCellBlobCodec {
+    public static final byte MAGIC = (byte) 0xB1;
+    public static final byte VERSION = 1;
+
+    private static final int FLAG_DEFLATED = 1;
+
+    private static final int POSITION_SIZE = 8 * 3;
+    private static final int INTENS_CLASS_SIZE = 2 * 2;
+    private static final int RETURNS_SIZE = 2 * 2;
+    private static final int GPSTIME_SIZE = 8;
+    private static final int COLORS_SIZE = 2 * 3;
+
+    private final double xScale;
+    private final double yScale;
+    private final double zScale;
+    private final boolean deflate;
+
+    /**
+     * Create a codec.
+     *
+     * @param xScale the x scale used to quantize the positions (usually the one of the las header).
+     * @param yScale the y scale.
+     * @param zScale the z scale.
+     * @param deflate if <code>true</code>, the encoded blobs are also deflated.
+     */
+    public LasCellBlobCodec( double xScale, double yScale, double zScale, boolean deflate ) {
+        if (!(xScale > 0) || !(yScale > 0) || !(zScale > 0)) {
+            throw new IllegalArgumentException("The scales need to be positive.");
+        }
+        this.xScale = xScale;
+        this.yScale = yScale;
+        this.zScale = zScale;
+        this.deflate = deflate;
+    }
+
+    /**
+     * Create a copy of a cell with its blobs encoded.
+     *
+     * @param cell the cell with plain blobs.
+     * @return the new cell.
+     */
+    public LasCell encode( LasCell cell ) {
+        LasCell encoded = new LasCell();
+        encoded.id = cell.id;
+        encoded.sourceId = cell.sourceId;
+        encoded.polygon = cell.polygon;
+        encoded.pointsCount = cell.pointsCount;
+        encoded.avgElev = cell.avgElev;
+        encoded.minElev = cell.minElev;
+        encoded.maxElev = cell.maxElev;
+        encoded.avgIntensity = cell.avgIntensity;
+        encoded.minIntensity = cell.minIntensity;
+        encoded.maxIntensity = cell.maxIntensity;
+        encoded.minGpsTime = cell.minGpsTime;
+        encoded.maxGpsTime = cell.maxGpsTime;
+        encoded.xyzs = encodePositions(cell.xyzs, cell.pointsCount);
+        encoded.intensitiesClassifications = encodeShorts(cell.intensitiesClassifications, cell.pointsCount, 2);
+        encoded.returns = encodeShorts(cell.returns, cell.pointsCount, 2);
+        encoded.gpsTimes = encodeGpsTimes(cell.gpsTimes, cell.pointsCount);
+        encoded.colors = encodeShorts(cell.colors, cell.pointsCount, 3);
+        return encoded;
+    }
+
+    /**
+     * Encode a plain positions blob.
+     *
+     * @param xyzs the plain blob.
+     * @param pointsCount the number of points.
+     * @return the encoded blob.
+     */
+    public byte[] encodePositions( byte[] xyzs, int pointsCount ) {
+        if (!isPlain(xyzs, pointsCount, POSITION_SIZE)) {
+            return xyzs;
+        }
+        ByteBuffer in = ByteBuffer.wrap(xyzs);
+        VarintOutput out = new VarintOutput(pointsCount * 6 + 48);
+        double x0 = in.getDouble();
+        double y0 = in.getDouble();
+        double z0 = in.getDouble();
+        out.writeDouble(xScale);
+        out.writeDouble(yScale);
+        out.writeDouble(zScale);
+        out.writeDouble(x0);
+        out.writeDouble(y0);
+        out.writeDouble(z0);
+        long prevX = 0;
+        long prevY = 0;
+        long prevZ = 0;
+        for( int i = 1; i < pointsCount; i++ ) {
+            long qx = Math.round((in.getDouble() - x0) / xScale);
+            long qy = Math.round((in.getDouble() - y0) / yScale);
+            long qz = Math.round((in.getDouble() - z0) / zScale);
+            out.writeZigzag(qx - prevX);
+            out.writeZigzag(qy - prevY);
+            out.writeZigzag(qz - prevZ);
+            prevX = qx;
+            prevY = qy;
+            prevZ = qz;
+        }
+        return finish(out, xyzs);
+    }
+
+    /**
+     * Encode a plain gps times blob, without loss.
+     *
+     * @param gpsTimes the plain blob.
+     * @param pointsCount the number of points.
+     * @return the encoded blob.
+     */
+    public byte[] encodeGpsTimes( byte[] gpsTimes, int pointsCount ) {
+        if (!isPlain(gpsTimes, pointsCount, GPSTIME_SIZE)) {
+            return gpsTimes;
+        }
+        ByteBuffer in = ByteBuffer.wrap(gpsTimes);
+        VarintOutput out = new VarintOutput(pointsCount * 4 + 8);
+        long prev = in.getLong();
+        out.writeLong(prev);
+        for( int i = 1; i < pointsCount; i++ ) {
+            long bits = in.getLong();
+            out.writeZigzag(bits - prev);
+            prev = bits;
+        }
+        return finish(out, gpsTimes);
+    }
+
+    /**
+     * Encode a plain blob made of shorts, with the given number of shorts per point.
+     */
+    private byte[] encodeShorts( byte[] blob, int pointsCount, int components ) {
+        if (!isPlain(blob, pointsCount, 2 * components)) {
+            return blob;
+        }
+        ByteBuffer in = ByteBuffer.wrap(blob);
+        VarintOutput out = new VarintOutput(pointsCount * components + 8);
+        int[] prev = new int[components];
+        for( int i = 0; i < pointsCount; i++ ) {
+            for( int c = 0; c < components; c++ ) {
+                short value = in.getShort();
+                out.writeZigzag(value - prev[c]);
+                prev[c] = value;
+            }
+        }
+        return finish(out, blob);
+    }
+
+    private static boolean isPlain( byte[] blob, int pointsCount, int pointSize ) {
+        return blob != null && pointsCount > 0 && blob.length == pointsCount * pointSize;
+    }
+
+    /**
+     * Add the header and deflate if requested. The plain blob is kept if it is not larger,
+     * as happens for cells with very few points.
+     */
+    private byte[] finish( VarintOutput out, byte[] plain ) {
+        byte[] payload = out.toByteArray();
+        VarintOutput blob = new VarintOutput(payload.length + 8);
+        blob.write(MAGIC);
+        blob.write(VERSION);
+        if (deflate) {
+            blob.write(FLAG_DEFLATED);
+            blob.writeVarint(payload.length);
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(payload);
+                deflater.finish();
+                byte[] buffer = new byte[Math.max(64, payload.length / 2)];
+                while( !deflater.finished() ) {
+                    int length = deflater.deflate(buffer);
+                    blob.write(buffer, 0, length);
+                }
+            } finally {
+                deflater.end();
+            }
+        } else {
+            blob.write(0);
+            blob.write(payload, 0, payload.length);
+        }
+        if (blob.size() >= plain.length) {
+            return plain;
+        }
+        return blob.toByteArray();
+    }
+
+    /**
+     * Decode a positions blob into the plain layout.
+     *
+     * @param blob the blob as stored, plain or encoded.
+     * @param pointsCount the number of points.
+     * @return the plain blob.
+     */
+    public static byte[] decodePositions( byte[] blob, int pointsCount ) {
+        if (!isEncoded(blob, pointsCount, POSITION_SIZE)) {
+            return blob;
+        }
+        VarintInput in = new VarintInput(payload(blob));
+        double xScale = in.readDouble();
+        double yScale = in.readDouble();
+        double zScale = in.readDouble();
+        double x0 = in.readDouble();
+        double y0 = in.readDouble();
+        double z0 = in.readDouble();
+        ByteBuffer out = ByteBuffer.allocate(pointsCount * POSITION_SIZE);
+        out.putDouble(x0);
+        out.putDouble(y0);
+        out.putDouble(z0);
+        long qx = 0;
+        long qy = 0;
+        long qz = 0;
+        for( int i = 1; i < pointsCount; i++ ) {
+            qx += in.readZigzag();
+            qy += in.readZigzag();
+            qz += in.readZigzag();
+            out.putDouble(x0 + qx * xScale);
+            out.putDouble(y0 + qy * yScale);
+            out.putDouble(z0 + qz * zScale);
+        }
+        return out.array();
+    }
+
+    /**
+     * Decode a gps times blob into the plain layout.
+     *
+     * @param blob the blob as stored, plain or encoded.
+     * @param pointsCount the number of points.
+     * @return the plain blob.
+     */
+    public static byte[] decodeGpsTimes( byte[] blob, int pointsCount ) {
+        if (!isEncoded(blob, pointsCount, GPSTIME_SIZE)) {
+            return blob;
+        }
+        VarintInput in = new VarintInput(payload(blob));
+        ByteBuffer out = ByteBuffer.allocate(pointsCount * GPSTIME_SIZE);
+        long bits = in.readLong();
+        out.putLong(bits);
+        for( int i = 1; i < pointsCount; i++ ) {
+            bits += in.readZigzag();
+            out.putLong(bits);
+        }
+        return out.array();
+    }
+
+    /**
+     * Decode an intensities and classifications blob into the plain layout.
+     *
+     * @param blob the blob as stored, plain or encoded.
+     * @param pointsCount the number of points.
+     * @return the plain blob.
+     */
+    public static byte[] decodeIntensitiesClassifications( byte[] blob, int pointsCount ) {
+        return decodeShorts(blob, pointsCount, INTENS_CLASS_SIZE / 2);
+    }
+
+    /**
+     * Decode a returns blob into the plain layout.
+     *
+     * @param blob the blob as stored, plain or encoded.
+     * @param pointsCount the number of points.
+     * @return the plain blob.
+     */
+    public static byte[] decodeReturns( byte[] blob, int pointsCount ) {
+        return decodeShorts(blob, pointsCount, RETURNS_SIZE / 2);
+    }
+
+    /**
+     * Decode a colors blob into the plain layout.
+     *
+     * @param blob the blob as stored, plain or encoded.
+     * @param pointsCount the number of points.
+     * @return the plain blob.
+     */
+    public static byte[] decodeColors( byte[] blob, int pointsCount ) {
+        return decodeShorts(blob, pointsCount, COLORS_SIZE / 2);
+    }
+
+    private static byte[] decodeShorts( byte[] blob, int pointsCount, int components ) {
+        if (!isEncoded(blob, pointsCount, 2 * components)) {
+            return blob;
+        }
+        VarintInput in = new VarintInput(payload(blob));
+        ByteBuffer out = ByteBuffer.allocate(pointsCount * 2 * components);
+        int[] prev = new int[components];
+        for( int i = 0; i < pointsCount; i++ ) {
+            for( int c = 0; c < components; c++ ) {
+                int value = (int) (prev[c] + in.readZigzag());
+                out.putShort((short) value);
+                prev[c] = value;
+            }
+        }
+        return out.array();
+    }
+
+    /**
+     * Checks if a blob is encoded.
+     *
+     * @param blob the blob.
+     * @param pointsCount the number of points of the cell.
+     * @param pointSize the size of a point in the plain layout.
+     * @return <code>true</code> if the blob is encoded.
+     * @throws IllegalArgumentException if the blob is neither plain nor a known encoding.
+     */
+    private static boolean isEncoded( byte[] blob, int pointsCount, int pointSize ) {
+        if (blob == null || pointsCount == 0 || blob.length == pointsCount * pointSize) {
+            return false;
+        }
+        if (blob.length < 3 || blob[0] != MAGIC) {
+            throw new IllegalArgumentException("The blob is neither plain nor encoded.");
+        }
+        if (blob[1] != VERSION) {
+            throw new IllegalArgumentException("Unsupported blob encoding version: " + blob[1]);
+        }
+        return true;
+    }
+
+    private static byte[] payload( byte[] blob ) {
+        if ((blob[2] & FLAG_DEFLATED) == 0) {
+            return Arrays.copyOfRange(blob, 3, blob.length);
+        }
+        VarintInput header = new VarintInput(blob);
+        header.position = 3;
+        int length = (int) header.readVarint();
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob, header.position, blob.length - header.position);
+            byte[] payload = new byte[length];
+            int done = 0;
+            while( done < length ) {
+                int inflated = inflater.inflate(payload, done, length - done);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalArgumentException("Truncated blob.");
+                }
+                done += inflated;
+            }
+            return payload;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupted blob.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static class VarintOutput extends ByteArrayOutputStream {
+        VarintOutput( int size ) {
+            super(size);
+        }
+
+        void writeVarint( long value ) {
+            while( (value & ~0x7FL) != 0 ) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeZigzag( long value ) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeLong( long value ) {
+            for( int shift = 56; shift >= 0; shift -= 8 ) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        void writeDouble( double value ) {
+            writeLong(Double.doubleToLongBits(value));
+        }
+    }
+
+    private static class VarintInput {
+        private final byte[] data;
+        int position = 0;
+
+        VarintInput( byte[] data ) {
+            this.data = data;
+        }
+
+        long readVarint() {
+            long value = 0;
+            int shift = 0;
+            while( true ) {
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+        }
+
+        long readZigzag() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readLong() {
+            long value = 0;
+            for( int i = 0; i < 8; i++ ) {
+                value = (value << 8) | (data[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        double readDouble() {
+            return Double.longBitsToDouble(readLong());
+        }
+    }
+
+}
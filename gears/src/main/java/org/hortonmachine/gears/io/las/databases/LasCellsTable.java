@@ -19,6 +19,7 @@ package org.hortonmachine.gears.io.las.databases;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.hortonmachine.dbs.compat.ASpatialDb;
@@ -150,6 +151,20 @@ public class LasCellsTable {
     }
 
     public static void insertLasCells( ASpatialDb db, int srid, List<LasCell> cells ) throws Exception {
+        insertLasCells(db, srid, cells, null);
+    }
+
+    /**
+     * Insert cells in the table, encoding their blobs.
+     * 
+     * @param db the db to use.
+     * @param srid the srid of the geometries.
+     * @param cells the cells, with plain blobs.
+     * @param codec the codec used to encode the blobs, if <code>null</code> they are stored plain.
+     * @throws Exception
+     */
+    public static void insertLasCells( ASpatialDb db, int srid, List<LasCell> cells, LasCellBlobCodec codec )
+            throws Exception {
         String sql = "INSERT INTO " + TABLENAME//
                 + " (" + //
                 COLUMN_GEOM + "," + //
@@ -174,7 +189,8 @@ public class LasCellsTable {
         boolean autoCommit = conn.getAutoCommit();
         conn.setAutoCommit(false);
         try (IHMPreparedStatement pStmt = conn.prepareStatement(sql)) {
-            for( LasCell cell : cells ) {
+            for( LasCell plainCell : cells ) {
+                LasCell cell = codec != null ? codec.encode(plainCell) : plainCell;
                 int i = 1;
                 pStmt.setString(i++, cell.polygon.toText());
                 pStmt.setLong(i++, cell.sourceId);
@@ -204,6 +220,44 @@ public class LasCellsTable {
         }
     }
 
+    /**
+     * Rewrite the blobs of existing cells, matched by id.
+     *
+     * @param db the db to use.
+     * @param cells the cells, read with all the blobs.
+     * @param codec the codec used to encode the blobs, if <code>null</code> they are stored plain.
+     * @throws Exception
+     */
+    public static void updateLasCellsBlobs( ASpatialDb db, List<LasCell> cells, LasCellBlobCodec codec ) throws Exception {
+        String sql = "UPDATE " + TABLENAME + " SET " + //
+                COLUMN_POSITION_BLOB + "=?," + //
+                COLUMN_INTENS_CLASS_BLOB + "=?," + //
+                COLUMN_RETURNS_BLOB + "=?," + //
+                COLUMN_GPSTIME_BLOB + "=?," + //
+                COLUMN_COLORS_BLOB + "=?" + //
+                " WHERE " + COLUMN_ID + "=?";
+
+        IHMConnection conn = db.getConnection();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (IHMPreparedStatement pStmt = conn.prepareStatement(sql)) {
+            for( LasCell plainCell : cells ) {
+                LasCell cell = codec != null ? codec.encode(plainCell) : plainCell;
+                int i = 1;
+                pStmt.setBytes(i++, cell.xyzs);
+                pStmt.setBytes(i++, cell.intensitiesClassifications);
+                pStmt.setBytes(i++, cell.returns);
+                pStmt.setBytes(i++, cell.gpsTimes);
+                pStmt.setBytes(i++, cell.colors);
+                pStmt.setLong(i++, cell.id);
+                pStmt.addBatch();
+            }
+            pStmt.executeBatch();
+            conn.commit();
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
     /**
      * Query the las cell table.
      *
@@ -332,7 +386,7 @@ public class LasCellsTable {
      * Query the las cell table based on source.
      *
      * @param db the db to use.
-     * @param geometry an optional {@link Geometry} to query spatially.
+     * @param sourceId the id of the source.
      * @param doPosition if <code>true</code> position info is extracted.
      * @param doIntensity if <code>true</code> intensity and classification info is extracted.
      * @param doReturns  if <code>true</code> return info is extracted.
@@ -343,7 +397,63 @@ public class LasCellsTable {
      */
     public static List<LasCell> getLasCellsBySource( ASpatialDb db, long sourceId, boolean doPosition, boolean doIntensity,
             boolean doReturns, boolean doTime, boolean doColor ) throws Exception {
-        List<LasCell> lasCells = new ArrayList<>();
+        String sql = getSourceCellsSql(sourceId, doPosition, doIntensity, doReturns, doTime, doColor);
+        return queryCells(db, sql, doPosition, doIntensity, doReturns, doTime, doColor);
+    }
+
+    /**
+     * Query the las cell table based on source, for a range of cell ids.
+     *
+     * <p>Used together with {@link #getLasCellIdsBySource(ASpatialDb, long)} to read
+     * the cells of a source in chunks.</p>
+     *
+     * @param db the db to use.
+     * @param sourceId the id of the source.
+     * @param fromId the first cell id, inclusive.
+     * @param toId the last cell id, inclusive.
+     * @param doPosition if <code>true</code> position info is extracted.
+     * @param doIntensity if <code>true</code> intensity and classification info is extracted.
+     * @param doReturns  if <code>true</code> return info is extracted.
+     * @param doTime  if <code>true</code> time info is extracted.
+     * @param doColor if <code>true</code> color info is extracted.
+     * @return the list of extracted points, ordered by id.
+     * @throws Exception
+     */
+    public static List<LasCell> getLasCellsBySource( ASpatialDb db, long sourceId, long fromId, long toId, boolean doPosition,
+            boolean doIntensity, boolean doReturns, boolean doTime, boolean doColor ) throws Exception {
+        String sql = getSourceCellsSql(sourceId, doPosition, doIntensity, doReturns, doTime, doColor);
+        sql += " AND " + COLUMN_ID + ">=" + fromId + " AND " + COLUMN_ID + "<=" + toId;
+        sql += " ORDER BY " + COLUMN_ID;
+        return queryCells(db, sql, doPosition, doIntensity, doReturns, doTime, doColor);
+    }
+
+    /**
+     * Get the ids of the cells of a source.
+     *
+     * @param db the db to use.
+     * @param sourceId the id of the source.
+     * @return the ordered cell ids.
+     * @throws Exception
+     */
+    public static long[] getLasCellIdsBySource( ASpatialDb db, long sourceId ) throws Exception {
+        String sql = "SELECT " + COLUMN_ID + " FROM " + TABLENAME + " WHERE " + COLUMN_SOURCE_ID + "=" + sourceId + " ORDER BY "
+                + COLUMN_ID;
+        long[] ids = new long[1024];
+        int count = 0;
+        IHMConnection conn = db.getConnection();
+        try (IHMStatement stmt = conn.createStatement(); IHMResultSet rs = stmt.executeQuery(sql)) {
+            while( rs.next() ) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = rs.getLong(1);
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    private static String getSourceCellsSql( long sourceId, boolean doPosition, boolean doIntensity, boolean doReturns,
+            boolean doTime, boolean doColor ) {
         String sql = "SELECT " + COLUMN_GEOM + "," + COLUMN_ID + "," + COLUMN_SOURCE_ID + "," + COLUMN_POINTS_COUNT;
 
         if (doPosition)
@@ -370,7 +480,12 @@ public class LasCellsTable {
 
         sql += " FROM " + TABLENAME;
         sql += " WHERE " + COLUMN_SOURCE_ID + "=" + sourceId;
+        return sql;
+    }
 
+    private static List<LasCell> queryCells( ASpatialDb db, String sql, boolean doPosition, boolean doIntensity,
+            boolean doReturns, boolean doTime, boolean doColor ) throws Exception {
+        List<LasCell> lasCells = new ArrayList<>();
         IHMConnection conn = db.getConnection();
         try (IHMStatement stmt = conn.createStatement(); IHMResultSet rs = stmt.executeQuery(sql)) {
             while( rs.next() ) {
@@ -398,26 +513,27 @@ public class LasCellsTable {
                 lasCell.avgElev = rs.getDouble(i++);
                 lasCell.minElev = rs.getDouble(i++);
                 lasCell.maxElev = rs.getDouble(i++);
-                lasCell.xyzs = rs.getBytes(i++);
+                lasCell.xyzs = LasCellBlobCodec.decodePositions(rs.getBytes(i++), lasCell.pointsCount);
             }
 
             if (doIntensity) {
                 lasCell.avgIntensity = rs.getShort(i++);
                 lasCell.minIntensity = rs.getShort(i++);
                 lasCell.maxIntensity = rs.getShort(i++);
-                lasCell.intensitiesClassifications = rs.getBytes(i++);
+                lasCell.intensitiesClassifications = LasCellBlobCodec.decodeIntensitiesClassifications(rs.getBytes(i++),
+                        lasCell.pointsCount);
             }
 
             if (doReturns)
-                lasCell.returns = rs.getBytes(i++);
+                lasCell.returns = LasCellBlobCodec.decodeReturns(rs.getBytes(i++), lasCell.pointsCount);
 
             if (doTime) {
                 lasCell.minGpsTime = rs.getDouble(i++);
                 lasCell.maxGpsTime = rs.getDouble(i++);
-                lasCell.gpsTimes = rs.getBytes(i++);
+                lasCell.gpsTimes = LasCellBlobCodec.decodeGpsTimes(rs.getBytes(i++), lasCell.pointsCount);
             }
             if (doColor)
-                lasCell.colors = rs.getBytes(i++);
+                lasCell.colors = LasCellBlobCodec.decodeColors(rs.getBytes(i++), lasCell.pointsCount);
             return lasCell;
         }
         return null;
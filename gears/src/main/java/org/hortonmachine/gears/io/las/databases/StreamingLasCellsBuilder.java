@@ -0,0 +1,621 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.io.las.databases;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.hortonmachine.gears.io.las.core.ALasReader;
+import org.hortonmachine.gears.io.las.core.LasPointColumns;
+import org.hortonmachine.gears.libs.monitor.DummyProgressMonitor;
+import org.hortonmachine.gears.libs.monitor.IHMProgressMonitor;
+import org.hortonmachine.gears.utils.geometry.GeometryUtilities;
+import org.opengis.coverage.PointOutsideCoverageException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Builds the {@link LasCell}s of a las file with bounded memory.
+ *
+ * <p>The file is read twice. The first pass only counts the points of each row of
+ * cells, which is used to group the rows into bands holding at most
+ * {@link #setMaxPointsInMemory(int)} points. The second pass appends each point
+ * to a temporary file of its band (if there is more than one band). The bands are
+ * then processed one at a time: the points are loaded into primitive columns, sorted
+ * by cell with a counting sort and the cells of the band are built in parallel.</p>
+ *
+ * <p>The cells are handed to the {@link ILasCellsConsumer} one band at a time, from
+ * a single writer thread, while the next band is prepared.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class StreamingLasCellsBuilder {
+
+    /**
+     * Receiver of the built cells.
+     */
+    public static interface ILasCellsConsumer {
+        /**
+         * Handle the cells of a band.
+         *
+         * <p>Always called from the same thread, one call at a time.</p>
+         *
+         * @param cells the cells.
+         * @throws Exception
+         */
+        public void consume( List<LasCell> cells ) throws Exception;
+    }
+
+    /**
+     * The default max number of points loaded at the same time.
+     */
+    public static final int DEFAULT_MAX_POINTS_IN_MEMORY = 5000000;
+
+    private static final int READ_CHUNK_SIZE = 100000;
+
+    /**
+     * The size of a spilled point: xyz, gps time, intensity, rgb, classification, returns.
+     */
+    private static final int SPILLED_POINT_SIZE = 8 * 4 + 2 * 4 + 3;
+
+    private final long sourceId;
+    private final double west;
+    private final double north;
+    private final double xRes;
+    private final double yRes;
+    private final int cols;
+    private final int rows;
+    private final double cellSize;
+
+    private int maxPointsInMemory = DEFAULT_MAX_POINTS_IN_MEMORY;
+    private int threads = 1;
+    private boolean doEmptyCells = false;
+    private GridCoverage2D ortoGC;
+    private IHMProgressMonitor pm = new DummyProgressMonitor();
+
+    private short minIntensity;
+    private short maxIntensity;
+
+    /**
+     * Create the builder for a grid of cells.
+     *
+     * @param sourceId the id of the las source the cells belong to.
+     * @param west the west bound of the grid.
+     * @param east the east bound of the grid.
+     * @param south the south bound of the grid.
+     * @param north the north bound of the grid.
+     * @param cols the cols of the grid.
+     * @param rows the rows of the grid.
+     * @param cellSize the size of the cells polygons.
+     */
+    public StreamingLasCellsBuilder( long sourceId, double west, double east, double south, double north, int cols, int rows,
+            double cellSize ) {
+        this.sourceId = sourceId;
+        this.west = west;
+        this.north = north;
+        this.cols = cols;
+        this.rows = rows;
+        this.cellSize = cellSize;
+        xRes = (east - west) / cols;
+        yRes = (north - south) / rows;
+    }
+
+    /**
+     * @param maxPointsInMemory the max number of points loaded at the same time.
+     *          A band always contains at least one row, even if the row has more points.
+     */
+    public void setMaxPointsInMemory( int maxPointsInMemory ) {
+        this.maxPointsInMemory = max(1, maxPointsInMemory);
+    }
+
+    /**
+     * @param threads the number of threads used to build the cells of a band.
+     */
+    public void setThreads( int threads ) {
+        this.threads = max(1, threads);
+    }
+
+    /**
+     * @param doEmptyCells if <code>true</code>, cells without points are also created.
+     */
+    public void setEmptyCells( boolean doEmptyCells ) {
+        this.doEmptyCells = doEmptyCells;
+    }
+
+    /**
+     * @param ortoGC an optional 3 band coverage to take the points colors from.
+     */
+    public void setOrthophoto( GridCoverage2D ortoGC ) {
+        this.ortoGC = ortoGC;
+    }
+
+    public void setProgressMonitor( IHMProgressMonitor pm ) {
+        this.pm = pm;
+    }
+
+    /**
+     * @return the min intensity of the points of the last build.
+     */
+    public short getMinIntensity() {
+        return minIntensity;
+    }
+
+    /**
+     * @return the max intensity of the points of the last build.
+     */
+    public short getMaxIntensity() {
+        return maxIntensity;
+    }
+
+    /**
+     * Build the cells of a las file.
+     *
+     * @param lasFile the las file.
+     * @param crs the optional crs to use for the file.
+     * @param consumer the receiver of the cells.
+     * @return the number of points read.
+     * @throws Exception
+     */
+    public long build( File lasFile, CoordinateReferenceSystem crs, ILasCellsConsumer consumer ) throws Exception {
+        long[] rowCounts = countPointsPerRow(lasFile, crs);
+        int[] bandStarts = createBands(rowCounts);
+        int bandsNum = bandStarts.length - 1;
+        long pointsNum = 0;
+        for( long rowCount : rowCounts ) {
+            pointsNum += rowCount;
+        }
+
+        File[] spillFiles = null;
+        LasPointColumns singleBand = null;
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        ExecutorService builders = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            if (bandsNum == 1) {
+                singleBand = new LasPointColumns((int) pointsNum);
+                readAll(lasFile, crs, singleBand);
+            } else {
+                spillFiles = spill(lasFile, crs, rowCounts, bandStarts);
+            }
+
+            pm.beginTask("Building las cells...", bandsNum);
+            Future< ? > pendingWrite = null;
+            for( int band = 0; band < bandsNum; band++ ) {
+                if (pm.isCanceled()) {
+                    break;
+                }
+                int fromRow = bandStarts[band];
+                int toRow = bandStarts[band + 1];
+                int bandPointsNum = 0;
+                for( int r = fromRow; r < toRow; r++ ) {
+                    bandPointsNum += rowCounts[r];
+                }
+
+                LasPointColumns points;
+                if (singleBand != null) {
+                    points = singleBand;
+                } else {
+                    points = new LasPointColumns(bandPointsNum);
+                    readSpilled(spillFiles[band], bandPointsNum, points);
+                    spillFiles[band].delete();
+                }
+                if (ortoGC != null) {
+                    applyOrthophotoColors(points);
+                }
+
+                List<LasCell> cells = buildBand(points, fromRow, toRow, builders);
+                points = null;
+
+                // keep at most one band waiting to be written
+                waitFor(pendingWrite);
+                pendingWrite = writer.submit(() -> {
+                    consumer.consume(cells);
+                    return null;
+                });
+                pm.worked(1);
+            }
+            waitFor(pendingWrite);
+            pm.done();
+        } finally {
+            writer.shutdownNow();
+            if (builders != null) {
+                builders.shutdownNow();
+            }
+            if (spillFiles != null) {
+                for( File spillFile : spillFiles ) {
+                    if (spillFile != null) {
+                        spillFile.delete();
+                    }
+                }
+            }
+        }
+        return pointsNum;
+    }
+
+    private static void waitFor( Future< ? > future ) throws Exception {
+        if (future == null) {
+            return;
+        }
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Group consecutive rows into bands with at most {@link #maxPointsInMemory} points.
+     *
+     * @param rowCounts the number of points of each row.
+     * @return the first row of each band, followed by the number of rows.
+     */
+    int[] createBands( long[] rowCounts ) {
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        long bandCount = 0;
+        for( int r = 0; r < rowCounts.length; r++ ) {
+            if (bandCount > 0 && bandCount + rowCounts[r] > maxPointsInMemory) {
+                starts.add(r);
+                bandCount = 0;
+            }
+            bandCount += rowCounts[r];
+        }
+        int[] bandStarts = new int[starts.size() + 1];
+        for( int i = 0; i < starts.size(); i++ ) {
+            bandStarts[i] = starts.get(i);
+        }
+        bandStarts[starts.size()] = rowCounts.length;
+        return bandStarts;
+    }
+
+    private int getCol( double x ) {
+        int col = (int) Math.floor((x - west) / xRes);
+        return min(max(col, 0), cols - 1);
+    }
+
+    private int getRow( double y ) {
+        int row = (int) Math.floor((north - y) / yRes);
+        return min(max(row, 0), rows - 1);
+    }
+
+    private long[] countPointsPerRow( File lasFile, CoordinateReferenceSystem crs ) throws Exception {
+        long[] rowCounts = new long[rows];
+        short minIntens = Short.MAX_VALUE;
+        short maxIntens = -Short.MAX_VALUE;
+        LasPointColumns columns = new LasPointColumns(READ_CHUNK_SIZE);
+        pm.beginTask("Counting points per row...", IHMProgressMonitor.UNKNOWN);
+        try (ALasReader reader = ALasReader.getReader(lasFile, crs)) {
+            reader.open();
+            while( reader.hasNextPoint() ) {
+                columns.clear();
+                reader.readNextPoints(columns, READ_CHUNK_SIZE, null);
+                for( int i = 0; i < columns.size(); i++ ) {
+                    rowCounts[getRow(columns.y[i])]++;
+                    minIntens = (short) min(minIntens, columns.intensity[i]);
+                    maxIntens = (short) max(maxIntens, columns.intensity[i]);
+                }
+            }
+        }
+        pm.done();
+        minIntensity = minIntens;
+        maxIntensity = maxIntens;
+        return rowCounts;
+    }
+
+    private void readAll( File lasFile, CoordinateReferenceSystem crs, LasPointColumns points ) throws Exception {
+        try (ALasReader reader = ALasReader.getReader(lasFile, crs)) {
+            reader.open();
+            while( reader.hasNextPoint() ) {
+                reader.readNextPoints(points, READ_CHUNK_SIZE, null);
+            }
+        }
+    }
+
+    private File[] spill( File lasFile, CoordinateReferenceSystem crs, long[] rowCounts, int[] bandStarts ) throws Exception {
+        int bandsNum = bandStarts.length - 1;
+        int[] rowBands = new int[rows];
+        for( int band = 0; band < bandsNum; band++ ) {
+            for( int r = bandStarts[band]; r < bandStarts[band + 1]; r++ ) {
+                rowBands[r] = band;
+            }
+        }
+
+        File[] spillFiles = new File[bandsNum];
+        DataOutputStream[] outs = new DataOutputStream[bandsNum];
+        LasPointColumns columns = new LasPointColumns(READ_CHUNK_SIZE);
+        pm.beginTask("Splitting points into " + bandsNum + " bands...", IHMProgressMonitor.UNKNOWN);
+        try {
+            for( int band = 0; band < bandsNum; band++ ) {
+                spillFiles[band] = File.createTempFile("lascells_band" + band + "_", ".bin");
+                spillFiles[band].deleteOnExit();
+                outs[band] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFiles[band]), 1 << 16));
+            }
+            try (ALasReader reader = ALasReader.getReader(lasFile, crs)) {
+                reader.open();
+                while( reader.hasNextPoint() ) {
+                    columns.clear();
+                    reader.readNextPoints(columns, READ_CHUNK_SIZE, null);
+                    for( int i = 0; i < columns.size(); i++ ) {
+                        DataOutputStream out = outs[rowBands[getRow(columns.y[i])]];
+                        out.writeDouble(columns.x[i]);
+                        out.writeDouble(columns.y[i]);
+                        out.writeDouble(columns.z[i]);
+                        out.writeDouble(columns.gpsTime[i]);
+                        out.writeShort(columns.intensity[i]);
+                        out.writeShort(columns.red[i]);
+                        out.writeShort(columns.green[i]);
+                        out.writeShort(columns.blue[i]);
+                        out.writeByte(columns.classification[i]);
+                        out.writeByte(columns.returnNumber[i]);
+                        out.writeByte(columns.numberOfReturns[i]);
+                    }
+                }
+            }
+        } finally {
+            for( DataOutputStream out : outs ) {
+                if (out != null) {
+                    out.close();
+                }
+            }
+        }
+        pm.done();
+        return spillFiles;
+    }
+
+    private void readSpilled( File spillFile, int pointsNum, LasPointColumns points ) throws IOException {
+        if (spillFile.length() != (long) pointsNum * SPILLED_POINT_SIZE) {
+            throw new IOException("Unexpected size of the temporary file: " + spillFile);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile), 1 << 16))) {
+            for( int i = 0; i < pointsNum; i++ ) {
+                int index = points.append();
+                points.x[index] = in.readDouble();
+                points.y[index] = in.readDouble();
+                points.z[index] = in.readDouble();
+                points.gpsTime[index] = in.readDouble();
+                points.intensity[index] = in.readShort();
+                points.red[index] = in.readShort();
+                points.green[index] = in.readShort();
+                points.blue[index] = in.readShort();
+                points.classification[index] = in.readByte();
+                points.returnNumber[index] = in.readByte();
+                points.numberOfReturns[index] = in.readByte();
+            }
+        }
+    }
+
+    /**
+     * The coverage is evaluated from the calling thread only, before the parallel part.
+     */
+    private void applyOrthophotoColors( LasPointColumns points ) {
+        Point2D.Double pos = new Point2D.Double();
+        int[] ortoValues = new int[3];
+        for( int i = 0; i < points.size(); i++ ) {
+            pos.setLocation(points.x[i], points.y[i]);
+            try {
+                ortoGC.evaluate(pos, ortoValues);
+                points.red[i] = (short) ortoValues[0];
+                points.green[i] = (short) ortoValues[1];
+                points.blue[i] = (short) ortoValues[2];
+            } catch (PointOutsideCoverageException poce) {
+                // insert white
+                points.red[i] = 255;
+                points.green[i] = 255;
+                points.blue[i] = 255;
+            }
+        }
+    }
+
+    /**
+     * Sort the points of a band by cell and build its cells, split by rows between the threads.
+     */
+    private List<LasCell> buildBand( LasPointColumns points, int fromRow, int toRow, ExecutorService builders )
+            throws Exception {
+        int bandRows = toRow - fromRow;
+        int[] cellStart = new int[bandRows * cols + 1];
+        int pointsNum = points.size();
+        int[] pointCells = new int[pointsNum];
+        for( int i = 0; i < pointsNum; i++ ) {
+            int cell = (getRow(points.y[i]) - fromRow) * cols + getCol(points.x[i]);
+            pointCells[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for( int cell = 0; cell < bandRows * cols; cell++ ) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        int[] order = new int[pointsNum];
+        int[] fill = new int[bandRows * cols];
+        for( int i = 0; i < pointsNum; i++ ) {
+            int cell = pointCells[i];
+            order[cellStart[cell] + fill[cell]++] = i;
+        }
+        pointCells = null;
+        fill = null;
+
+        if (builders == null || bandRows == 1) {
+            return buildRows(points, order, cellStart, fromRow, 0, bandRows);
+        }
+
+        int chunkRows = (int) Math.ceil(bandRows / (double) threads);
+        List<Future<List<LasCell>>> futures = new ArrayList<>();
+        for( int from = 0; from < bandRows; from += chunkRows ) {
+            final int chunkFrom = from;
+            final int chunkTo = min(from + chunkRows, bandRows);
+            futures.add(builders.submit(() -> buildRows(points, order, cellStart, fromRow, chunkFrom, chunkTo)));
+        }
+        List<LasCell> cells = new ArrayList<>();
+        for( Future<List<LasCell>> future : futures ) {
+            try {
+                cells.addAll(future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+        }
+        return cells;
+    }
+
+    private List<LasCell> buildRows( LasPointColumns points, int[] order, int[] cellStart, int bandFromRow, int fromRow,
+            int toRow ) {
+        List<LasCell> cells = new ArrayList<>();
+        for( int r = fromRow; r < toRow; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                int cell = r * cols + c;
+                Polygon polygon = createCellPolygon(c, bandFromRow + r);
+                int start = cellStart[cell];
+                int end = cellStart[cell + 1];
+                if (start == end) {
+                    if (doEmptyCells) {
+                        cells.add(createEmptyCell(polygon));
+                    }
+                    continue;
+                }
+                cells.add(createCell(polygon, points, order, start, end));
+            }
+        }
+        return cells;
+    }
+
+    private Polygon createCellPolygon( int col, int row ) {
+        double x = west + (col + 0.5) * xRes;
+        double y = north - (row + 0.5) * yRes;
+        Envelope env = new Envelope(x, x, y, y);
+        env.expandBy(cellSize / 2.0, cellSize / 2.0);
+        return GeometryUtilities.createPolygonFromEnvelope(env);
+    }
+
+    private LasCell createEmptyCell( Polygon polygon ) {
+        LasCell lasCell = new LasCell();
+        lasCell.polygon = polygon;
+        lasCell.sourceId = sourceId;
+        lasCell.pointsCount = 0;
+        lasCell.avgElev = -9999.0;
+        lasCell.minElev = -9999.0;
+        lasCell.maxElev = -9999.0;
+        lasCell.xyzs = new byte[0];
+        lasCell.avgIntensity = (short) -999;
+        lasCell.minIntensity = (short) -999;
+        lasCell.maxIntensity = (short) -999;
+        lasCell.intensitiesClassifications = new byte[0];
+        lasCell.returns = new byte[0];
+        lasCell.minGpsTime = -9999.0;
+        lasCell.maxGpsTime = -9999.0;
+        lasCell.gpsTimes = new byte[0];
+        lasCell.colors = new byte[0];
+        return lasCell;
+    }
+
+    /**
+     * Create a cell with the same blobs layout of {@link DatabaseLasWriter}.
+     */
+    private LasCell createCell( Polygon polygon, LasPointColumns points, int[] order, int start, int end ) {
+        int pointCount = end - start;
+
+        double avgElev = 0.0;
+        double minElev = Double.POSITIVE_INFINITY;
+        double maxElev = Double.NEGATIVE_INFINITY;
+        ByteBuffer positionBuffer = ByteBuffer.wrap(new byte[8 * 3 * pointCount]);
+        double avgIntensity = 0.0;
+        short minIntens = 30000;
+        short maxIntens = -1;
+        ByteBuffer intensClassBuffer = ByteBuffer.wrap(new byte[2 * 2 * pointCount]);
+        ByteBuffer returnsBuffer = ByteBuffer.wrap(new byte[2 * 2 * pointCount]);
+        double minGpsTime = Double.POSITIVE_INFINITY;
+        double maxGpsTime = Double.NEGATIVE_INFINITY;
+        ByteBuffer gpsTimesBuffer = ByteBuffer.wrap(new byte[8 * pointCount]);
+        ByteBuffer colorsBuffer = ByteBuffer.wrap(new byte[2 * 3 * pointCount]);
+
+        for( int o = start; o < end; o++ ) {
+            int i = order[o];
+            double z = points.z[i];
+            avgElev += z;
+            minElev = min(z, minElev);
+            maxElev = max(z, maxElev);
+            positionBuffer.putDouble(points.x[i]);
+            positionBuffer.putDouble(points.y[i]);
+            positionBuffer.putDouble(z);
+
+            short intensity = points.intensity[i];
+            avgIntensity += intensity;
+            minIntens = (short) min(intensity, minIntens);
+            maxIntens = (short) max(intensity, maxIntens);
+            intensClassBuffer.putShort(intensity);
+            intensClassBuffer.putShort(points.classification[i]);
+
+            returnsBuffer.putShort(points.returnNumber[i]);
+            returnsBuffer.putShort(points.numberOfReturns[i]);
+
+            double gpsTime = points.gpsTime[i];
+            minGpsTime = min(gpsTime, minGpsTime);
+            maxGpsTime = max(gpsTime, maxGpsTime);
+            gpsTimesBuffer.putDouble(gpsTime);
+
+            colorsBuffer.putShort(points.red[i]);
+            colorsBuffer.putShort(points.green[i]);
+            colorsBuffer.putShort(points.blue[i]);
+        }
+        avgElev /= pointCount;
+        avgIntensity /= pointCount;
+
+        LasCell lasCell = new LasCell();
+        lasCell.polygon = polygon;
+        lasCell.sourceId = sourceId;
+        lasCell.pointsCount = pointCount;
+        lasCell.avgElev = avgElev;
+        lasCell.minElev = minElev;
+        lasCell.maxElev = maxElev;
+        lasCell.xyzs = positionBuffer.array();
+        lasCell.avgIntensity = (short) Math.round(avgIntensity);
+        lasCell.minIntensity = minIntens;
+        lasCell.maxIntensity = maxIntens;
+        lasCell.intensitiesClassifications = intensClassBuffer.array();
+        lasCell.returns = returnsBuffer.array();
+        lasCell.minGpsTime = minGpsTime;
+        lasCell.maxGpsTime = maxGpsTime;
+        lasCell.gpsTimes = gpsTimesBuffer.array();
+        lasCell.colors = colorsBuffer.array();
+        return lasCell;
+    }
+
+}
@@ -58,14 +58,16 @@ import oms3.annotations.Name;
 import oms3.annotations.Out;
 import oms3.annotations.Status;
 import oms3.annotations.UI;
-import oms3.io.CSTable;
+import oms3.io.ColumnTable;
 import oms3.io.DataIO;
 import oms3.io.TableIterator;
 
 import org.hortonmachine.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.hortonmachine.gears.libs.modules.HMConstants;
 import org.hortonmachine.gears.libs.modules.HMModel;
+import org.hortonmachine.gears.libs.modules.StationValues;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormatter;
 
 @Description(OMSTIMESERIESITERATORREADER_DESCRIPTION)
@@ -131,7 +133,21 @@ public class OmsTimeSeriesIteratorReader extends HMModel {
 
     private TableIterator<String[]> rowsIterator;
 
-    private CSTable table;
+    private ColumnTable table;
+
+    /*
+     * the dates (UTC millis) and values, if the file has a date column and numbers only,
+     * else the rows are read through the rowsIterator
+     */
+    private long[] times;
+    private double[][] columnValues;
+    private int currentRow = 0;
+    private double fileNovalueNumber = Double.NaN;
+
+    /* the station of every column and the number of values of the stations, in the columns order */
+    private int[] columnIds;
+    private int[] idCounts;
+    private StationValues stations;
 
     private DateTimeFormatter formatter = HMConstants.utcDateFormatterYYYYMMDDHHMM;
 
@@ -145,34 +161,68 @@ public class OmsTimeSeriesIteratorReader extends HMModel {
     }
     private void ensureOpen() throws IOException {
         if (table == null) {
-            table = DataIO.table(new File(file), null);
-            rowsIterator = (TableIterator<String[]>) table.rows().iterator();
+            // parsed once and cached next to the file
+            table = DataIO.columnTable(new File(file), null);
+            if (isTyped(table)) {
+                times = utcTimes(table);
+                columnValues = new double[table.getColumnCount() + 1][];
+                for( int i = 2; i <= table.getColumnCount(); i++ ) {
+                    columnValues[i] = table.getNumbers(i);
+                }
+                try {
+                    fileNovalueNumber = Double.parseDouble(fileNovalue.trim());
+                } catch (NumberFormatException e) {
+                    // only empty values are novalues
+                }
+            } else {
+                rowsIterator = (TableIterator<String[]>) table.rows().iterator();
+            }
             /*
              * If tStart is null then the reader try to read all the value in the file, nb time step constant.
              */
             if (tStart == null) {
                 String secondTime = null;
                 // get the first time in the file.
-                if (rowsIterator.hasNext()) {
-                    String[] row = rowsIterator.next();
-                    tStart = row[1];
+                if (table.getRowCount() > 0) {
+                    tStart = table.getText(0, 1);
                 }
                 // get the time of the second row in the file.
-                if (rowsIterator.hasNext()) {
-                    String[] row = rowsIterator.next();
-                    secondTime = row[1];
+                if (table.getRowCount() > 1) {
+                    secondTime = table.getText(1, 1);
                 }
                 // the dt is equal to the fifference of the time of 2 rows.
                 tTimestep = formatter.parseDateTime(secondTime).getMinuteOfDay()
                         - formatter.parseDateTime(tStart).getMinuteOfDay();
-                // close and reopen to read the row.
-                rowsIterator.close();
-                rowsIterator = (TableIterator<String[]>) table.rows().iterator();
             }
 
         }
     }
 
+    /**
+     * Parse the dates of the first column with the UTC formatter, as the rows are.
+     * The millis kept by the table are those of the local time zone.
+     */
+    private long[] utcTimes( ColumnTable table ) {
+        long[] utc = new long[table.getRowCount()];
+        int row = 0;
+        for( String[] r : table.rows() ) {
+            utc[row++] = formatter.parseMillis(r[1].trim());
+        }
+        return utc;
+    }
+
+    private static boolean isTyped( ColumnTable table ) {
+        if (table.hasRaggedRows() || table.getColumnCount() < 1 || table.getColumnType(1) != ColumnTable.DATE) {
+            return false;
+        }
+        for( int i = 2; i <= table.getColumnCount(); i++ ) {
+            if (table.getColumnType(i) != ColumnTable.NUMBER) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Execute
     public void nextRecord() throws IOException {
         ensureOpen();
@@ -186,10 +236,58 @@ public class OmsTimeSeriesIteratorReader extends HMModel {
             expectedTimestamp = expectedTimestamp.plusMinutes(tTimestep);
             tCurrent = expectedTimestamp.toString(formatter);
         }
-        outData = new HashMap<Integer, double[]>();
+        if (stations == null) {
+            readStations();
+        }
 
+        double[] rowValues = null;
+        if (times != null) {
+            rowValues = getExpectedValues(expectedTimestamp);
+        } else if (rowsIterator.hasNext()) {
+            String[] row = getExpectedRow(rowsIterator, expectedTimestamp);
+            if (row != null) {
+                rowValues = toValues(row);
+            }
+        }
+
+        if (rowValues != null) {
+            // rows with missing values only have the stations found
+            StationValues values = rowValues.length == table.getColumnCount() + 1 ? stations.newValues() : new StationValues();
+            int idCountIndex = 0;
+            for( int i = 2; i < rowValues.length; i++ ) {
+                int idCount = idCounts[idCountIndex];
+                int index = values.indexOf(columnIds[i]);
+                if (index < 0) {
+                    index = values.add(columnIds[i], idCount);
+                }
+                for( int j = 0; j < idCount; j++, i++ ) {
+                    values.setValue(index, j, rowValues[i]);
+                }
+                idCountIndex++;
+                i--;
+            }
+            outData = values.asMap();
+        } else {
+            outData = null;
+        }
+
+        // time ran out
+        if (tEnd != null && tCurrent.equals(tEnd)) {
+            doProcess = false;
+        }
+        // data ran out
+        if (times != null ? currentRow >= times.length : !rowsIterator.hasNext()) {
+            doProcess = false;
+        }
+    }
+
+    /**
+     * Read the station ids of the value columns, consecutive columns with the same
+     * id being the values of a station.
+     */
+    private void readStations() {
         int columnCount = table.getColumnCount();
-        List<Integer> idList = new ArrayList<Integer>();
+        columnIds = new int[columnCount + 1];
         List<Integer> idCountList = new ArrayList<Integer>();
         int count = 0;
         Integer previousIdInteger = null;
@@ -197,7 +295,7 @@ public class OmsTimeSeriesIteratorReader extends HMModel {
             String id = table.getColumnInfo(i).get(idfield);
             try {
                 Integer idInteger = Integer.valueOf(id);
-                idList.add(idInteger);
+                columnIds[i] = idInteger;
                 if (previousIdInteger == null) {
                     count++;
                 } else {
@@ -217,46 +315,104 @@ public class OmsTimeSeriesIteratorReader extends HMModel {
                         .getSimpleName(), pm);
             }
         }
+        idCounts = new int[idCountList.size()];
+        stations = new StationValues(idCounts.length);
+        int i = 2;
+        for( int k = 0; k < idCounts.length; k++ ) {
+            idCounts[k] = idCountList.get(k);
+            if (stations.indexOf(columnIds[i]) < 0) {
+                stations.add(columnIds[i], idCounts[k]);
+            }
+            i += idCounts[k];
+        }
+    }
 
-        if (rowsIterator.hasNext()) {
-            String[] row = getExpectedRow(rowsIterator, expectedTimestamp);
-
-            int idCountIndex = 0;
-            for( int i = 2; i < row.length; i++ ) {
-                Integer id = idList.get(i - 2);
-                Integer idCount = idCountList.get(idCountIndex);
-                double[] values = outData.get(id);
-                if (values == null) {
-                    values = new double[idCount];
-                    outData.put(id, values);
-                }
-                for( int j = 0; j < idCount; j++, i++ ) {
-                    if (row[i] == null || row[i].length() == 0) {
-                        values[j] = novalue;
-                    } else {
-                        String valueStr = row[i].trim();
-                        if (valueStr.equals(fileNovalue)) {
-                            values[j] = novalue;
-                        } else {
-                            values[j] = Double.parseDouble(valueStr);
-                        }
-                    }
+    /**
+     * Convert the values of a row, the novalues to {@link #novalue}.
+     * 
+     * @param row the row.
+     * @return the values, indexed by column.
+     */
+    private double[] toValues( String[] row ) {
+        double[] rowValues = new double[row.length];
+        for( int i = 2; i < row.length; i++ ) {
+            if (row[i] == null || row[i].length() == 0) {
+                rowValues[i] = novalue;
+            } else {
+                String valueStr = row[i].trim();
+                if (valueStr.equals(fileNovalue)) {
+                    rowValues[i] = novalue;
+                } else {
+                    rowValues[i] = Double.parseDouble(valueStr);
                 }
-                idCountIndex++;
-                i--;
             }
-        } else {
-            outData = null;
         }
+        return rowValues;
+    }
 
-        // time ran out
-        if (tEnd != null && tCurrent.equals(tEnd)) {
-            doProcess = false;
+    private boolean isFileNovalue( int row, int col ) {
+        double value = columnValues[col][row];
+        if (Double.isNaN(value)) {
+            return true;
         }
-        // data ran out
-        if (!rowsIterator.hasNext()) {
-            doProcess = false;
+        // the novalue is matched as text, -9999 is not -9999.0
+        return value == fileNovalueNumber && table.getText(row, col).trim().equals(fileNovalue);
+    }
+
+    /**
+     * Get the values aligned with the expected timestep from the parsed columns.
+     * 
+     * @param expectedDT the expected timestep.
+     * @return the values, indexed by column, or <code>null</code> if the data ran out.
+     * @throws IOException if the expected timestep is < than the current.
+     */
+    private double[] getExpectedValues( DateTime expectedDT ) throws IOException {
+        long expected = expectedDT.getMillis();
+        while( currentRow < times.length ) {
+            long current = times[currentRow];
+            if (current == expected) {
+                double[] rowValues = new double[columnValues.length];
+                if (pNum == 1) {
+                    for( int col = 2; col < columnValues.length; col++ ) {
+                        rowValues[col] = isFileNovalue(currentRow, col) ? novalue : columnValues[col][currentRow];
+                    }
+                    currentRow++;
+                } else {
+                    int rowNum = Math.min(pNum, times.length - currentRow);
+                    for( int col = 2; col < columnValues.length; col++ ) {
+                        double sum = 0;
+                        boolean hasOne = false;
+                        for( int j = 0; j < rowNum; j++ ) {
+                            if (!isFileNovalue(currentRow + j, col)) {
+                                sum = sum + columnValues[col][currentRow + j];
+                                hasOne = true;
+                            }
+                        }
+                        switch( pAggregation ) {
+                        case 0:
+                            rowValues[col] = hasOne ? sum : doubleNovalue;
+                            break;
+                        case 1:
+                            rowValues[col] = hasOne ? sum / pNum : doubleNovalue;
+                            break;
+                        default:
+                            rowValues[col] = novalue;
+                            break;
+                        }
+                    }
+                    currentRow += rowNum;
+                }
+                return rowValues;
+            } else if (current < expected) {
+                // browse until the instant is found
+                currentRow++;
+            } else {
+                String message = "The data are not aligned with the simulation interval ("
+                        + new DateTime(current, DateTimeZone.UTC) + "/" + expectedDT + "). Check your data file: " + file;
+                throw new IOException(message);
+            }
         }
+        return null;
     }
 
     /**
@@ -352,6 +508,8 @@ public class OmsTimeSeriesIteratorReader extends HMModel {
 
     @Finalize
     public void close() throws IOException {
-        rowsIterator.close();
+        if (rowsIterator != null) {
+            rowsIterator.close();
+        }
     }
 }
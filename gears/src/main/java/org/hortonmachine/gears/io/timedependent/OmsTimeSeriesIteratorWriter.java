@@ -55,8 +55,10 @@ import oms3.annotations.UI;
 import oms3.io.DataIO;
 import oms3.io.MemoryTable;
 
+import org.hortonmachine.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.hortonmachine.gears.libs.modules.HMConstants;
 import org.hortonmachine.gears.libs.modules.HMModel;
+import org.hortonmachine.gears.libs.modules.StationValues;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
 
@@ -103,6 +105,10 @@ public class OmsTimeSeriesIteratorWriter extends HMModel {
 
     private boolean columnNamesAreSet = false;
 
+    /* the stations in the columns order and the number of columns */
+    private int[] uniqueIds;
+    private int columnsCount;
+
     private void ensureOpen() throws IOException {
         if (memoryTable == null) {
             memoryTable = new MemoryTable();
@@ -120,10 +126,10 @@ public class OmsTimeSeriesIteratorWriter extends HMModel {
     @Execute
     public void writeNextLine() throws IOException {
         ensureOpen();
-        List<Integer> idsList = new ArrayList<Integer>();
-        List<String> columnNamesList = new ArrayList<String>();
-        List<Integer> uniqueIdsList = new ArrayList<Integer>();
         if (!columnNamesAreSet) {
+            List<Integer> idsList = new ArrayList<Integer>();
+            List<String> columnNamesList = new ArrayList<String>();
+            List<Integer> uniqueIdsList = new ArrayList<Integer>();
             Set<Entry<Integer, double[]>> inDataSet = inData.entrySet();
             for( Entry<Integer, double[]> inDataEntry : inDataSet ) {
                 Integer id = inDataEntry.getKey();
@@ -196,20 +202,28 @@ public class OmsTimeSeriesIteratorWriter extends HMModel {
                 memoryTable.getColumnInfo(j + 1 + index).put("Format", "");
             }
 
+            uniqueIds = new int[uniqueIdsList.size()];
+            for( int j = 0; j < uniqueIds.length; j++ ) {
+                uniqueIds[j] = uniqueIdsList.get(j);
+            }
+            columnsCount = columnNames.length;
+            columnNamesAreSet = true;
         }
 
-        Object[] valuesRow = null;
+        Object[] valuesRow = new Object[columnsCount];
         int index = 0;
         if (runningDateTime != null) {
-            valuesRow = new Object[columnNamesList.size()];
             valuesRow[0] = runningDateTime.toString(formatter);
             index = 1;
-        } else {
-            valuesRow = new Object[columnNamesList.size() - 1];
         }
-        for( Integer id : uniqueIdsList ) {
-            double[] dataArray = inData.get(id);
-            for( double value : dataArray ) {
+        StationValues stationValues = StationValues.fromMap(inData);
+        for( int id : uniqueIds ) {
+            int stationIndex = stationValues.indexOf(id);
+            if (stationIndex < 0) {
+                throw new ModelsIllegalargumentException("No data found for the station: " + id, this, pm);
+            }
+            for( int k = 0; k < stationValues.getCount(stationIndex); k++ ) {
+                double value = stationValues.getValue(stationIndex, k);
                 if (HMConstants.isNovalue(value)) {
                     valuesRow[index++] = fileNovalue;
                 } else {
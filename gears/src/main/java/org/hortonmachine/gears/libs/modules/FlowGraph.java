@@ -0,0 +1,291 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.libs.modules;
+
+import static org.hortonmachine.gears.libs.modules.HMConstants.doubleNovalue;
+import static org.hortonmachine.gears.libs.modules.HMConstants.intNovalue;
+import static org.hortonmachine.gears.libs.modules.HMConstants.isNovalue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.media.jai.iterator.RandomIter;
+
+/**
+ * The drainage graph of a D8 flow directions map.
+ *
+ * <p>Every valid cell has at most one downstream cell, stored as packed index
+ * (<code>col + row * cols</code>), together with the number of cells flowing
+ * into it. The graph is built once and can then be used to accumulate values
+ * from the sources down to the outlets with {@link #accumulate(IFlowAccumulator, int)},
+ * without walking the same paths over and over.</p>
+ *
+ * <p>The validity of cells and the flow directions follow {@link FlowNode}: novalue
+ * cells are not part of the graph, a flow pointing outside of the raster or to a
+ * novalue cell and the outlet value have no downstream.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class FlowGraph {
+    /** The downstream of cells that don't flow into another cell. */
+    public static final int NO_DOWNSTREAM = -1;
+
+    private static final int INVALID = -2;
+
+    public final int cols;
+    public final int rows;
+
+    private final int[] downstream;
+    private final byte[] upstreamCount;
+
+    private final int[] dCols = new int[PackedGrid.NEIGHBOURS];
+    private final int[] dRows = new int[PackedGrid.NEIGHBOURS];
+
+    /**
+     * Build the graph from the flow directions.
+     *
+     * @param flow the flow directions, packed as <code>col + row * cols</code>.
+     * @param cols the cols of the grid.
+     * @param rows the rows of the grid.
+     * @throws IllegalArgumentException if a flow value is not a known direction.
+     */
+    public FlowGraph( int[] flow, int cols, int rows ) {
+        this.cols = cols;
+        this.rows = rows;
+        Direction[] orderedDirs = Direction.getOrderedDirs();
+        for( int i = 0; i < PackedGrid.NEIGHBOURS; i++ ) {
+            dCols[i] = orderedDirs[i].col;
+            dRows[i] = orderedDirs[i].row;
+        }
+
+        int size = cols * rows;
+        downstream = new int[size];
+        upstreamCount = new byte[size];
+        for( int index = 0; index < size; index++ ) {
+            downstream[index] = isNovalue(flow[index]) ? INVALID : NO_DOWNSTREAM;
+        }
+        for( int index = 0; index < size; index++ ) {
+            if (downstream[index] == INVALID) {
+                continue;
+            }
+            Direction direction = Direction.forFlow(flow[index]);
+            if (direction == null) {
+                continue;
+            }
+            int col = index % cols + direction.col;
+            int row = index / cols + direction.row;
+            if (col < 0 || col >= cols || row < 0 || row >= rows) {
+                continue;
+            }
+            int next = col + row * cols;
+            if (downstream[next] != INVALID) {
+                downstream[index] = next;
+                upstreamCount[next]++;
+            }
+        }
+    }
+
+    /**
+     * Build the graph reading the flow directions from an iterator.
+     *
+     * <p>The values are read as double, so that a NaN novalue isn't
+     * truncated to a flow of 0.</p>
+     *
+     * @param flowIter the flow directions map.
+     * @param cols the cols of the map.
+     * @param rows the rows of the map.
+     * @return the graph.
+     */
+    public static FlowGraph fromFlowIter( RandomIter flowIter, int cols, int rows ) {
+        int[] flow = new int[cols * rows];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                double value = flowIter.getSampleDouble(c, r, 0);
+                flow[c + r * cols] = isNovalue(value) ? intNovalue : (int) value;
+            }
+        }
+        return new FlowGraph(flow, cols, rows);
+    }
+
+    public int index( int col, int row ) {
+        return col + row * cols;
+    }
+
+    /**
+     * @return <code>true</code> if the cell has a valid flow.
+     */
+    public boolean isValid( int index ) {
+        return downstream[index] != INVALID;
+    }
+
+    /**
+     * @return the index of the downstream cell or {@link #NO_DOWNSTREAM}.
+     */
+    public int getDownstream( int index ) {
+        int next = downstream[index];
+        return next == INVALID ? NO_DOWNSTREAM : next;
+    }
+
+    /**
+     * @return the number of cells flowing into the cell.
+     */
+    public int getUpstreamCount( int index ) {
+        return upstreamCount[index];
+    }
+
+    /**
+     * @return <code>true</code> if the cell is valid and no cell flows into it.
+     */
+    public boolean isSource( int index ) {
+        return downstream[index] != INVALID && upstreamCount[index] == 0;
+    }
+
+    /**
+     * Get the cells flowing into a cell.
+     *
+     * @param index the index of the cell.
+     * @param upstream the array of size {@link PackedGrid#NEIGHBOURS} to fill.
+     * @return the number of upstream cells put in the array.
+     */
+    public int getUpstream( int index, int[] upstream ) {
+        int count = 0;
+        if (upstreamCount[index] == 0) {
+            return 0;
+        }
+        int col = index % cols;
+        int row = index / cols;
+        for( int i = 0; i < PackedGrid.NEIGHBOURS; i++ ) {
+            int c = col + dCols[i];
+            int r = row + dRows[i];
+            if (c < 0 || c >= cols || r < 0 || r >= rows) {
+                continue;
+            }
+            int neighbour = c + r * cols;
+            if (downstream[neighbour] == index) {
+                upstream[count++] = neighbour;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Accumulate values along the flow, from the sources to the outlets.
+     *
+     * <p>Each cell is processed once, after all the cells flowing into it. Work
+     * starts from the sources, split between the threads; a thread follows the flow
+     * downstream until it reaches a confluence of which other branches are not done
+     * yet, leaving that cell to the thread completing the last branch. The upstream
+     * values are always merged in the same order, so the result doesn't depend on
+     * the number of threads.</p>
+     *
+     * <p>Cells that are part of a flow loop are never reached and stay novalue.</p>
+     *
+     * @param accumulator the accumulation operator.
+     * @param threads the number of threads to use.
+     * @return the accumulated values, packed as <code>col + row * cols</code>, novalue
+     *          for the invalid cells.
+     * @throws Exception
+     */
+    public double[] accumulate( final IFlowAccumulator accumulator, int threads ) throws Exception {
+        int size = downstream.length;
+        final double[] result = new double[size];
+        Arrays.fill(result, doubleNovalue);
+
+        final AtomicIntegerArray pending = new AtomicIntegerArray(size);
+        int sourcesNum = 0;
+        for( int index = 0; index < size; index++ ) {
+            pending.set(index, upstreamCount[index]);
+            if (isSource(index)) {
+                sourcesNum++;
+            }
+        }
+        final int[] sources = new int[sourcesNum];
+        int s = 0;
+        for( int index = 0; index < size; index++ ) {
+            if (isSource(index)) {
+                sources[s++] = index;
+            }
+        }
+
+        if (threads <= 1 || sourcesNum < 2) {
+            accumulateFrom(sources, 0, sourcesNum, accumulator, pending, result);
+            return result;
+        }
+
+        // more chunks than threads, since the length of the paths varies a lot
+        int chunksNum = Math.min(sourcesNum, threads * 8);
+        int chunkSize = (int) Math.ceil(sourcesNum / (double) chunksNum);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future< ? >> futures = new ArrayList<>();
+            for( int from = 0; from < sourcesNum; from += chunkSize ) {
+                final int chunkFrom = from;
+                final int chunkTo = Math.min(from + chunkSize, sourcesNum);
+                futures.add(pool.submit(new Runnable(){
+                    public void run() {
+                        accumulateFrom(sources, chunkFrom, chunkTo, accumulator, pending, result);
+                    }
+                }));
+            }
+            for( Future< ? > future : futures ) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+    private void accumulateFrom( int[] sources, int from, int to, IFlowAccumulator accumulator, AtomicIntegerArray pending,
+            double[] result ) {
+        int[] upstream = new int[PackedGrid.NEIGHBOURS];
+        for( int i = from; i < to; i++ ) {
+            int index = sources[i];
+            while( true ) {
+                double value = accumulator.start(index);
+                int upstreamNum = getUpstream(index, upstream);
+                for( int u = 0; u < upstreamNum; u++ ) {
+                    value = accumulator.merge(index, value, upstream[u], result[upstream[u]]);
+                }
+                result[index] = value;
+
+                int next = downstream[index];
+                // the decrement publishes the result to the thread that continues downstream
+                if (next < 0 || pending.decrementAndGet(next) != 0) {
+                    break;
+                }
+                index = next;
+            }
+        }
+    }
+
+}
@@ -24,6 +24,10 @@ import java.util.List;
 
 import javax.media.jai.iterator.RandomIter;
 
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.hortonmachine.gears.io.grasslegacy.GrassLegacyRandomIter;
+import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
+import org.hortonmachine.gears.utils.coverage.HMRasterRandomIter;
 import org.hortonmachine.gears.utils.math.NumericsUtilities;
 
 /**
@@ -71,14 +75,25 @@ public class FlowNode extends Node {
     public FlowNode( RandomIter flowIter, int cols, int rows, int col, int row ) {
         super(flowIter, cols, rows, col, row);
 
+        /*
+         * the flow of the node and of its neighbours, in the order of
+         * the switch below, with the node itself at position 4
+         */
+        int[] flows = new int[9];
+        if (isLockFree(gridIter)) {
+            readFlows(flows);
+        } else {
+            // JAI iterators keep state between reads, a single lock for all the reads
+            synchronized (gridIter) {
+                readFlows(flows);
+            }
+        }
+
         if (!isInRaster(col, row)) {
             isValid = false;
             flow = intNovalue;
         } else {
-            // TODO remove the two sync blocks if possible
-            synchronized (gridIter) {
-                flow = gridIter.getSample(col, row, 0);
-            }
+            flow = flows[4];
             if (HMConstants.isNovalue(flow)) {
                 isValid = false;
             } else {
@@ -99,13 +114,9 @@ public class FlowNode extends Node {
                 }
                 int newC = col + c;
                 int newR = row + r;
-                int tmp = intNovalue;
+                int tmp = flows[index];
                 if (!isInRaster(newC, newR)) {
                     touchesBound = true;
-                } else {
-                    synchronized (gridIter) {
-                        tmp = gridIter.getSample(newC, newR, 0);
-                    }
                 }
 
                 switch( index ) {
@@ -146,6 +157,38 @@ public class FlowNode extends Node {
         }
     }
 
+    /**
+     * Read the flow of the node and of its neighbours, novalue outside of the raster.
+     */
+    private void readFlows( int[] flows ) {
+        int index = -1;
+        for( int c = -1; c <= 1; c++ ) {
+            for( int r = -1; r <= 1; r++ ) {
+                index++;
+                int newC = col + c;
+                int newR = row + r;
+                if (isInRaster(newC, newR)) {
+                    flows[index] = gridIter.getSample(newC, newR, 0);
+                } else {
+                    flows[index] = intNovalue;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if reads from an iterator can be done from several threads without locking.
+     * 
+     * <p>This is the case of the iterators reading directly from arrays, as the ones of
+     * {@link CoverageUtilities#getThreadSafeRandomIterator(GridCoverage2D)}.</p>
+     * 
+     * @param iter the iterator.
+     * @return <code>true</code> if the iterator doesn't need to be locked.
+     */
+    public static boolean isLockFree( RandomIter iter ) {
+        return iter instanceof HMRasterRandomIter || iter instanceof GrassLegacyRandomIter;
+    }
+
     @Override
     public String toString() {
         return "FlowNode [\n\tcol=" + col + //
@@ -0,0 +1,64 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.libs.modules;
+
+/**
+ * The operator used by {@link FlowGraph#accumulate(IFlowAccumulator, int)} to
+ * accumulate values along the flow.
+ *
+ * <p>The value of a cell is created through {@link #start(int)} and then
+ * merged with the accumulated value of each of the cells flowing into it.
+ * Implementations are called from several threads, for different cells, so
+ * they must not keep state between the calls.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public interface IFlowAccumulator {
+
+    /**
+     * The value of a cell before the upstream values are merged.
+     *
+     * @param index the packed index of the cell.
+     * @return the start value.
+     */
+    public double start( int index );
+
+    /**
+     * Merge the accumulated value of an upstream cell into the value of a cell.
+     *
+     * @param index the packed index of the cell.
+     * @param value the current value of the cell.
+     * @param upstreamIndex the packed index of the upstream cell.
+     * @param upstreamValue the accumulated value of the upstream cell.
+     * @return the new value of the cell.
+     */
+    public double merge( int index, double value, int upstreamIndex, double upstreamValue );
+
+    /**
+     * Accumulator that counts the cells draining through each cell, itself included.
+     */
+    public static final IFlowAccumulator CELLS_COUNT = new IFlowAccumulator(){
+        public double start( int index ) {
+            return 1.0;
+        }
+        public double merge( int index, double value, int upstreamIndex, double upstreamValue ) {
+            return value + upstreamValue;
+        }
+    };
+
+}
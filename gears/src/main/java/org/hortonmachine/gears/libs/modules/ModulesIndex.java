@@ -0,0 +1,191 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.libs.modules;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.scannotation.AnnotationDB;
+
+import oms3.Access;
+import oms3.ComponentAccess;
+import oms3.annotations.Description;
+import oms3.annotations.Execute;
+import oms3.util.ComponentIndex;
+import oms3.util.ComponentIndex.Component;
+import oms3.util.ComponentIndex.ComponentField;
+
+/**
+ * The modules of a jar (or class folder), as needed by the modules catalogs.
+ *
+ * <p>The modules are read from the {@link ComponentIndex} written at build time.
+ * If the jar has no index, as happens when running from an IDE that doesn't
+ * run annotation processors, the jar is scanned for annotations as it used to be.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class ModulesIndex {
+
+    private final URL baseclassUrl;
+    /**
+     * The indexed modules by class name, <code>null</code> if there is no index.
+     */
+    private final Map<String, Component> indexedModules;
+
+    /**
+     * Load the modules of a jar or class folder.
+     *
+     * @param baseclassUrl the url of the jar or class folder.
+     */
+    public ModulesIndex( URL baseclassUrl ) {
+        this.baseclassUrl = baseclassUrl;
+        Map<String, Component> tmp = null;
+        try {
+            List<Component> components = ComponentIndex.read(baseclassUrl);
+            if (components != null) {
+                tmp = new HashMap<>();
+                for( Component component : components ) {
+                    tmp.put(component.className, component);
+                }
+            }
+        } catch (IOException e) {
+            // fall back on scanning
+            e.printStackTrace();
+        }
+        indexedModules = tmp;
+    }
+
+    /**
+     * @return <code>true</code> if the modules are read from an index.
+     */
+    public boolean isIndexed() {
+        return indexedModules != null;
+    }
+
+    /**
+     * Get the names of the classes with an {@link Execute} method.
+     *
+     * <p>If the index has no module in the package, it is not trusted (it could
+     * be left over from a partial build) and the jar is scanned.</p>
+     *
+     * @param packagePrefix the package the classes have to be in.
+     * @return the class names.
+     * @throws IOException
+     */
+    public Set<String> getModuleClassNames( String packagePrefix ) throws IOException {
+        Set<String> classNames = new LinkedHashSet<>();
+        if (indexedModules != null) {
+            addClassNames(classNames, indexedModules.keySet(), packagePrefix);
+        }
+        if (classNames.isEmpty()) {
+            AnnotationDB db = new AnnotationDB();
+            db.scanArchives(baseclassUrl);
+            Map<String, Set<String>> annotationIndex = db.getAnnotationIndex();
+            addClassNames(classNames, annotationIndex.get(Execute.class.getName()), packagePrefix);
+        }
+        return classNames;
+    }
+
+    private static void addClassNames( Set<String> classNames, Collection<String> allNames, String packagePrefix ) {
+        if (allNames != null) {
+            for( String className : allNames ) {
+                if (className.startsWith(packagePrefix)) {
+                    classNames.add(className);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the input and output fields of a module.
+     *
+     * <p>With an index the module is not instantiated.</p>
+     *
+     * @param moduleClass the module class.
+     * @param statusString the status to set in the fields.
+     * @return the list of fields, inputs first.
+     * @throws Exception
+     */
+    public List<ClassField> getFields( Class< ? > moduleClass, String statusString ) throws Exception {
+        List<ClassField> fields = new ArrayList<>();
+        Component component = indexedModules != null ? indexedModules.get(moduleClass.getName()) : null;
+        if (component != null) {
+            for( ComponentField componentField : component.fields ) {
+                if (componentField.isIn) {
+                    fields.add(toClassField(moduleClass, statusString, componentField, true));
+                }
+            }
+            for( ComponentField componentField : component.fields ) {
+                if (componentField.isOut) {
+                    fields.add(toClassField(moduleClass, statusString, componentField, false));
+                }
+            }
+            return fields;
+        }
+
+        Object annotatedObject = moduleClass.newInstance();
+        ComponentAccess cA = new ComponentAccess(annotatedObject);
+        for( Access access : cA.inputs() ) {
+            fields.add(toClassField(moduleClass, statusString, access.getField(), true));
+        }
+        for( Access access : cA.outputs() ) {
+            fields.add(toClassField(moduleClass, statusString, access.getField(), false));
+        }
+        return fields;
+    }
+
+    private static ClassField toClassField( Class< ? > moduleClass, String statusString, ComponentField componentField,
+            boolean isIn ) throws NoSuchFieldException {
+        ClassField cf = newClassField(moduleClass, statusString, isIn);
+        cf.fieldName = componentField.name;
+        cf.fieldDescription = componentField.description != null ? componentField.description : componentField.name;
+        cf.fieldClass = moduleClass.getField(componentField.name).getType();
+        return cf;
+    }
+
+    private static ClassField toClassField( Class< ? > moduleClass, String statusString, Field field, boolean isIn ) {
+        ClassField cf = newClassField(moduleClass, statusString, isIn);
+        String name = field.getName();
+        String description = name;
+        Description descriptionAnnot = field.getAnnotation(Description.class);
+        if (descriptionAnnot != null && descriptionAnnot.value() != null) {
+            description = descriptionAnnot.value();
+        }
+        cf.fieldName = name;
+        cf.fieldDescription = description;
+        cf.fieldClass = field.getType();
+        return cf;
+    }
+
+    private static ClassField newClassField( Class< ? > moduleClass, String statusString, boolean isIn ) {
+        ClassField cf = new ClassField();
+        cf.isIn = isIn;
+        cf.isOut = !isIn;
+        cf.parentClass = moduleClass;
+        cf.parentClassStatus = statusString;
+        return cf;
+    }
+}
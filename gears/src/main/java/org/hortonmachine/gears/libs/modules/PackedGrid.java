@@ -0,0 +1,331 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.libs.modules;
+
+import static java.lang.Math.pow;
+import static java.lang.Math.sqrt;
+import static org.hortonmachine.gears.libs.modules.HMConstants.doubleNovalue;
+import static org.hortonmachine.gears.libs.modules.HMConstants.isNovalue;
+
+import org.hortonmachine.gears.utils.coverage.HMDoubleRaster;
+
+/**
+ * An allocation free alternative to {@link GridNode} navigation.
+ *
+ * <p>Cells are addressed by packed indexes (<code>col + row * cols</code>) into
+ * a primitive elevation array, and neighbours are reached through precomputed
+ * index offsets, in the order of {@link Direction#getOrderedDirs()}. All the
+ * queries of {@link GridNode} (validity, pits, steepest path downstream, flow)
+ * are available as methods taking the index of the cell, with the same semantic.</p>
+ *
+ * <p>Methods that return neighbours fill a caller supplied <code>int[8]</code>
+ * buffer, so that loops can visit millions of cells without creating objects.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class PackedGrid {
+
+    /** The number of neighbours of a cell. */
+    public static final int NEIGHBOURS = 8;
+
+    public final int cols;
+    public final int rows;
+    public final double xRes;
+    public final double yRes;
+
+    private final double[] elevation;
+
+    private final int[] dCols = new int[NEIGHBOURS];
+    private final int[] dRows = new int[NEIGHBOURS];
+    private final int[] dIndexes = new int[NEIGHBOURS];
+    private final int[] flows = new int[NEIGHBOURS];
+    private final double[] distances = new double[NEIGHBOURS];
+
+    /**
+     * Constructor.
+     *
+     * @param elevation the elevation array, packed as <code>col + row * cols</code>.
+     *          It is used directly, so changes through {@link #setElevation(int, double)}
+     *          are visible to the owner of the array.
+     * @param cols the cols of the grid.
+     * @param rows the rows of the grid.
+     * @param xRes the x resolution.
+     * @param yRes the y resolution.
+     */
+    public PackedGrid( double[] elevation, int cols, int rows, double xRes, double yRes ) {
+        if (elevation.length < (long) cols * rows) {
+            throw new IllegalArgumentException("The elevation array is smaller than cols * rows.");
+        }
+        this.elevation = elevation;
+        this.cols = cols;
+        this.rows = rows;
+        this.xRes = xRes;
+        this.yRes = yRes;
+
+        Direction[] orderedDirs = Direction.getOrderedDirs();
+        for( int i = 0; i < NEIGHBOURS; i++ ) {
+            Direction direction = orderedDirs[i];
+            dCols[i] = direction.col;
+            dRows[i] = direction.row;
+            dIndexes[i] = direction.col + direction.row * cols;
+            flows[i] = direction.getFlow();
+            // same as GridNode#getDistance, to get the same steepest paths
+            distances[i] = sqrt(pow(direction.col * xRes, 2.0) + pow(direction.row * yRes, 2.0));
+        }
+    }
+
+    /**
+     * Create a {@link PackedGrid} on a {@link HMDoubleRaster}.
+     *
+     * <p>The data of the raster are shared if they are already packed, else they are copied.</p>
+     *
+     * @param raster the raster.
+     * @param xRes the x resolution.
+     * @param yRes the y resolution.
+     * @return the grid.
+     */
+    public static PackedGrid fromRaster( HMDoubleRaster raster, double xRes, double yRes ) {
+        double[] data = raster.data;
+        if (raster.offset != 0 || raster.stride != raster.cols) {
+            data = new double[raster.cols * raster.rows];
+            for( int r = 0; r < raster.rows; r++ ) {
+                System.arraycopy(raster.data, raster.index(0, r), data, r * raster.cols, raster.cols);
+            }
+        }
+        return new PackedGrid(data, raster.cols, raster.rows, xRes, yRes);
+    }
+
+    /**
+     * @return the backing elevation array.
+     */
+    public double[] getElevationArray() {
+        return elevation;
+    }
+
+    public int index( int col, int row ) {
+        return col + row * cols;
+    }
+
+    public int col( int index ) {
+        return index % cols;
+    }
+
+    public int row( int index ) {
+        return index / cols;
+    }
+
+    public boolean isInRaster( int col, int row ) {
+        return col >= 0 && col < cols && row >= 0 && row < rows;
+    }
+
+    public double getElevation( int index ) {
+        return elevation[index];
+    }
+
+    public void setElevation( int index, double value ) {
+        elevation[index] = value;
+    }
+
+    /**
+     * @return <code>true</code> if the cell has a valid elevation.
+     */
+    public boolean isValid( int index ) {
+        return !isNovalue(elevation[index]);
+    }
+
+    /**
+     * Get the index of a neighbour.
+     *
+     * @param index the index of the cell.
+     * @param dir the position of the neighbour in {@link Direction#getOrderedDirs()}.
+     * @return the index of the neighbour or <code>-1</code> if it is outside the grid.
+     */
+    public int neighbour( int index, int dir ) {
+        int col = index % cols;
+        int row = index / cols;
+        if (!isInRaster(col + dCols[dir], row + dRows[dir])) {
+            return -1;
+        }
+        return index + dIndexes[dir];
+    }
+
+    /**
+     * Get the elevation of a neighbour.
+     *
+     * @param index the index of the cell.
+     * @param dir the position of the neighbour in {@link Direction#getOrderedDirs()}.
+     * @return the elevation or novalue if the neighbour is outside the grid.
+     */
+    public double getNeighbourElevation( int index, int dir ) {
+        int n = neighbour(index, dir);
+        if (n < 0) {
+            return doubleNovalue;
+        }
+        return elevation[n];
+    }
+
+    /**
+     * @return the distance to the neighbour in a given position of {@link Direction#getOrderedDirs()}.
+     */
+    public double getDistance( int dir ) {
+        return distances[dir];
+    }
+
+    /**
+     * @return <code>true</code> if the cell is on the border of the grid.
+     */
+    public boolean touchesBound( int index ) {
+        int col = index % cols;
+        int row = index / cols;
+        return col == 0 || row == 0 || col == cols - 1 || row == rows - 1;
+    }
+
+    /**
+     * @return <code>true</code> if one of the 8 neighbours is novalue or outside the grid.
+     */
+    public boolean touchesNovalue( int index ) {
+        if (touchesBound(index)) {
+            return true;
+        }
+        for( int i = 0; i < NEIGHBOURS; i++ ) {
+            if (isNovalue(elevation[index + dIndexes[i]])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the min of the valid neighbour elevations that differ from the cell elevation,
+     *          or {@link Double#POSITIVE_INFINITY}, as {@link GridNode#getSurroundingMin()}.
+     */
+    public double getSurroundingMin( int index ) {
+        double elev = elevation[index];
+        double min = Double.POSITIVE_INFINITY;
+        for( int i = 0; i < NEIGHBOURS; i++ ) {
+            double tmp = getNeighbourElevation(index, i);
+            if (!isNovalue(tmp) && tmp < min && tmp != elev) {
+                min = tmp;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * @return <code>true</code> if the cell is a pit, as {@link GridNode#isPit()}.
+     */
+    public boolean isPit( int index ) {
+        if (!isValid(index) || touchesNovalue(index)) {
+            return false;
+        }
+        return elevation[index] < getSurroundingMin(index);
+    }
+
+    /**
+     * Check if the cell is lower or equal to all the given cells, as {@link GridNode#isPitFor(java.util.List)}.
+     *
+     * @param index the index of the cell.
+     * @param others the indexes of the cells to check against.
+     * @param count the number of indexes to use from the others array.
+     * @return <code>true</code> if the cell is a pit for the given cells.
+     */
+    public boolean isPitFor( int index, int[] others, int count ) {
+        if (!isValid(index) || touchesNovalue(index)) {
+            return false;
+        }
+        double min = Double.POSITIVE_INFINITY;
+        for( int i = 0; i < count; i++ ) {
+            int other = others[i];
+            if (other >= 0 && isValid(other) && elevation[other] < min) {
+                min = elevation[other];
+            }
+        }
+        return elevation[index] <= min;
+    }
+
+    /**
+     * Fill the buffer with the valid neighbours of a cell, as {@link GridNode#getValidSurroundingNodes()}.
+     *
+     * @param index the index of the cell.
+     * @param buffer an array of at least {@link #NEIGHBOURS} elements.
+     * @return the number of neighbours put in the buffer.
+     */
+    public int getValidNeighbours( int index, int[] buffer ) {
+        int count = 0;
+        for( int i = 0; i < NEIGHBOURS; i++ ) {
+            int n = neighbour(index, i);
+            if (n >= 0 && isValid(n)) {
+                buffer[count++] = n;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the next downstream cell following the steepest path, as {@link GridNode#goDownstreamSP()}.
+     *
+     * @param index the index of the cell.
+     * @return the position in {@link Direction#getOrderedDirs()} of the downstream
+     *          neighbour, or <code>-1</code> if there is none.
+     */
+    public int getDownstreamDirSP( int index ) {
+        double elev = elevation[index];
+        double maxSlope = Double.NEGATIVE_INFINITY;
+        int downDir = -1;
+        for( int i = 0; i < NEIGHBOURS; i++ ) {
+            int n = neighbour(index, i);
+            if (n >= 0 && isValid(n)) {
+                double slope = (elev - elevation[n]) / distances[i];
+                if (slope > 0 && slope > maxSlope) {
+                    downDir = i;
+                    maxSlope = slope;
+                }
+            }
+        }
+        return downDir;
+    }
+
+    /**
+     * Get the next downstream cell following the steepest path.
+     *
+     * @param index the index of the cell.
+     * @return the index of the downstream cell or <code>-1</code> if there is none.
+     */
+    public int goDownstreamSP( int index ) {
+        int dir = getDownstreamDirSP(index);
+        if (dir < 0) {
+            return -1;
+        }
+        return index + dIndexes[dir];
+    }
+
+    /**
+     * Get the flow value of the cell based on the steepest path, as {@link GridNode#getFlow()}.
+     *
+     * @param index the index of the cell.
+     * @return the value of flow or {@link HMConstants#intNovalue}.
+     */
+    public int getFlow( int index ) {
+        int dir = getDownstreamDirSP(index);
+        if (dir < 0) {
+            return HMConstants.intNovalue;
+        }
+        return flows[dir];
+    }
+
+}
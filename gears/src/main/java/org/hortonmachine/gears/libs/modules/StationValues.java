@@ -0,0 +1,528 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.libs.modules;
+
+import static org.hortonmachine.gears.libs.modules.HMConstants.doubleNovalue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * The values of a set of stations (or basins) at a timestep, the primitive
+ * alternative to the <code>HashMap&lt;Integer, double[]&gt;</code> exchanged
+ * by the time dependent readers, writers and the models using them.
+ *
+ * <p>Station ids are kept in insertion order and indexed by an int hash, the
+ * values of all the stations are packed in a single array. Stations are
+ * addressed by their index, found through {@link #indexOf(int)}, so that
+ * loops over stations neither box ids nor create arrays.</p>
+ *
+ * <p>The stations (ids and value counts) can be shared by the containers of
+ * following timesteps through {@link #newValues()}, which only creates the
+ * new values array.</p>
+ *
+ * <p>The {@link HashMap} API of existing modules is supported by {@link #asMap()},
+ * a map that is filled from the container only once it is used as a map, and
+ * {@link #fromMap(Map)}, which gives back the container of such a map without
+ * copying it. Consumers should treat the containers they get as read only.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class StationValues {
+
+    private int[] ids;
+    /** the start of the values of every station, offsets[size] is the values used. */
+    private int[] offsets;
+    /** open addressing table of index + 1, 0 being free. */
+    private int[] slots;
+    private int size;
+    /** <code>true</code> if the stations are used by another container too. */
+    private boolean isShared;
+
+    private double[] values;
+
+    /**
+     * Create an empty container.
+     */
+    public StationValues() {
+        this(16);
+    }
+
+    /**
+     * Create an empty container.
+     *
+     * @param capacity the expected number of stations.
+     */
+    public StationValues( int capacity ) {
+        capacity = Math.max(capacity, 4);
+        ids = new int[capacity];
+        offsets = new int[capacity + 1];
+        slots = new int[slotsFor(capacity)];
+        values = new double[capacity];
+    }
+
+    private StationValues( StationValues stations ) {
+        ids = stations.ids;
+        offsets = stations.offsets;
+        slots = stations.slots;
+        size = stations.size;
+        isShared = true;
+        stations.isShared = true;
+        values = new double[offsets[size]];
+        Arrays.fill(values, doubleNovalue);
+    }
+
+    /**
+     * Create a container for the same stations, as for the next timestep.
+     *
+     * <p>The stations are shared, the values are all set to novalue.</p>
+     *
+     * @return the new container.
+     */
+    public StationValues newValues() {
+        return new StationValues(this);
+    }
+
+    /**
+     * @return the number of stations.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index the index of the station.
+     * @return the id of the station.
+     */
+    public int getId( int index ) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    /**
+     * Find a station.
+     *
+     * @param id the id of the station.
+     * @return the index of the station or -1 if it is not there.
+     */
+    public int indexOf( int id ) {
+        int mask = slots.length - 1;
+        for( int slot = hash(id) & mask;; slot = (slot + 1) & mask ) {
+            int index = slots[slot] - 1;
+            if (index < 0) {
+                return -1;
+            }
+            if (ids[index] == id) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * @param index the index of the station.
+     * @return the number of values of the station.
+     */
+    public int getCount( int index ) {
+        checkIndex(index);
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * @param index the index of the station.
+     * @return the (first) value of the station.
+     */
+    public double getValue( int index ) {
+        return getValue(index, 0);
+    }
+
+    /**
+     * @param index the index of the station.
+     * @param k the position of the value in the values of the station.
+     * @return the value.
+     */
+    public double getValue( int index, int k ) {
+        return values[position(index, k)];
+    }
+
+    /**
+     * @param id the id of the station.
+     * @return the (first) value of the station.
+     * @throws IllegalArgumentException if the station is not there.
+     */
+    public double getValueOf( int id ) {
+        int index = indexOf(id);
+        if (index < 0) {
+            throw new IllegalArgumentException("No values for the station: " + id);
+        }
+        return values[offsets[index]];
+    }
+
+    /**
+     * @param index the index of the station.
+     * @param value the (first) value of the station.
+     */
+    public void setValue( int index, double value ) {
+        setValue(index, 0, value);
+    }
+
+    /**
+     * @param index the index of the station.
+     * @param k the position of the value in the values of the station.
+     * @param value the value.
+     */
+    public void setValue( int index, int k, double value ) {
+        values[position(index, k)] = value;
+    }
+
+    /**
+     * @param index the index of the station.
+     * @return a copy of the values of the station.
+     */
+    public double[] getValues( int index ) {
+        checkIndex(index);
+        return Arrays.copyOfRange(values, offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * Add a station, with its values set to novalue.
+     *
+     * @param id the id of the station.
+     * @param count the number of values of the station.
+     * @return the index of the station.
+     * @throws IllegalArgumentException if the station is already there.
+     */
+    public int add( int id, int count ) {
+        if (count < 1) {
+            throw new IllegalArgumentException("A station needs at least one value: " + count);
+        }
+        if (indexOf(id) >= 0) {
+            throw new IllegalArgumentException("The station is already there: " + id);
+        }
+        if (isShared) {
+            ids = ids.clone();
+            offsets = offsets.clone();
+            slots = slots.clone();
+            isShared = false;
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2 + 1);
+        }
+        int start = offsets[size];
+        if (start + count > values.length) {
+            values = Arrays.copyOf(values, Math.max(values.length * 2, start + count));
+        }
+        Arrays.fill(values, start, start + count, doubleNovalue);
+        ids[size] = id;
+        offsets[size + 1] = start + count;
+        size++;
+        if (slotsFor(size) > slots.length) {
+            rehash(slotsFor(size));
+        } else {
+            insert(size - 1);
+        }
+        return size - 1;
+    }
+
+    /**
+     * Set the values of a station, adding it if it is not there.
+     *
+     * @param id the id of the station.
+     * @param stationValues the values of the station.
+     * @return the index of the station.
+     * @throws IllegalArgumentException if the station is there with a different number of values.
+     */
+    public int put( int id, double... stationValues ) {
+        int index = indexOf(id);
+        if (index < 0) {
+            index = add(id, stationValues.length);
+        } else if (getCount(index) != stationValues.length) {
+            throw new IllegalArgumentException("The station " + id + " has " + getCount(index) + " values, not "
+                    + stationValues.length);
+        }
+        System.arraycopy(stationValues, 0, values, offsets[index], stationValues.length);
+        return index;
+    }
+
+    /**
+     * Get a map of the values, for modules using the {@link HashMap} API.
+     *
+     * <p>The map is filled, as the maps the modules used to create, the first
+     * time it is used, so that it costs nothing if it is passed to modules that
+     * read the container through {@link #fromMap(Map)}.</p>
+     *
+     * @return the map of the station ids to a copy of their values.
+     */
+    public HashMap<Integer, double[]> asMap() {
+        return new StationsMap(this);
+    }
+
+    /**
+     * Get the container of a map.
+     *
+     * @param map the map, as created by {@link #asMap()} or by modules using the {@link HashMap} API.
+     * @return the container the map was created from, if it has not been used as a
+     *          map, else a new container with the entries of the map in its order.
+     */
+    public static StationValues fromMap( Map<Integer, double[]> map ) {
+        if (map instanceof StationsMap) {
+            StationsMap stationsMap = (StationsMap) map;
+            if (!stationsMap.isFilled) {
+                return stationsMap.stationValues;
+            }
+        }
+        StationValues stationValues = new StationValues(map.size());
+        for( Entry<Integer, double[]> entry : map.entrySet() ) {
+            stationValues.put(entry.getKey(), entry.getValue());
+        }
+        return stationValues;
+    }
+
+    private int position( int index, int k ) {
+        checkIndex(index);
+        int position = offsets[index] + k;
+        if (k < 0 || position >= offsets[index + 1]) {
+            throw new IndexOutOfBoundsException("Value " + k + " of station " + ids[index]);
+        }
+        return position;
+    }
+
+    private void checkIndex( int index ) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Station index: " + index + ", stations: " + size);
+        }
+    }
+
+    private void rehash( int slotsCount ) {
+        slots = new int[slotsCount];
+        for( int i = 0; i < size; i++ ) {
+            insert(i);
+        }
+    }
+
+    private void insert( int index ) {
+        int mask = slots.length - 1;
+        int slot = hash(ids[index]) & mask;
+        while( slots[slot] != 0 ) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = index + 1;
+    }
+
+    /**
+     * @return the power of two table size keeping the load under 0.5.
+     */
+    private static int slotsFor( int stations ) {
+        return Integer.highestOneBit(Math.max(stations, 2) * 2 - 1) * 2;
+    }
+
+    private static int hash( int id ) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * The map view of a container, a real {@link HashMap} once it is used.
+     */
+    private static class StationsMap extends HashMap<Integer, double[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient StationValues stationValues;
+        private volatile boolean isFilled = false;
+
+        StationsMap( StationValues stationValues ) {
+            this.stationValues = stationValues;
+        }
+
+        /**
+         * Fill the map at the first use. The same map can be read by several modules
+         * at the same time, so it is published only once complete.
+         */
+        private void fill() {
+            if (!isFilled) {
+                synchronized (this) {
+                    if (!isFilled) {
+                        for( int i = 0; i < stationValues.size(); i++ ) {
+                            super.put(stationValues.getId(i), stationValues.getValues(i));
+                        }
+                        isFilled = true;
+                    }
+                }
+            }
+        }
+
+        private Object writeReplace() {
+            fill();
+            return new HashMap<Integer, double[]>(this);
+        }
+
+        @Override
+        public int size() {
+            if (!isFilled) {
+                return stationValues.size();
+            }
+            return super.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        @Override
+        public double[] get( Object key ) {
+            fill();
+            return super.get(key);
+        }
+
+        @Override
+        public boolean containsKey( Object key ) {
+            fill();
+            return super.containsKey(key);
+        }
+
+        @Override
+        public double[] put( Integer key, double[] value ) {
+            fill();
+            return super.put(key, value);
+        }
+
+        @Override
+        public void putAll( Map< ? extends Integer, ? extends double[]> m ) {
+            fill();
+            super.putAll(m);
+        }
+
+        @Override
+        public double[] remove( Object key ) {
+            fill();
+            return super.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            fill();
+            super.clear();
+        }
+
+        @Override
+        public boolean containsValue( Object value ) {
+            fill();
+            return super.containsValue(value);
+        }
+
+        @Override
+        public Set<Integer> keySet() {
+            fill();
+            return super.keySet();
+        }
+
+        @Override
+        public Collection<double[]> values() {
+            fill();
+            return super.values();
+        }
+
+        @Override
+        public Set<Entry<Integer, double[]>> entrySet() {
+            fill();
+            return super.entrySet();
+        }
+
+        @Override
+        public double[] getOrDefault( Object key, double[] defaultValue ) {
+            fill();
+            return super.getOrDefault(key, defaultValue);
+        }
+
+        @Override
+        public double[] putIfAbsent( Integer key, double[] value ) {
+            fill();
+            return super.putIfAbsent(key, value);
+        }
+
+        @Override
+        public boolean remove( Object key, Object value ) {
+            fill();
+            return super.remove(key, value);
+        }
+
+        @Override
+        public boolean replace( Integer key, double[] oldValue, double[] newValue ) {
+            fill();
+            return super.replace(key, oldValue, newValue);
+        }
+
+        @Override
+        public double[] replace( Integer key, double[] value ) {
+            fill();
+            return super.replace(key, value);
+        }
+
+        @Override
+        public double[] computeIfAbsent( Integer key, Function< ? super Integer, ? extends double[]> mappingFunction ) {
+            fill();
+            return super.computeIfAbsent(key, mappingFunction);
+        }
+
+        @Override
+        public double[] computeIfPresent( Integer key,
+                BiFunction< ? super Integer, ? super double[], ? extends double[]> remappingFunction ) {
+            fill();
+            return super.computeIfPresent(key, remappingFunction);
+        }
+
+        @Override
+        public double[] compute( Integer key, BiFunction< ? super Integer, ? super double[], ? extends double[]> remappingFunction ) {
+            fill();
+            return super.compute(key, remappingFunction);
+        }
+
+        @Override
+        public double[] merge( Integer key, double[] value,
+                BiFunction< ? super double[], ? super double[], ? extends double[]> remappingFunction ) {
+            fill();
+            return super.merge(key, value, remappingFunction);
+        }
+
+        @Override
+        public void forEach( BiConsumer< ? super Integer, ? super double[]> action ) {
+            fill();
+            super.forEach(action);
+        }
+
+        @Override
+        public void replaceAll( BiFunction< ? super Integer, ? super double[], ? extends double[]> function ) {
+            fill();
+            super.replaceAll(function);
+        }
+
+        @Override
+        public Object clone() {
+            fill();
+            return super.clone();
+        }
+    }
+}
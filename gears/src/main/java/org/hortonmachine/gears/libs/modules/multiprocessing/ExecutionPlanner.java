@@ -19,6 +19,7 @@
 package org.hortonmachine.gears.libs.modules.multiprocessing;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -69,6 +70,14 @@ public abstract class ExecutionPlanner {
      */
     public static final BlockingExecutorService defaultExecutor; 
     
+    /**
+     * The {@link ForkJoinPool} used by the tiled grid loops of
+     * {@link GridMultiProcessing}, if the planner in use {@link #isParallel() is parallel}.
+     * <p/>
+     * Set this to change the default.
+     */
+    public static ForkJoinPool defaultTilePool = ForkJoinPool.commonPool();
+    
     /**
      * Set this to change the default planner for all modules.
      */
@@ -98,6 +107,16 @@ public abstract class ExecutionPlanner {
     }
     
     
+    /**
+     * @return <code>true</code> if this planner executes submitted tasks in
+     *         parallel. Tiled grid loops use this to decide whether to hand
+     *         their tiles to the {@link #defaultTilePool} or run them in thread.
+     */
+    public boolean isParallel() {
+        return false;
+    }
+    
+    
     /**
      * Submits the given task for execution.
      * <p/>
@@ -41,6 +41,12 @@ public class FixedChunkSizePlanner
     private Exception                   exc;
     
     
+    @Override
+    public boolean isParallel() {
+        return true;
+    }
+
+    
     @Override
     public void submit( MultiProcessingTask task ) {
         // init targetChunkSize
@@ -1,7 +1,7 @@
 /*
  * This file is part of HortonMachine (http://www.hortonmachine.org)
- * (C) HydroloGIS - www.hydrologis.com 
- * 
+ * (C) HydroloGIS - www.hydrologis.com
+ *
  * The HortonMachine is free software: you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
  * the Free Software Foundation, either version 3 of the License, or
@@ -17,23 +17,67 @@
  */
 package org.hortonmachine.gears.libs.modules.multiprocessing;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * A multiprocessing class for grid loops (nested for over matrix).
  *
+ * <p>The grid is split into tiles (row bands by default) which are the units of work
+ * handed to the {@link ExecutionPlanner#defaultTilePool}. Cancellation is checked
+ * and progress is reported once per tile, so per cell loops must neither call
+ * <code>pm.isCanceled()</code> nor <code>pm.worked()</code>.</p>
+ *
  * @author Andrea Antonello (www.hydrologis.com)
  */
 public abstract class GridMultiProcessing extends MultiProcessing {
 
+    /**
+     * The number of tiles per available processor used when the tile size is not given.
+     */
+    public static final int TILES_PER_PROCESSOR = 8;
+
     protected void processGrid( int cols, int rows, Calculator calculator ) throws Exception {
         processGrid(cols, rows, false, calculator);
     }
+
     /**
      * Loops through all rows and cols of the given grid.
      */
     protected void processGrid( int cols, int rows, boolean ignoreBorder, Calculator calculator ) throws Exception {
-        ExecutionPlanner planner = createDefaultPlanner();
-        planner.setNumberOfTasks(rows * cols);
+        processGridTiles(cols, rows, ignoreBorder, tile -> {
+            for( int r = tile.startRow; r < tile.endRow; r++ ) {
+                for( int c = tile.startCol; c < tile.endCol; c++ ) {
+                    calculator.calculate(c, r);
+                }
+            }
+        });
+    }
+
+    /**
+     * Loops through the given grid in bands of rows.
+     *
+     * <p>The height of the bands is chosen based on the available processors.</p>
+     */
+    protected void processGridTiles( int cols, int rows, boolean ignoreBorder, TileCalculator calculator ) throws Exception {
+        processGridTiles(cols, rows, ignoreBorder, -1, -1, calculator);
+    }
 
+    /**
+     * Loops through the given grid in tiles.
+     *
+     * @param cols the cols of the grid.
+     * @param rows the rows of the grid.
+     * @param ignoreBorder if <code>true</code>, the first and last cols and rows are not processed.
+     * @param tileCols the width of the tiles. If <code>&lt;=0</code>, tiles are row bands spanning the whole grid width.
+     * @param tileRows the height of the tiles. If <code>&lt;=0</code>, it is chosen based on the available processors.
+     * @param calculator the calculator that processes a single tile.
+     * @throws Exception the first exception thrown by the calculator.
+     */
+    protected void processGridTiles( int cols, int rows, boolean ignoreBorder, int tileCols, int tileRows,
+            TileCalculator calculator ) throws Exception {
         int startC = 0;
         int startR = 0;
         int endC = cols;
@@ -44,17 +88,109 @@ public abstract class GridMultiProcessing extends MultiProcessing {
             endC = cols - 1;
             endR = rows - 1;
         }
-        for( int r = startR; r < endR; r++ ) {
-            for( int c = startC; c < endC; c++ ) {
-                int _c = c, _r = r;
-                planner.submit(() -> {
-                    if (!pm.isCanceled()) {
-                        calculator.calculate(_c, _r);
-                    }
-                });
+
+        List<GridTile> tiles = createTiles(startC, startR, endC, endR, tileCols, tileRows);
+        if (tiles.isEmpty()) {
+            return;
+        }
+
+        AtomicReference<Exception> exception = new AtomicReference<>();
+        if (createDefaultPlanner().isParallel() && tiles.size() > 1) {
+            ExecutionPlanner.defaultTilePool.invoke(new TilesAction(tiles, 0, tiles.size(), calculator, exception));
+        } else {
+            for( GridTile tile : tiles ) {
+                if (!processTile(tile, calculator, exception)) {
+                    break;
+                }
+            }
+        }
+        if (exception.get() != null) {
+            throw exception.get();
+        }
+    }
+
+    /**
+     * Split the given bounds into tiles.
+     *
+     * @return the list of tiles in row major order.
+     */
+    protected static List<GridTile> createTiles( int startC, int startR, int endC, int endR, int tileCols, int tileRows ) {
+        List<GridTile> tiles = new ArrayList<>();
+        int width = endC - startC;
+        int height = endR - startR;
+        if (width <= 0 || height <= 0) {
+            return tiles;
+        }
+        if (tileCols <= 0) {
+            tileCols = width;
+        }
+        if (tileRows <= 0) {
+            int procNum = Runtime.getRuntime().availableProcessors();
+            int tilesPerRow = (width + tileCols - 1) / tileCols;
+            int bandsCount = Math.max(1, procNum * TILES_PER_PROCESSOR / tilesPerRow);
+            tileRows = Math.max(1, (height + bandsCount - 1) / bandsCount);
+        }
+
+        int index = 0;
+        for( int r = startR; r < endR; r += tileRows ) {
+            int tileEndR = Math.min(r + tileRows, endR);
+            for( int c = startC; c < endC; c += tileCols ) {
+                int tileEndC = Math.min(c + tileCols, endC);
+                tiles.add(new GridTile(index++, c, r, tileEndC, tileEndR));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Process a single tile, checking for cancellation before and reporting progress after it.
+     *
+     * @return <code>false</code> if the processing should stop.
+     */
+    private boolean processTile( GridTile tile, TileCalculator calculator, AtomicReference<Exception> exception ) {
+        if (pm.isCanceled() || exception.get() != null) {
+            return false;
+        }
+        try {
+            calculator.calculate(tile);
+        } catch (Exception e) {
+            exception.compareAndSet(null, e);
+            return false;
+        }
+        pm.worked(tile.getCellsCount());
+        return true;
+    }
+
+    /**
+     * Recursively splits the list of tiles down to single tiles.
+     */
+    private class TilesAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<GridTile> tiles;
+        private final int from;
+        private final int to;
+        private final TileCalculator calculator;
+        private final AtomicReference<Exception> exception;
+
+        TilesAction( List<GridTile> tiles, int from, int to, TileCalculator calculator, AtomicReference<Exception> exception ) {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+            this.calculator = calculator;
+            this.exception = exception;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                processTile(tiles.get(from), calculator, exception);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TilesAction(tiles, from, middle, calculator, exception),
+                        new TilesAction(tiles, middle, to, calculator, exception));
             }
         }
-        planner.join();
     }
 
     @FunctionalInterface
@@ -62,4 +198,9 @@ public abstract class GridMultiProcessing extends MultiProcessing {
         void calculate( int col, int row ) throws Exception;
     }
 
+    @FunctionalInterface
+    protected interface TileCalculator {
+        void calculate( GridTile tile ) throws Exception;
+    }
+
 }
@@ -32,7 +32,7 @@ import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
  *
  * @author Falko Bräutigam
  */
-public abstract class GridNodeMultiProcessing extends MultiProcessing {
+public abstract class GridNodeMultiProcessing extends GridMultiProcessing {
 
     /** The cache of {@link #regionMap()} */
     private Map<Integer, RegionMap> regionMaps = new HashMap<>();
@@ -51,6 +51,9 @@ public abstract class GridNodeMultiProcessing extends MultiProcessing {
     /**
      * Loops through all rows and cols of the given grid and calls the given
      * calculator for each {@link GridNode}.
+     * 
+     * <p>Cancellation and progress are handled per tile, see {@link GridMultiProcessing}.
+     * The elevation is read through {@link CoverageUtilities#getThreadSafeRandomIterator(GridCoverage2D)}.</p>
      */
     protected void processGridNodes( GridCoverage2D inElev, Calculator<GridNode> calculator ) throws Exception {
         RegionMap regionMap = regionMap(inElev);
@@ -59,24 +62,17 @@ public abstract class GridNodeMultiProcessing extends MultiProcessing {
         double xRes = regionMap.getXres();
         double yRes = regionMap.getYres();
 
-        RandomIter elevationIter = CoverageUtilities.getRandomIterator(inElev);
+        // shared by all the workers, reads need no locking
+        RandomIter elevationIter = CoverageUtilities.getThreadSafeRandomIterator(inElev);
 
-        ExecutionPlanner planner = createDefaultPlanner();
-        planner.setNumberOfTasks(rows * cols);
-
-        // Cycling into the valid region.
-        for( int r = 0; r < rows; r++ ) {
-            for( int c = 0; c < cols; c++ ) {
-                int _c = c, _r = r;
-                planner.submit(() -> {
-                    if (!pm.isCanceled()) {
-                        GridNode node = new GridNode(elevationIter, cols, rows, xRes, yRes, _c, _r);
-                        calculator.calculate(node);
-                    }
-                });
+        processGridTiles(cols, rows, false, tile -> {
+            for( int r = tile.startRow; r < tile.endRow; r++ ) {
+                for( int c = tile.startCol; c < tile.endCol; c++ ) {
+                    GridNode node = new GridNode(elevationIter, cols, rows, xRes, yRes, c, r);
+                    calculator.calculate(node);
+                }
             }
-        }
-        planner.join();
+        });
     }
 
     @FunctionalInterface
@@ -0,0 +1,72 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.libs.modules.multiprocessing;
+
+/**
+ * The bounds of a work unit of a tiled grid loop.
+ *
+ * <p>Start indexes are inclusive, end indexes are exclusive, so that
+ * a tile can be looped with:</p>
+ * <pre>
+ * for( int r = tile.startRow; r &lt; tile.endRow; r++ ) {
+ *     for( int c = tile.startCol; c &lt; tile.endCol; c++ ) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class GridTile {
+
+    /** The sequential index of the tile in the tiling (row major). */
+    public final int index;
+    public final int startCol;
+    public final int startRow;
+    public final int endCol;
+    public final int endRow;
+
+    public GridTile( int index, int startCol, int startRow, int endCol, int endRow ) {
+        this.index = index;
+        this.startCol = startCol;
+        this.startRow = startRow;
+        this.endCol = endCol;
+        this.endRow = endRow;
+    }
+
+    public int getCols() {
+        return endCol - startCol;
+    }
+
+    public int getRows() {
+        return endRow - startRow;
+    }
+
+    /**
+     * @return the number of cells contained in the tile.
+     */
+    public int getCellsCount() {
+        return getCols() * getRows();
+    }
+
+    @Override
+    public String toString() {
+        return "GridTile [index=" + index + ", cols=" + startCol + "-" + endCol + ", rows=" + startRow + "-" + endRow + "]";
+    }
+
+}
@@ -135,10 +135,6 @@ public class OmsCutOut extends GridMultiProcessing {
         try {
             pm.beginTask("Processing map...", nRows * nCols);
             processGrid(nCols, nRows, false, ( c, r ) -> {
-                if (pm.isCanceled()) {
-                    return;
-                }
-                pm.worked(1);
                 if (maskIter != null) {
                     double maskValue = maskIter.getSampleDouble(c, r, 0);
                     if (!doInverse) {
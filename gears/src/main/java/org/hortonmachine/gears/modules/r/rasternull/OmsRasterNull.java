@@ -119,9 +119,6 @@ public class OmsRasterNull extends GridMultiProcessing {
 
         pm.beginTask("Nulling data...", cols * rows);
         processGrid(cols, rows, ( c, r ) -> {
-            if (pm.isCanceled()) {
-                return;
-            }
             double value = outIter.getSampleDouble(c, r, 0);
             if (!isNovalue(value)) {
                 if (doInverse) {
@@ -137,7 +134,6 @@ public class OmsRasterNull extends GridMultiProcessing {
             } else {
                 outIter.setSample(c, r, 0, doubleNovalue);
             }
-            pm.worked(1);
         });
         pm.done();
 
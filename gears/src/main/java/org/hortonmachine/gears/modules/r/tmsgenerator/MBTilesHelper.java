@@ -6,12 +6,17 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import javax.imageio.ImageIO;
 
@@ -88,12 +93,78 @@ public class MBTilesHelper implements AutoCloseable {
     private final static String INDEX_METADATA =
         "CREATE UNIQUE INDEX name ON " + TABLE_METADATA + "( " + COL_METADATA_NAME + ")";
 
+    // deduplicated layout: the tiles view joins the map of the tiles and the unique images
+    public final static String TABLE_MAP = "map";
+    public final static String TABLE_IMAGES = "images";
+    public final static String COL_TILE_ID = "tile_id";
+
+    private final static String CREATE_MAP = //
+        "CREATE TABLE " + TABLE_MAP + "( " + //
+            COL_TILES_ZOOM_LEVEL + " INTEGER, " + //
+            COL_TILES_TILE_COLUMN + " INTEGER, " + //
+            COL_TILES_TILE_ROW + " INTEGER, " + //
+            COL_TILE_ID + " TEXT" + //
+            ")";
+
+    private final static String CREATE_IMAGES = //
+        "CREATE TABLE " + TABLE_IMAGES + "( " + //
+            COL_TILES_TILE_DATA + " BLOB, " + //
+            COL_TILE_ID + " TEXT" + //
+            ")";
+
+    private final static String CREATE_TILES_VIEW = //
+        "CREATE VIEW " + TABLE_TILES + " AS SELECT " + //
+            TABLE_MAP + "." + COL_TILES_ZOOM_LEVEL + " AS " + COL_TILES_ZOOM_LEVEL + ", " + //
+            TABLE_MAP + "." + COL_TILES_TILE_COLUMN + " AS " + COL_TILES_TILE_COLUMN + ", " + //
+            TABLE_MAP + "." + COL_TILES_TILE_ROW + " AS " + COL_TILES_TILE_ROW + ", " + //
+            TABLE_IMAGES + "." + COL_TILES_TILE_DATA + " AS " + COL_TILES_TILE_DATA + //
+            " FROM " + TABLE_MAP + " JOIN " + TABLE_IMAGES + " ON " + //
+            TABLE_IMAGES + "." + COL_TILE_ID + " = " + TABLE_MAP + "." + COL_TILE_ID;
+
+    private final static String INDEX_MAP = "CREATE UNIQUE INDEX map_index ON " + TABLE_MAP + " ("
+        + COL_TILES_ZOOM_LEVEL + ", " + COL_TILES_TILE_COLUMN + ", " + COL_TILES_TILE_ROW + ")";
+    private final static String INDEX_IMAGES =
+        "CREATE UNIQUE INDEX images_id ON " + TABLE_IMAGES + " (" + COL_TILE_ID + ")";
+
+    private final static String INSERT_TILE = "INSERT INTO " + TABLE_TILES + " (" + COL_TILES_ZOOM_LEVEL + ","
+        + COL_TILES_TILE_COLUMN + "," + COL_TILES_TILE_ROW + "," + COL_TILES_TILE_DATA + ") values (?,?,?,?)";
+    private final static String INSERT_MAP = "INSERT INTO " + TABLE_MAP + " (" + COL_TILES_ZOOM_LEVEL + ","
+        + COL_TILES_TILE_COLUMN + "," + COL_TILES_TILE_ROW + "," + COL_TILE_ID + ") values (?,?,?,?)";
+    private final static String INSERT_IMAGE =
+        "INSERT INTO " + TABLE_IMAGES + " (" + COL_TILES_TILE_DATA + "," + COL_TILE_ID + ") values (?,?)";
+
+    /**
+     * An encoded tile ready to be inserted in the database.
+     */
+    public static class TileData {
+        public final int x;
+        public final int y;
+        public final int z;
+        public final byte[] data;
+        /**
+         * The hash of the data, used as image id in the deduplicated layout. Can be null.
+         */
+        public final String id;
+
+        public TileData(int x, int y, int z, byte[] data, String id) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.data = data;
+            this.id = id;
+        }
+    }
+
     private Connection connection;
 
     private volatile int addedTiles = 0;
 
     private String imageFormat;
 
+    private boolean deduplicate = false;
+
+    private Set<String> storedImageIds = new HashSet<>();
+
     public void open(File dbFile) throws SQLException {
         // create a database connection
         connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
@@ -110,24 +181,70 @@ public class MBTilesHelper implements AutoCloseable {
     }
 
     public void createTables(boolean makeIndexes) throws SQLException {
+        createTables(makeIndexes, false);
+    }
+
+    /**
+     * Create the tables of the database, dropping existing ones.
+     * 
+     * @param makeIndexes if <code>true</code>, the indexes are created immediately.
+     * @param deduplicate if <code>true</code>, the images are stored once in an images
+     *          table and the tiles table is a view joining them with the tiles map,
+     *          so that identical tiles (ex. blank or sea tiles) take space only once.
+     * @throws SQLException
+     */
+    public void createTables(boolean makeIndexes, boolean deduplicate) throws SQLException {
+        this.deduplicate = deduplicate;
+        storedImageIds.clear();
         try (Statement statement = connection.createStatement()) {
-            statement.addBatch("DROP TABLE IF EXISTS " + TABLE_TILES);
-            statement.addBatch("DROP TABLE IF EXISTS " + TABLE_METADATA);
-            statement.addBatch(CREATE_TILES);
+            dropIfExists(statement, TABLE_TILES);
+            dropIfExists(statement, TABLE_MAP);
+            dropIfExists(statement, TABLE_IMAGES);
+            dropIfExists(statement, TABLE_METADATA);
+            if (deduplicate) {
+                statement.addBatch(CREATE_MAP);
+                statement.addBatch(CREATE_IMAGES);
+                statement.addBatch(CREATE_TILES_VIEW);
+            } else {
+                statement.addBatch(CREATE_TILES);
+            }
             statement.addBatch(CREATE_METADATA);
             if (makeIndexes) {
-                statement.addBatch(INDEX_TILES);
-                statement.addBatch(INDEX_METADATA);
+                addIndexes(statement);
             }
             statement.executeBatch();
         }
         connection.setAutoCommit(false);
     }
 
+    private void dropIfExists(Statement statement, String name) throws SQLException {
+        String type = null;
+        try (ResultSet resultSet =
+            statement.executeQuery("select type from sqlite_master where name='" + name + "'")) {
+            if (resultSet.next()) {
+                type = resultSet.getString(1);
+            }
+        }
+        if ("view".equals(type)) {
+            statement.execute("DROP VIEW " + name);
+        } else if ("table".equals(type)) {
+            statement.execute("DROP TABLE " + name);
+        }
+    }
+
+    private void addIndexes(Statement statement) throws SQLException {
+        if (deduplicate) {
+            statement.addBatch(INDEX_MAP);
+            statement.addBatch(INDEX_IMAGES);
+        } else {
+            statement.addBatch(INDEX_TILES);
+        }
+        statement.addBatch(INDEX_METADATA);
+    }
+
     public void createIndexes() throws SQLException {
         try (Statement statement = connection.createStatement()) {
-            statement.addBatch(INDEX_TILES);
-            statement.addBatch(INDEX_METADATA);
+            addIndexes(statement);
             statement.executeBatch();
         }
         connection.commit();
@@ -180,44 +297,112 @@ public class MBTilesHelper implements AutoCloseable {
         return query;
     }
 
-    public synchronized void addTile(int x, int y, int z, BufferedImage image, String format) throws Exception {
-        addedTiles++;
+    public void addTile(int x, int y, int z, BufferedImage image, String format) throws Exception {
+        byte[] res = encodeTile(image, format);
+        addTile(x, y, z, res);
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(image, format, baos);
-        byte[] res = baos.toByteArray();
+    public synchronized void addTile(int x, int y, int z, byte[] data) throws Exception {
+        addedTiles++;
+        addTiles(Collections.singletonList(new TileData(x, y, z, data, null)), false);
+        if (addedTiles % 20 == 0) {
+            connection.commit();
+        }
+    }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("INSERT INTO " + TABLE_TILES + " ");
-        sb.append("(");
-        sb.append(COL_TILES_ZOOM_LEVEL);
-        sb.append(",");
-        sb.append(COL_TILES_TILE_COLUMN);
-        sb.append(",");
-        sb.append(COL_TILES_TILE_ROW);
-        sb.append(",");
-        sb.append(COL_TILES_TILE_DATA);
-        sb.append(") values (");
-        sb.append(z);
-        sb.append(",");
-        sb.append(x);
-        sb.append(",");
-        sb.append(y);
-        sb.append(",");
-        sb.append("?");
-        sb.append(")");
-        String query = sb.toString();
+    /**
+     * Insert a batch of tiles with prepared statements and commit them in one transaction.
+     * 
+     * @param tiles the tiles to insert.
+     * @throws Exception
+     */
+    public synchronized void addTiles(List<TileData> tiles) throws Exception {
+        addTiles(tiles, true);
+    }
 
-        try (PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setBytes(1, res);
-            statement.execute();
+    private void addTiles(List<TileData> tiles, boolean commit) throws Exception {
+        if (deduplicate) {
+            try (PreparedStatement mapStatement = connection.prepareStatement(INSERT_MAP);
+                PreparedStatement imageStatement = connection.prepareStatement(INSERT_IMAGE)) {
+                boolean hasImages = false;
+                for (TileData tile : tiles) {
+                    String id = tile.id != null ? tile.id : hash(tile.data);
+                    if (storedImageIds.add(id)) {
+                        imageStatement.setBytes(1, tile.data);
+                        imageStatement.setString(2, id);
+                        imageStatement.addBatch();
+                        hasImages = true;
+                    }
+                    mapStatement.setInt(1, tile.z);
+                    mapStatement.setInt(2, tile.x);
+                    mapStatement.setInt(3, tile.y);
+                    mapStatement.setString(4, id);
+                    mapStatement.addBatch();
+                }
+                if (hasImages) {
+                    imageStatement.executeBatch();
+                }
+                mapStatement.executeBatch();
+            }
+        } else {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_TILE)) {
+                for (TileData tile : tiles) {
+                    statement.setInt(1, tile.z);
+                    statement.setInt(2, tile.x);
+                    statement.setInt(3, tile.y);
+                    statement.setBytes(4, tile.data);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
         }
-
-        if (addedTiles % 20 == 0) {
+        if (commit) {
             connection.commit();
         }
     }
 
+    /**
+     * @return <code>true</code> if the tiles are stored deduplicated.
+     */
+    public boolean isDeduplicated() {
+        return deduplicate;
+    }
+
+    /**
+     * Encode an image in the given format.
+     * 
+     * @param image the image.
+     * @param format the format (png, jpg).
+     * @return the encoded bytes.
+     * @throws IOException
+     */
+    public static byte[] encodeTile(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(image, format, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Create the id used to store identical images once.
+     * 
+     * @param data the encoded image.
+     * @return the hex md5 hash of the data.
+     */
+    public static String hash(byte[] data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(data);
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (Exception e) {
+            throw new ModelsRuntimeException("Unable to hash the tile data.", MBTilesHelper.class);
+        }
+    }
+
     /**
      * Get a Tile image from the database.
      * 
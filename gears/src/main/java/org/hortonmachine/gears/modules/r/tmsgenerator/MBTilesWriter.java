@@ -0,0 +1,203 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.modules.r.tmsgenerator;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hortonmachine.gears.modules.r.tmsgenerator.MBTilesHelper.TileData;
+
+/**
+ * Writer of tiles into an mbtiles database for many producer threads.
+ *
+ * <p>The tiles are encoded (and hashed if the database is deduplicated) on the
+ * thread that adds them. A single writer thread drains a bounded queue and
+ * inserts the tiles in large batches, one transaction per batch.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class MBTilesWriter implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final TileData END = new TileData(-1, -1, -1, null, null);
+
+    private final MBTilesHelper mbtilesHelper;
+    private final String format;
+    private final int batchSize;
+    private final BlockingQueue<TileData> queue;
+    private final Thread writerThread;
+    private volatile Throwable writerError;
+    private boolean skipEmpty = false;
+    private boolean closed = false;
+
+    private final AtomicInteger queuedTiles = new AtomicInteger();
+    private final AtomicInteger skippedTiles = new AtomicInteger();
+
+    /**
+     * Create the writer and start its thread.
+     *
+     * @param mbtilesHelper the open database, with the tables already created.
+     * @param format the image format (png, jpg).
+     * @param batchSize the maximum number of tiles inserted in one transaction.
+     */
+    public MBTilesWriter( MBTilesHelper mbtilesHelper, String format, int batchSize ) {
+        this.mbtilesHelper = mbtilesHelper;
+        this.format = format;
+        this.batchSize = Math.max(batchSize, 1);
+        queue = new ArrayBlockingQueue<>(2 * this.batchSize);
+        writerThread = new Thread(new Runnable(){
+            public void run() {
+                write();
+            }
+        }, "mbtiles-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * @param skipEmpty if <code>true</code>, fully transparent tiles are not stored.
+     */
+    public void setSkipEmpty( boolean skipEmpty ) {
+        this.skipEmpty = skipEmpty;
+    }
+
+    /**
+     * Encode a tile and queue it for writing. Blocks if the writer is behind.
+     *
+     * @param x the tile column.
+     * @param y the tile row.
+     * @param z the zoom level.
+     * @param image the tile image.
+     * @throws Exception if the encoding failed or if the writer failed on a previous batch.
+     */
+    public void addTile( int x, int y, int z, BufferedImage image ) throws Exception {
+        checkWriter();
+        if (skipEmpty && isEmpty(image)) {
+            skippedTiles.incrementAndGet();
+            return;
+        }
+        byte[] data = MBTilesHelper.encodeTile(image, format);
+        String id = mbtilesHelper.isDeduplicated() ? MBTilesHelper.hash(data) : null;
+        TileData tile = new TileData(x, y, z, data, id);
+        while( !queue.offer(tile, 1, TimeUnit.SECONDS) ) {
+            checkWriter();
+            if (!writerThread.isAlive()) {
+                throw new IllegalStateException("The mbtiles writer is not running anymore.");
+            }
+        }
+        queuedTiles.incrementAndGet();
+    }
+
+    /**
+     * @return the number of tiles queued for writing.
+     */
+    public int getQueuedTiles() {
+        return queuedTiles.get();
+    }
+
+    /**
+     * @return the number of tiles skipped because empty.
+     */
+    public int getSkippedTiles() {
+        return skippedTiles.get();
+    }
+
+    /**
+     * Write the remaining tiles and stop the writer thread. The database is not closed.
+     */
+    @Override
+    public void close() throws Exception {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        while( writerError == null && writerThread.isAlive() && !queue.offer(END, 1, TimeUnit.SECONDS) ) {
+            // wait for space, unless the writer is dead
+        }
+        writerThread.join();
+        checkWriter();
+    }
+
+    /**
+     * Rethrow the failure of the writer thread, errors wrapped in an exception.
+     */
+    private void checkWriter() throws Exception {
+        Throwable error = writerError;
+        if (error instanceof Exception) {
+            throw (Exception) error;
+        } else if (error != null) {
+            throw new Exception("The mbtiles writer stopped: " + error, error);
+        }
+    }
+
+    private void write() {
+        List<TileData> batch = new ArrayList<>(batchSize);
+        try {
+            while( true ) {
+                TileData tile = batch.isEmpty() ? queue.take() : queue.poll(200, TimeUnit.MILLISECONDS);
+                if (tile == END) {
+                    break;
+                }
+                if (tile != null) {
+                    batch.add(tile);
+                }
+                // write when the batch is full or the producers are slow
+                if (batch.size() >= batchSize || (tile == null && !batch.isEmpty())) {
+                    mbtilesHelper.addTiles(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                mbtilesHelper.addTiles(batch);
+            }
+        } catch (Throwable e) {
+            // also errors (ex. out of memory), else the producers would wait forever
+            writerError = e;
+        }
+    }
+
+    /**
+     * Check if an image is completely transparent.
+     *
+     * @param image the image to check.
+     * @return <code>true</code> if the image has an alpha channel and all the pixels are transparent.
+     */
+    public static boolean isEmpty( BufferedImage image ) {
+        if (!image.getColorModel().hasAlpha()) {
+            return false;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] row = new int[width];
+        for( int y = 0; y < height; y++ ) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for( int argb : row ) {
+                if ((argb >>> 24) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+}
@@ -189,6 +189,14 @@ public class OmsTmsGenerator extends HMModel {
     @In
     public boolean doMbtiles = false;
 
+    @Description("Do not store completely transparent tiles in the mbtiles database.")
+    @In
+    public boolean doSkipEmpty = false;
+
+    @Description("Store identical tiles only once in the mbtiles database.")
+    @In
+    public boolean doDeduplicate = false;
+
     @Description(OMSTMSGENERATOR_IN_PATH_DESCRIPTION)
     @In
     public String inPath;
@@ -200,6 +208,8 @@ public class OmsTmsGenerator extends HMModel {
 
     private MBTilesHelper mbtilesHelper;
 
+    private MBTilesWriter mbtilesWriter;
+
     public CoordinateReferenceSystem dataCrs;
 
     private volatile boolean cancelModule = false;
@@ -234,8 +244,10 @@ public class OmsTmsGenerator extends HMModel {
 
                 format = pImagetype == 0 ? "png" : "jpg";
                 mbtilesHelper.open(dbFile);
-                mbtilesHelper.createTables(false);
+                mbtilesHelper.createTables(false, doDeduplicate);
                 mbtilesHelper.fillMetadata(n, s, w, e, pName, format, pMinzoom, pMaxzoom);
+                mbtilesWriter = new MBTilesWriter(mbtilesHelper, format, MBTilesWriter.DEFAULT_BATCH_SIZE);
+                mbtilesWriter.setSkipEmpty(doSkipEmpty);
             }
 
             int threads = getDefaultThreadsNum();
@@ -373,7 +385,6 @@ public class OmsTmsGenerator extends HMModel {
                             final int x = i;
                             final int y = j;
                             final int zz = z;
-                            final String fformat = format;
                             tileNum++;
                             Runnable runner = new Runnable(){
                                 public void run() {
@@ -383,7 +394,7 @@ public class OmsTmsGenerator extends HMModel {
                                             BufferedImage image = imgGen.getImageWithCheck(tmpBounds, TILESIZE, TILESIZE, 0.0,
                                                     pCheckcolor);
                                             if (image != null) {
-                                                mbtilesHelper.addTile(x, y, zz, image, fformat);
+                                                mbtilesWriter.addTile(x, y, zz, image);
                                             }
                                         } catch (Exception e) {
                                             pm.errorMessage(e.getMessage());
@@ -452,6 +463,10 @@ public class OmsTmsGenerator extends HMModel {
             }
 
             if (mbtilesHelper != null) {
+                mbtilesWriter.close();
+                if (doSkipEmpty) {
+                    pm.message("Empty tiles skipped: " + mbtilesWriter.getSkippedTiles());
+                }
                 mbtilesHelper.createIndexes();
                 mbtilesHelper.close();
             } else {
@@ -473,6 +488,10 @@ public class OmsTmsGenerator extends HMModel {
             }
         } catch (ModelsUserCancelException e) {
             pm.errorMessage(ModelsUserCancelException.DEFAULTMESSAGE);
+        } finally {
+            if (mbtilesWriter != null) {
+                mbtilesWriter.close();
+            }
         }
     }
 }
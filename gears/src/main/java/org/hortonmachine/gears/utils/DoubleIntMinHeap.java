@@ -0,0 +1,165 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.utils;
+
+import java.util.Arrays;
+
+/**
+ * A binary min heap of int values ordered by primitive double keys.
+ *
+ * <p>Values with the same key are returned in insertion order, which keeps
+ * the processing order of algorithms like the priority flood deterministic.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class DoubleIntMinHeap {
+    private double[] keys;
+    private int[] values;
+    private long[] sequences;
+    private long sequence = 0;
+    private int size = 0;
+
+    /**
+     * Create the heap with an initial capacity.
+     *
+     * @param initialSize the initial capacity.
+     */
+    public DoubleIntMinHeap( int initialSize ) {
+        int capacity = Math.max(initialSize, 1);
+        keys = new double[capacity];
+        values = new int[capacity];
+        sequences = new long[capacity];
+    }
+
+    /**
+     * Add a value to the heap.
+     *
+     * @param key the key to order by.
+     * @param value the value.
+     */
+    public void push( double key, int value ) {
+        if (size == keys.length) {
+            int newCapacity = size + (size >> 1) + 1;
+            keys = Arrays.copyOf(keys, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+            sequences = Arrays.copyOf(sequences, newCapacity);
+        }
+        int position = size++;
+        long seq = sequence++;
+        // sift up
+        while( position > 0 ) {
+            int parent = (position - 1) >>> 1;
+            if (!isLess(key, seq, keys[parent], sequences[parent])) {
+                break;
+            }
+            keys[position] = keys[parent];
+            values[position] = values[parent];
+            sequences[position] = sequences[parent];
+            position = parent;
+        }
+        keys[position] = key;
+        values[position] = value;
+        sequences[position] = seq;
+    }
+
+    /**
+     * @return the key of the minimum element, without removing it.
+     */
+    public double peekKey() {
+        checkNotEmpty();
+        return keys[0];
+    }
+
+    /**
+     * @return the value of the minimum element, without removing it.
+     */
+    public int peekValue() {
+        checkNotEmpty();
+        return values[0];
+    }
+
+    /**
+     * Remove the minimum element.
+     *
+     * @return the value of the removed element.
+     */
+    public int pop() {
+        checkNotEmpty();
+        int result = values[0];
+        size--;
+        if (size > 0) {
+            double key = keys[size];
+            int value = values[size];
+            long seq = sequences[size];
+            // sift down
+            int position = 0;
+            int half = size >>> 1;
+            while( position < half ) {
+                int child = 2 * position + 1;
+                int right = child + 1;
+                if (right < size && isLess(keys[right], sequences[right], keys[child], sequences[child])) {
+                    child = right;
+                }
+                if (!isLess(keys[child], sequences[child], key, seq)) {
+                    break;
+                }
+                keys[position] = keys[child];
+                values[position] = values[child];
+                sequences[position] = sequences[child];
+                position = child;
+            }
+            keys[position] = key;
+            values[position] = value;
+            sequences[position] = seq;
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of elements in the heap.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Empty the heap, keeping its capacity.
+     */
+    public void clear() {
+        size = 0;
+        sequence = 0;
+    }
+
+    private static boolean isLess( double key1, long seq1, double key2, long seq2 ) {
+        if (key1 < key2) {
+            return true;
+        }
+        return key1 == key2 && seq1 < seq2;
+    }
+
+    private void checkNotEmpty() {
+        if (size == 0) {
+            throw new IllegalStateException("The heap is empty.");
+        }
+    }
+
+}
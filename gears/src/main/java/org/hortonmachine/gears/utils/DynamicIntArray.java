@@ -0,0 +1,108 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.utils;
+
+import java.util.Arrays;
+
+/**
+ * A dynamic growing list of primitive ints.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class DynamicIntArray {
+    private int[] internalArray;
+    private int size = 0;
+
+    /**
+     * Create the array with an initial capacity.
+     *
+     * @param initialSize the initial capacity.
+     */
+    public DynamicIntArray( int initialSize ) {
+        internalArray = new int[Math.max(initialSize, 1)];
+    }
+
+    /**
+     * Add a value at the end of the array.
+     *
+     * @param value the value to add.
+     */
+    public void add( int value ) {
+        if (size == internalArray.length) {
+            internalArray = Arrays.copyOf(internalArray, size + (size >> 1) + 1);
+        }
+        internalArray[size++] = value;
+    }
+
+    /**
+     * Get the value in a certain position of the array.
+     *
+     * @param position the position.
+     * @return the value.
+     */
+    public int get( int position ) {
+        return internalArray[position];
+    }
+
+    /**
+     * Set the value in an already used position.
+     *
+     * @param position the position.
+     * @param value the value to set.
+     */
+    public void set( int position, int value ) {
+        internalArray[position] = value;
+    }
+
+    /**
+     * @return the number of added values.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Empty the array, keeping its capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Get the internal array, which might be longer than {@link #size()}.
+     *
+     * @return the array.
+     */
+    public int[] getInternalArray() {
+        return internalArray;
+    }
+
+    /**
+     * Get a copy of the used part of the array.
+     *
+     * @return the trimmed array.
+     */
+    public int[] getTrimmedInternalArray() {
+        return Arrays.copyOf(internalArray, size);
+    }
+
+}
@@ -107,6 +107,16 @@ public class CoverageUtilities {
     public static final String ROWS = "ROWS"; //$NON-NLS-1$
     public static final String COLS = "COLS"; //$NON-NLS-1$
 
+    /**
+     * If <code>true</code>, {@link #getRandomIterator(GridCoverage2D)} and 
+     * {@link #getWritableRandomIterator(WritableRaster)} return iterators that 
+     * access the primitive array backing in memory rasters directly (see {@link HMRaster}), 
+     * instead of the JAI ones.
+     * 
+     * <p>Modules can also opt in one by one by using {@link HMRaster#fromCoverage(GridCoverage2D)}.
+     */
+    public static boolean useDirectAccessIterators = false;
+
     /**
      * Creates a {@link RandomIter} for the given {@link GridCoverage2D}.
      * 
@@ -122,11 +132,43 @@ public class CoverageUtilities {
             GrassLegacyRandomIter iter = new GrassLegacyRandomIter(grassGC.getData());
             return iter;
         }
+        if (useDirectAccessIterators) {
+            return HMRaster.fromCoverage(coverage).getWritableRandomIterator();
+        }
         RenderedImage renderedImage = coverage.getRenderedImage();
         RandomIter iter = RandomIterFactory.create(renderedImage, null);
         return iter;
     }
 
+    /**
+     * Creates a {@link RandomIter} that can be shared by several threads without locking.
+     *
+     * <p>The JAI iterators keep state between reads and must be synchronized when
+     * shared, this one reads directly from the primitive array of the raster
+     * (see {@link HMRaster#fromCoverage(GridCoverage2D)}). Tiled or non wrappable
+     * images are copied, so the iterator has to be considered a read only snapshot.
+     *
+     * @param coverage the coverage on which to wrap a {@link RandomIter}.
+     * @return the iterator.
+     */
+    public static RandomIter getThreadSafeRandomIterator( GridCoverage2D coverage ) {
+        if (coverage instanceof GrassLegacyGridCoverage2D) {
+            return getRandomIterator(coverage);
+        }
+        return HMRaster.fromCoverage(coverage).getWritableRandomIterator();
+    }
+
+    /**
+     * Creates a {@link RandomIter} that can be shared by several threads without locking.
+     *
+     * @param image the image on which to wrap a {@link RandomIter}.
+     * @return the iterator.
+     * @see #getThreadSafeRandomIterator(GridCoverage2D)
+     */
+    public static RandomIter getThreadSafeRandomIterator( RenderedImage image ) {
+        return HMRaster.fromImage(image).getWritableRandomIterator();
+    }
+
     /**
      * Creates a {@link WritableRandomIter}.
      * 
@@ -167,6 +209,12 @@ public class CoverageUtilities {
             double[][] data = wRaster.getData();
             getWritableRandomIterator(data[0].length, data.length);
         }
+        if (useDirectAccessIterators) {
+            HMRaster hmRaster = HMRaster.wrap(raster);
+            if (hmRaster != null) {
+                return hmRaster.getWritableRandomIterator();
+            }
+        }
         WritableRandomIter iter = RandomIterFactory.createWritable(raster, null);
         return iter;
     }
@@ -0,0 +1,115 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.utils.coverage;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import javax.media.jai.RasterFactory;
+
+/**
+ * A {@link HMRaster} backed by a <code>double[]</code>.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class HMDoubleRaster extends HMRaster {
+
+    /** The backing array, see {@link #index(int, int)}. */
+    public final double[] data;
+
+    /**
+     * Create a new raster with its own backing array.
+     *
+     * @param cols the cols of the raster.
+     * @param rows the rows of the raster.
+     */
+    public HMDoubleRaster( int cols, int rows ) {
+        this(new double[Math.multiplyExact(cols, rows)], cols, rows, 0, cols);
+    }
+
+    /**
+     * Create a new raster with its own backing array, filled with a value.
+     *
+     * @param cols the cols of the raster.
+     * @param rows the rows of the raster.
+     * @param value the initial value of all cells.
+     */
+    public HMDoubleRaster( int cols, int rows, double value ) {
+        this(cols, rows);
+        Arrays.fill(data, value);
+    }
+
+    /**
+     * Wrap an existing array.
+     *
+     * @param data the backing array.
+     * @param cols the cols of the raster.
+     * @param rows the rows of the raster.
+     * @param offset the index of the cell 0,0 in the array.
+     * @param stride the distance in the array between two vertically adjacent cells.
+     */
+    public HMDoubleRaster( double[] data, int cols, int rows, int offset, int stride ) {
+        super(cols, rows, offset, stride);
+        this.data = data;
+    }
+
+    public double get( int col, int row ) {
+        return data[offset + row * stride + col];
+    }
+
+    public void set( int col, int row, double value ) {
+        data[offset + row * stride + col] = value;
+    }
+
+    @Override
+    public int getDataType() {
+        return DataBuffer.TYPE_DOUBLE;
+    }
+
+    @Override
+    public double getDouble( int index ) {
+        return data[index];
+    }
+
+    @Override
+    public void setDouble( int index, double value ) {
+        data[index] = value;
+    }
+
+    @Override
+    public void fill( double value ) {
+        double v = value;
+        if (offset == 0 && stride == cols && data.length == cols * rows) {
+            Arrays.fill(data, v);
+        } else {
+            for( int r = 0; r < rows; r++ ) {
+                int start = offset + r * stride;
+                Arrays.fill(data, start, start + cols, v);
+            }
+        }
+    }
+
+    @Override
+    public WritableRaster toWritableRaster() {
+        DataBufferDouble dataBuffer = new DataBufferDouble(data, data.length - offset, offset);
+        return RasterFactory.createWritableRaster(createSampleModel(), dataBuffer, null);
+    }
+
+}
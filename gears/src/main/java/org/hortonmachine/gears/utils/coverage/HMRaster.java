@@ -0,0 +1,265 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.utils.coverage;
+
+import java.awt.Rectangle;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+
+import javax.media.jai.iterator.WritableRandomIter;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.hortonmachine.gears.io.grasslegacy.GrassLegacyGridCoverage2D;
+import org.hortonmachine.gears.utils.RegionMap;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * A single band raster backed by a flat primitive array.
+ *
+ * <p>The value of a cell is stored at the index <code>offset + row * stride + col</code>
+ * of the backing array, which can be accessed directly from the subclasses
+ * ({@link HMDoubleRaster}, {@link HMFloatRaster}, {@link HMIntRaster}) to write
+ * tight loops without the virtual dispatch and per sample bounds handling of the
+ * JAI iterators.</p>
+ *
+ * <p>Rasters wrapped through {@link #wrap(Raster)} or {@link #fromCoverage(GridCoverage2D)}
+ * share the data of the original raster whenever possible (single band, pixel
+ * stride of 1 and a double, float or int data buffer), so writing to them writes
+ * into the original data.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public abstract class HMRaster {
+
+    public final int cols;
+    public final int rows;
+    /** The index of the cell 0,0 in the backing array. */
+    public final int offset;
+    /** The distance in the backing array between two vertically adjacent cells. */
+    public final int stride;
+
+    protected HMRaster( int cols, int rows, int offset, int stride ) {
+        this.cols = cols;
+        this.rows = rows;
+        this.offset = offset;
+        this.stride = stride;
+    }
+
+    /**
+     * Get the index of a cell in the backing array.
+     *
+     * @param col the col of the cell.
+     * @param row the row of the cell.
+     * @return the index in the backing array.
+     */
+    public final int index( int col, int row ) {
+        return offset + row * stride + col;
+    }
+
+    /**
+     * Check if a cell is inside the raster.
+     *
+     * @param col the col of the cell.
+     * @param row the row of the cell.
+     * @return <code>true</code>, if the cell is inside the raster.
+     */
+    public final boolean isInRaster( int col, int row ) {
+        return col >= 0 && row >= 0 && col < cols && row < rows;
+    }
+
+    /**
+     * @return the {@link DataBuffer} type of the backing array.
+     */
+    public abstract int getDataType();
+
+    public abstract double getDouble( int index );
+
+    public abstract void setDouble( int index, double value );
+
+    public double getDouble( int col, int row ) {
+        return getDouble(index(col, row));
+    }
+
+    public void setDouble( int col, int row, double value ) {
+        setDouble(index(col, row), value);
+    }
+
+    /**
+     * Fill the raster with a value.
+     *
+     * @param value the value to set.
+     */
+    public abstract void fill( double value );
+
+    /**
+     * Create a {@link WritableRaster} that shares the backing array of this raster.
+     *
+     * @return the writable raster.
+     */
+    public abstract WritableRaster toWritableRaster();
+
+    /**
+     * Build a {@link GridCoverage2D} on the data of this raster, without copying it.
+     *
+     * @param name the name of the coverage.
+     * @param regionMap the region of the coverage.
+     * @param crs the crs of the coverage.
+     * @return the coverage.
+     */
+    public GridCoverage2D buildCoverage( String name, RegionMap regionMap, CoordinateReferenceSystem crs ) {
+        return CoverageUtilities.buildCoverage(name, toWritableRaster(), regionMap, crs);
+    }
+
+    /**
+     * Get a bounds checked {@link WritableRandomIter} view on this raster, which can be used
+     * by code that is written against the JAI iterators.
+     *
+     * @return the iterator.
+     */
+    public WritableRandomIter getWritableRandomIterator() {
+        return new HMRasterRandomIter(this);
+    }
+
+    protected ComponentSampleModel createSampleModel() {
+        return new ComponentSampleModel(getDataType(), cols, rows, 1, stride, new int[]{0});
+    }
+
+    /**
+     * Create a {@link HMRaster} for a {@link GridCoverage2D}.
+     *
+     * <p>If the image of the coverage is made of a single tile that can be wrapped
+     * (see {@link #wrap(Raster)}) the data are shared, else they are copied into
+     * a new {@link HMDoubleRaster}.</p>
+     *
+     * @param coverage the coverage.
+     * @return the raster.
+     */
+    public static HMRaster fromCoverage( GridCoverage2D coverage ) {
+        if (coverage instanceof GrassLegacyGridCoverage2D) {
+            double[][] data = ((GrassLegacyGridCoverage2D) coverage).getData();
+            int rows = data.length;
+            int cols = data[0].length;
+            HMDoubleRaster raster = new HMDoubleRaster(cols, rows);
+            for( int r = 0; r < rows; r++ ) {
+                System.arraycopy(data[r], 0, raster.data, r * cols, cols);
+            }
+            return raster;
+        }
+        return fromImage(coverage.getRenderedImage());
+    }
+
+    /**
+     * Create a {@link HMRaster} for the first band of a {@link RenderedImage}.
+     *
+     * <p>If the image is made of a single tile that can be wrapped
+     * (see {@link #wrap(Raster)}) the data are shared, else they are copied into
+     * a new {@link HMDoubleRaster}.</p>
+     *
+     * @param image the image.
+     * @return the raster.
+     */
+    public static HMRaster fromImage( RenderedImage image ) {
+        if (image.getNumXTiles() == 1 && image.getNumYTiles() == 1) {
+            Raster tile = image.getTile(image.getMinTileX(), image.getMinTileY());
+            if (tile.getMinX() == image.getMinX() && tile.getMinY() == image.getMinY()
+                    && tile.getWidth() == image.getWidth() && tile.getHeight() == image.getHeight()) {
+                HMRaster wrapped = wrap(tile);
+                if (wrapped != null) {
+                    return wrapped;
+                }
+            }
+        }
+        return copyToDouble(image);
+    }
+
+    /**
+     * Wrap a {@link Raster} without copying its data.
+     *
+     * @param raster the raster to wrap.
+     * @return the wrapping raster or <code>null</code>, if the layout of the raster
+     *          doesn't allow direct access.
+     */
+    public static HMRaster wrap( Raster raster ) {
+        SampleModel sampleModel = raster.getSampleModel();
+        if (!(sampleModel instanceof ComponentSampleModel) || sampleModel.getNumBands() != 1) {
+            return null;
+        }
+        ComponentSampleModel csm = (ComponentSampleModel) sampleModel;
+        if (csm.getPixelStride() != 1) {
+            return null;
+        }
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        int bank = csm.getBankIndices()[0];
+        int x = raster.getMinX() - raster.getSampleModelTranslateX();
+        int y = raster.getMinY() - raster.getSampleModelTranslateY();
+        int offset = dataBuffer.getOffsets()[bank] + csm.getOffset(x, y, 0);
+        int stride = csm.getScanlineStride();
+        int cols = raster.getWidth();
+        int rows = raster.getHeight();
+        if (dataBuffer instanceof DataBufferDouble) {
+            return new HMDoubleRaster(((DataBufferDouble) dataBuffer).getData(bank), cols, rows, offset, stride);
+        } else if (dataBuffer instanceof DataBufferFloat) {
+            return new HMFloatRaster(((DataBufferFloat) dataBuffer).getData(bank), cols, rows, offset, stride);
+        } else if (dataBuffer instanceof DataBufferInt) {
+            return new HMIntRaster(((DataBufferInt) dataBuffer).getData(bank), cols, rows, offset, stride);
+        }
+        return null;
+    }
+
+    /**
+     * Copy the first band of an image into a new {@link HMDoubleRaster}, one tile row at a time.
+     *
+     * @param image the image to copy.
+     * @return the new raster.
+     */
+    public static HMDoubleRaster copyToDouble( RenderedImage image ) {
+        int cols = image.getWidth();
+        int rows = image.getHeight();
+        int minX = image.getMinX();
+        int minY = image.getMinY();
+        HMDoubleRaster hmRaster = new HMDoubleRaster(cols, rows);
+        double[] data = hmRaster.data;
+        Rectangle imageBounds = new Rectangle(minX, minY, cols, rows);
+        double[] rowBuffer = null;
+        for( int ty = image.getMinTileY(); ty < image.getMinTileY() + image.getNumYTiles(); ty++ ) {
+            for( int tx = image.getMinTileX(); tx < image.getMinTileX() + image.getNumXTiles(); tx++ ) {
+                Raster tile = image.getTile(tx, ty);
+                Rectangle bounds = tile.getBounds().intersection(imageBounds);
+                if (bounds.isEmpty()) {
+                    continue;
+                }
+                if (rowBuffer == null || rowBuffer.length < bounds.width) {
+                    rowBuffer = new double[bounds.width];
+                }
+                for( int y = bounds.y; y < bounds.y + bounds.height; y++ ) {
+                    tile.getSamples(bounds.x, y, bounds.width, 1, 0, rowBuffer);
+                    System.arraycopy(rowBuffer, 0, data, (y - minY) * cols + bounds.x - minX, bounds.width);
+                }
+            }
+        }
+        return hmRaster;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.utils.coverage;
+
+import javax.media.jai.iterator.WritableRandomIter;
+
+/**
+ * A {@link WritableRandomIter} on a {@link HMRaster}.
+ *
+ * <p>Only band 0 is supported. Accesses outside of the raster throw an
+ * {@link ArrayIndexOutOfBoundsException}, as the JAI iterators do.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class HMRasterRandomIter implements WritableRandomIter {
+
+    private final HMRaster raster;
+
+    public HMRasterRandomIter( HMRaster raster ) {
+        this.raster = raster;
+    }
+
+    /**
+     * @return the raster this iterator reads from and writes to.
+     */
+    public HMRaster getRaster() {
+        return raster;
+    }
+
+    private int checkedIndex( int x, int y ) {
+        if (!raster.isInRaster(x, y)) {
+            throw new ArrayIndexOutOfBoundsException("Coordinate out of bounds: " + x + "/" + y);
+        }
+        return raster.index(x, y);
+    }
+
+    public void done() {
+    }
+
+    public int getSample( int x, int y, int b ) {
+        return (int) raster.getDouble(checkedIndex(x, y));
+    }
+
+    public float getSampleFloat( int x, int y, int b ) {
+        return (float) raster.getDouble(checkedIndex(x, y));
+    }
+
+    public double getSampleDouble( int x, int y, int b ) {
+        return raster.getDouble(checkedIndex(x, y));
+    }
+
+    public int[] getPixel( int x, int y, int[] iArray ) {
+        if (iArray == null) {
+            iArray = new int[1];
+        }
+        iArray[0] = getSample(x, y, 0);
+        return iArray;
+    }
+
+    public float[] getPixel( int x, int y, float[] fArray ) {
+        if (fArray == null) {
+            fArray = new float[1];
+        }
+        fArray[0] = getSampleFloat(x, y, 0);
+        return fArray;
+    }
+
+    public double[] getPixel( int x, int y, double[] dArray ) {
+        if (dArray == null) {
+            dArray = new double[1];
+        }
+        dArray[0] = getSampleDouble(x, y, 0);
+        return dArray;
+    }
+
+    public void setSample( int x, int y, int b, int s ) {
+        raster.setDouble(checkedIndex(x, y), s);
+    }
+
+    public void setSample( int x, int y, int b, float s ) {
+        raster.setDouble(checkedIndex(x, y), s);
+    }
+
+    public void setSample( int x, int y, int b, double s ) {
+        raster.setDouble(checkedIndex(x, y), s);
+    }
+
+    public void setPixel( int x, int y, int[] iArray ) {
+        setSample(x, y, 0, iArray[0]);
+    }
+
+    public void setPixel( int x, int y, float[] fArray ) {
+        setSample(x, y, 0, fArray[0]);
+    }
+
+    public void setPixel( int x, int y, double[] dArray ) {
+        setSample(x, y, 0, dArray[0]);
+    }
+
+}
@@ -0,0 +1,296 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.utils.coverage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.hortonmachine.gears.libs.modules.HMConstants;
+import org.hortonmachine.gears.libs.monitor.IHMProgressMonitor;
+import org.hortonmachine.gears.utils.RegionMap;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Rasterizes 3d triangles into a {@link HMDoubleRaster}, interpolating the elevation
+ * of the vertexes on the cells whose center falls inside the triangles (borders included).
+ *
+ * <p>Every triangle is walked once by scanlines over the rows of cell centers it
+ * spans, instead of querying the triangles for every cell. Where triangles overlap
+ * the highest value is kept, cells not covered are left untouched.</p>
+ *
+ * <p>The raster is split in bands of rows, which are filled in parallel, each by a
+ * single task that handles all the triangles touching the band. Bands don't share
+ * cells, so no synchronization is needed on the raster.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TriangleRasterizer {
+
+    /**
+     * The number of values describing a triangle: x, y and z of the 3 vertexes.
+     */
+    public static final int TRIANGLE_VALUES = 9;
+
+    private static final int MIN_BAND_ROWS = 16;
+
+    /**
+     * Tolerance on the cell centers that lie on the triangle borders.
+     */
+    private static final double EPSILON = 1E-9;
+
+    private final HMDoubleRaster raster;
+    private final double west;
+    private final double north;
+    private final double xres;
+    private final double yres;
+    private int threads = 1;
+
+    /**
+     * Create a rasterizer.
+     *
+     * @param raster the raster to fill.
+     * @param regionMap the region of the raster.
+     */
+    public TriangleRasterizer( HMDoubleRaster raster, RegionMap regionMap ) {
+        this(raster, regionMap.getWest(), regionMap.getNorth(), regionMap.getXres(), regionMap.getYres());
+    }
+
+    /**
+     * Create a rasterizer.
+     *
+     * @param raster the raster to fill.
+     * @param west the west bound of the raster.
+     * @param north the north bound of the raster.
+     * @param xres the x resolution.
+     * @param yres the y resolution.
+     */
+    public TriangleRasterizer( HMDoubleRaster raster, double west, double north, double xres, double yres ) {
+        this.raster = raster;
+        this.west = west;
+        this.north = north;
+        this.xres = xres;
+        this.yres = yres;
+    }
+
+    /**
+     * @param threads the number of bands filled at the same time.
+     */
+    public void setThreads( int threads ) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Convert triangle geometries to the flat array used by {@link #rasterize(double[], IHMProgressMonitor)}.
+     *
+     * @param triangles the triangles, the first 3 coordinates of which are used.
+     * @return the array of the vertexes.
+     */
+    public static double[] toTrianglesArray( List<Geometry> triangles ) {
+        double[] array = new double[triangles.size() * TRIANGLE_VALUES];
+        int i = 0;
+        for( Geometry triangle : triangles ) {
+            Coordinate[] coordinates = triangle.getCoordinates();
+            for( int v = 0; v < 3; v++ ) {
+                array[i++] = coordinates[v].x;
+                array[i++] = coordinates[v].y;
+                array[i++] = coordinates[v].z;
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Rasterize triangles.
+     *
+     * @param triangles the triangles as sequences of {@value #TRIANGLE_VALUES} values:
+     *          <code>x1, y1, z1, x2, y2, z2, x3, y3, z3</code>.
+     * @param pm the progress monitor, worked once per band, can be <code>null</code>.
+     * @throws Exception
+     */
+    public void rasterize( final double[] triangles, final IHMProgressMonitor pm ) throws Exception {
+        final int trianglesCount = triangles.length / TRIANGLE_VALUES;
+        int rows = raster.rows;
+        int bandRows = Math.max(MIN_BAND_ROWS, (rows + threads * 4 - 1) / (threads * 4));
+        final int bandsCount = (rows + bandRows - 1) / bandRows;
+
+        // assign the triangles to the bands they touch
+        int[] triangleRows = new int[trianglesCount * 2];
+        int[] bandStart = new int[bandsCount + 1];
+        for( int t = 0; t < trianglesCount; t++ ) {
+            int base = t * TRIANGLE_VALUES;
+            double minY = Math.min(triangles[base + 1], Math.min(triangles[base + 4], triangles[base + 7]));
+            double maxY = Math.max(triangles[base + 1], Math.max(triangles[base + 4], triangles[base + 7]));
+            int fromRow = Math.max(0, (int) Math.ceil((north - maxY) / yres - 0.5 - EPSILON));
+            int toRow = Math.min(rows - 1, (int) Math.floor((north - minY) / yres - 0.5 + EPSILON));
+            if (fromRow > toRow) {
+                triangleRows[t * 2] = -1;
+                continue;
+            }
+            triangleRows[t * 2] = fromRow;
+            triangleRows[t * 2 + 1] = toRow;
+            for( int b = fromRow / bandRows; b <= toRow / bandRows; b++ ) {
+                bandStart[b + 1]++;
+            }
+        }
+        for( int b = 0; b < bandsCount; b++ ) {
+            bandStart[b + 1] += bandStart[b];
+        }
+        final int[] bandTriangles = new int[bandStart[bandsCount]];
+        int[] next = new int[bandsCount];
+        System.arraycopy(bandStart, 0, next, 0, bandsCount);
+        for( int t = 0; t < trianglesCount; t++ ) {
+            int fromRow = triangleRows[t * 2];
+            if (fromRow < 0) {
+                continue;
+            }
+            int toRow = triangleRows[t * 2 + 1];
+            for( int b = fromRow / bandRows; b <= toRow / bandRows; b++ ) {
+                bandTriangles[next[b]++] = t;
+            }
+        }
+
+        if (pm != null) {
+            pm.beginTask("Rasterizing triangles...", bandsCount);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, bandsCount)));
+        try {
+            List<Future< ? >> futures = new ArrayList<>();
+            for( int b = 0; b < bandsCount; b++ ) {
+                final int fromRow = b * bandRows;
+                final int toRow = Math.min(rows - 1, fromRow + bandRows - 1);
+                final int from = bandStart[b];
+                final int to = bandStart[b + 1];
+                futures.add(executor.submit(new Runnable(){
+                    public void run() {
+                        for( int i = from; i < to; i++ ) {
+                            fillTriangle(triangles, bandTriangles[i] * TRIANGLE_VALUES, fromRow, toRow);
+                        }
+                        if (pm != null) {
+                            synchronized (pm) {
+                                pm.worked(1);
+                            }
+                        }
+                    }
+                }));
+            }
+            for( Future< ? > future : futures ) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (pm != null) {
+            pm.done();
+        }
+    }
+
+    /**
+     * Fill the cells of a triangle that lie in the given rows.
+     */
+    private void fillTriangle( double[] triangles, int base, int bandFromRow, int bandToRow ) {
+        double x1 = triangles[base];
+        double y1 = triangles[base + 1];
+        double z1 = triangles[base + 2];
+        double x2 = triangles[base + 3];
+        double y2 = triangles[base + 4];
+        double z2 = triangles[base + 5];
+        double x3 = triangles[base + 6];
+        double y3 = triangles[base + 7];
+        double z3 = triangles[base + 8];
+
+        // barycentric weights as planes over x and y
+        double det = (y2 - y3) * (x1 - x3) + (x3 - x2) * (y1 - y3);
+        if (det == 0 || Double.isNaN(det)) {
+            // degenerate triangle
+            return;
+        }
+        double zx = ((y2 - y3) * (z1 - z3) + (y3 - y1) * (z2 - z3)) / det;
+        double zy = ((x3 - x2) * (z1 - z3) + (x1 - x3) * (z2 - z3)) / det;
+
+        double minY = Math.min(y1, Math.min(y2, y3));
+        double maxY = Math.max(y1, Math.max(y2, y3));
+        double minX = Math.min(x1, Math.min(x2, x3));
+        double maxX = Math.max(x1, Math.max(x2, x3));
+        double tolerance = EPSILON * Math.max(1.0, Math.max(Math.abs(maxX), Math.abs(maxY)));
+        int fromRow = Math.max(bandFromRow, (int) Math.ceil((north - maxY) / yres - 0.5 - EPSILON));
+        int toRow = Math.min(bandToRow, (int) Math.floor((north - minY) / yres - 0.5 + EPSILON));
+
+        double[] data = raster.data;
+        int cols = raster.cols;
+        double[] span = new double[2];
+        for( int r = fromRow; r <= toRow; r++ ) {
+            double y = north - (r + 0.5) * yres;
+            // intersect the scanline with the edges
+            span[0] = Double.POSITIVE_INFINITY;
+            span[1] = Double.NEGATIVE_INFINITY;
+            addEdgeSpan(x1, y1, x2, y2, y, tolerance, span);
+            addEdgeSpan(x2, y2, x3, y3, y, tolerance, span);
+            addEdgeSpan(x3, y3, x1, y1, y, tolerance, span);
+            double left = Math.max(span[0], minX);
+            double right = Math.min(span[1], maxX);
+            if (left > right) {
+                continue;
+            }
+            int fromCol = Math.max(0, (int) Math.ceil((left - west) / xres - 0.5 - EPSILON));
+            int toCol = Math.min(cols - 1, (int) Math.floor((right - west) / xres - 0.5 + EPSILON));
+            int rowIndex = raster.offset + r * raster.stride;
+            for( int c = fromCol; c <= toCol; c++ ) {
+                double x = west + (c + 0.5) * xres;
+                double z = z3 + zx * (x - x3) + zy * (y - y3);
+                int index = rowIndex + c;
+                double value = data[index];
+                if (Double.isNaN(value) || HMConstants.isNovalue(value) || z > value) {
+                    data[index] = z;
+                }
+            }
+        }
+    }
+
+    private static void addEdgeSpan( double xa, double ya, double xb, double yb, double y, double tolerance, double[] span ) {
+        double minY = Math.min(ya, yb);
+        double maxY = Math.max(ya, yb);
+        if (y < minY - tolerance || y > maxY + tolerance) {
+            return;
+        }
+        if (maxY - minY <= tolerance) {
+            // horizontal edge on the scanline
+            span[0] = Math.min(span[0], Math.min(xa, xb));
+            span[1] = Math.max(span[1], Math.max(xa, xb));
+            return;
+        }
+        double t = (y - ya) / (yb - ya);
+        t = Math.max(0.0, Math.min(1.0, t));
+        double x = xa + t * (xb - xa);
+        span[0] = Math.min(span[0], x);
+        span[1] = Math.max(span[1], x);
+    }
+}
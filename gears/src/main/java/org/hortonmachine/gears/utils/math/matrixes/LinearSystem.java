@@ -129,6 +129,21 @@ public class LinearSystem extends SquareMatrix
         return x;
     }
 
+    /**
+     * Compute the LU decomposition now instead of at the first solve.
+     *
+     * <p>Once the system is factorized, {@link #solve(ColumnVector, boolean)}
+     * only does the substitutions and doesn't modify the system, so it
+     * can be called for many right-hand sides, also from several threads.</p>
+     *
+     * @throws matrix.MatrixException for a zero row or
+     *                                a singular matrix
+     */
+    public void factorize() throws MatrixException
+    {
+        decompose();
+    }
+
     /**
      * Compute the upper triangular matrix U and lower triangular
      * matrix L such that A = L*U.  Store L and U together in
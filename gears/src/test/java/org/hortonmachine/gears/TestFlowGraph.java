@@ -0,0 +1,105 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears;
+
+import java.awt.image.WritableRaster;
+
+import javax.media.jai.iterator.RandomIter;
+import javax.media.jai.iterator.RandomIterFactory;
+
+import org.hortonmachine.gears.libs.modules.FlowGraph;
+import org.hortonmachine.gears.libs.modules.IFlowAccumulator;
+import org.hortonmachine.gears.libs.modules.PackedGrid;
+import org.hortonmachine.gears.utils.HMTestCase;
+import org.hortonmachine.gears.utils.HMTestMaps;
+import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
+
+/**
+ * Test the {@link FlowGraph} accumulation.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestFlowGraph extends HMTestCase {
+
+    public void testTca() throws Exception {
+        FlowGraph graph = createGraph(HMTestMaps.flowData);
+        for( int threads : new int[]{1, 4} ) {
+            double[] tca = graph.accumulate(IFlowAccumulator.CELLS_COUNT, threads);
+            checkEqual(graph, tca, HMTestMaps.tcaData);
+        }
+    }
+
+    public void testGraph() throws Exception {
+        FlowGraph graph = createGraph(HMTestMaps.flowData);
+
+        // the novalue border
+        int border = graph.index(0, 3);
+        assertFalse(graph.isValid(border));
+        assertFalse(graph.isSource(border));
+
+        // flows west into the border
+        int outlet = graph.index(1, 3);
+        assertTrue(graph.isValid(outlet));
+        assertEquals(FlowGraph.NO_DOWNSTREAM, graph.getDownstream(outlet));
+
+        int source = graph.index(2, 1);
+        assertTrue(graph.isSource(source));
+        assertEquals(graph.index(1, 2), graph.getDownstream(source));
+
+        int[] upstream = new int[PackedGrid.NEIGHBOURS];
+        int index = graph.index(2, 4);
+        int count = graph.getUpstream(index, upstream);
+        assertEquals(graph.getUpstreamCount(index), count);
+        for( int i = 0; i < count; i++ ) {
+            assertEquals(index, graph.getDownstream(upstream[i]));
+        }
+    }
+
+    public void testLoop() throws Exception {
+        // two cells flowing into each other, fed by a third one
+        int[] flow = {1, 5, 5, 10};
+        FlowGraph graph = new FlowGraph(flow, 4, 1);
+        double[] tca = graph.accumulate(IFlowAccumulator.CELLS_COUNT, 1);
+        assertTrue(Double.isNaN(tca[0]));
+        assertTrue(Double.isNaN(tca[1]));
+        assertEquals(1.0, tca[2], DELTA);
+        assertEquals(1.0, tca[3], DELTA);
+    }
+
+    private FlowGraph createGraph( double[][] flowData ) {
+        WritableRaster flowWR = CoverageUtilities.createWritableRasterFromMatrix(flowData, true);
+        RandomIter flowIter = RandomIterFactory.create(flowWR, null);
+        FlowGraph graph = FlowGraph.fromFlowIter(flowIter, flowData[0].length, flowData.length);
+        flowIter.done();
+        return graph;
+    }
+
+    private void checkEqual( FlowGraph graph, double[] values, double[][] expected ) {
+        for( int r = 0; r < expected.length; r++ ) {
+            for( int c = 0; c < expected[0].length; c++ ) {
+                double value = values[graph.index(c, r)];
+                if (Double.isNaN(expected[r][c])) {
+                    assertTrue(c + "/" + r, Double.isNaN(value));
+                } else {
+                    assertEquals(c + "/" + r, expected[r][c], value, DELTA);
+                }
+            }
+        }
+    }
+
+}
@@ -1,5 +1,6 @@
 package org.hortonmachine.gears;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.TreeSet;
@@ -33,6 +34,7 @@ public class TestFlowUtils extends HMTestCase {
     private double yRes;
     private RandomIter elevationIter;
     private RandomIter flowIter;
+    private RandomIter threadSafeFlowIter;
 
     protected void setUp() throws Exception {
         double[][] mapData = HMTestMaps.mapData;
@@ -50,6 +52,7 @@ public class TestFlowUtils extends HMTestCase {
 
         elevationIter = CoverageUtilities.getRandomIterator(inElev);
         flowIter = CoverageUtilities.getRandomIterator(inFlow);
+        threadSafeFlowIter = CoverageUtilities.getThreadSafeRandomIterator(inFlow);
     }
 
     public void testGridNodeWindow() throws Exception {
@@ -225,4 +228,27 @@ public class TestFlowUtils extends HMTestCase {
         assertNull(n);
     }
 
+    public void testLockFreeFlowNodes() throws Exception {
+        assertFalse(FlowNode.isLockFree(flowIter));
+        assertTrue(FlowNode.isLockFree(threadSafeFlowIter));
+
+        List<int[]> cells = new ArrayList<>();
+        for( int r = 0; r < nRows; r++ ) {
+            for( int c = 0; c < nCols; c++ ) {
+                cells.add(new int[]{c, r});
+            }
+        }
+        cells.parallelStream().forEach(cell -> {
+            FlowNode node = new FlowNode(flowIter, nCols, nRows, cell[0], cell[1]);
+            FlowNode lockFreeNode = new FlowNode(threadSafeFlowIter, nCols, nRows, cell[0], cell[1]);
+            String msg = cell[0] + "/" + cell[1];
+            assertEquals(msg, node.isValid(), lockFreeNode.isValid());
+            assertEquals(msg, node.flow, lockFreeNode.flow);
+            assertEquals(msg, node.touchesBound(), lockFreeNode.touchesBound());
+            for( Direction direction : Direction.getOrderedDirs() ) {
+                assertEquals(msg, node.getFlowAt(direction), lockFreeNode.getFlowAt(direction));
+            }
+        });
+    }
+
 }
@@ -0,0 +1,88 @@
+package org.hortonmachine.gears;
+
+import org.hortonmachine.gears.libs.modules.multiprocessing.ExecutionPlanner;
+import org.hortonmachine.gears.libs.modules.multiprocessing.FixedChunkSizePlanner;
+import org.hortonmachine.gears.libs.modules.multiprocessing.GridMultiProcessing;
+import org.hortonmachine.gears.libs.modules.multiprocessing.InThreadExecutionPlanner;
+import org.hortonmachine.gears.utils.HMTestCase;
+
+/**
+ * Test the tiled loops of {@link GridMultiProcessing}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestGridMultiProcessing extends HMTestCase {
+
+    private static class CountingProcessor extends GridMultiProcessing {
+        private final boolean parallel;
+
+        CountingProcessor( boolean parallel ) {
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected ExecutionPlanner createDefaultPlanner() {
+            return parallel ? new FixedChunkSizePlanner() : new InThreadExecutionPlanner();
+        }
+
+        int[][] countCells( int cols, int rows, boolean ignoreBorder, int tileCols, int tileRows ) throws Exception {
+            int[][] counts = new int[rows][cols];
+            processGridTiles(cols, rows, ignoreBorder, tileCols, tileRows, tile -> {
+                for( int r = tile.startRow; r < tile.endRow; r++ ) {
+                    for( int c = tile.startCol; c < tile.endCol; c++ ) {
+                        counts[r][c]++;
+                    }
+                }
+            });
+            return counts;
+        }
+
+        int[][] countCells( int cols, int rows, boolean ignoreBorder ) throws Exception {
+            int[][] counts = new int[rows][cols];
+            processGrid(cols, rows, ignoreBorder, ( c, r ) -> counts[r][c]++);
+            return counts;
+        }
+
+        void failAt( int col, int row ) throws Exception {
+            processGrid(10, 10, false, ( c, r ) -> {
+                if (c == col && r == row) {
+                    throw new IllegalStateException("test");
+                }
+            });
+        }
+    }
+
+    public void testTilesCoverGrid() throws Exception {
+        for( boolean parallel : new boolean[]{false, true} ) {
+            CountingProcessor processor = new CountingProcessor(parallel);
+
+            checkCounts(processor.countCells(37, 23, false), false);
+            checkCounts(processor.countCells(37, 23, true), true);
+            checkCounts(processor.countCells(37, 23, false, 5, 7), false);
+            checkCounts(processor.countCells(37, 23, true, 10, 1), true);
+            checkCounts(processor.countCells(1, 1, false, -1, -1), false);
+        }
+    }
+
+    public void testExceptionIsRethrown() throws Exception {
+        CountingProcessor processor = new CountingProcessor(true);
+        try {
+            processor.failAt(5, 5);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("test", e.getMessage());
+        }
+    }
+
+    private void checkCounts( int[][] counts, boolean ignoreBorder ) {
+        int rows = counts.length;
+        int cols = counts[0].length;
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                boolean isBorder = r == 0 || c == 0 || r == rows - 1 || c == cols - 1;
+                int expected = ignoreBorder && isBorder ? 0 : 1;
+                assertEquals(expected, counts[r][c]);
+            }
+        }
+    }
+}
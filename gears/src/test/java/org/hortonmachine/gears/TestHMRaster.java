@@ -0,0 +1,69 @@
+package org.hortonmachine.gears;
+
+import java.awt.image.WritableRaster;
+
+import javax.media.jai.iterator.WritableRandomIter;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.hortonmachine.gears.utils.HMTestCase;
+import org.hortonmachine.gears.utils.HMTestMaps;
+import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
+import org.hortonmachine.gears.utils.coverage.HMDoubleRaster;
+import org.hortonmachine.gears.utils.coverage.HMIntRaster;
+import org.hortonmachine.gears.utils.coverage.HMRaster;
+
+/**
+ * Test {@link HMRaster}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestHMRaster extends HMTestCase {
+
+    public void testWrapSharesData() throws Exception {
+        double[][] mapData = HMTestMaps.mapData;
+        WritableRaster writableRaster = CoverageUtilities.createWritableRasterFromMatrix(mapData, true);
+
+        HMRaster raster = HMRaster.wrap(writableRaster);
+        assertTrue(raster instanceof HMDoubleRaster);
+        assertEquals(mapData[0].length, raster.cols);
+        assertEquals(mapData.length, raster.rows);
+        for( int r = 0; r < raster.rows; r++ ) {
+            for( int c = 0; c < raster.cols; c++ ) {
+                assertEquals(mapData[r][c], raster.getDouble(c, r), DELTA);
+            }
+        }
+
+        raster.setDouble(3, 2, 123.0);
+        assertEquals(123.0, writableRaster.getSampleDouble(3, 2, 0), DELTA);
+    }
+
+    public void testCoverageRoundtrip() throws Exception {
+        double[][] mapData = HMTestMaps.mapData;
+        GridCoverage2D coverage = CoverageUtilities.buildCoverage("elev", mapData, HMTestMaps.getEnvelopeparams(),
+                HMTestMaps.getCrs(), true);
+
+        HMRaster raster = HMRaster.fromCoverage(coverage);
+        GridCoverage2D outCoverage = raster.buildCoverage("out", HMTestMaps.getEnvelopeparams(), HMTestMaps.getCrs());
+        checkMatrixEqual(outCoverage.getRenderedImage(), mapData, DELTA);
+    }
+
+    public void testIntRasterAndIterator() throws Exception {
+        HMIntRaster raster = new HMIntRaster(4, 3, 7);
+        raster.set(1, 2, 5);
+
+        WritableRaster writableRaster = raster.toWritableRaster();
+        assertEquals(5, writableRaster.getSample(1, 2, 0));
+        assertEquals(7, writableRaster.getSample(3, 0, 0));
+
+        WritableRandomIter iter = raster.getWritableRandomIterator();
+        iter.setSample(3, 1, 0, 9);
+        assertEquals(9, raster.get(3, 1));
+        assertEquals(9, writableRaster.getSample(3, 1, 0));
+        try {
+            iter.getSampleDouble(4, 0, 0);
+            fail();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // expected, as for JAI iterators
+        }
+    }
+}
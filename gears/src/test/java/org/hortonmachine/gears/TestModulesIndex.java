@@ -0,0 +1,70 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.hortonmachine.gears.io.las.databases.DatabaseLasWriter;
+import org.hortonmachine.gears.libs.modules.ClassField;
+import org.hortonmachine.gears.libs.modules.ModulesIndex;
+import org.hortonmachine.gears.utils.HMTestCase;
+import org.scannotation.ClasspathUrlFinder;
+
+import oms3.Access;
+import oms3.ComponentAccess;
+
+/**
+ * Test the {@link ModulesIndex} built at compile time.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestModulesIndex extends HMTestCase {
+
+    public void testIndexMatchesReflection() throws Exception {
+        URL baseclassUrl = ClasspathUrlFinder.findClassBase(JGrassGears.class);
+        ModulesIndex modulesIndex = new ModulesIndex(baseclassUrl);
+        assertTrue(modulesIndex.isIndexed());
+
+        Set<String> classNames = modulesIndex.getModuleClassNames("org.hortonmachine.gears");
+        assertTrue(classNames.contains(DatabaseLasWriter.class.getName()));
+
+        for( String className : new String[]{DatabaseLasWriter.class.getName(), classNames.iterator().next()} ) {
+            Class< ? > moduleClass = Class.forName(className);
+            List<String> indexedNames = new ArrayList<>();
+            for( ClassField field : modulesIndex.getFields(moduleClass, "TESTED") ) {
+                indexedNames.add((field.isIn ? "in:" : "out:") + field.fieldName);
+                assertEquals(moduleClass.getField(field.fieldName).getType(), field.fieldClass);
+            }
+
+            ComponentAccess cA = new ComponentAccess(moduleClass.newInstance());
+            List<String> reflectedNames = new ArrayList<>();
+            for( Access access : cA.inputs() ) {
+                reflectedNames.add("in:" + access.getField().getName());
+            }
+            for( Access access : cA.outputs() ) {
+                reflectedNames.add("out:" + access.getField().getName());
+            }
+            assertEquals(reflectedNames.size(), indexedNames.size());
+            assertTrue(indexedNames.containsAll(reflectedNames));
+        }
+    }
+
+}
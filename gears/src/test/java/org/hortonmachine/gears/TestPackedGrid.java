@@ -0,0 +1,84 @@
+package org.hortonmachine.gears;
+
+import java.awt.image.WritableRaster;
+import java.util.List;
+
+import javax.media.jai.iterator.RandomIter;
+import javax.media.jai.iterator.RandomIterFactory;
+
+import org.hortonmachine.gears.libs.modules.GridNode;
+import org.hortonmachine.gears.libs.modules.PackedGrid;
+import org.hortonmachine.gears.utils.HMTestCase;
+import org.hortonmachine.gears.utils.HMTestMaps;
+import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
+import org.hortonmachine.gears.utils.coverage.HMDoubleRaster;
+import org.hortonmachine.gears.utils.coverage.HMRaster;
+
+/**
+ * Test that {@link PackedGrid} navigates the grid as {@link GridNode} does.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestPackedGrid extends HMTestCase {
+
+    public void testSameAsGridNode() throws Exception {
+        checkGrid(HMTestMaps.mapData);
+        checkGrid(HMTestMaps.pitData);
+    }
+
+    private void checkGrid( double[][] data ) {
+        int rows = data.length;
+        int cols = data[0].length;
+        double xRes = 30.0;
+        double yRes = 20.0;
+
+        WritableRaster writableRaster = CoverageUtilities.createWritableRasterFromMatrix(data, true);
+        RandomIter iter = RandomIterFactory.create(writableRaster, null);
+        PackedGrid grid = PackedGrid.fromRaster((HMDoubleRaster) HMRaster.wrap(writableRaster), xRes, yRes);
+
+        int[] neighbours = new int[PackedGrid.NEIGHBOURS];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                GridNode node = new GridNode(iter, cols, rows, xRes, yRes, c, r);
+                int index = grid.index(c, r);
+                String msg = c + "/" + r;
+
+                assertEquals(msg, node.isValid(), grid.isValid(index));
+                if (!node.isValid()) {
+                    continue;
+                }
+                assertEquals(msg, node.touchesBound(), grid.touchesBound(index));
+                assertEquals(msg, node.touchesNovalue(), grid.touchesNovalue(index));
+                assertEquals(msg, node.getSurroundingMin(), grid.getSurroundingMin(index), DELTA);
+                assertEquals(msg, node.isPit(), grid.isPit(index));
+                assertEquals(msg, node.getFlow(), grid.getFlow(index));
+
+                GridNode down = node.goDownstreamSP();
+                int downIndex = grid.goDownstreamSP(index);
+                if (down == null) {
+                    assertEquals(msg, -1, downIndex);
+                } else {
+                    assertEquals(msg, grid.index(down.col, down.row), downIndex);
+                }
+
+                List<GridNode> validNodes = node.getValidSurroundingNodes();
+                int count = grid.getValidNeighbours(index, neighbours);
+                assertEquals(msg, validNodes.size(), count);
+                for( int i = 0; i < count; i++ ) {
+                    GridNode validNode = validNodes.get(i);
+                    assertEquals(msg, grid.index(validNode.col, validNode.row), neighbours[i]);
+                }
+            }
+        }
+    }
+
+    public void testSharedData() throws Exception {
+        HMDoubleRaster raster = new HMDoubleRaster(3, 2, 5.0);
+        PackedGrid grid = PackedGrid.fromRaster(raster, 1, 1);
+        grid.setElevation(grid.index(2, 1), 7.0);
+        assertEquals(7.0, raster.get(2, 1), DELTA);
+
+        assertEquals(-1, grid.neighbour(grid.index(0, 0), 4));
+        assertEquals(grid.index(1, 0), grid.neighbour(grid.index(0, 0), 0));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.hortonmachine.gears.libs.modules.StationValues;
+import org.hortonmachine.gears.utils.HMTestCase;
+
+/**
+ * Test {@link StationValues} and its map view.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestStationValues extends HMTestCase {
+
+    public void testStations() throws Exception {
+        StationValues values = new StationValues(2);
+        for( int i = 0; i < 100; i++ ) {
+            assertEquals(i, values.put(i * 37 - 500, i));
+        }
+        int index = values.add(10000, 3);
+        values.setValue(index, 2, 5.0);
+
+        assertEquals(101, values.size());
+        for( int i = 0; i < 100; i++ ) {
+            assertEquals(i, values.indexOf(i * 37 - 500));
+            assertEquals(i * 37 - 500, values.getId(i));
+            assertEquals((double) i, values.getValueOf(i * 37 - 500), DELTA);
+        }
+        assertEquals(-1, values.indexOf(1));
+        assertEquals(3, values.getCount(index));
+        assertTrue(Double.isNaN(values.getValue(index, 0)));
+        assertEquals(5.0, values.getValues(index)[2], DELTA);
+
+        try {
+            values.put(10000, 1.0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // different number of values
+        }
+
+        // the next timestep shares the stations, not the values
+        StationValues next = values.newValues();
+        assertEquals(values.size(), next.size());
+        assertEquals(index, next.indexOf(10000));
+        assertTrue(Double.isNaN(next.getValue(0)));
+        next.add(20000, 1);
+        assertEquals(-1, values.indexOf(20000));
+        assertEquals(0.0, values.getValue(values.indexOf(-500)), DELTA);
+    }
+
+    public void testMapView() throws Exception {
+        StationValues values = new StationValues();
+        HashMap<Integer, double[]> expected = new HashMap<Integer, double[]>();
+        for( int id : new int[]{1221, 5, 1097, 32, 16, 48} ) {
+            values.put(id, id / 2.0, id / 4.0);
+            expected.put(id, new double[]{id / 2.0, id / 4.0});
+        }
+
+        HashMap<Integer, double[]> map = values.asMap();
+        assertSame(values, StationValues.fromMap(map));
+        assertEquals(expected.size(), map.size());
+
+        // used as map it is filled as a map built by put would be
+        List<Integer> expectedKeys = new ArrayList<Integer>(expected.keySet());
+        List<Integer> keys = new ArrayList<Integer>(map.keySet());
+        assertEquals(expectedKeys, keys);
+        for( Entry<Integer, double[]> entry : expected.entrySet() ) {
+            double[] mapValues = map.get(entry.getKey());
+            assertEquals(entry.getValue()[0], mapValues[0], DELTA);
+            assertEquals(entry.getValue()[1], mapValues[1], DELTA);
+        }
+
+        // changes through the map are not lost
+        map.put(7, new double[]{7.0});
+        StationValues fromMap = StationValues.fromMap(map);
+        assertNotSame(values, fromMap);
+        assertEquals(7.0, fromMap.getValueOf(7), DELTA);
+        assertEquals(-1, values.indexOf(7));
+
+        StationValues copy = StationValues.fromMap(expected);
+        assertEquals(expected.size(), copy.size());
+        assertEquals(1221 / 4.0, copy.getValue(copy.indexOf(1221), 1), DELTA);
+    }
+
+    public void testConcurrentReaders() throws Exception {
+        // the same @Out map is read by modules running in parallel
+        int threads = 4;
+        final int stations = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for( int round = 0; round < 200; round++ ) {
+                StationValues values = new StationValues(stations);
+                for( int id = 0; id < stations; id++ ) {
+                    values.put(id, id * 2.0);
+                }
+                final HashMap<Integer, double[]> map = values.asMap();
+                final CountDownLatch start = new CountDownLatch(1);
+                List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+                for( int t = 0; t < threads; t++ ) {
+                    futures.add(executor.submit(new Callable<Integer>(){
+                        public Integer call() throws Exception {
+                            start.await();
+                            int found = 0;
+                            for( int id = 0; id < stations; id++ ) {
+                                double[] v = map.get(id);
+                                if (v != null && v[0] == id * 2.0) {
+                                    found++;
+                                }
+                            }
+                            return found;
+                        }
+                    }));
+                }
+                start.countDown();
+                for( Future<Integer> future : futures ) {
+                    assertEquals(stations, future.get().intValue());
+                }
+                assertEquals(stations, map.size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears;
+
+import java.util.Random;
+
+import org.hortonmachine.gears.libs.modules.HMConstants;
+import org.hortonmachine.gears.utils.HMTestCase;
+import org.hortonmachine.gears.utils.coverage.HMDoubleRaster;
+import org.hortonmachine.gears.utils.coverage.TriangleRasterizer;
+
+/**
+ * Test {@link TriangleRasterizer}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestTriangleRasterizer extends HMTestCase {
+
+    public void testPlane() throws Exception {
+        // two triangles covering a 10x8 raster with 2m cells, on the plane z = x + 2y
+        double[] triangles = new double[]{//
+                0, 0, 0, 20, 0, 20, 20, 16, 52, //
+                0, 0, 0, 20, 16, 52, 0, 16, 32 //
+        };
+        HMDoubleRaster raster = new HMDoubleRaster(10, 8, HMConstants.doubleNovalue);
+        TriangleRasterizer rasterizer = new TriangleRasterizer(raster, 0, 16, 2, 2);
+        rasterizer.rasterize(triangles, pm);
+        for( int r = 0; r < raster.rows; r++ ) {
+            for( int c = 0; c < raster.cols; c++ ) {
+                double x = 1 + c * 2;
+                double y = 15 - r * 2;
+                assertEquals(x + 2 * y, raster.get(c, r), DELTA);
+            }
+        }
+    }
+
+    public void testCoverageAndMaximum() throws Exception {
+        // the cell centers on the border are inside, the ones outside are untouched
+        double[] triangles = new double[]{//
+                1, 1, 5, 7, 1, 5, 1, 7, 5, //
+                2, 2, 8, 4, 2, 8, 2, 4, 8, //
+                2, 2, 1, 4, 2, 1, 2, 4, 1 //
+        };
+        HMDoubleRaster raster = new HMDoubleRaster(8, 8, HMConstants.doubleNovalue);
+        TriangleRasterizer rasterizer = new TriangleRasterizer(raster, 0, 8, 1, 1);
+        rasterizer.rasterize(triangles, null);
+
+        double nv = HMConstants.doubleNovalue;
+        double[][] expected = new double[][]{//
+                {nv, nv, nv, nv, nv, nv, nv, nv}, //
+                {nv, 5, nv, nv, nv, nv, nv, nv}, //
+                {nv, 5, 5, nv, nv, nv, nv, nv}, //
+                {nv, 5, 5, 5, nv, nv, nv, nv}, //
+                {nv, 5, 8, 5, 5, nv, nv, nv}, //
+                {nv, 5, 8, 8, 5, 5, nv, nv}, //
+                {nv, 5, 5, 5, 5, 5, 5, nv}, //
+                {nv, nv, nv, nv, nv, nv, nv, nv} //
+        };
+        for( int r = 0; r < raster.rows; r++ ) {
+            for( int c = 0; c < raster.cols; c++ ) {
+                assertEquals("cell " + c + "/" + r, expected[r][c], raster.get(c, r), DELTA);
+            }
+        }
+    }
+
+    public void testThreadsGiveSameResult() throws Exception {
+        Random random = new Random(3);
+        int trianglesCount = 2000;
+        double[] triangles = new double[trianglesCount * TriangleRasterizer.TRIANGLE_VALUES];
+        for( int i = 0; i < triangles.length; i += 3 ) {
+            triangles[i] = random.nextDouble() * 120 - 10;
+            triangles[i + 1] = random.nextDouble() * 120 - 10;
+            triangles[i + 2] = random.nextDouble() * 100;
+        }
+        HMDoubleRaster single = new HMDoubleRaster(100, 100, HMConstants.doubleNovalue);
+        new TriangleRasterizer(single, 0, 100, 1, 1).rasterize(triangles, null);
+
+        HMDoubleRaster multi = new HMDoubleRaster(100, 100, HMConstants.doubleNovalue);
+        TriangleRasterizer rasterizer = new TriangleRasterizer(multi, 0, 100, 1, 1);
+        rasterizer.setThreads(4);
+        rasterizer.rasterize(triangles, null);
+
+        for( int i = 0; i < single.data.length; i++ ) {
+            assertEquals(single.data[i], multi.data[i], 0.0);
+        }
+    }
+}
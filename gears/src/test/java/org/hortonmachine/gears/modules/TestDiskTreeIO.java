@@ -2,11 +2,14 @@ package org.hortonmachine.gears.modules;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.List;
 
+import org.hortonmachine.gears.io.disktree.DiskTreeReader;
+import org.hortonmachine.gears.io.disktree.DiskTreeWriter;
 import org.hortonmachine.gears.io.disktree.IDiskTree;
 import org.hortonmachine.gears.utils.HMTestCase;
 
@@ -151,6 +154,47 @@ public class TestDiskTreeIO extends HMTestCase {
 
     }
 
+    public void testFormats() throws Exception {
+        WKTReader r = new WKTReader();
+        Geometry pol = r.read("POLYGON ((210 350, 230 310, 290 350, 290 350, 210 350))");
+        pol.setUserData(new Integer(1));
+        Geometry line = r.read("LINESTRING (50 380, 90 210, 180 160, 240 40, 240 40)");
+        line.setUserData("line");
+        Geometry point = r.read("POINT (130 120)");
+        point.setUserData(new Long(3));
+        Geometry[] geoms = {point, line, pol};
+
+        for( int formatVersion : new int[]{IDiskTree.FORMAT_SERIALIZED, IDiskTree.FORMAT_PACKED} ) {
+            File file = File.createTempFile("hm_disktree", ".bin");
+            DiskTreeWriter writer = new DiskTreeWriter(file.getAbsolutePath());
+            writer.setFormatVersion(formatVersion);
+            writer.writeGeometries(geoms);
+
+            try (DiskTreeReader reader = new DiskTreeReader(file.getAbsolutePath())) {
+                assertEquals(formatVersion, reader.getFormatVersion());
+
+                List<Geometry> polQuery = reader.queryGeometries(pol.getEnvelopeInternal());
+                assertEquals(2, polQuery.size());
+                for( Geometry geometry : polQuery ) {
+                    if (geometry.getUserData().equals("line")) {
+                        assertTrue(geometry.equalsExact(line));
+                    } else {
+                        assertEquals(1, geometry.getUserData());
+                        assertTrue(geometry.equalsExact(pol));
+                    }
+                }
+
+                List<Geometry> pointQuery = reader.queryGeometries(new Envelope(120, 140, 110, 130));
+                assertEquals(1, pointQuery.size());
+                assertEquals(3L, pointQuery.get(0).getUserData());
+
+                assertEquals(0, reader.query(new Envelope(1000, 1100, 1000, 1100)).size());
+                assertEquals(3, reader.readIndex().query(new Envelope(0, 1000, 0, 1000)).size());
+            }
+            file.delete();
+        }
+    }
+
     private static byte[] serialize( Object obj ) throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         ObjectOutputStream out = new ObjectOutputStream(bos);
@@ -0,0 +1,107 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.modules;
+
+import java.io.File;
+import java.net.URL;
+
+import org.hortonmachine.gears.io.grasslegacy.io.GrassRasterReader;
+import org.hortonmachine.gears.io.grasslegacy.utils.Window;
+import org.hortonmachine.gears.utils.HMTestCase;
+/**
+ * Test the legacy {@link GrassRasterReader}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestGrassRasterReader extends HMTestCase {
+
+    private String grassPath;
+
+    private double[][] mapData = new double[][]{//
+    {800, 900, 1000, 1000, 1200, 1250, 1300, 1350, 1450, 1500}, //
+            {600, Double.NaN, 750, 850, 860, 900, 1000, 1200, 1250, 1500}, //
+            {500, 550, 700, 750, 800, 850, 900, 1000, 1100, 1500}, //
+            {400, 410, 650, 700, 750, 800, 850, 490, 450, 1500}, //
+            {450, 550, 430, 500, 600, 700, 800, 500, 450, 1500}, //
+            {500, 600, 700, 750, 760, 770, 850, 1000, 1150, 1500}, //
+            {600, 700, 750, 800, 780, 790, 1000, 1100, 1250, 1500}, //
+            {800, 910, 980, 1001, 1150, 1200, 1250, 1300, 1450, 1500}};
+
+    protected void setUp() throws Exception {
+        URL testUrl = this.getClass().getClassLoader().getResource("gbovest/testcase/cell/test");
+        grassPath = new File(testUrl.toURI()).getAbsolutePath();
+    }
+
+    public void testReadAll() throws Exception {
+        Window window = new Window(1640650.0, 1640950.0, 5139780.0, 5140020.0, 30.0, 30.0);
+
+        double[][] data = read(window, 1, -1);
+        checkMatrixEqual(data, mapData, DELTA);
+
+        data = read(window, 4, -1);
+        checkMatrixEqual(data, mapData, DELTA);
+    }
+
+    public void testReadBands() throws Exception {
+        Window window = new Window(1640650.0, 1640950.0, 5139780.0, 5140020.0, 30.0, 30.0);
+        double[][] data = read(window, 2, 3);
+        checkMatrixEqual(data, mapData, DELTA);
+
+        double[][] subData = new double[][]{//
+        {1000, 1000, 1200, 1250, 1300, 1350, 1450}, //
+                {750, 850, 860, 900, 1000, 1200, 1250}, //
+                {700, 750, 800, 850, 900, 1000, 1100}, //
+                {650, 700, 750, 800, 850, 490, 450}, //
+                {430, 500, 600, 700, 800, 500, 450}, //
+                {700, 750, 760, 770, 850, 1000, 1150} //
+        };
+        window = new Window(1640710.0, 1640920.0, 5139840.0, 5140020.0, 30.0, 30.0);
+        data = read(window, 1, 4);
+        checkMatrixEqual(data, subData, DELTA);
+    }
+
+    private double[][] read( Window window, int threads, int bandRows ) throws Exception {
+        GrassRasterReader reader = new GrassRasterReader();
+        reader.setOutputDataObject(new double[0][0]);
+        reader.setDataWindow(window);
+        reader.setParameter("threads", threads);
+        if (bandRows > 0) {
+            reader.setParameter("bandrows", bandRows);
+        }
+        double[][] data = new double[window.getRows()][];
+        int readRows = 0;
+        try {
+            assertTrue(reader.open(grassPath));
+            while( reader.hasMoreData(pm) ) {
+                double[][] band = (double[][]) reader.getNextData();
+                assertEquals(readRows, reader.getBandFirstRow());
+                if (bandRows > 0) {
+                    assertTrue(band.length <= bandRows);
+                }
+                for( double[] row : band ) {
+                    data[readRows++] = row;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(window.getRows(), readRows);
+        return data;
+    }
+
+}
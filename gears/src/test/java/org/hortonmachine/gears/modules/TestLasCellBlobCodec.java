@@ -0,0 +1,109 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.modules;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.hortonmachine.gears.io.las.databases.LasCell;
+import org.hortonmachine.gears.io.las.databases.LasCellBlobCodec;
+import org.hortonmachine.gears.utils.HMTestCase;
+
+/**
+ * Test the {@link LasCellBlobCodec}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestLasCellBlobCodec extends HMTestCase {
+
+    private static final double SCALE = 0.01;
+
+    public void testRoundTrip() throws Exception {
+        LasCell cell = createCell(500);
+        for( boolean deflate : new boolean[]{false, true} ) {
+            LasCellBlobCodec codec = new LasCellBlobCodec(SCALE, SCALE, SCALE, deflate);
+            LasCell encoded = codec.encode(cell);
+            assertTrue(encoded.xyzs.length < cell.xyzs.length);
+            assertTrue(encoded.gpsTimes.length < cell.gpsTimes.length);
+            assertEquals(LasCellBlobCodec.MAGIC, encoded.xyzs[0]);
+
+            byte[] xyzs = LasCellBlobCodec.decodePositions(encoded.xyzs, cell.pointsCount);
+            ByteBuffer expected = ByteBuffer.wrap(cell.xyzs);
+            ByteBuffer decoded = ByteBuffer.wrap(xyzs);
+            assertEquals(cell.xyzs.length, xyzs.length);
+            for( int i = 0; i < cell.pointsCount * 3; i++ ) {
+                assertEquals(expected.getDouble(), decoded.getDouble(), SCALE / 100);
+            }
+
+            assertTrue(Arrays.equals(cell.gpsTimes, LasCellBlobCodec.decodeGpsTimes(encoded.gpsTimes, cell.pointsCount)));
+            assertTrue(Arrays.equals(cell.intensitiesClassifications,
+                    LasCellBlobCodec.decodeIntensitiesClassifications(encoded.intensitiesClassifications, cell.pointsCount)));
+            assertTrue(Arrays.equals(cell.returns, LasCellBlobCodec.decodeReturns(encoded.returns, cell.pointsCount)));
+            assertTrue(Arrays.equals(cell.colors, LasCellBlobCodec.decodeColors(encoded.colors, cell.pointsCount)));
+        }
+    }
+
+    public void testPlainBlobsPassThrough() throws Exception {
+        LasCell cell = createCell(50);
+        assertSame(cell.xyzs, LasCellBlobCodec.decodePositions(cell.xyzs, cell.pointsCount));
+        assertSame(cell.gpsTimes, LasCellBlobCodec.decodeGpsTimes(cell.gpsTimes, cell.pointsCount));
+        assertSame(cell.colors, LasCellBlobCodec.decodeColors(cell.colors, cell.pointsCount));
+        assertNull(LasCellBlobCodec.decodeReturns(null, cell.pointsCount));
+
+        // a single point doesn't get any smaller, so it stays plain
+        LasCell single = createCell(1);
+        LasCell encoded = new LasCellBlobCodec(SCALE, SCALE, SCALE, true).encode(single);
+        assertSame(single.xyzs, encoded.xyzs);
+        assertSame(single.xyzs, LasCellBlobCodec.decodePositions(encoded.xyzs, single.pointsCount));
+    }
+
+    private LasCell createCell( int pointsCount ) {
+        Random random = new Random(42);
+        ByteBuffer xyzs = ByteBuffer.allocate(pointsCount * 24);
+        ByteBuffer intensClass = ByteBuffer.allocate(pointsCount * 4);
+        ByteBuffer returns = ByteBuffer.allocate(pointsCount * 4);
+        ByteBuffer gpsTimes = ByteBuffer.allocate(pointsCount * 8);
+        ByteBuffer colors = ByteBuffer.allocate(pointsCount * 6);
+        double gpsTime = 345678.123456;
+        for( int i = 0; i < pointsCount; i++ ) {
+            // as read from a las file: integers times the scale plus the offset
+            xyzs.putDouble(1640000.0 + random.nextInt(300) * SCALE);
+            xyzs.putDouble(5140000.0 + random.nextInt(300) * SCALE);
+            xyzs.putDouble(800.0 + random.nextInt(2000) * SCALE);
+            intensClass.putShort((short) random.nextInt(1000));
+            intensClass.putShort((short) (1 + random.nextInt(2)));
+            returns.putShort((short) 1);
+            returns.putShort((short) 1);
+            gpsTime += random.nextDouble() * 0.001;
+            gpsTimes.putDouble(gpsTime);
+            colors.putShort((short) random.nextInt(65536));
+            colors.putShort((short) random.nextInt(65536));
+            colors.putShort((short) random.nextInt(65536));
+        }
+        LasCell cell = new LasCell();
+        cell.pointsCount = pointsCount;
+        cell.xyzs = xyzs.array();
+        cell.intensitiesClassifications = intensClass.array();
+        cell.returns = returns.array();
+        cell.gpsTimes = gpsTimes.array();
+        cell.colors = colors.array();
+        return cell;
+    }
+
+}
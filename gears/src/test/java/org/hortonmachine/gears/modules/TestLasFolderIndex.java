@@ -0,0 +1,132 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.modules;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.hortonmachine.gears.io.las.ALasDataManager;
+import org.hortonmachine.gears.io.las.core.ALasReader;
+import org.hortonmachine.gears.io.las.core.LasPointColumns;
+import org.hortonmachine.gears.io.las.index.LasIndexer;
+import org.hortonmachine.gears.utils.HMTestCase;
+import org.hortonmachine.gears.utils.files.FileUtilities;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Test the scan of a las folder index against the columns read.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestLasFolderIndex extends HMTestCase {
+
+    private static final String[] LAS_FILES = {"1.2-with-color.las", "autzen.las"};
+
+    public void testScanGivesSamePoints() throws Exception {
+        File folder = File.createTempFile("hm_lasfolder", "");
+        folder.delete();
+        folder.mkdirs();
+        try {
+            long recordsCount = 0;
+            for( String name : LAS_FILES ) {
+                URL lasUrl = this.getClass().getClassLoader().getResource("las/" + name);
+                File lasFile = new File(folder, name);
+                FileUtilities.copyFile(new File(lasUrl.toURI()), lasFile);
+                try (ALasReader reader = ALasReader.getReader(lasFile, null)) {
+                    reader.open();
+                    recordsCount += reader.getHeader().getRecordsCount();
+                }
+            }
+
+            LasIndexer indexer = new LasIndexer();
+            indexer.inFolder = folder.getAbsolutePath();
+            indexer.pCode = "EPSG:32632";
+            indexer.pCellsize = 50;
+            indexer.pm = pm;
+            indexer.process();
+
+            File indexFile = new File(folder, LasIndexer.INDEX_LASFOLDER);
+            try (ALasDataManager dataManager = ALasDataManager.getDataManager(indexFile, null, 0.0, null)) {
+                dataManager.open();
+                Envelope env = new Envelope(dataManager.getOverallEnvelope());
+                Geometry all = LasIndexer.envelopeToPolygon(env);
+
+                LasPointColumns columns = dataManager.getPointColumnsInGeometry(all, true);
+                assertEquals(recordsCount, columns.size());
+
+                // ordered, the files come one after the other and sorted
+                List<String> fileNames = new ArrayList<String>();
+                double[] scanned = scan(dataManager, all, true, 2, true, fileNames);
+                assertEquals(LAS_FILES.length, fileNames.size());
+                List<String> sortedNames = new ArrayList<String>(fileNames);
+                Collections.sort(sortedNames);
+                assertEquals(sortedNames, fileNames);
+                assertTrue(Arrays.equals(sortedX(columns), scanned));
+
+                scanned = scan(dataManager, all, true, 3, false, null);
+                assertTrue(Arrays.equals(sortedX(columns), scanned));
+
+                // a triangle in the lower left half of the data
+                GeometryFactory gf = new GeometryFactory();
+                Geometry triangle = gf.createPolygon(new Coordinate[]{new Coordinate(env.getMinX(), env.getMinY()),
+                        new Coordinate(env.getMaxX(), env.getMinY()), new Coordinate(env.getMinX(), env.getMaxY()),
+                        new Coordinate(env.getMinX(), env.getMinY())});
+                LasPointColumns triangleColumns = dataManager.getPointColumnsInGeometry(triangle, false);
+                assertTrue(triangleColumns.size() > 0);
+                assertTrue(triangleColumns.size() < recordsCount);
+                scanned = scan(dataManager, triangle, false, 2, true, null);
+                assertTrue(Arrays.equals(sortedX(triangleColumns), scanned));
+            }
+        } finally {
+            FileUtilities.deleteFileOrDir(folder);
+        }
+    }
+
+    private double[] scan( ALasDataManager dataManager, Geometry geometry, boolean doOnlyEnvelope, int threads,
+            boolean doOrdered, List<String> fileNames ) throws Exception {
+        LasPointColumns scanned = new LasPointColumns(10000);
+        dataManager.scanPointsInGeometry(geometry, doOnlyEnvelope, threads, doOrdered, pm, ( lasFileName, columns ) -> {
+            if (fileNames != null
+                    && (fileNames.isEmpty() || !fileNames.get(fileNames.size() - 1).equals(lasFileName))) {
+                // a file is consumed completely before the next one starts
+                assertFalse(fileNames.contains(lasFileName));
+                fileNames.add(lasFileName);
+            }
+            for( int i = 0; i < columns.size(); i++ ) {
+                scanned.add(columns, i);
+            }
+        });
+        return sortedX(scanned);
+    }
+
+    private double[] sortedX( LasPointColumns columns ) {
+        double[] x = Arrays.copyOf(columns.x, columns.size());
+        Arrays.sort(x);
+        return x;
+    }
+
+}
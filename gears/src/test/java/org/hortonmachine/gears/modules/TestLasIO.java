@@ -26,6 +26,8 @@ import org.geotools.geometry.jts.ReferencedEnvelope3D;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.hortonmachine.gears.io.las.core.ALasWriter;
 import org.hortonmachine.gears.io.las.core.ILasHeader;
+import org.hortonmachine.gears.io.las.core.LasPointColumns;
+import org.hortonmachine.gears.io.las.core.LasPointFilter;
 import org.hortonmachine.gears.io.las.core.LasRecord;
 import org.hortonmachine.gears.io.las.core.liblas.LiblasHeader;
 import org.hortonmachine.gears.io.las.core.liblas.LiblasJNALibrary;
@@ -38,6 +40,9 @@ import org.hortonmachine.gears.io.las.core.v_1_0.LasWriterBuffered;
 import org.hortonmachine.gears.io.las.core.v_1_0.LasWriterEachPoint;
 import org.hortonmachine.gears.io.las.utils.LasUtils;
 import org.hortonmachine.gears.utils.HMTestCase;
+
+import com.vividsolutions.jts.geom.Envelope;
+
 @SuppressWarnings("nls")
 public class TestLasIO extends HMTestCase {
 
@@ -120,6 +125,62 @@ public class TestLasIO extends HMTestCase {
 
     }
 
+    public void testLasColumnsReader() throws Exception {
+        String[] names = {"las/1.0_1.las", "las/1.2_1.las", "las/1.2_3.las", "las/1.2-with-color.las"};
+        for( String name : names ) {
+            File lasFile = fileFromName(name);
+            try (LasReaderBuffered lasReader = new LasReaderBuffered(lasFile, null);
+                    LasReaderBuffered columnsReader = new LasReaderBuffered(lasFile, null)) {
+                lasReader.open();
+                columnsReader.open();
+
+                LasPointColumns columns = new LasPointColumns(100);
+                while( columnsReader.hasNextPoint() ) {
+                    columns.clear();
+                    int read = columnsReader.readNextPoints(columns, 100, null);
+                    assertEquals(read, columns.size());
+                    for( int i = 0; i < columns.size(); i++ ) {
+                        assertTrue(lasReader.hasNextPoint());
+                        checkColumnsPoint(lasReader.getNextPoint(), columns, i);
+                    }
+                }
+                assertFalse(lasReader.hasNextPoint());
+            }
+        }
+    }
+
+    public void testLasColumnsReaderFilter() throws Exception {
+        File lasFile = fileFromName("las/1.2-with-color.las");
+        try (LasReaderBuffered lasReader = new LasReaderBuffered(lasFile, null)) {
+            lasReader.open();
+            ReferencedEnvelope3D dataEnvelope = lasReader.getHeader().getDataEnvelope();
+            Envelope halfEnvelope = new Envelope(dataEnvelope.getMinX(), dataEnvelope.centre().x, dataEnvelope.getMinY(),
+                    dataEnvelope.getMaxY());
+
+            LasPointFilter filter = new LasPointFilter();
+            filter.setEnvelope(halfEnvelope);
+            filter.setReturnNumbers(new double[]{1});
+
+            LasPointColumns expected = new LasPointColumns(10);
+            long recordsCount = lasReader.getHeader().getRecordsCount();
+            for( long i = 0; i < recordsCount; i++ ) {
+                LasRecord dot = lasReader.getPointAt(i);
+                if (filter.accept(dot)) {
+                    expected.add(dot);
+                }
+            }
+            assertTrue(expected.size() > 0);
+            assertTrue(expected.size() < recordsCount);
+
+            LasPointColumns columns = new LasPointColumns(10);
+            int read = lasReader.readPointsAt(0, (int) recordsCount, columns, filter);
+            assertEquals(expected.size(), read);
+            for( int i = 0; i < read; i++ ) {
+                checkColumnsPoint(expected.toLasRecord(i), columns, i);
+            }
+        }
+    }
+
     public void testLazReader() throws Exception {
         if (doNative) {
             String name = "las/1.2-with-color.laz";
@@ -300,6 +361,20 @@ public class TestLasIO extends HMTestCase {
 
     }
 
+    private void checkColumnsPoint( LasRecord dot, LasPointColumns columns, int index ) {
+        assertEquals(dot.x, columns.x[index], DELTA);
+        assertEquals(dot.y, columns.y[index], DELTA);
+        assertEquals(dot.z, columns.z[index], DELTA);
+        assertEquals(dot.intensity, columns.intensity[index]);
+        assertEquals(dot.returnNumber, columns.returnNumber[index]);
+        assertEquals(dot.numberOfReturns, columns.numberOfReturns[index]);
+        assertEquals(dot.classification, columns.classification[index]);
+        assertEquals(dot.gpsTime, columns.gpsTime[index], DELTA);
+        assertEquals(dot.color[0], columns.red[index]);
+        assertEquals(dot.color[1], columns.green[index]);
+        assertEquals(dot.color[2], columns.blue[index]);
+    }
+
     private File fileFromName( String name ) throws URISyntaxException {
         URL lasUrl = this.getClass().getClassLoader().getResource(name);
         File lasFile = new File(lasUrl.toURI());
@@ -0,0 +1,167 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.modules;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.hortonmachine.gears.modules.r.tmsgenerator.MBTilesHelper;
+import org.hortonmachine.gears.modules.r.tmsgenerator.MBTilesHelper.TileData;
+import org.hortonmachine.gears.modules.r.tmsgenerator.MBTilesWriter;
+import org.hortonmachine.gears.utils.HMTestCase;
+
+/**
+ * Test the {@link MBTilesWriter}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestMBTilesWriter extends HMTestCase {
+
+    public void testWriteAndRead() throws Exception {
+        checkWriteAndRead(false);
+    }
+
+    public void testWriteAndReadDeduplicated() throws Exception {
+        checkWriteAndRead(true);
+    }
+
+    private void checkWriteAndRead( boolean doDeduplicate ) throws Exception {
+        File dbFile = File.createTempFile("hm_tiles", ".mbtiles");
+        try {
+            MBTilesHelper helper = new MBTilesHelper();
+            helper.open(dbFile);
+            helper.createTables(true, doDeduplicate);
+            // small batches, so that more transactions are written
+            try (MBTilesWriter writer = new MBTilesWriter(helper, "png", 2)) {
+                writer.setSkipEmpty(true);
+                writer.addTile(0, 0, 1, image(Color.RED));
+                writer.addTile(1, 0, 1, image(Color.RED));
+                writer.addTile(0, 1, 1, image(Color.BLUE));
+                writer.addTile(1, 1, 1, image(null));
+                writer.addTile(0, 0, 2, image(Color.RED));
+
+                writer.close();
+                assertEquals(4, writer.getQueuedTiles());
+                assertEquals(1, writer.getSkippedTiles());
+            }
+
+            assertEquals(Color.RED.getRGB(), helper.getTile(0, 0, 1).getRGB(10, 10));
+            assertEquals(Color.RED.getRGB(), helper.getTile(1, 0, 1).getRGB(10, 10));
+            assertEquals(Color.BLUE.getRGB(), helper.getTile(0, 1, 1).getRGB(10, 10));
+            assertEquals(Color.RED.getRGB(), helper.getTile(0, 0, 2).getRGB(10, 10));
+            assertNull(helper.getTile(1, 1, 1));
+            helper.close();
+
+            try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath())) {
+                assertEquals(4, count(connection, MBTilesHelper.TABLE_TILES));
+                if (doDeduplicate) {
+                    // the red tiles share one image, keyed by the md5 of the png
+                    assertEquals(4, count(connection, MBTilesHelper.TABLE_MAP));
+                    assertEquals(2, count(connection, MBTilesHelper.TABLE_IMAGES));
+                    String redId = MBTilesHelper.hash(MBTilesHelper.encodeTile(image(Color.RED), "png"));
+                    try (Statement statement = connection.createStatement();
+                            ResultSet resultSet = statement.executeQuery("select count(*) from " + MBTilesHelper.TABLE_MAP
+                                    + " where " + MBTilesHelper.COL_TILE_ID + "='" + redId + "'")) {
+                        assertTrue(resultSet.next());
+                        assertEquals(3, resultSet.getInt(1));
+                    }
+                }
+            }
+        } finally {
+            dbFile.delete();
+        }
+    }
+
+    public void testWriterErrorSurfaces() throws Exception {
+        // an error ends the writer thread, the producers must not wait forever on the full queue
+        OutOfMemoryError error = new OutOfMemoryError("test");
+        MBTilesWriter writer = new MBTilesWriter(new FailingHelper(error), "png", 1);
+        try {
+            for( int i = 0; i < 100; i++ ) {
+                writer.addTile(i, 0, 1, image(Color.RED));
+            }
+            fail();
+        } catch (Exception e) {
+            assertSame(error, e.getCause());
+        }
+        try {
+            writer.close();
+            fail();
+        } catch (Exception e) {
+            assertSame(error, e.getCause());
+        }
+    }
+
+    public void testWriterExceptionSurfacesOnClose() throws Exception {
+        SQLException exception = new SQLException("test");
+        MBTilesWriter writer = new MBTilesWriter(new FailingHelper(exception), "png", 1);
+        writer.addTile(0, 0, 1, image(Color.RED));
+        try {
+            writer.close();
+            fail();
+        } catch (SQLException e) {
+            assertSame(exception, e);
+        }
+    }
+
+    private static BufferedImage image( Color color ) {
+        BufferedImage image = new BufferedImage(MBTilesHelper.TILESIZE, MBTilesHelper.TILESIZE,
+                BufferedImage.TYPE_INT_ARGB);
+        if (color != null) {
+            Graphics2D g = image.createGraphics();
+            g.setColor(color);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+            g.dispose();
+        }
+        return image;
+    }
+
+    private static int count( Connection connection, String table ) throws SQLException {
+        try (Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery("select count(*) from " + table)) {
+            assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static class FailingHelper extends MBTilesHelper {
+        private final Throwable failure;
+
+        FailingHelper( Throwable failure ) {
+            this.failure = failure;
+        }
+
+        @Override
+        public synchronized void addTiles( List<TileData> tiles ) throws Exception {
+            if (failure instanceof Exception) {
+                throw (Exception) failure;
+            }
+            throw (Error) failure;
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gears.modules;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geotools.geometry.jts.ReferencedEnvelope3D;
+import org.hortonmachine.gears.io.las.core.ALasReader;
+import org.hortonmachine.gears.io.las.core.ILasHeader;
+import org.hortonmachine.gears.io.las.databases.LasCell;
+import org.hortonmachine.gears.io.las.databases.StreamingLasCellsBuilder;
+import org.hortonmachine.gears.utils.HMTestCase;
+
+/**
+ * Test the {@link StreamingLasCellsBuilder}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestStreamingLasCells extends HMTestCase {
+
+    public void testBandsGiveSameCells() throws Exception {
+        URL lasUrl = this.getClass().getClassLoader().getResource("las/1.2-with-color.las");
+        File lasFile = new File(lasUrl.toURI());
+
+        long recordsCount;
+        ReferencedEnvelope3D envelope;
+        try (ALasReader reader = ALasReader.getReader(lasFile, null)) {
+            reader.open();
+            ILasHeader header = reader.getHeader();
+            recordsCount = header.getRecordsCount();
+            envelope = header.getDataEnvelope();
+        }
+
+        // all in memory
+        List<LasCell> inMemoryCells = build(lasFile, envelope, Integer.MAX_VALUE, 1);
+        // spilled into many bands, built with more threads
+        List<LasCell> spilledCells = build(lasFile, envelope, 50, 3);
+
+        assertEquals(inMemoryCells.size(), spilledCells.size());
+        long pointsCount = 0;
+        for( int i = 0; i < inMemoryCells.size(); i++ ) {
+            LasCell expected = inMemoryCells.get(i);
+            LasCell cell = spilledCells.get(i);
+            assertTrue(expected.polygon.equalsExact(cell.polygon));
+            assertEquals(expected.pointsCount, cell.pointsCount);
+            assertEquals(expected.avgElev, cell.avgElev, DELTA);
+            assertEquals(expected.minIntensity, cell.minIntensity);
+            assertTrue(Arrays.equals(expected.xyzs, cell.xyzs));
+            assertTrue(Arrays.equals(expected.intensitiesClassifications, cell.intensitiesClassifications));
+            assertTrue(Arrays.equals(expected.returns, cell.returns));
+            assertTrue(Arrays.equals(expected.gpsTimes, cell.gpsTimes));
+            assertTrue(Arrays.equals(expected.colors, cell.colors));
+            pointsCount += cell.pointsCount;
+        }
+        assertEquals(recordsCount, pointsCount);
+    }
+
+    private List<LasCell> build( File lasFile, ReferencedEnvelope3D envelope, int maxPoints, int threads ) throws Exception {
+        int cols = 10;
+        int rows = 10;
+        double cellSize = envelope.getWidth() / cols;
+        StreamingLasCellsBuilder builder = new StreamingLasCellsBuilder(1, envelope.getMinX(), envelope.getMaxX(),
+                envelope.getMinY(), envelope.getMaxY(), cols, rows, cellSize);
+        builder.setMaxPointsInMemory(maxPoints);
+        builder.setThreads(threads);
+        List<LasCell> cells = new ArrayList<>();
+        builder.build(lasFile, null, batch -> cells.addAll(batch));
+        assertTrue(builder.getMinIntensity() <= builder.getMaxIntensity());
+        return cells;
+    }
+
+}
@@ -19,10 +19,16 @@ package org.hortonmachine.gears.modules;
 
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 
 import org.hortonmachine.gears.io.timedependent.OmsTimeSeriesIteratorReader;
 import org.hortonmachine.gears.utils.HMTestCase;
+import org.hortonmachine.gears.utils.files.FileUtilities;
+
+import oms3.io.ColumnTable;
 /**
  * Test {@link OmsTimeSeriesIteratorReader}.
  * 
@@ -93,6 +99,74 @@ public class TestTimeSeriesIteratorReader extends HMTestCase {
         }
 
     }
+    /**
+     * The parsed columns path against the rows path, made to run on the same data by a
+     * ragged row after the end.
+     */
+    public void testTypedAndRowsReading() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        sb.append("@T,table\nDateFormat,yyyy-MM-dd HH:mm\n@H,date,v1,v2a,v2b,v3\nID,,1,2,2,3\n");
+        for( int i = 0; i < 48; i++ ) {
+            String v1 = i % 5 == 0 ? "-9999" : String.valueOf(i * 0.5);
+            String v2a = i % 7 == 0 ? "-9999.0" : String.valueOf(-i * 0.25);
+            String v2b = i % 11 == 0 ? "1.50" : String.valueOf(i);
+            String v3 = i == 12 ? "-9999.0" : String.valueOf(100 + i);
+            sb.append(String.format(",2000-01-%02d %02d:00,%s,%s,%s,%s\n", 1 + i / 24, i % 24, v1, v2a, v2b, v3));
+        }
+        String data = sb.toString();
+        File typedFile = File.createTempFile("tsreader", ".csv");
+        File rowsFile = File.createTempFile("tsreader", ".csv");
+        try {
+            FileUtilities.writeFile(data, typedFile);
+            FileUtilities.writeFile(data + ",2000-01-03 00:00,1,2,3,4,5\n", rowsFile);
+            for( String fileNovalue : new String[]{"-9999.0", "-9999"} ) {
+                for( int pNum : new int[]{1, 3} ) {
+                    for( int pAggregation : new int[]{0, 1} ) {
+                        List<HashMap<Integer, double[]>> typed = readAll(typedFile, fileNovalue, pNum, pAggregation);
+                        List<HashMap<Integer, double[]>> rows = readAll(rowsFile, fileNovalue, pNum, pAggregation);
+                        assertEquals(48 / pNum, typed.size());
+                        assertEquals(rows.size(), typed.size());
+                        for( int i = 0; i < rows.size(); i++ ) {
+                            assertEquals(rows.get(i).keySet(), typed.get(i).keySet());
+                            for( Integer id : rows.get(i).keySet() ) {
+                                assertTrue(Arrays.equals(rows.get(i).get(id), typed.get(i).get(id)));
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            typedFile.delete();
+            rowsFile.delete();
+            ColumnTable.cacheFile(typedFile, null).delete();
+            ColumnTable.cacheFile(rowsFile, null).delete();
+        }
+    }
+
+    private List<HashMap<Integer, double[]>> readAll( File file, String fileNovalue, int pNum, int pAggregation )
+            throws Exception {
+        OmsTimeSeriesIteratorReader reader = new OmsTimeSeriesIteratorReader();
+        reader.file = file.getAbsolutePath();
+        reader.idfield = "ID";
+        reader.fileNovalue = fileNovalue;
+        reader.pNum = pNum;
+        reader.pAggregation = pAggregation;
+        reader.tStart = "2000-01-01 00:00";
+        reader.tEnd = "2000-01-02 " + (24 - pNum) + ":00";
+        reader.tTimestep = 60 * pNum;
+        List<HashMap<Integer, double[]>> records = new ArrayList<HashMap<Integer, double[]>>();
+        try {
+            reader.initProcess();
+            while( reader.doProcess ) {
+                reader.nextRecord();
+                records.add(reader.outData);
+            }
+        } finally {
+            reader.close();
+        }
+        return records;
+    }
+
     public static void main( String[] args ) throws Exception {
         new TestTimeSeriesIteratorReader().testId2ValueReader2();
     }
@@ -497,6 +497,9 @@ public class SpatialtoolboxController extends SpatialtoolboxView implements IOnC
         removeMouseListenerFromContext(pPanel);
         if (pPanel != null)
             pPanel.freeResources();
+
+        // the worker JVM would outlive the toolbox
+        StageScriptExecutor.stopScriptWorker();
     }
 
     private void runModuleInNewJVM( ProcessLogConsoleController logConsole ) throws Exception {
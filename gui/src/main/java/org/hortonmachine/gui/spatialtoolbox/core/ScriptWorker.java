@@ -0,0 +1,340 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.gui.spatialtoolbox.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.hortonmachine.dbs.log.Logger;
+
+import oms3.CLIWorker;
+
+/**
+ * A long lived JVM running {@link CLIWorker}, to which scripts are sent one at a time.
+ *
+ * <p>Every run is presented as a {@link Process}, whose streams carry the output of
+ * that run only and end when the run is done, so that it can be handled just as a
+ * process started for the single script.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+class ScriptWorker {
+
+    /**
+     * The time a cancelled run gets to stop before the worker is killed.
+     */
+    private static final long CANCEL_TIMEOUT_MILLIS = 5000;
+
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private final Process process;
+    private final Writer commands;
+    private final List<String> command;
+
+    private int runsCount = 0;
+    private volatile WorkerRun currentRun;
+    private volatile boolean isAlive = true;
+
+    /**
+     * Start a worker.
+     *
+     * @param arguments the command to start the worker JVM.
+     * @throws IOException
+     */
+    ScriptWorker( List<String> arguments ) throws IOException {
+        command = new ArrayList<String>(arguments);
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        process = processBuilder.start();
+        commands = new OutputStreamWriter(process.getOutputStream());
+
+        Thread outReader = new Thread("script worker output"){
+            public void run() {
+                readOutput();
+            }
+        };
+        outReader.setDaemon(true);
+        outReader.start();
+
+        Thread errReader = new Thread("script worker errors"){
+            public void run() {
+                readErrors();
+            }
+        };
+        errReader.setDaemon(true);
+        errReader.start();
+    }
+
+    /**
+     * @return the command the worker was started with.
+     */
+    List<String> getCommand() {
+        return command;
+    }
+
+    boolean isAlive() {
+        return isAlive;
+    }
+
+    boolean isBusy() {
+        return currentRun != null;
+    }
+
+    int getRunsCount() {
+        return runsCount;
+    }
+
+    /**
+     * @param arguments the command a worker would be started with now.
+     * @return <code>true</code> if the worker has been started with the same command (java
+     *          executable, heap, encoding, classpath and any other JVM argument).
+     */
+    boolean hasCommand( List<String> arguments ) {
+        return command.equals(arguments);
+    }
+
+    /**
+     * Run a script.
+     *
+     * @param scriptFile the script file.
+     * @param omsLogLevel the oms log level.
+     * @return the process representing the run.
+     * @throws IOException if the worker is busy or dead.
+     */
+    synchronized Process run( File scriptFile, String omsLogLevel ) throws IOException {
+        if (!isAlive || currentRun != null) {
+            throw new IOException("The script worker is not available.");
+        }
+        WorkerRun run = new WorkerRun();
+        currentRun = run;
+        runsCount++;
+        sendCommand(CLIWorker.RUN + "\t" + omsLogLevel + "\t" + scriptFile.getAbsolutePath());
+        return run;
+    }
+
+    /**
+     * Stop the worker, after the current run if there is one.
+     */
+    synchronized void shutdown() {
+        if (!isAlive) {
+            return;
+        }
+        try {
+            sendCommand(CLIWorker.EXIT);
+        } catch (IOException e) {
+            process.destroy();
+        }
+    }
+
+    private void kill() {
+        process.destroy();
+    }
+
+    private void sendCommand( String command ) throws IOException {
+        synchronized (commands) {
+            commands.write(command);
+            commands.write('\n');
+            commands.flush();
+        }
+    }
+
+    private void readOutput() {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while( (line = br.readLine()) != null ) {
+                WorkerRun run = currentRun;
+                if (line.length() > 1 && line.charAt(0) == CLIWorker.FRAME) {
+                    char type = line.charAt(1);
+                    String text = line.substring(2);
+                    if (type == CLIWorker.DONE) {
+                        int exitValue = Integer.parseInt(text.trim());
+                        if (exitValue == CLIWorker.OUT_OF_MEMORY) {
+                            // the worker exits right after
+                            isAlive = false;
+                        }
+                        currentRun = null;
+                        if (run != null) {
+                            run.finish(exitValue);
+                        }
+                    } else if (type == CLIWorker.ERR) {
+                        if (run != null) {
+                            run.write(run.err, text);
+                        }
+                    } else if (type == CLIWorker.OUT) {
+                        if (run != null) {
+                            run.write(run.out, text);
+                        }
+                    }
+                } else if (run != null) {
+                    // written directly by native code
+                    run.write(run.out, line);
+                }
+            }
+        } catch (Exception e) {
+            Logger.INSTANCE.insertError("ScriptWorker", "Error reading the script worker output", e);
+        } finally {
+            isAlive = false;
+            int exitValue = 1;
+            try {
+                exitValue = process.waitFor();
+            } catch (InterruptedException e) {
+                // use the default
+            }
+            WorkerRun run = currentRun;
+            currentRun = null;
+            if (run != null) {
+                if (exitValue == CLIWorker.OUT_OF_MEMORY) {
+                    run.write(run.err, "The process ran out of memory, try to give it more.");
+                } else if (!run.isCancelled) {
+                    run.write(run.err, "The process stopped unexpectedly.");
+                }
+                run.finish(exitValue == 0 ? 1 : exitValue);
+            }
+        }
+    }
+
+    /**
+     * Errors the worker JVM writes outside of runs (JVM messages, crashes).
+     */
+    private void readErrors() {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+            String line;
+            while( (line = br.readLine()) != null ) {
+                WorkerRun run = currentRun;
+                if (run != null) {
+                    run.write(run.err, line);
+                } else {
+                    Logger.INSTANCE.insertWarning("ScriptWorker", line);
+                }
+            }
+        } catch (IOException e) {
+            // the worker has been stopped
+        }
+    }
+
+    /**
+     * A single run in the worker.
+     */
+    private class WorkerRun extends Process {
+        private final PipedOutputStream out = new PipedOutputStream();
+        private final PipedOutputStream err = new PipedOutputStream();
+        private final PipedInputStream outIn;
+        private final PipedInputStream errIn;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile int exitValue;
+        private volatile boolean isCancelled = false;
+
+        WorkerRun() throws IOException {
+            outIn = new PipedInputStream(out, PIPE_SIZE);
+            errIn = new PipedInputStream(err, PIPE_SIZE);
+        }
+
+        private void write( PipedOutputStream stream, String line ) {
+            try {
+                stream.write((line + "\n").getBytes());
+                stream.flush();
+            } catch (IOException e) {
+                // the reader is gone, nobody is listening
+            }
+        }
+
+        private void finish( int exitValue ) {
+            this.exitValue = exitValue;
+            try {
+                out.close();
+                err.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            done.countDown();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new OutputStream(){
+                public void write( int b ) throws IOException {
+                    // scripts don't read any input
+                }
+            };
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return outIn;
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return errIn;
+        }
+
+        @Override
+        public int waitFor() throws InterruptedException {
+            done.await();
+            return exitValue;
+        }
+
+        @Override
+        public int exitValue() {
+            if (done.getCount() > 0) {
+                throw new IllegalThreadStateException("The run has not finished yet.");
+            }
+            return exitValue;
+        }
+
+        @Override
+        public void destroy() {
+            if (done.getCount() == 0 || isCancelled) {
+                return;
+            }
+            isCancelled = true;
+            try {
+                sendCommand(CLIWorker.CANCEL);
+            } catch (IOException e) {
+                kill();
+                return;
+            }
+            Thread killer = new Thread("script worker cancel"){
+                public void run() {
+                    try {
+                        if (!done.await(CANCEL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                            // the modules didn't react to the interruption
+                            kill();
+                        }
+                    } catch (InterruptedException e) {
+                        kill();
+                    }
+                }
+            };
+            killer.setDaemon(true);
+            killer.start();
+        }
+    }
+}
@@ -56,6 +56,16 @@ public class SpatialToolboxConstants {
     public static String GRASS_ENVIRONMENT_GISBASE_KEY = "jgt-grass.gisbase";
     public static String GRASS_ENVIRONMENT_SHELL_KEY = "jgt-grass.shell";
 
+    /**
+     * Key of the preference to run the scripts in a long lived worker JVM instead of a new JVM each time.
+     */
+    public static String SCRIPT_WORKER_KEY = "jgt_prefs_script_worker";
+    /**
+     * Key of the preference with the number of runs after which the script worker is restarted.
+     */
+    public static String SCRIPT_WORKER_MAXRUNS_KEY = "jgt_prefs_script_worker_maxruns";
+    public static int SCRIPT_WORKER_MAXRUNS_DEFAULT = 20;
+
     public static String MAPCALCHISTORY_KEY = "mapcalc-history";
     public static String MAPCALCHISTORY_SEPARATOR = "@@@";
 
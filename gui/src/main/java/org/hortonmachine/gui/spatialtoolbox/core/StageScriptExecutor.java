@@ -39,8 +39,10 @@ import org.hortonmachine.gears.libs.exceptions.ModelsUserCancelException;
 import org.hortonmachine.gui.console.ConsoleMessageFilter;
 import org.hortonmachine.gui.console.ELogStyle;
 import org.hortonmachine.gui.console.IProcessListener;
+import org.hortonmachine.gui.utils.GuiUtilities;
 
 import oms3.CLI;
+import oms3.CLIWorker;
 
 /**
  * Executor of OMS scripts.
@@ -64,6 +66,8 @@ public class StageScriptExecutor {
 
     private StringBuilder logBuilder = new StringBuilder();
 
+    private static ScriptWorker scriptWorker;
+
     public StageScriptExecutor( File jgtLibsFolder ) throws Exception {
         /*
          * get java exec
@@ -192,16 +196,15 @@ public class StageScriptExecutor {
         if (!omsTmp.exists())
             omsTmp.mkdirs();
 
-        List<String> arguments = new ArrayList<String>();
-        arguments.add(javaExec);
+        List<String> jvmArguments = new ArrayList<String>();
+        jvmArguments.add(javaExec);
 
         // ram usage
         String ramExpr = "-Xmx" + ramLevel + "m";
-        arguments.add(ramExpr);
+        jvmArguments.add(ramExpr);
 
         if (encoding != null && encoding.length() > 0) {
-            encoding = "-Dfile.encoding=" + encoding;
-            arguments.add(encoding);
+            jvmArguments.add("-Dfile.encoding=" + encoding);
         }
 
         // modules jars
@@ -214,13 +217,20 @@ public class StageScriptExecutor {
         // String resourcesFlag = "-Doms.sim.resources=\"" + modulesJarsString + "\"";
         // arguments.add(resourcesFlag);
 
+        jvmArguments.add("-cp");
+        jvmArguments.add(classPath);
+
+        String omsLogLevel = "OFF";
+        if (loggerLevelGui.equals(SpatialToolboxConstants.LOGLEVEL_GUI_ON)) {
+            omsLogLevel = "FINEST";
+        }
+
         // all the arguments
-        arguments.add("-cp");
-        arguments.add(classPath);
+        List<String> arguments = new ArrayList<String>(jvmArguments);
         arguments.add(CLI.class.getCanonicalName());
-        if (loggerLevelGui.equals(SpatialToolboxConstants.LOGLEVEL_GUI_ON)) {
+        if (!omsLogLevel.equals("OFF")) {
             arguments.add("-l");
-            arguments.add("FINEST");
+            arguments.add(omsLogLevel);
         }
         arguments.add("-r");
         arguments.add(scriptFile.getAbsolutePath());
@@ -252,15 +262,36 @@ public class StageScriptExecutor {
             Logger.INSTANCE.insertDebug("", arg);
         }
 
-        ProcessBuilder processBuilder = new ProcessBuilder(arguments);
-        // work in home
-        // processBuilder.directory(homeFile);
+        Process workerProcess = null;
+        List<String> workerCommand = null;
+        if (isScriptWorkerEnabled()) {
+            try {
+                ScriptWorker worker = getScriptWorker(jvmArguments);
+                if (worker != null) {
+                    workerProcess = worker.run(scriptFile, omsLogLevel);
+                    workerCommand = worker.getCommand();
+                    Logger.INSTANCE.insertDebug("", "Running in the script worker: " + workerCommand);
+                }
+            } catch (IOException e) {
+                // busy or broken, use a new JVM
+                Logger.INSTANCE.insertWarning("", "Script worker not available: " + e.getLocalizedMessage());
+            }
+        }
+
+        final Process process;
+        if (workerProcess != null) {
+            process = workerProcess;
+        } else {
+            ProcessBuilder processBuilder = new ProcessBuilder(arguments);
+            // work in home
+            // processBuilder.directory(homeFile);
 
-        // environment
-        // Map<String, String> environment = processBuilder.environment();
-        // environment.put("CLASSPATH", classPath);
+            // environment
+            // Map<String, String> environment = processBuilder.environment();
+            // environment.put("CLASSPATH", classPath);
 
-        final Process process = processBuilder.start();
+            process = processBuilder.start();
+        }
         logBuilder.setLength(0);
 
         StringBuilder preCommentsBuilder = new StringBuilder();
@@ -272,10 +303,21 @@ public class StageScriptExecutor {
         if (loggerLevelGui.equals(SpatialToolboxConstants.LOGLEVEL_GUI_ON)) {
 
             preCommentsBuilder.append("------------------------------>8----------------------------" + nl);
-            preCommentsBuilder.append("Launching command: " + nl);
-            preCommentsBuilder.append("------------------" + nl);
-            List<String> command = processBuilder.command();
-            for( String arg : command ) {
+            if (workerCommand != null) {
+                preCommentsBuilder.append("Running in the script worker started with: " + nl);
+                preCommentsBuilder.append("------------------------------------------" + nl);
+                for( String arg : workerCommand ) {
+                    preCommentsBuilder.append(arg);
+                    preCommentsBuilder.append(" ");
+                }
+                preCommentsBuilder.append("" + nl);
+                preCommentsBuilder.append("Script file: " + scriptFile.getAbsolutePath() + nl);
+                preCommentsBuilder.append("Outside of the worker the script is run with: " + nl);
+            } else {
+                preCommentsBuilder.append("Launching command: " + nl);
+                preCommentsBuilder.append("------------------" + nl);
+            }
+            for( String arg : arguments ) {
                 preCommentsBuilder.append(arg);
                 preCommentsBuilder.append(" ");
             }
@@ -383,6 +425,58 @@ public class StageScriptExecutor {
         return isRunning;
     }
 
+    /**
+     * @return <code>true</code> if scripts are run in the long lived script worker, if it is free.
+     */
+    public static boolean isScriptWorkerEnabled() {
+        String enabled = GuiUtilities.getPreference(SpatialToolboxConstants.SCRIPT_WORKER_KEY, "false");
+        return Boolean.parseBoolean(enabled);
+    }
+
+    /**
+     * Get the script worker, starting it if needed.
+     * 
+     * <p>The worker is restarted after the configured number of runs, after it died (for example
+     * because it ran out of memory) and if the JVM arguments (heap size, encoding, classpath) changed.</p>
+     * 
+     * @param jvmArguments the java executable and the arguments of the JVM.
+     * @return the worker or <code>null</code> if it is busy with another run.
+     */
+    private static synchronized ScriptWorker getScriptWorker( List<String> jvmArguments ) throws IOException {
+        int maxRuns = SpatialToolboxConstants.SCRIPT_WORKER_MAXRUNS_DEFAULT;
+        try {
+            maxRuns = Integer.parseInt(GuiUtilities.getPreference(SpatialToolboxConstants.SCRIPT_WORKER_MAXRUNS_KEY,
+                    String.valueOf(SpatialToolboxConstants.SCRIPT_WORKER_MAXRUNS_DEFAULT)));
+        } catch (NumberFormatException e) {
+            // use the default
+        }
+        List<String> workerArguments = new ArrayList<String>(jvmArguments);
+        workerArguments.add(CLIWorker.class.getCanonicalName());
+        if (scriptWorker != null && !scriptWorker.isBusy()) {
+            if (!scriptWorker.isAlive() || scriptWorker.getRunsCount() >= maxRuns || !scriptWorker.hasCommand(workerArguments)) {
+                scriptWorker.shutdown();
+                scriptWorker = null;
+            }
+        }
+        if (scriptWorker == null) {
+            scriptWorker = new ScriptWorker(workerArguments);
+        }
+        if (scriptWorker.isBusy()) {
+            return null;
+        }
+        return scriptWorker;
+    }
+
+    /**
+     * Stop the script worker, if it has been started.
+     */
+    public static synchronized void stopScriptWorker() {
+        if (scriptWorker != null) {
+            scriptWorker.shutdown();
+            scriptWorker = null;
+        }
+    }
+
     public void addProcessListener( IProcessListener listener ) {
         if (!listeners.contains(listener)) {
             listeners.add(listener);
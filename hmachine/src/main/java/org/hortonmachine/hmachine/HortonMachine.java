@@ -19,23 +19,17 @@
 package org.hortonmachine.hmachine;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import oms3.Access;
-import oms3.ComponentAccess;
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Documentation;
-import oms3.annotations.Execute;
 import oms3.annotations.Keywords;
 import oms3.annotations.Label;
 import oms3.annotations.License;
@@ -45,8 +39,8 @@ import oms3.annotations.UI;
 
 import org.hortonmachine.gears.libs.modules.ClassField;
 import org.hortonmachine.gears.libs.modules.HMConstants;
+import org.hortonmachine.gears.libs.modules.ModulesIndex;
 import org.hortonmachine.hmachine.i18n.HortonMessages;
-import org.scannotation.AnnotationDB;
 import org.scannotation.ClasspathUrlFinder;
 
 /**
@@ -122,15 +116,9 @@ public class HortonMachine {
             if (baseclassUrl == null) {
                 baseclassUrl = ClasspathUrlFinder.findClassBase(HortonMachine.class);
             }
-            AnnotationDB db = new AnnotationDB();
-            db.scanArchives(baseclassUrl);
-
-            Map<String, Set<String>> annotationIndex = db.getAnnotationIndex();
-            Set<String> simpleClasses = annotationIndex.get(Execute.class.getName());
+            ModulesIndex modulesIndex = new ModulesIndex(baseclassUrl);
+            Set<String> simpleClasses = modulesIndex.getModuleClassNames("org.hortonmachine.hmachine");
             for( String className : simpleClasses ) {
-                if (!className.startsWith("org.hortonmachine.hmachine")) {
-                    continue;
-                }
 
                 int lastDot = className.lastIndexOf('.');
                 String name = className.substring(lastDot + 1);
@@ -177,59 +165,11 @@ public class HortonMachine {
 
                 classNames.add(moduleName);
 
-                List<ClassField> tmpfields = new ArrayList<ClassField>();
-                Object annotatedObject = moduleClass.newInstance();
-                ComponentAccess cA = new ComponentAccess(annotatedObject);
-                Collection<Access> inputs = cA.inputs();
-                for( Access access : inputs ) {
-                    Field field = access.getField();
-                    String name = field.getName();
-                    Description descriptionAnnot = field.getAnnotation(Description.class);
-                    String description = name;
-                    if (descriptionAnnot != null) {
-                        description = descriptionAnnot.value();
-                        if (description == null) {
-                            description = name;
-                        }
-                    }
-                    Class< ? > fieldClass = field.getType();
-                    ClassField cf = new ClassField();
-                    cf.isIn = true;
-                    cf.fieldName = name;
-                    cf.fieldDescription = description;
-                    cf.fieldClass = fieldClass;
-                    cf.parentClass = moduleClass;
-                    cf.parentClassStatus = statusString;
-                    if (!fieldNamesList.contains(name)) {
-                        fieldNamesList.add(name);
-                    }
-                    tmpfields.add(cf);
-
-                }
-                Collection<Access> outputs = cA.outputs();
-                for( Access access : outputs ) {
-                    Field field = access.getField();
-                    String name = field.getName();
-                    Description descriptionAnnot = field.getAnnotation(Description.class);
-                    String description = name;
-                    if (descriptionAnnot != null) {
-                        description = descriptionAnnot.value();
-                        if (description == null) {
-                            description = name;
-                        }
-                    }
-                    Class< ? > fieldClass = field.getType();
-                    ClassField cf = new ClassField();
-                    cf.isOut = true;
-                    cf.fieldName = name;
-                    cf.fieldDescription = description;
-                    cf.fieldClass = fieldClass;
-                    cf.parentClass = moduleClass;
-                    cf.parentClassStatus = statusString;
-                    if (!fieldNamesList.contains(name)) {
-                        fieldNamesList.add(name);
+                List<ClassField> tmpfields = modulesIndex.getFields(moduleClass, statusString);
+                for( ClassField classField : tmpfields ) {
+                    if (!fieldNamesList.contains(classField.fieldName)) {
+                        fieldNamesList.add(classField.fieldName);
                     }
-                    tmpfields.add(cf);
                 }
                 moduleName2Fields.put(moduleName, tmpfields);
             }
@@ -126,6 +126,8 @@ public class HortonMessages {
     public static final String OMSKRIGING_pA_DESCRIPTION = "The range if the models runs with the gaussian variogram.";
     public static final String OMSKRIGING_pS_DESCRIPTION = "The sill if the models runs with the gaussian variogram.";
     public static final String OMSKRIGING_pNug_DESCRIPTION = "Is the nugget if the models runs with the gaussian variogram.";
+    public static final String OMSKRIGING_pNeighbours_DESCRIPTION = "The number of nearest stations to use for each point (0 = use all the stations).";
+    public static final String OMSKRIGING_pMaxThreads_DESCRIPTION = "The number of threads to use to interpolate the points.";
     public static final String OMSKRIGING_outGrid_DESCRIPTION = "The interpolated gridded data (for mode 2 and 3.";
     public static final String OMSKRIGING_outData_DESCRIPTION = "The interpolated data (for mode 0 and 1).";
 
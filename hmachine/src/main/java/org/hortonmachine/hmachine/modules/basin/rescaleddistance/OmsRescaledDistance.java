@@ -135,8 +135,6 @@ public class OmsRescaledDistance extends GridMultiProcessing {
             pm.beginTask("Find outlets...", rows * cols); //$NON-NLS-1$
             ConcurrentLinkedQueue<FlowNode> exitsList = new ConcurrentLinkedQueue<>();
             processGrid(cols, rows, ( c, r ) -> {
-                if (pm.isCanceled())
-                    return;
                 int netValue = netIter.getSample(c, r, 0);
                 if (isNovalue(netValue)) {
                     // we make sure that we pick only outlets that are on the net
@@ -146,7 +144,6 @@ public class OmsRescaledDistance extends GridMultiProcessing {
                 if (flowNode.isHeadingOutside()) {
                     exitsList.add(flowNode);
                 }
-                pm.worked(1);
             });
             pm.done();
 
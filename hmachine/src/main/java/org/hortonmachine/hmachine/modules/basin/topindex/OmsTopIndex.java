@@ -107,17 +107,12 @@ public class OmsTopIndex extends GridMultiProcessing {
         try {
             pm.beginTask(msg.message("topindex.calculating"), nRows * nCols);
             processGrid(nCols, nRows, ( c, r ) -> {
-                if (pm.isCanceled()) {
-                    return;
-                }
-
                 int tcaValue = tcaIter.getSample(c, r, 0);
                 if (!isNovalue(tcaValue)) {
                     if (slopeIter.getSampleDouble(c, r, 0) != 0) {
                         topindexIter.setSample(c, r, 0, Math.log(tcaValue / slopeIter.getSampleDouble(c, r, 0)));
                     }
                 }
-                pm.worked(1);
             });
             pm.done();
             outTopindex = CoverageUtilities.buildCoverage("topindex", topindexWR, regionMap,
@@ -20,24 +20,27 @@ package org.hortonmachine.hmachine.modules.demmanipulation.pitfiller;
 import static org.hortonmachine.gears.libs.modules.HMConstants.DEMMANIPULATION;
 
 import java.awt.image.WritableRaster;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.List;
-import java.util.TreeSet;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import javax.media.jai.iterator.WritableRandomIter;
 
 import org.geotools.coverage.grid.GridCoverage2D;
-import org.hortonmachine.gears.libs.modules.GridNode;
 import org.hortonmachine.gears.libs.modules.HMConstants;
+import org.hortonmachine.gears.libs.modules.PackedGrid;
 import org.hortonmachine.gears.libs.modules.multiprocessing.GridMultiProcessing;
 import org.hortonmachine.gears.libs.monitor.IHMProgressMonitor;
 import org.hortonmachine.gears.utils.BitMatrix;
+import org.hortonmachine.gears.utils.DoubleIntMinHeap;
+import org.hortonmachine.gears.utils.DynamicIntArray;
 import org.hortonmachine.gears.utils.RegionMap;
 import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
+import org.hortonmachine.gears.utils.coverage.HMDoubleRaster;
+import org.hortonmachine.gears.utils.coverage.HMRaster;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -62,6 +65,10 @@ public class OmsDePitter extends GridMultiProcessing {
     @In
     public GridCoverage2D inElev;
 
+    @Description(OMSDEPITTER_doPriorityFlood_DESCRIPTION)
+    @In
+    public boolean doPriorityFlood = false;
+
     @Description(OMSDEPITTER_outPit_DESCRIPTION)
     @Out
     public GridCoverage2D outPit = null;
@@ -84,6 +91,7 @@ public class OmsDePitter extends GridMultiProcessing {
     public static final String OMSDEPITTER_AUTHORNAMES = "Andrea Antonello, Silvia Franceschi";
     public static final String OMSDEPITTER_AUTHORCONTACTS = "http://www.hydrologis.com";
     public static final String OMSDEPITTER_inElev_DESCRIPTION = "The map of digital elevation model (DEM).";
+    public static final String OMSDEPITTER_doPriorityFlood_DESCRIPTION = "Fill the depressions in a single priority flood pass instead of iterating over the pits.";
     public static final String OMSDEPITTER_outPit_DESCRIPTION = "The depitted elevation map.";
     public static final String OMSDEPITTER_outPitPoints_DESCRIPTION = "The shapefile of handled pits.";
     public static final String OMSDEPITTER_outFlow_DESCRIPTION = "The map of D8 flowdirections.";
@@ -109,509 +117,356 @@ public class OmsDePitter extends GridMultiProcessing {
         xRes = regionMap.getXres();
         yRes = regionMap.getYres();
 
-        // output raster
-        WritableRaster pitRaster = CoverageUtilities.renderedImage2DoubleWritableRaster(inElev.getRenderedImage(), false);
-        WritableRandomIter pitIter = CoverageUtilities.getWritableRandomIterator(pitRaster);
+        // output raster, packed so that the grid can work directly on it
+        HMDoubleRaster pitRaster = HMRaster.copyToDouble(inElev.getRenderedImage());
+        PackedGrid grid = PackedGrid.fromRaster(pitRaster, xRes, yRes);
+
+        if (doPriorityFlood) {
+            priorityFlood(grid);
+        } else {
+            fillPitsIteratively(grid);
+        }
+        if (pm.isCanceled()) {
+            return;
+        }
+
+        outPit = pitRaster.buildCoverage("pitfiller", regionMap, inElev.getCoordinateReferenceSystem());
+
+        WritableRaster flowRaster = CoverageUtilities.createWritableRaster(cols, rows, Short.class, null, null);
+        WritableRandomIter flowIter = CoverageUtilities.getWritableRandomIterator(flowRaster);
         try {
+            pm.beginTask("Calculating flowdirections...", rows * cols);
+            processGrid(cols, rows, false, ( c, r ) -> {
+                int index = grid.index(c, r);
+                if (!grid.isValid(index) || grid.touchesNovalue(index)) {
+                    flowIter.setSample(c, r, 0, HMConstants.intNovalue);
+                } else {
+                    // novalue if there is no downstream cell
+                    flowIter.setSample(c, r, 0, grid.getFlow(index));
+                }
+            });
+            pm.done();
+
+            outFlow = CoverageUtilities.buildCoverage("flow", flowRaster, regionMap, inElev.getCoordinateReferenceSystem());
+        } finally {
+            flowIter.done();
+        }
+    }
+
+    private void fillPitsIteratively( PackedGrid grid ) {
+        int[] pitsList = getPitsList(grid);
 
-            ConcurrentLinkedQueue<GridNode> pitsList = getPitsList(cols, rows, xRes, yRes, pitIter);
+        AtomicInteger count = new AtomicInteger();
+        int iteration = 1;
+        while( pitsList.length > 0 ) {
+            if (pm.isCanceled()) {
+                return;
+            }
+
+            int pitCount = pitsList.length;
+            BitMatrix allPitsPositions = new BitMatrix(cols, rows);
 
-            AtomicInteger count = new AtomicInteger();
-            // int count = 0;
-            int iteration = 1;
-            while( pitsList.size() > 0 ) {
+            int shownCount = pitCount;
+            if (!verbose) {
+                shownCount = IHMProgressMonitor.UNKNOWN;
+            }
+            pm.beginTask("Processing " + pitCount + " pits (iteration N." + iteration++ + ")... ", shownCount);
+            IntStream.of(pitsList).parallel().forEach(originalPitIndex -> {
+                int _count = count.incrementAndGet();
                 if (pm.isCanceled()) {
                     return;
                 }
+                processPitNode(grid, originalPitIndex, allPitsPositions, _count);
+            });
+            pm.done();
+
+            pitsList = getPitsList(grid, allPitsPositions);
 
-                int pitCount = pitsList.size();
-                BitMatrix allPitsPositions = new BitMatrix(cols, rows);
+            int size = pitsList.length;
+            if (verbose) {
+                pm.message("Left pits: " + size);
+                pm.message("---------------------------------------------------------------------");
+            }
+            if (size < 10000) {
+                verbose = false;
+            }
+        }
+    }
 
-                // List<GridNode> processedNodesInPit = new ArrayList<>();
+    /**
+     * Fill the depressions with a priority flood with epsilon (Barnes et al., 2014).
+     * 
+     * <p>The cells on the border of the valid data are the seeds. Cells are then
+     * taken from a min heap in elevation order and their neighbours that are not 
+     * higher are raised to the cell elevation plus delta and processed first through 
+     * a plain queue. This fills pits and gives flats a slope towards their exit 
+     * in one pass over the grid, without searching for the pits.</p>
+     * 
+     * @param grid the elevation grid.
+     */
+    private void priorityFlood( PackedGrid grid ) {
+        int cellsCount = cols * rows;
+        BitSet closed = new BitSet(cellsCount);
+        DoubleIntMinHeap open = new DoubleIntMinHeap(2 * (cols + rows));
+        DynamicIntArray pitQueue = new DynamicIntArray(1000);
+        int pitQueueHead = 0;
+
+        pm.beginTask("Priority flood filling...", rows);
+        for( int index = 0; index < cellsCount; index++ ) {
+            if (grid.isValid(index) && grid.touchesNovalue(index)) {
+                open.push(grid.getElevation(index), index);
+                closed.set(index);
+            } else if (!grid.isValid(index)) {
+                closed.set(index);
+            }
+        }
 
-                int shownCount = pitCount;
-                if (!verbose) {
-                    shownCount = IHMProgressMonitor.UNKNOWN;
+        int[] surroundingNodes = new int[PackedGrid.NEIGHBOURS];
+        long processed = 0;
+        while( !open.isEmpty() || pitQueueHead < pitQueue.size() ) {
+            int current;
+            if (pitQueueHead < pitQueue.size()) {
+                current = pitQueue.get(pitQueueHead++);
+                if (pitQueueHead == pitQueue.size()) {
+                    pitQueue.clear();
+                    pitQueueHead = 0;
                 }
-                pm.beginTask("Processing " + pitCount + " pits (iteration N." + iteration++ + ")... ", shownCount);
-                pitsList.parallelStream().forEach(originalPitNode -> {
-                    int _count = count.incrementAndGet();
-                    if (pm.isCanceled()) {
-                        return;
-                    }
-                    processPitNode(originalPitNode, allPitsPositions, _count, pitIter);
-                });
-                // for( GridNode originalPitNode : pitsList ) {
-                // count++;
-                // if (pm.isCanceled()) {
-                // return;
-                // }
-                // processPitNode(originalPitNode, allPitsPositions, count, pitIter);
-                // }
-                pm.done();
-
-                // if (true && iteration < 3) {
-                // outPit = CoverageUtilities.buildCoverage("pitfiller", pitRaster, regionMap,
-                // inElev.getCoordinateReferenceSystem());
-                // OmsRasterWriter.writeRaster("/home/hydrologis/Dropbox/hydrologis/lavori/2017_06_mapzone/test/dtm_test2_pit_"
-                // + iteration + ".tiff", outPit);
-                // }
-
-                pitsList = getPitsList(cols, rows, xRes, yRes, pitIter, allPitsPositions);
-
-                int size = pitsList.size();
-                if (verbose) {
-                    pm.message("Left pits: " + size);
-                    pm.message("---------------------------------------------------------------------");
+            } else {
+                current = open.pop();
+            }
+
+            double elevation = grid.getElevation(current);
+            int count = grid.getValidNeighbours(current, surroundingNodes);
+            for( int i = 0; i < count; i++ ) {
+                int node = surroundingNodes[i];
+                if (closed.get(node)) {
+                    continue;
                 }
-                if (size < 10000) {
-                    verbose = false;
+                closed.set(node);
+                if (grid.getElevation(node) <= elevation) {
+                    grid.setElevation(node, elevation + delta);
+                    pitQueue.add(node);
+                } else {
+                    open.push(grid.getElevation(node), node);
                 }
-
             }
 
-            outPit = CoverageUtilities.buildCoverage("pitfiller", pitRaster, regionMap, inElev.getCoordinateReferenceSystem());
-            // GridGeometry2D gridGeometry = inElev.getGridGeometry();
-            //
-            // SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
-            // b.setName("pitpoints");
-            // b.setCRS(inElev.getCoordinateReferenceSystem());
-            // b.add("the_geom", Point.class);
-            // b.add("type", String.class);
-            // b.add("origelev", Double.class);
-            // b.add("newelev", Double.class);
-            // SimpleFeatureType type = b.buildFeatureType();
-            // SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
-            //
-            // outPitPoints = new DefaultFeatureCollection();
-            //
-            // pm.beginTask("Generating pitpoints...", nRows);
-            // for( int r = 0; r < nRows; r++ ) {
-            // if (pm.isCanceled()) {
-            // return;
-            // }
-            // for( int c = 0; c < nCols; c++ ) {
-            // if (allPitsPositions.isMarked(c, r)) {
-            // Coordinate coordinate = CoverageUtilities.coordinateFromColRow(c, r, gridGeometry);
-            // Point point = gf.createPoint(coordinate);
-            // double origValue = CoverageUtilities.getValue(inElev, c, r);
-            // double newValue = pitIter.getSampleDouble(c, r, 0);
-            //
-            // Object[] values = new Object[]{point, "pit", origValue, newValue};
-            // builder.addAll(values);
-            // SimpleFeature feature = builder.buildFeature(null);
-            // ((DefaultFeatureCollection) outPitPoints).add(feature);
-            // } else if (allFlatsPositions.isMarked(c, r)) {
-            // Coordinate coordinate = CoverageUtilities.coordinateFromColRow(c, r, gridGeometry);
-            // Point point = gf.createPoint(coordinate);
-            // double origValue = CoverageUtilities.getValue(inElev, c, r);
-            // double newValue = pitIter.getSampleDouble(c, r, 0);
-            //
-            // Object[] values = new Object[]{point, "flat", origValue, newValue};
-            // builder.addAll(values);
-            // SimpleFeature feature = builder.buildFeature(null);
-            // ((DefaultFeatureCollection) outPitPoints).add(feature);
-            // }
-            // }
-            // }
-
-            WritableRaster flowRaster = CoverageUtilities.createWritableRaster(cols, rows, Short.class, null, null);
-            WritableRandomIter flowIter = CoverageUtilities.getWritableRandomIterator(flowRaster);
-            try {
-                pm.beginTask("Calculating flowdirections...", rows * cols);
-                processGrid(cols, rows, false, ( c, r ) -> {
-                    if (pm.isCanceled()) {
-                        return;
-                    }
-                    GridNode node = new GridNode(pitIter, cols, rows, xRes, yRes, c, r);
-                    boolean isValid = node.isValid();
-                    if (!isValid || node.touchesBound() || node.touchesNovalue()) {
-                        flowIter.setSample(c, r, 0, HMConstants.intNovalue);
-                    } else {
-                        GridNode nextDown = node.goDownstreamSP();
-                        if (nextDown == null) {
-                            flowIter.setSample(c, r, 0, HMConstants.intNovalue);
-                        } else {
-                            int newFlow = node.getFlow();
-                            flowIter.setSample(c, r, 0, newFlow);
-                        }
-                    }
-                    pm.worked(1);
-                });
-                pm.done();
-
-                outFlow = CoverageUtilities.buildCoverage("flow", flowRaster, regionMap, inElev.getCoordinateReferenceSystem());
-            } finally {
-                flowIter.done();
+            if (++processed % cols == 0) {
+                if (pm.isCanceled()) {
+                    return;
+                }
+                pm.worked(1);
             }
-
-        } finally {
-            pitIter.done();
         }
+        pm.done();
     }
 
-    private void processPitNode( GridNode originalPitNode, BitMatrix allPitsPositions, int count, WritableRandomIter pitIter ) {
-        if (allPitsPositions.isMarked(originalPitNode.col, originalPitNode.row)) {
+    private void processPitNode( PackedGrid grid, int originalPitIndex, BitMatrix allPitsPositions, int count ) {
+        if (allPitsPositions.isMarked(grid.col(originalPitIndex), grid.row(originalPitIndex))) {
             if (verbose)
                 pm.worked(1);
             return;
         }
 
-        List<GridNode> nodesInPit = new ArrayList<>();
-        nodesInPit.add(originalPitNode);
-        allPitsPositions.mark(originalPitNode.col, originalPitNode.row);
+        DynamicIntArray nodesInPit = new DynamicIntArray(16);
+        nodesInPit.add(originalPitIndex);
+        mark(grid, allPitsPositions, originalPitIndex);
         int workingIndex = 0;
         double minExitValue = Double.POSITIVE_INFINITY;
-        TreeSet<GridNode> orderedExitNodes = new TreeSet<>(new Comparator<GridNode>(){
-            @Override
-            public int compare( GridNode o1, GridNode o2 ) {
-                // Returns a negative integer, zero, or a positive integer as the first
-                // argument is less than, equal to, or greater than the second.
-                if (o1.elevation < o2.elevation) {
-                    return -1;
-                } else if (o1.elevation > o2.elevation) {
-                    return 1;
-                } else
-                    return 0;
-            }
-        });
+        // ordered by elevation, only the first node of a given elevation is kept
+        TreeMap<Double, Integer> orderedExitNodes = new TreeMap<>();
 
-        processSinglePit: {
-            boolean surroundingAdded = true;
-            while( surroundingAdded ) {
-                surroundingAdded = false;
+        int[] surroundingNodes = new int[PackedGrid.NEIGHBOURS];
+        int[] minElevSurroundingNodes = new int[PackedGrid.NEIGHBOURS];
+        int[] subSurroundingNodes = new int[PackedGrid.NEIGHBOURS];
 
-                while( workingIndex < nodesInPit.size() ) {
-                    if (pm.isCanceled()) {
-                        return;
-                    }
-                    GridNode currentPitNode = nodesInPit.get(workingIndex);
+        while( workingIndex < nodesInPit.size() ) {
+            if (pm.isCanceled()) {
+                return;
+            }
+            int currentPitNode = nodesInPit.get(workingIndex);
+
+            int surroundingCount = grid.getValidNeighbours(currentPitNode, surroundingNodes);
+            surroundingCount = removeExistingPits(grid, allPitsPositions, surroundingNodes, surroundingCount);
+            int minEqualNode = getMinEqualElevNode(grid, surroundingNodes, surroundingCount, allPitsPositions);
+            if (minEqualNode < 0) {
+                workingIndex++;
+                continue;
+            }
 
-                    if (currentPitNode.col == 9 && currentPitNode.row == 8) {
-                        System.out.println();
-                    }
+            int minElevSurroundingCount = grid.getValidNeighbours(minEqualNode, minElevSurroundingNodes);
+            minElevSurroundingCount = removeExistingPits(grid, allPitsPositions, minElevSurroundingNodes,
+                    minElevSurroundingCount);
+            if (!grid.isPitFor(minEqualNode, minElevSurroundingNodes, minElevSurroundingCount)) {
+                /*
+                 * case of a pit that is solved by the nearby exit cell
+                 */
+                double minEqualElev = grid.getElevation(minEqualNode);
+                if (minEqualElev < minExitValue) {
+                    minExitValue = minEqualElev;
+                    orderedExitNodes.putIfAbsent(minEqualElev, minEqualNode);
+                }
+                workingIndex++;
+                continue;
+            }
 
-                    List<GridNode> surroundingNodes = new ArrayList<>(currentPitNode.getValidSurroundingNodes());
-                    removeExistingPits(allPitsPositions, surroundingNodes);
-                    GridNode minEqualNode = getMinEqualElevNode(surroundingNodes, allPitsPositions);
-                    if (minEqualNode == null) {
-                        workingIndex++;
-                        continue;
-                    }
+            /*
+             * can't find a non pit exit in the nearest surrounding, therefore 
+             * we need to have a look at all the surrounding and have a look 
+             * of any of those cells are able to flow out somewhere, i.e. are not pit 
+             */
+            for( int i = 0; i < surroundingCount; i++ ) {
+                int tmpNode = surroundingNodes[i];
+                if (grid.touchesBound(tmpNode) || !grid.isValid(tmpNode)) {
+                    continue;
+                }
+                int subSurroundingCount = grid.getValidNeighbours(tmpNode, subSurroundingNodes);
+                subSurroundingCount = removeExistingPits(grid, allPitsPositions, subSurroundingNodes, subSurroundingCount);
 
-                    List<GridNode> minElevSurroundingNodes = new ArrayList<>(minEqualNode.getValidSurroundingNodes());
-                    removeExistingPits(allPitsPositions, minElevSurroundingNodes);
-                    if (!minEqualNode.isPitFor(minElevSurroundingNodes)) {
-                        /*
-                         * case of a pit that is solved by the nearby exit cell
-                         */
-                        if (minEqualNode != null && minEqualNode.elevation < minExitValue) {
-                            minExitValue = minEqualNode.elevation;
-                            orderedExitNodes.add(minEqualNode);
-                        }
-                        workingIndex++;
-                        continue;
-                    }
+                if (grid.isPitFor(tmpNode, subSurroundingNodes, subSurroundingCount)) {
+                    nodesInPit.add(tmpNode);
+                    mark(grid, allPitsPositions, tmpNode);
 
                     /*
-                     * can't find a non pit exit in the nearest surrounding, therefore 
-                     * we need to have a look at all the surrounding and have a look 
-                     * of any of those cells are able to flow out somewhere, i.e. are not pit 
+                     * if the added pit node is the current potential exit 
+                     * node, we need to remove the node from the tree
                      */
-                    for( GridNode tmpNode : surroundingNodes ) {
-                        if (tmpNode.touchesBound() || !tmpNode.isValid()) {
-                            continue;
-                        }
-                        List<GridNode> subSurroundingNodes = new ArrayList<>(tmpNode.getValidSurroundingNodes());
-                        removeExistingPits(allPitsPositions, subSurroundingNodes);
-
-                        if (tmpNode.isPitFor(subSurroundingNodes)) {
-                            nodesInPit.add(tmpNode);
-                            allPitsPositions.mark(tmpNode.col, tmpNode.row);
-
-                            /*
-                             * if the added pit node is the current potential exit 
-                             * node, we need to remove the node from the tree
-                             */
-                            if (orderedExitNodes.size() > 0) {
-                                GridNode potentialExit = orderedExitNodes.first();
-                                if (tmpNode.equals(potentialExit)) {
-                                    orderedExitNodes.remove(potentialExit);
-                                    if (orderedExitNodes.size() > 0) {
-                                        minExitValue = orderedExitNodes.first().elevation;
-                                    } else {
-                                        minExitValue = Double.POSITIVE_INFINITY;
-                                    }
-                                }
+                    if (!orderedExitNodes.isEmpty()) {
+                        Map.Entry<Double, Integer> potentialExit = orderedExitNodes.firstEntry();
+                        if (tmpNode == potentialExit.getValue()) {
+                            orderedExitNodes.pollFirstEntry();
+                            if (!orderedExitNodes.isEmpty()) {
+                                minExitValue = orderedExitNodes.firstKey();
+                            } else {
+                                minExitValue = Double.POSITIVE_INFINITY;
                             }
-
-                            // GridNode subMinNode =
-                            // getMinEqualElevNode(subSurroundingNodes,
-                            // allPitsPositions);
-                            //
-                            // if (subMinNode != null && subMinNode.elevation <
-                            // minExitValue) {
-                            // minExitValue = subMinNode.elevation;
-                            // minExitValueNode = subMinNode;
-                            // }
                         }
                     }
-                    workingIndex++;
                 }
+            }
+            workingIndex++;
+        }
 
-                if (Double.isInfinite(minExitValue)) {
-                    for( GridNode gridNode : nodesInPit ) {
-                        if (gridNode.elevation < minExitValue) {
-                            minExitValue = gridNode.elevation;
-                            orderedExitNodes.add(gridNode);
-                        }
-                    }
+        if (Double.isInfinite(minExitValue)) {
+            for( int i = 0; i < nodesInPit.size(); i++ ) {
+                int node = nodesInPit.get(i);
+                double elev = grid.getElevation(node);
+                if (elev < minExitValue) {
+                    minExitValue = elev;
+                    orderedExitNodes.putIfAbsent(elev, node);
                 }
+            }
+        }
 
-                if (Double.isInfinite(minExitValue) || Double.isNaN(minExitValue)) {
-                    throw new RuntimeException("Found invalid value at: " + count);
-                }
+        if (Double.isInfinite(minExitValue) || Double.isNaN(minExitValue)) {
+            throw new RuntimeException("Found invalid value at: " + count);
+        }
 
-                PitInfo info = new PitInfo();
-                // info.originalPitNode = originalPitNode;
-                info.pitfillExitNode = orderedExitNodes.first();
-                info.nodes = nodesInPit;
-                // processedNodesInPit.addAll(nodesInPit);
-
-                GridNode pitfillExitNode = info.pitfillExitNode;
-                List<GridNode> allPitsOfCurrent = info.nodes;
-
-                BitMatrix floodedPositions = new BitMatrix(cols, rows);
-                List<GridNode> nodesToCheck = new ArrayList<>();
-                nodesToCheck.add(pitfillExitNode);
-                floodAndFlow(0, nodesToCheck, pitfillExitNode.elevation, allPitsOfCurrent, floodedPositions, pitIter);
-
-                // // update and check broders
-                // List<GridNode> updated = new ArrayList<>();
-                // for( GridNode gridNode : nodesInPit ) {
-                // GridNode updatedNode = new GridNode(pitIter, gridNode.cols,
-                // gridNode.rows, gridNode.xRes,
-                // gridNode.yRes, gridNode.col, gridNode.row);
-                // updated.add(updatedNode);
-                // }
-                // nodesInPit = updated;
-                //
-                // ConcurrentLinkedQueue<GridNode> surroundingAddedPitNodes =
-                // getPitsList(nodesInPit, allPitsPositions);
-                // if (surroundingAddedPitNodes.size() > 0) {
-                // workingIndex = nodesInPit.size();
-                // nodesInPit.addAll(surroundingAddedPitNodes);
-                // surroundingAdded = true;
-                // for( GridNode gridNode : surroundingAddedPitNodes ) {
-                // System.out.print(gridNode.col + "/" + gridNode.row + "/" +
-                // gridNode.elevation + " ");
-                // allPitsPositions.mark(gridNode.col, gridNode.row);
-                // }
-                // System.out.println();
-                // }
-            } // while
-        } // processsinglepit
+        int pitfillExitNode = orderedExitNodes.firstEntry().getValue();
+        floodAndFlow(grid, pitfillExitNode, nodesInPit);
 
         if (verbose)
             pm.worked(1);
+    }
 
+    private void mark( PackedGrid grid, BitMatrix positions, int index ) {
+        positions.mark(grid.col(index), grid.row(index));
     }
 
-    private void removeExistingPits( BitMatrix allPitsPositions, List<GridNode> surroundingNodes ) {
-        Iterator<GridNode> nodesIter = surroundingNodes.iterator();
-        while( nodesIter.hasNext() ) {
-            GridNode gridNode = (GridNode) nodesIter.next();
-            if (allPitsPositions.isMarked(gridNode.col, gridNode.row)) {
-                nodesIter.remove();
-            }
-        }
+    private boolean isMarked( PackedGrid grid, BitMatrix positions, int index ) {
+        return positions.isMarked(grid.col(index), grid.row(index));
     }
 
-    private GridNode getMinEqualElevNode( List<GridNode> surroundingNodes, BitMatrix allPitsPositions ) {
-        double minElev = Double.POSITIVE_INFINITY;
-        GridNode minNode = null;
-        for( GridNode gridNode : surroundingNodes ) {
-            if (gridNode.elevation <= minElev && !allPitsPositions.isMarked(gridNode.col, gridNode.row)) {
-                minElev = gridNode.elevation;
-                minNode = gridNode;
+    /**
+     * Remove the already marked pit cells from the nodes buffer.
+     * 
+     * @return the new count of nodes in the buffer.
+     */
+    private int removeExistingPits( PackedGrid grid, BitMatrix allPitsPositions, int[] nodes, int count ) {
+        int newCount = 0;
+        for( int i = 0; i < count; i++ ) {
+            if (!isMarked(grid, allPitsPositions, nodes[i])) {
+                nodes[newCount++] = nodes[i];
             }
         }
-        return minNode;
+        return newCount;
     }
 
-    private void floodAndFlow( int iteration, List<GridNode> nodesToCheck, double runningFloodValue, List<GridNode> allNodesOfPit,
-            BitMatrix floodedPositions, WritableRandomIter pitIter ) {
-        iteration++;
-
-        double currentRunningFloodValue = runningFloodValue + delta;
-
-        List<GridNode> nodesForNextRound = new ArrayList<>();
-        for( GridNode currentNode : nodesToCheck ) {
-            // flood and grow the first surrounding
-            List<GridNode> currentSurroundingNodes = currentNode.getValidSurroundingNodes();
-            for( GridNode gridNode : currentSurroundingNodes ) {
-                if (!floodedPositions.isMarked(gridNode.col, gridNode.row) && allNodesOfPit.contains(gridNode)) {
-                    double newValue = 0;
-                    if (gridNode.elevation <= runningFloodValue) {
-                        newValue = currentRunningFloodValue;
-                    } else {
-                        newValue = gridNode.elevation + delta; // TODO check if it is enough or
-                                                               // better
-                                                               // add delta
-                    }
-                    gridNode.setValueInMap(pitIter, newValue);
-                    floodedPositions.mark(gridNode.col, gridNode.row);
-
-                    nodesForNextRound.add(gridNode);
-                }
+    private int getMinEqualElevNode( PackedGrid grid, int[] nodes, int count, BitMatrix allPitsPositions ) {
+        double minElev = Double.POSITIVE_INFINITY;
+        int minNode = -1;
+        for( int i = 0; i < count; i++ ) {
+            int node = nodes[i];
+            double elev = grid.getElevation(node);
+            if (elev <= minElev && !isMarked(grid, allPitsPositions, node)) {
+                minElev = elev;
+                minNode = node;
             }
         }
-
-        int size = nodesForNextRound.size();
-        if (size > 0) {
-            floodAndFlow(iteration, nodesForNextRound, currentRunningFloodValue, allNodesOfPit, floodedPositions, pitIter);
-        }
+        return minNode;
     }
-    // private void floodAndFlow( int iteration, int runningCol, int runnningRow, double
-    // runningFloodValueValue,
-    // List<GridNode> allNodesOfPit, BitMatrix floodedPositions, WritableRandomIter pitIter ) {
-    // iteration++;
-    //
-    // GridNode currentNode = new GridNode(pitIter, cols, rows, xRes, yRes, runningCol,
-    // runnningRow);
-    //
-    // // TODO make first surrounding and then recurse on sub-surrounding ordering the cells from
-    // // the middle
-    //
-    // // flood and grow the first surrounding
-    // List<GridNode> validSurroundingNodes = currentNode.getValidSurroundingNodes();
-    // List<GridNode> toUseNodes = new ArrayList<>();
-    // for( GridNode gridNode : validSurroundingNodes ) {
-    // if (!floodedPositions.isMarked(gridNode.col, gridNode.row) &&
-    // allNodesOfPit.contains(gridNode)) {
-    // double newValue = 0;
-    // if (gridNode.elevation <= runningFloodValueValue) {
-    // newValue = runningFloodValueValue + delta;
-    // } else {
-    // newValue = gridNode.elevation + delta; // TODO check if it is enough or better
-    // // add delta
-    // }
-    // gridNode.setValueInMap(pitIter, newValue);
-    // floodedPositions.mark(gridNode.col, gridNode.row);
-    // toUseNodes.add(gridNode);
-    // }
-    // }
-    //
-    // int size = toUseNodes.size();
-    // if (size > 1) {
-    // int half = size / 2;
-    // for( int i = half; i >= 0; i-- ) {
-    // GridNode gridNode = toUseNodes.get(i);
-    // floodAndFlow(iteration, gridNode.col, gridNode.row, gridNode.elevation, allNodesOfPit,
-    // floodedPositions, pitIter);
-    // }
-    // for( int i = half + 1; i < size; i++ ) {
-    // GridNode gridNode = toUseNodes.get(i);
-    // floodAndFlow(iteration, gridNode.col, gridNode.row, gridNode.elevation, allNodesOfPit,
-    // floodedPositions, pitIter);
-    // }
-    // } else if (size == 1) {
-    // GridNode gridNode = toUseNodes.get(0);
-    // floodAndFlow(iteration, gridNode.col, gridNode.row, gridNode.elevation, allNodesOfPit,
-    // floodedPositions, pitIter);
-    // }
-    // // List<GridNode> collectedSubSurroundingNodes = new ArrayList<>();
-    // // for( GridNode gridNode : validSurroundingNodes ) {
-    // // List<GridNode> subSurroundingNodes = gridNode.getValidSurroundingNodes();
-    // // for( GridNode subGridNode : subSurroundingNodes ) {
-    // // if (!floodedPositions.isMarked(subGridNode.col, subGridNode.row) &&
-    // // allNodesOfPit.contains(subGridNode)) {
-    // // collectedSubSurroundingNodes.add(subGridNode);
-    // // }
-    // // }
-    // // }
-    // //
-    // // int size = collectedSubSurroundingNodes.size();
-    // // if (size > 1) {
-    // // int half = size / 2;
-    // // for( int i = half; i >= 0; i-- ) {
-    // // GridNode subGridNode = collectedSubSurroundingNodes.get(i);
-    // // floodAndFlow(iteration, subGridNode.col, subGridNode.row, subGridNode.elevation,
-    // // allNodesOfPit, floodedPositions,
-    // // pitIter);
-    // // }
-    // // for( int i = half + 1; i < size; i++ ) {
-    // // GridNode subGridNode = collectedSubSurroundingNodes.get(i);
-    // // floodAndFlow(iteration, subGridNode.col, subGridNode.row, subGridNode.elevation,
-    // // allNodesOfPit, floodedPositions,
-    // // pitIter);
-    // // }
-    // // } else if (size == 1) {
-    // // GridNode gridNode = collectedSubSurroundingNodes.get(0);
-    // // floodAndFlow(iteration, gridNode.col, gridNode.row, gridNode.elevation, allNodesOfPit,
-    // // floodedPositions, pitIter);
-    // // }
-    //
-    // }
 
     /**
-     * Make cells flow ready by creating a slope starting from the output cell.
+     * Flood the cells of a pit starting from the exit cell, ring after ring, 
+     * adding delta at each ring to create the slope towards the exit.
      * 
-     * @param iteration the iteration.
-     * @param pitfillExitNode the exit node.
-     * @param cellsToMakeFlowReady the cells to check and change at each iteration.
-     * @param allPitsPositions the marked positions of all existing pits. Necessary to pick only those that 
-     *              really are part of the pit pool.
-     * @param pitIter elevation data.
-     * @param delta the elevation delta to add to the cells to create the slope.
+     * @param grid the elevation grid.
+     * @param pitfillExitNode the exit cell.
+     * @param nodesInPit the cells of the pit.
      */
-    private void makeCellsFlowReady( int iteration, GridNode pitfillExitNode, List<GridNode> cellsToMakeFlowReady,
-            BitMatrix allPitsPositions, WritableRandomIter pitIter, float delta ) {
-        iteration++;
-
-        double exitElevation = pitfillExitNode.elevation;
-        List<GridNode> connected = new ArrayList<>();
-        for( GridNode checkNode : cellsToMakeFlowReady ) {
-            List<GridNode> validSurroundingNodes = checkNode.getValidSurroundingNodes();
-            for( GridNode gridNode : validSurroundingNodes ) {
-                if (!pitfillExitNode.equals(gridNode) && allPitsPositions.isMarked(gridNode.col, gridNode.row)
-                        && gridNode.elevation == exitElevation) {
-                    if (!connected.contains(gridNode))
-                        connected.add(gridNode);
+    private void floodAndFlow( PackedGrid grid, int pitfillExitNode, DynamicIntArray nodesInPit ) {
+        int[] allNodesOfPit = nodesInPit.getTrimmedInternalArray();
+        Arrays.sort(allNodesOfPit);
+        boolean[] flooded = new boolean[allNodesOfPit.length];
+
+        int[] surroundingNodes = new int[PackedGrid.NEIGHBOURS];
+        DynamicIntArray nodesToCheck = new DynamicIntArray(16);
+        DynamicIntArray nodesForNextRound = new DynamicIntArray(16);
+        nodesToCheck.add(pitfillExitNode);
+        double runningFloodValue = grid.getElevation(pitfillExitNode);
+        while( !nodesToCheck.isEmpty() ) {
+            double currentRunningFloodValue = runningFloodValue + delta;
+            nodesForNextRound.clear();
+            for( int i = 0; i < nodesToCheck.size(); i++ ) {
+                // flood and grow the first surrounding
+                int count = grid.getValidNeighbours(nodesToCheck.get(i), surroundingNodes);
+                for( int j = 0; j < count; j++ ) {
+                    int node = surroundingNodes[j];
+                    int pitPosition = Arrays.binarySearch(allNodesOfPit, node);
+                    if (pitPosition >= 0 && !flooded[pitPosition]) {
+                        double elevation = grid.getElevation(node);
+                        double newValue;
+                        if (elevation <= runningFloodValue) {
+                            newValue = currentRunningFloodValue;
+                        } else {
+                            newValue = elevation + delta;
+                        }
+                        grid.setElevation(node, newValue);
+                        flooded[pitPosition] = true;
+                        nodesForNextRound.add(node);
+                    }
                 }
             }
+            DynamicIntArray tmp = nodesToCheck;
+            nodesToCheck = nodesForNextRound;
+            nodesForNextRound = tmp;
+            runningFloodValue = currentRunningFloodValue;
         }
-        if (connected.size() == 0) {
-            return;
-        }
+    }
 
-        for( GridNode gridNode : connected ) {
-            double newElev = (double) (gridNode.elevation + delta * (double) iteration);
-            gridNode.setValueInMap(pitIter, newElev);
-        }
-        List<GridNode> updatedConnected = new ArrayList<>();
-        for( GridNode gridNode : connected ) {
-            GridNode updatedNode = new GridNode(pitIter, gridNode.cols, gridNode.rows, gridNode.xRes, gridNode.yRes, gridNode.col,
-                    gridNode.row);
-            updatedConnected.add(updatedNode);
-        }
-        makeCellsFlowReady(iteration, pitfillExitNode, updatedConnected, allPitsPositions, pitIter, delta);
+    private boolean isValidPit( PackedGrid grid, int index ) {
+        return grid.isPit(index) && !Double.isInfinite(grid.getSurroundingMin(index));
     }
 
-    private ConcurrentLinkedQueue<GridNode> getPitsList( int nCols, int nRows, double xRes, double yRes,
-            WritableRandomIter pitIter ) {
-        ConcurrentLinkedQueue<GridNode> pitsList = new ConcurrentLinkedQueue<>();
+    private int[] getPitsList( PackedGrid grid ) {
+        DynamicIntArray pitsList = new DynamicIntArray(1000);
         if (verbose)
-            pm.beginTask("Extract pits from DTM...", nRows);
-        for( int row = 0; row < nRows; row++ ) {
-            for( int col = 0; col < nCols; col++ ) {
-                GridNode node = new GridNode(pitIter, nCols, nRows, xRes, yRes, col, row);
-                if (node.isPit()) {
-                    double surroundingMin = node.getSurroundingMin();
-                    if (Double.isInfinite(surroundingMin)) {
-                        continue;
-                    }
-                    pitsList.add(node);
+            pm.beginTask("Extract pits from DTM...", rows);
+        for( int row = 0; row < rows; row++ ) {
+            for( int col = 0; col < cols; col++ ) {
+                int index = grid.index(col, row);
+                if (isValidPit(grid, index)) {
+                    pitsList.add(index);
                 }
             }
             if (verbose)
@@ -619,134 +474,47 @@ public class OmsDePitter extends GridMultiProcessing {
         }
         if (verbose)
             pm.done();
-        return pitsList;
+        return pitsList.getTrimmedInternalArray();
     }
 
-    private ConcurrentLinkedQueue<GridNode> getPitsList( int nCols, int nRows, double xRes, double yRes,
-            WritableRandomIter pitIter, BitMatrix allPitsPositions ) {
-        ConcurrentLinkedQueue<GridNode> pitsList = new ConcurrentLinkedQueue<>();
+    private int[] getPitsList( PackedGrid grid, BitMatrix allPitsPositions ) {
+        DynamicIntArray pitsList = new DynamicIntArray(1000);
+        int[] surroundingNodes = new int[PackedGrid.NEIGHBOURS];
 
-        BitMatrix currentMarked = new BitMatrix(nCols, nRows);
+        BitMatrix currentMarked = new BitMatrix(cols, rows);
         if (verbose)
-            pm.beginTask("Extract pits from DTM...", nRows);
-        for( int row = 0; row < nRows; row++ ) {
-            for( int col = 0; col < nCols; col++ ) {
+            pm.beginTask("Extract pits from DTM...", rows);
+        for( int row = 0; row < rows; row++ ) {
+            for( int col = 0; col < cols; col++ ) {
                 if (!allPitsPositions.isMarked(col, row)) {
                     continue;
                 }
 
-                GridNode node = new GridNode(pitIter, nCols, nRows, xRes, yRes, col, row);
-                if (node.isPit()) {
-                    double surroundingMin = node.getSurroundingMin();
-                    if (Double.isInfinite(surroundingMin)) {
-                        continue;
-                    }
-                    pitsList.add(node);
+                int index = grid.index(col, row);
+                if (isValidPit(grid, index)) {
+                    pitsList.add(index);
                 }
 
                 // check also border ones
-                List<GridNode> validSurroundingNodes = node.getValidSurroundingNodes();
-                for( GridNode gridNode : validSurroundingNodes ) {
-                    if (allPitsPositions.isMarked(gridNode.col, gridNode.row)
-                            || currentMarked.isMarked(gridNode.col, gridNode.row)) {
+                int count = grid.getValidNeighbours(index, surroundingNodes);
+                for( int i = 0; i < count; i++ ) {
+                    int node = surroundingNodes[i];
+                    if (isMarked(grid, allPitsPositions, node) || isMarked(grid, currentMarked, node)) {
                         // we want only border
                         continue;
                     }
-                    if (gridNode.isPit()) {
-                        double surroundingMin = gridNode.getSurroundingMin();
-                        if (Double.isInfinite(surroundingMin)) {
-                            continue;
-                        }
-                        pitsList.add(gridNode);
-                        currentMarked.mark(gridNode.col, gridNode.row);
+                    if (isValidPit(grid, node)) {
+                        pitsList.add(node);
+                        mark(grid, currentMarked, node);
                     }
                 }
-
             }
             if (verbose)
                 pm.worked(1);
         }
         if (verbose)
             pm.done();
-        return pitsList;
-    }
-
-    private void findConnectedOfSameHeight( GridNode node, BitMatrix allPitsPositions, List<GridNode> nodesInPit ) {
-        double elev = node.elevation;
-        List<GridNode> checkNodes = new ArrayList<>();
-        checkNodes.add(node);
-        boolean oneAdded = true;
-        int startIndex = 0;
-        while( oneAdded ) {
-            oneAdded = false;
-            int currentSize = checkNodes.size();
-            for( int i = startIndex; i < currentSize; i++ ) {
-                GridNode checkNode = checkNodes.get(i);
-                List<GridNode> tmpNodes = checkNode.getValidSurroundingNodes();
-                for( GridNode gridNode : tmpNodes ) {
-                    if (allPitsPositions.isMarked(gridNode.col, gridNode.row)) {
-                        continue;
-                    }
-
-                    if (gridNode.elevation == elev) {
-                        checkNodes.add(gridNode);
-                        nodesInPit.add(gridNode);
-                        allPitsPositions.mark(gridNode.col, gridNode.row);
-                        oneAdded = true;
-                    }
-                }
-            }
-            startIndex = currentSize;
-        }
-
-    }
-
-    private ConcurrentLinkedQueue<GridNode> getPitsList( List<GridNode> nodesToCheckForLeftPits, BitMatrix allPitsPositions ) {
-        ConcurrentLinkedQueue<GridNode> pitsList = new ConcurrentLinkedQueue<>();
-        if (nodesToCheckForLeftPits.size() > 0) {
-            GridNode tmp = nodesToCheckForLeftPits.get(0);
-            BitMatrix existing = new BitMatrix(tmp.cols, tmp.rows);
-            // pm.beginTask("Extract pits from the cells surrounding the pit pool...",
-            // nodesToCheckForLeftPits.size());
-            nodesToCheckForLeftPits.stream().forEach(node -> {
-                List<GridNode> validSurroundingNodes = node.getValidSurroundingNodes();
-                for( GridNode gridNode : validSurroundingNodes ) {
-                    if (allPitsPositions.isMarked(gridNode.col, gridNode.row)) {
-                        continue;
-                    }
-                    if (gridNode.isPit()) {
-                        double surroundingMin = gridNode.getSurroundingMin();
-                        if (Double.isInfinite(surroundingMin)) {
-                            continue;
-                        }
-                        if (!existing.isMarked(gridNode.col, gridNode.row)) {
-                            pitsList.add(gridNode);
-                            existing.mark(gridNode.col, gridNode.row);
-                        }
-                    }
-                }
-                // pm.worked(1);
-            });
-            // pm.done();
-        }
-        return pitsList;
-    }
-
-    private static class PitInfo {
-        // GridNode originalPitNode;
-        GridNode pitfillExitNode;
-        List<GridNode> nodes = new ArrayList<>();
-
-        @Override
-        public String toString() {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Exit node: ").append(pitfillExitNode).append("\n");
-            sb.append("Number of connected nodes: " + nodes.size() + "\n");
-            for( GridNode gridNode : nodes ) {
-                sb.append("  -> col=" + gridNode.col + " row=" + gridNode.row + " elev=" + gridNode.elevation + "\n");
-            }
-            return sb.toString();
-        }
+        return pitsList.getTrimmedInternalArray();
     }
 
 }
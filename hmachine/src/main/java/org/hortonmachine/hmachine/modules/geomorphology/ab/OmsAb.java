@@ -116,10 +116,6 @@ public class OmsAb extends GridMultiProcessing {
         try {
             pm.beginTask(msg.message("ab.calculating"), nRows * nCols);
             processGrid(nCols, nRows, ( c, r ) -> {
-                if (pm.isCanceled()) {
-                    return;
-                }
-
                 double planSample = planIter.getSampleDouble(c, r, 0);
                 if (!isNovalue(planSample) && planSample != 0.0) {
                     if (xRes > 1 / planSample && planSample >= 0.0) {
@@ -145,8 +141,6 @@ public class OmsAb extends GridMultiProcessing {
                     alungIter.setSample(c, r, 0, doubleNovalue);
                     bIter.setSample(c, r, 0, doubleNovalue);
                 }
-
-                pm.worked(1);
             });
             pm.done();
         } finally {
@@ -123,9 +123,6 @@ public class OmsAspect extends GridNodeMultiProcessing {
         try {
             pm.beginTask(msg.message("aspect.calculating"), rows * cols);
             processGridNodes(inElev, gridNode -> {
-                if (pm.isCanceled()) {
-                    return;
-                }
                 double aspect = calculateAspect(gridNode, radtodeg, doRound);
                 int col = gridNode.col;
                 int row = gridNode.row;
@@ -138,7 +135,6 @@ public class OmsAspect extends GridNodeMultiProcessing {
                         aspectIter.setSample(col, row, 0, aspect);
                     }
                 }
-                pm.worked(1);
             });
             pm.done();
         } finally {
@@ -113,25 +113,25 @@ public class OmsCurvatures extends GridMultiProcessing {
         WritableRaster planWR = CoverageUtilities.createWritableRaster(nCols, nRows, null, null, doubleNovalue);
         WritableRaster tangWR = CoverageUtilities.createWritableRaster(nCols, nRows, null, null, doubleNovalue);
 
-        final double[] planTangProf = new double[3];
-
         try {
             /*
                  * calculate curvatures
                  */
             pm.beginTask(msg.message("curvatures.calculating"), (nRows - 2) * (nCols - 2));
-            processGrid(nCols, nRows, true, ( c, r ) -> {
-                if (pm.isCanceled()) {
-                    return;
-                }
-                GridNode node = new GridNode(elevationIter, nCols, nRows, xRes, yRes, c, r);
-                if (node.isValid() && !node.touchesNovalue() && !node.touchesBound()) {
-                    calculateCurvatures2(node, planTangProf);
-                    planWR.setSample(c, r, 0, planTangProf[0]);
-                    tangWR.setSample(c, r, 0, planTangProf[1]);
-                    profWR.setSample(c, r, 0, planTangProf[2]);
+            processGridTiles(nCols, nRows, true, tile -> {
+                // one result array per tile, tiles may run in parallel
+                double[] planTangProf = new double[3];
+                for( int r = tile.startRow; r < tile.endRow; r++ ) {
+                    for( int c = tile.startCol; c < tile.endCol; c++ ) {
+                        GridNode node = new GridNode(elevationIter, nCols, nRows, xRes, yRes, c, r);
+                        if (node.isValid() && !node.touchesNovalue() && !node.touchesBound()) {
+                            calculateCurvatures2(node, planTangProf);
+                            planWR.setSample(c, r, 0, planTangProf[0]);
+                            tangWR.setSample(c, r, 0, planTangProf[1]);
+                            profWR.setSample(c, r, 0, planTangProf[2]);
+                        }
+                    }
                 }
-                pm.worked(1);
             });
             pm.done();
         } finally {
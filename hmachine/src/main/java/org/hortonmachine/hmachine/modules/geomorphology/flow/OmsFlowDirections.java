@@ -31,12 +31,8 @@ import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSFLOWDIRECTIONS_S
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSFLOWDIRECTIONS_inPit_DESCRIPTION;
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSFLOWDIRECTIONS_outFlow_DESCRIPTION;
 
-import java.awt.image.RenderedImage;
 import java.util.HashMap;
 
-import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
-
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Documentation;
@@ -52,6 +48,7 @@ import oms3.annotations.Status;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.hortonmachine.gears.libs.modules.HMModel;
 import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
+import org.hortonmachine.gears.utils.coverage.HMRaster;
 import org.hortonmachine.hmachine.i18n.HortonMessageHandler;
 
 @Description(OMSFLOWDIRECTIONS_DESCRIPTION)
@@ -78,8 +75,6 @@ public class OmsFlowDirections extends HMModel {
      */
     public static final double FLOWNOVALUE = -1.0;
 
-    private RandomIter pitfillerIter;
-
     // the hydrologic variables
     /* define directions */
     private int[] d1 = new int[]{(int) FLOWNOVALUE, 0, -1, -1, -1, 0, 1, 1, 1};
@@ -115,9 +110,8 @@ public class OmsFlowDirections extends HMModel {
         dx = regionMap.get(CoverageUtilities.XRES);
         dy = regionMap.get(CoverageUtilities.YRES);
 
-        RenderedImage pitfillerRI = inPit.getRenderedImage();
-        // input iterator
-        pitfillerIter = RandomIterFactory.create(pitfillerRI, null);
+        // direct access to the input data, without per sample iterator calls
+        HMRaster pitRaster = HMRaster.fromCoverage(inPit);
 
         i1 = 0;
         i2 = 0;
@@ -131,7 +125,7 @@ public class OmsFlowDirections extends HMModel {
                 return;
             }
             for( int j = 0; j < ny; j++ ) {
-                double pitValue = pitfillerIter.getSampleDouble(i, j, 0);
+                double pitValue = pitRaster.getDouble(i, j);
                 if (!isNovalue(pitValue)) {
                     elevations[i][j] = pitValue;
                 } else {
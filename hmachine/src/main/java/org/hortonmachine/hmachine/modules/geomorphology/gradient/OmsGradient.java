@@ -164,13 +164,9 @@ public class OmsGradient extends GridMultiProcessing {
         WritableRaster gradientWR = CoverageUtilities.createWritableRaster(nCols, nRows, null, null, doubleNovalue);
         pm.beginTask(msg.message("gradient.working") + " (" + HORN + ")", nRows * nCols);
         processGrid(nCols, nRows, true, ( c, r ) -> {
-            if (pm.isCanceled()) {
-                return;
-            }
             // extract the value to use for the algoritm. It is the finite difference approach.
             double value = doGradientHornOnCell(elevationIter, c, r, xRes, yRes, doDegrees);
             gradientWR.setSample(c, r, 0, value);
-            pm.worked(1);
         });
         pm.done();
         return gradientWR;
@@ -191,12 +187,8 @@ public class OmsGradient extends GridMultiProcessing {
         WritableRaster gradientWR = CoverageUtilities.createWritableRaster(nCols, nRows, null, null, doubleNovalue);
         pm.beginTask(msg.message("gradient.working") + " (" + FINITE_DIFFERENCES + ")", nRows * nCols);
         processGrid(nCols, nRows, true, ( c, r ) -> {
-            if (pm.isCanceled()) {
-                return;
-            }
             double value = doGradientDiffOnCell(elevationIter, c, r, xRes, yRes, doDegrees);
             gradientWR.setSample(c, r, 0, value);
-            pm.worked(1);
         });
         pm.done();
         return gradientWR;
@@ -228,12 +220,8 @@ public class OmsGradient extends GridMultiProcessing {
         WritableRaster gradientWR = CoverageUtilities.createWritableRaster(nCols, nRows, null, null, doubleNovalue);
         pm.beginTask(msg.message("gradient.working") + " (" + EVANS + ")", nRows * nCols);
         processGrid(nCols, nRows, true, ( c, r ) -> {
-            if (pm.isCanceled()) {
-                return;
-            }
             double value = doGradientEvansOnCell(elevationIter, c, r, xRes, yRes, doDegrees);
             gradientWR.setSample(c, r, 0, value);
-            pm.worked(1);
         });
         pm.done();
         return gradientWR;
@@ -33,13 +33,9 @@ import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSSLOPE_inFlow_DES
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSSLOPE_inPit_DESCRIPTION;
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSSLOPE_outSlope_DESCRIPTION;
 
-import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 import java.util.HashMap;
 
-import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
-
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Documentation;
@@ -58,6 +54,8 @@ import org.hortonmachine.gears.libs.modules.Direction;
 import org.hortonmachine.gears.libs.modules.GridNode;
 import org.hortonmachine.gears.libs.modules.HMModel;
 import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
+import org.hortonmachine.gears.utils.coverage.HMDoubleRaster;
+import org.hortonmachine.gears.utils.coverage.HMRaster;
 import org.hortonmachine.hmachine.i18n.HortonMessageHandler;
 
 @Description(OMSSLOPE_DESCRIPTION)
@@ -100,28 +98,25 @@ public class OmsSlope extends HMModel {
         double xRes = regionMap.get(CoverageUtilities.XRES);
         double yRes = regionMap.get(CoverageUtilities.YRES);
 
-        RenderedImage elevationRI = inPit.getRenderedImage();
-        RandomIter elevationIter = RandomIterFactory.create(elevationRI, null);
-        RenderedImage flowRI = inFlow.getRenderedImage();
-        RandomIter flowIter = RandomIterFactory.create(flowRI, null);
-
-        WritableRaster slopeWR = CoverageUtilities.createWritableRaster(nCols, nRows, null, null, doubleNovalue);
+        HMRaster elevationRaster = HMRaster.fromCoverage(inPit);
+        HMRaster flowRaster = HMRaster.fromCoverage(inFlow);
+        HMDoubleRaster slopeRaster = new HMDoubleRaster(nCols, nRows, doubleNovalue);
 
-        pm.beginTask(msg.message("slope.calculating"), nCols);
-        for( int c = 0; c < nCols; c++ ) {
-            for( int r = 0; r < nRows; r++ ) {
-                double flowValue = flowIter.getSampleDouble(c, r, 0);
-                GridNode node = new GridNode(elevationIter, nCols, nRows, xRes, yRes, c, r);
-                double value = calculateSlope(node, flowValue);
+        pm.beginTask(msg.message("slope.calculating"), nRows);
+        for( int r = 0; r < nRows; r++ ) {
+            for( int c = 0; c < nCols; c++ ) {
+                double flowValue = flowRaster.getDouble(c, r);
+                double value = calculateSlope(elevationRaster, c, r, xRes, yRes, flowValue);
                 if (doHandleNegativeSlope && value < 0) {
                     value = Double.MIN_VALUE;
                 }
-                slopeWR.setSample(c, r, 0, value);
+                slopeRaster.set(c, r, value);
             }
             pm.worked(1);
         }
         pm.done();
 
+        WritableRaster slopeWR = slopeRaster.toWritableRaster();
         outSlope = CoverageUtilities.buildCoverage("slope", slopeWR, regionMap, inPit.getCoordinateReferenceSystem());
     }
 
@@ -147,4 +142,39 @@ public class OmsSlope extends HMModel {
         return value;
     }
 
+    /**
+     * Calculates the slope of a given flowdirection value in a cell of a {@link HMRaster}.
+     * 
+     * <p>Gives the same result as {@link #calculateSlope(GridNode, double)} without
+     * creating a {@link GridNode}.
+     * 
+     * @param elevationRaster the elevation raster.
+     * @param col the col of the cell.
+     * @param row the row of the cell.
+     * @param xRes the x resolution.
+     * @param yRes the y resolution.
+     * @param flowValue the value of the flowdirection.
+     * @return the slope.
+     */
+    public static double calculateSlope( HMRaster elevationRaster, int col, int row, double xRes, double yRes,
+            double flowValue ) {
+        double value = doubleNovalue;
+        if (!isNovalue(flowValue)) {
+            int flowDir = (int) flowValue;
+            if (flowDir != 10) {
+                Direction direction = Direction.forFlow(flowDir);
+                double distance = direction.getDistance(xRes, yRes);
+                double currentElevation = elevationRaster.getDouble(col, row);
+                int nextCol = col + direction.col;
+                int nextRow = row + direction.row;
+                double nextElevation = doubleNovalue;
+                if (elevationRaster.isInRaster(nextCol, nextRow)) {
+                    nextElevation = elevationRaster.getDouble(nextCol, nextRow);
+                }
+                value = (currentElevation - nextElevation) / distance;
+            }
+        }
+        return value;
+    }
+
 }
@@ -17,8 +17,6 @@
  */
 package org.hortonmachine.hmachine.modules.geomorphology.tca;
 
-import static org.hortonmachine.gears.libs.modules.HMConstants.doubleNovalue;
-import static org.hortonmachine.gears.libs.modules.HMConstants.isNovalue;
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSTCA_AUTHORCONTACTS;
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSTCA_AUTHORNAMES;
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSTCA_DESCRIPTION;
@@ -37,7 +35,6 @@ import java.awt.image.WritableRaster;
 
 import javax.media.jai.iterator.RandomIter;
 import javax.media.jai.iterator.RandomIterFactory;
-import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -53,10 +50,13 @@ import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.hortonmachine.gears.libs.modules.FlowNode;
+import org.hortonmachine.gears.libs.modules.FlowGraph;
 import org.hortonmachine.gears.libs.modules.HMModel;
+import org.hortonmachine.gears.libs.modules.IFlowAccumulator;
+import org.hortonmachine.gears.libs.monitor.IHMProgressMonitor;
 import org.hortonmachine.gears.utils.RegionMap;
 import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
+import org.hortonmachine.gears.utils.coverage.HMDoubleRaster;
 
 @Description(OMSTCA_DESCRIPTION)
 @Documentation(OMSTCA_DOCUMENTATION)
@@ -91,43 +91,20 @@ public class OmsTca extends HMModel {
         int rows = regionMap.getRows();
 
         RenderedImage flowRI = inFlow.getRenderedImage();
-        WritableRaster tcaWR = CoverageUtilities.createWritableRaster(cols, rows, null, null, doubleNovalue);
-
         RandomIter flowIter = RandomIterFactory.create(flowRI, null);
-        WritableRandomIter tcaIter = RandomIterFactory.createWritable(tcaWR, null);
 
-        pm.beginTask("Calculating tca...", rows); //$NON-NLS-1$
-        for( int r = 0; r < rows; r++ ) {
-            for( int c = 0; c < cols; c++ ) {
-                FlowNode flowNode = new FlowNode(flowIter, cols, rows, c, r);
-                if (flowNode.isSource()) {
-                    double previousTcaValue = 0.0;
-                    while( flowNode != null && flowNode.isValid() ) {
-                        int col = flowNode.col;
-                        int row = flowNode.row;
-                        double tmpTca = tcaIter.getSampleDouble(col, row, 0);
-                        double newTcaValue;
-                        /*
-                         * cumulate only if first time passing, else
-                         * just propagate 
-                         */
-                        if (isNovalue(tmpTca)) {
-                            tmpTca = 1.0;
-                            newTcaValue = tmpTca + previousTcaValue;
-                            previousTcaValue = newTcaValue;
-                        } else {
-                            newTcaValue = tmpTca + previousTcaValue;
-                        }
-                        tcaIter.setSample(col, row, 0, newTcaValue);
-                        flowNode = flowNode.goDownstream();
-                    }
-                }
-            }
-            pm.worked(1);
-        }
+        pm.beginTask("Calculating tca...", IHMProgressMonitor.UNKNOWN); //$NON-NLS-1$
+        /*
+         * the tca of a cell is the number of cells draining through it,
+         * itself included, accumulated from the sources downstream
+         */
+        FlowGraph flowGraph = FlowGraph.fromFlowIter(flowIter, cols, rows);
+        double[] tca = flowGraph.accumulate(IFlowAccumulator.CELLS_COUNT, getDefaultThreadsNum());
         pm.done();
         flowIter.done();
-        tcaIter.done();
+
+        HMDoubleRaster tcaRaster = new HMDoubleRaster(tca, cols, rows, 0, cols);
+        WritableRaster tcaWR = tcaRaster.toWritableRaster();
 
         outTca = CoverageUtilities.buildCoverage("tca", tcaWR, regionMap, inFlow.getCoordinateReferenceSystem());
     }
@@ -40,11 +40,9 @@ import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSFAOETP_inWind_DE
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSFAOETP_outFaoEtp_DESCRIPTION;
 
 import java.util.HashMap;
-import java.util.Map.Entry;
 
 import org.hortonmachine.gears.libs.modules.HMModel;
-
-import java.util.Set;
+import org.hortonmachine.gears.libs.modules.StationValues;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -129,44 +127,49 @@ public class OmsFaoEtp extends HMModel {
 
         checkNull(inNetradiation, inWind, inTemp, inRh, inPressure);
 
-        outFaoEtp = new HashMap<Integer, double[]>();
+        StationValues temperatures = StationValues.fromMap(inTemp);
+        StationValues netradiations = StationValues.fromMap(inNetradiation);
+        StationValues winds = StationValues.fromMap(inWind);
+        StationValues pressures = StationValues.fromMap(inPressure);
+        StationValues rhs = StationValues.fromMap(inRh);
+        StationValues etps = new StationValues(temperatures.size());
 
-        Set<Entry<Integer, double[]>> entrySet = inTemp.entrySet();
-        for( Entry<Integer, double[]> entry : entrySet ) {
-            Integer basinId = entry.getKey();
+        for( int i = 0; i < temperatures.size(); i++ ) {
+            int basinId = temperatures.getId(i);
 
-            double temperature = entry.getValue()[0];
+            double temperature = temperatures.getValue(i);
             if (isNovalue(temperature)) {
                 temperature = defaultTemp;
             }
 
-            double netradiation = inNetradiation.get(basinId)[0];
+            double netradiation = netradiations.getValueOf(basinId);
             if (isNovalue(netradiation)) {
                 netradiation = defaultNetradiation;
             } else {
-                netradiation = inNetradiation.get(basinId)[0] * 3.6 / 1000.0;
+                netradiation = netradiation * 3.6 / 1000.0;
             }
 
-            double wind = inWind.get(basinId)[0];
+            double wind = winds.getValueOf(basinId);
             if (isNovalue(wind)) {
                 wind = defaultWind;
             }
 
-            double pressure = inPressure.get(basinId)[0];
+            double pressure = pressures.getValueOf(basinId);
             if (isNovalue(pressure)) {
                 pressure = defaultPressure;
             } else {
-                pressure = inPressure.get(basinId)[0] / 10.0;
+                pressure = pressure / 10.0;
             }
 
-            double rh = inRh.get(basinId)[0];
+            double rh = rhs.getValueOf(basinId);
             if (isNovalue(rh)) {
                 rh = defaultRh;
             }
 
             double etp = compute(netradiation, wind, temperature, rh, pressure);
-            outFaoEtp.put(basinId, new double[]{etp});
+            etps.put(basinId, etp);
         }
+        outFaoEtp = etps.asMap();
 
     }
 
@@ -43,11 +43,9 @@ import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSFAOETPDAILY_inWi
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSFAOETPDAILY_outFaoEtp_DESCRIPTION;
 
 import java.util.HashMap;
-import java.util.Map.Entry;
 
 import org.hortonmachine.gears.libs.modules.HMModel;
-
-import java.util.Set;
+import org.hortonmachine.gears.libs.modules.StationValues;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -142,45 +140,48 @@ public class OmsFaoEtpDaily extends HMModel {
     @Execute
     public void process() throws Exception {
 
-        outFaoEtp = new HashMap<Integer, double[]>();
+        StationValues maxTemperatures = StationValues.fromMap(inMaxTemp);
+        StationValues minTemperatures = inMinTemp != null ? StationValues.fromMap(inMinTemp) : null;
+        StationValues netradiations = inNetradiation != null ? StationValues.fromMap(inNetradiation) : null;
+        StationValues winds = inWind != null ? StationValues.fromMap(inWind) : null;
+        StationValues pressures = inPressure != null ? StationValues.fromMap(inPressure) : null;
+        StationValues rhs = inRh != null ? StationValues.fromMap(inRh) : null;
+        StationValues etps = new StationValues(maxTemperatures.size());
 
-        Set<Entry<Integer, double[]>> entrySet = inMaxTemp.entrySet();
-        for( Entry<Integer, double[]> entry : entrySet ) {
-            Integer basinId = entry.getKey();
+        for( int i = 0; i < maxTemperatures.size(); i++ ) {
+            int basinId = maxTemperatures.getId(i);
 
-            double maxTemperature = defaultMaxTemp;
-            if (inMaxTemp != null) {
-                maxTemperature = entry.getValue()[0];
-            }
+            double maxTemperature = maxTemperatures.getValue(i);
 
             double minTemperature = defaultMinTemp;
-            if (inMinTemp != null) {
-                minTemperature = inMinTemp.get(basinId)[0];
+            if (minTemperatures != null) {
+                minTemperature = minTemperatures.getValueOf(basinId);
             }
 
             double netradiation = defaultNetradiation;
-            if (inNetradiation != null) {
-                netradiation = inNetradiation.get(basinId)[0] * 3.6 / 1000.0;
+            if (netradiations != null) {
+                netradiation = netradiations.getValueOf(basinId) * 3.6 / 1000.0;
             }
 
             double wind = defaultWind;
-            if (inWind != null) {
-                wind = inWind.get(basinId)[0];
+            if (winds != null) {
+                wind = winds.getValueOf(basinId);
             }
 
             double pressure = defaultPressure;
-            if (inPressure != null) {
-                pressure = inPressure.get(basinId)[0] / 10.0;
+            if (pressures != null) {
+                pressure = pressures.getValueOf(basinId) / 10.0;
             }
 
             double rh = defaultRh;
-            if (inRh != null) {
-                rh = inRh.get(basinId)[0];
+            if (rhs != null) {
+                rh = rhs.getValueOf(basinId);
             }
 
             double etp = compute(netradiation, wind, maxTemperature, minTemperature, rh, pressure);
-            outFaoEtp.put(basinId, new double[]{etp});
+            etps.put(basinId, etp);
         }
+        outFaoEtp = etps.asMap();
     }
 
     private double compute( double netradiation, double wind, double maxtemperature, double mintemperature, double rh,
@@ -38,8 +38,6 @@ import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSPENMANETP_outEtp
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSPENMANETP_tCurrent_DESCRIPTION;
 
 import java.util.HashMap;
-import java.util.Map.Entry;
-import java.util.Set;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -58,6 +56,7 @@ import org.hortonmachine.gears.io.adige.VegetationLibraryRecord;
 import org.hortonmachine.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.hortonmachine.gears.libs.modules.HMConstants;
 import org.hortonmachine.gears.libs.modules.HMModel;
+import org.hortonmachine.gears.libs.modules.StationValues;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
 
@@ -142,22 +141,28 @@ public class OmsPenmanEtp extends HMModel {
 
         checkNull(inPressure, inTemp, inRh, inWind, inSwe, inVegetation, inShortradiation, inNetradiation);
 
-        outEtp = new HashMap<Integer, double[]>();
+        StationValues temperatures = StationValues.fromMap(inTemp);
+        StationValues pressures = StationValues.fromMap(inPressure);
+        StationValues rhs = StationValues.fromMap(inRh);
+        StationValues winds = StationValues.fromMap(inWind);
+        StationValues swes = StationValues.fromMap(inSwe);
+        StationValues shortradiations = StationValues.fromMap(inShortradiation);
+        StationValues netradiations = StationValues.fromMap(inNetradiation);
+        StationValues etps = new StationValues(temperatures.size());
 
         DateTime currentTimestamp = formatter.parseDateTime(tCurrent);
         int monthOfYear = currentTimestamp.getMonthOfYear();
 
-        Set<Entry<Integer, double[]>> elevSet = inTemp.entrySet();
-        for( Entry<Integer, double[]> entry : elevSet ) {
-            Integer basinId = entry.getKey();
+        for( int i = 0; i < temperatures.size(); i++ ) {
+            int basinId = temperatures.getId(i);
             // double elevation = inElevations.get(basinId)[0];
-            double tair = entry.getValue()[0];
-            double pressure = inPressure.get(basinId)[0];
-            double relativeHumidity = inRh.get(basinId)[0];
-            double wind = inWind.get(basinId)[0];
-            double snowWaterEquivalent = inSwe.get(basinId)[0];
-            double shortRadiation = inShortradiation.get(basinId)[0];
-            double netRadiation = inNetradiation.get(basinId)[0];
+            double tair = temperatures.getValue(i);
+            double pressure = pressures.getValueOf(basinId);
+            double relativeHumidity = rhs.getValueOf(basinId);
+            double wind = winds.getValueOf(basinId);
+            double snowWaterEquivalent = swes.getValueOf(basinId);
+            double shortRadiation = shortradiations.getValueOf(basinId);
+            double netRadiation = netradiations.getValueOf(basinId);
 
             VegetationLibraryRecord vegetation = inVegetation.get(basinId);
             double displacement = vegetation.getDisplacement(monthOfYear);
@@ -255,8 +260,9 @@ public class OmsPenmanEtp extends HMModel {
             if (vpd >= 0.0 && evap < 0.0)
                 evap = 0.0;
 
-            outEtp.put(basinId, new double[]{evap});
+            etps.put(basinId, evap);
         }
+        outEtp = etps.asMap();
     }
 
     /**
@@ -42,8 +42,6 @@ import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSPRESTEYTAYLORETP
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSPRESTEYTAYLORETPMODEL_time_DESCRIPTION;
 
 import java.util.HashMap;
-import java.util.Map.Entry;
-import java.util.Set;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -60,6 +58,7 @@ import oms3.annotations.Unit;
 
 import org.hortonmachine.gears.libs.modules.HMConstants;
 import org.hortonmachine.gears.libs.modules.HMModel;
+import org.hortonmachine.gears.libs.modules.StationValues;
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormatter;
 
@@ -140,13 +139,15 @@ public class OmsPresteyTaylorEtpModel extends HMModel {
     public void process() throws Exception {
         checkNull(inTemp);
 
-        outPTEtp = new HashMap<Integer, double[]>();
-        Set<Entry<Integer, double[]>> entrySet = inTemp.entrySet();
-        for( Entry<Integer, double[]> entry : entrySet ) {
-            Integer basinId = entry.getKey();
+        StationValues temperatures = StationValues.fromMap(inTemp);
+        StationValues netradiations = inNetradiation != null ? StationValues.fromMap(inNetradiation) : null;
+        StationValues pressures = inPressure != null ? StationValues.fromMap(inPressure) : null;
+        StationValues etps = new StationValues(temperatures.size());
+        for( int i = 0; i < temperatures.size(); i++ ) {
+            int basinId = temperatures.getId(i);
 
             double temp = defaultTemp;
-            double t = entry.getValue()[0];
+            double t = temperatures.getValue(i);
             if (!isNovalue(t)) {
                 temp = t;
             }
@@ -157,8 +158,8 @@ public class OmsPresteyTaylorEtpModel extends HMModel {
             } else {
                 netradiation = defaultDailyNetradiation * 0.0864;
             }
-            if (inNetradiation != null) {
-                double n = inNetradiation.get(basinId)[0];
+            if (netradiations != null) {
+                double n = netradiations.getValueOf(basinId);
                 if (!isNovalue(n)) {
                     if (doHourly == true) {
                         netradiation = n * 0.0864 / 24.0;
@@ -169,8 +170,8 @@ public class OmsPresteyTaylorEtpModel extends HMModel {
             }
 
             double pressure = defaultPressure;
-            if (inPressure != null) {
-                double p = inPressure.get(basinId)[0];
+            if (pressures != null) {
+                double p = pressures.getValueOf(basinId);
                 if (isNovalue(p)) {
                     pressure = defaultPressure;
                 } else {
@@ -186,8 +187,9 @@ public class OmsPresteyTaylorEtpModel extends HMModel {
             }
 
             double etp = compute(pGmorn, pGnight, pAlpha, netradiation, temp, pressure, isLigth, doHourly);
-            outPTEtp.put(basinId, new double[]{etp});
+            etps.put(basinId, etp);
         }
+        outPTEtp = etps.asMap();
     }
 
     private double compute( double ggm, double ggn, double alpha, double NetRad, double AirTem, double AtmPres, boolean islight,
@@ -169,16 +169,12 @@ public class OmsExtractNetwork extends GridMultiProcessing {
         try {
             pm.beginTask(msg.message("extractnetwork.extracting"), rows * cols); //$NON-NLS-1$
             processGrid(cols, rows, false, ( c, r ) -> {
-                if (pm.isCanceled()) {
-                    return;
-                }
                 int tcaValue = tcaIter.getSample(c, r, 0);
                 if (!isNovalue(tcaValue)) {
                     if (tcaValue >= pThres) { // FIXME needs power here?
                         netIter.setSample(c, r, 0, NETVALUE);
                     }
                 }
-                pm.worked(1);
             });
             pm.done();
             return netWR;
@@ -196,7 +192,7 @@ public class OmsExtractNetwork extends GridMultiProcessing {
      */
     private WritableRaster extractNetMode1( RenderedImage flowRI, RenderedImage tcaRI, RenderedImage slopeRI ) throws Exception {
 
-        RandomIter flowRandomIter = RandomIterFactory.create(flowRI, null);
+        RandomIter flowRandomIter = CoverageUtilities.getThreadSafeRandomIterator(flowRI);
         RandomIter tcaRandomIter = RandomIterFactory.create(tcaRI, null);
         RandomIter slopeRandomIter = RandomIterFactory.create(slopeRI, null);
 
@@ -206,9 +202,6 @@ public class OmsExtractNetwork extends GridMultiProcessing {
         try {
             pm.beginTask(msg.message("extractnetwork.extracting"), rows * cols); //$NON-NLS-1$
             processGrid(cols, rows, false, ( c, r ) -> {
-                if (pm.isCanceled()) {
-                    return;
-                }
                 double tcaValue = tcaRandomIter.getSample(c, r, 0);
                 double slopeValue = slopeRandomIter.getSampleDouble(c, r, 0);
                 if (!isNovalue(tcaValue) && !isNovalue(slopeValue)) {
@@ -241,7 +234,6 @@ public class OmsExtractNetwork extends GridMultiProcessing {
                 } else {
                     netRandomIter.setSample(c, r, 0, shortNovalue);
                 }
-                pm.worked(1);
             });
             pm.done();
             return networkWR;
@@ -260,7 +252,7 @@ public class OmsExtractNetwork extends GridMultiProcessing {
      */
     private WritableRaster extractNetMode2( RenderedImage flowRI, RenderedImage tcaRI, RenderedImage classRI,
             RenderedImage slopeRI ) throws Exception {
-        RandomIter flowRandomIter = RandomIterFactory.create(flowRI, null);
+        RandomIter flowRandomIter = CoverageUtilities.getThreadSafeRandomIterator(flowRI);
         RandomIter tcaRandomIter = RandomIterFactory.create(tcaRI, null);
         RandomIter classRandomIter = RandomIterFactory.create(classRI, null);
         RandomIter slopeRandomIter = RandomIterFactory.create(slopeRI, null);
@@ -273,10 +265,6 @@ public class OmsExtractNetwork extends GridMultiProcessing {
         try {
             pm.beginTask(msg.message("extractnetwork.extracting"), rows * cols); //$NON-NLS-1$
             processGrid(cols, rows, false, ( c, r ) -> {
-                if (pm.isCanceled()) {
-                    return;
-                }
-
                 double tcaValue = tcaRandomIter.getSample(c, r, 0);
                 double slopeValue = slopeRandomIter.getSampleDouble(c, r, 0);
                 if (!isNovalue(tcaValue) && !isNovalue(slopeValue)) {
@@ -306,7 +294,6 @@ public class OmsExtractNetwork extends GridMultiProcessing {
                         }
                     }
                 }
-                pm.worked(1);
             });
             pm.done();
             return netImage;
@@ -39,7 +39,9 @@ import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSKRIGING_outData_
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSKRIGING_outGrid_DESCRIPTION;
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSKRIGING_pA_DESCRIPTION;
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSKRIGING_pIntegralscale_DESCRIPTION;
+import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSKRIGING_pMaxThreads_DESCRIPTION;
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSKRIGING_pMode_DESCRIPTION;
+import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSKRIGING_pNeighbours_DESCRIPTION;
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSKRIGING_pNug_DESCRIPTION;
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSKRIGING_pS_DESCRIPTION;
 import static org.hortonmachine.hmachine.i18n.HortonMessages.OMSKRIGING_pSemivariogramType_DESCRIPTION;
@@ -52,6 +54,10 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.media.jai.iterator.RandomIterFactory;
 import javax.media.jai.iterator.WritableRandomIter;
@@ -78,10 +84,12 @@ import org.hortonmachine.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.hortonmachine.gears.libs.exceptions.ModelsRuntimeException;
 import org.hortonmachine.gears.libs.modules.HMModel;
 import org.hortonmachine.gears.libs.modules.ModelsEngine;
+import org.hortonmachine.gears.libs.modules.StationValues;
 import org.hortonmachine.gears.utils.RegionMap;
 import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
 import org.hortonmachine.gears.utils.math.matrixes.ColumnVector;
 import org.hortonmachine.gears.utils.math.matrixes.LinearSystem;
+import org.hortonmachine.gears.utils.math.matrixes.MatrixException;
 import org.hortonmachine.hmachine.i18n.HortonMessageHandler;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.geometry.DirectPosition;
@@ -194,6 +202,18 @@ public class OmsKriging extends HMModel {
     @In
     public double pNug;
 
+    /**
+     * The number of nearest stations used for each point. If 0 or not
+     * smaller than the number of stations, all the stations are used.
+     */
+    @Description(OMSKRIGING_pNeighbours_DESCRIPTION)
+    @In
+    public int pNeighbours = 0;
+
+    @Description(OMSKRIGING_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSKRIGING_outGrid_DESCRIPTION)
     @Out
     public GridCoverage2D outGrid = null;
@@ -245,6 +265,7 @@ public class OmsKriging extends HMModel {
         /*
          * Store the station coordinates and measured data in the array.
          */
+        StationValues stationValues = StationValues.fromMap(inData);
         FeatureIterator<SimpleFeature> stationsIter = inStations.features();
         try {
             while( stationsIter.hasNext() ) {
@@ -269,47 +290,48 @@ public class OmsKriging extends HMModel {
                     }
                 }
                 Coordinate coordinate = ((Geometry) feature.getDefaultGeometry()).getCentroid().getCoordinate();
-                double[] h = inData.get(id);
-                if (h == null || isNovalue(h[0])) {
+                int stationIndex = stationValues.indexOf(id);
+                if (stationIndex < 0 || isNovalue(stationValues.getValue(stationIndex))) {
                     /*
                      * skip data for non existing stations, they are allowed.
                      * Also skip novalues.
                      */
                     continue;
                 }
+                double h = stationValues.getValue(stationIndex);
                 if (defaultVariogramMode == 0) {
                     if (doIncludezero) {
-                        if (Math.abs(h[0]) >= 0.0) { // TOLL
+                        if (Math.abs(h) >= 0.0) { // TOLL
                             xStationList.add(coordinate.x);
                             yStationList.add(coordinate.y);
                             zStationList.add(z);
-                            hStationList.add(h[0]);
+                            hStationList.add(h);
                             n1 = n1 + 1;
                         }
                     } else {
-                        if (Math.abs(h[0]) > 0.0) { // TOLL
+                        if (Math.abs(h) > 0.0) { // TOLL
                             xStationList.add(coordinate.x);
                             yStationList.add(coordinate.y);
                             zStationList.add(z);
-                            hStationList.add(h[0]);
+                            hStationList.add(h);
                             n1 = n1 + 1;
                         }
                     }
                 } else if (defaultVariogramMode == 1) {
                     if (doIncludezero) {
-                        if (Math.abs(h[0]) >= 0.0) { // TOLL
+                        if (Math.abs(h) >= 0.0) { // TOLL
                             xStationList.add(coordinate.x);
                             yStationList.add(coordinate.y);
                             zStationList.add(z);
-                            hStationList.add(h[0]);
+                            hStationList.add(h);
                             n1 = n1 + 1;
                         }
                     } else {
-                        if (Math.abs(h[0]) > 0.0) { // TOLL
+                        if (Math.abs(h) > 0.0) { // TOLL
                             xStationList.add(coordinate.x);
                             yStationList.add(coordinate.y);
                             zStationList.add(z);
-                            hStationList.add(h[0]);
+                            hStationList.add(h);
                             n1 = n1 + 1;
                         }
                     }
@@ -390,61 +412,37 @@ public class OmsKriging extends HMModel {
                 }
             }
 
-            /*
-             * calculating the covariance matrix.
-             */
-            double[][] covarianceMatrix = covMatrixCalculating(xStation, yStation, zStation, n1);
-            /*
-             * extract the coordinate of the points where interpolated.
-             */
-
-            /*
-             * initialize the solution and its variance vector.
-             */
-
             if (!areAllEquals && n1 > 1) {
-                // pm.beginTask(msg.message("kriging.working"),inInterpolate.size());
+                int numPoints = pointsToInterpolateId2Coordinates.size();
+                double[] xPoints = new double[numPoints];
+                double[] yPoints = new double[numPoints];
+                double[] zPoints = new double[numPoints];
                 while( idIterator.hasNext() ) {
-                    double sum = 0.;
                     int id = idIterator.next();
                     idArray[j] = id;
                     Coordinate coordinate = (Coordinate) pointsToInterpolateId2Coordinates.get(id);
-                    xStation[n1] = coordinate.x;
-                    yStation[n1] = coordinate.y;
-                    zStation[n1] = coordinate.z;
-                    /*
-                     * calculating the right hand side of the kriging linear
-                     * system.
-                     */
-                    double[] knownTerm = knownTermsCalculation(xStation, yStation, zStation, n1);
+                    xPoints[j] = coordinate.x;
+                    yPoints[j] = coordinate.y;
+                    zPoints[j] = coordinate.z;
+                    j++;
+                }
 
+                LinearSystem linearSystem = null;
+                StationsNeighboursIndex neighboursIndex = null;
+                if (pNeighbours > 0 && pNeighbours < n1) {
+                    neighboursIndex = new StationsNeighboursIndex(xStation, yStation, n1);
+                } else {
                     /*
-                     * solve the linear system, where the result is the weight.
+                     * calculating the covariance matrix. It depends only on the
+                     * stations, so it is factorized once and every point only
+                     * needs the substitutions.
                      */
-                    ColumnVector knownTermColumn = new ColumnVector(knownTerm);
-                    LinearSystem linearSystem = new LinearSystem(covarianceMatrix);
-                    ColumnVector solution = linearSystem.solve(knownTermColumn, true);
-                    // Matrix a = new Matrix(covarianceMatrix);
-                    // Matrix b = new Matrix(knownTerm, knownTerm.length);
-                    // Matrix x = a.solve(b);
-                    double[] moltiplicativeFactor = solution.copyValues1D();
-
-                    double h0 = 0.0;
-                    for( int k = 0; k < n1; k++ ) {
-                        h0 = h0 + moltiplicativeFactor[k] * hStation[k];
-                        sum = sum + moltiplicativeFactor[k];
-                    }
-
-                    if (doLogarithmic) {
-                        h0 = Math.exp(h0);
-                    }
-                    result[j] = h0;
-                    j++;
-                    if (Math.abs(sum - 1) >= TOLL) {
-                        throw new ModelsRuntimeException("Error in the coffeicients calculation", this.getClass().getSimpleName());
-                    }
-
+                    double[][] covarianceMatrix = covMatrixCalculating(xStation, yStation, zStation, n1);
+                    linearSystem = new LinearSystem(covarianceMatrix);
+                    linearSystem.factorize();
                 }
+                krige(xStation, yStation, zStation, hStation, n1, xPoints, yPoints, zPoints, linearSystem, neighboursIndex,
+                        result);
             } else if (n1 == 1 || areAllEquals) {
                 double tmp = hStation[0];
                 int k = 0;
@@ -480,6 +478,149 @@ public class OmsKriging extends HMModel {
         }
     }
 
+    /**
+     * Interpolate the points, split in chunks that are processed in parallel
+     * if more than one thread is requested.
+     * 
+     * @param linearSystem
+     *            the factorized system of all the stations or <code>null</code>
+     *            if the nearest stations are used.
+     * @param neighboursIndex
+     *            the index of the stations if the nearest stations are used.
+     * @param result
+     *            the array into which the interpolated values are put.
+     */
+    void krige( final double[] xStation, final double[] yStation, final double[] zStation, final double[] hStation,
+            final int n1, final double[] xPoints, final double[] yPoints, final double[] zPoints,
+            final LinearSystem linearSystem, final StationsNeighboursIndex neighboursIndex, final double[] result )
+            throws Exception {
+        int numPoints = xPoints.length;
+        int threads = Math.max(pMaxThreads, 1);
+        if (threads == 1 || numPoints < 2) {
+            krigeRange(0, numPoints, xStation, yStation, zStation, hStation, n1, xPoints, yPoints, zPoints, linearSystem,
+                    neighboursIndex, result);
+            return;
+        }
+
+        // a few chunks per thread to balance the work
+        int chunksNum = Math.min(numPoints, threads * 4);
+        int chunkSize = (int) Math.ceil(numPoints / (double) chunksNum);
+        pm.beginTask(msg.message("kriging.working"), chunksNum);
+        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for( int from = 0; from < numPoints; from += chunkSize ) {
+                final int chunkFrom = from;
+                final int chunkTo = Math.min(from + chunkSize, numPoints);
+                futures.add(fixedThreadPool.submit(() -> {
+                    krigeRange(chunkFrom, chunkTo, xStation, yStation, zStation, hStation, n1, xPoints, yPoints, zPoints,
+                            linearSystem, neighboursIndex, result);
+                    pm.worked(1);
+                    return null;
+                }));
+            }
+            for( Future<Void> future : futures ) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw new ModelsRuntimeException(cause.getMessage(), this.getClass().getSimpleName());
+                }
+            }
+        } finally {
+            fixedThreadPool.shutdownNow();
+        }
+        pm.done();
+    }
+
+    /**
+     * Interpolate a range of points.
+     * 
+     * <p>When the nearest stations are used, the system of the previous point
+     * is reused if the stations are the same, which is the common case for
+     * neighbour cells of a grid.</p>
+     */
+    private void krigeRange( int from, int to, double[] xStation, double[] yStation, double[] zStation, double[] hStation,
+            int n1, double[] xPoints, double[] yPoints, double[] zPoints, LinearSystem linearSystem,
+            StationsNeighboursIndex neighboursIndex, double[] result ) throws MatrixException {
+        int n = n1;
+        double[] xs = xStation;
+        double[] ys = yStation;
+        double[] zs = zStation;
+        double[] hs = hStation;
+        int[] neighbours = null;
+        int[] previousNeighbours = null;
+        double[] distances = null;
+        int previousFound = -1;
+        if (neighboursIndex != null) {
+            neighbours = new int[pNeighbours];
+            previousNeighbours = new int[pNeighbours];
+            distances = new double[pNeighbours];
+            xs = new double[pNeighbours];
+            ys = new double[pNeighbours];
+            zs = new double[pNeighbours];
+            hs = new double[pNeighbours];
+        }
+
+        for( int p = from; p < to; p++ ) {
+            if (neighboursIndex != null) {
+                n = neighboursIndex.nearest(xPoints[p], yPoints[p], pNeighbours, neighbours, distances);
+                if (n != previousFound || !sameNeighbours(neighbours, previousNeighbours, n)) {
+                    for( int i = 0; i < n; i++ ) {
+                        int station = neighbours[i];
+                        xs[i] = xStation[station];
+                        ys[i] = yStation[station];
+                        zs[i] = zStation[station];
+                        hs[i] = hStation[station];
+                    }
+                    linearSystem = new LinearSystem(covMatrixCalculating(xs, ys, zs, n));
+                    linearSystem.factorize();
+                    System.arraycopy(neighbours, 0, previousNeighbours, 0, n);
+                    previousFound = n;
+                }
+            }
+
+            /*
+             * calculating the right hand side of the kriging linear
+             * system.
+             */
+            double[] knownTerm = knownTermsCalculation(xs, ys, zs, n, xPoints[p], yPoints[p], zPoints[p]);
+
+            /*
+             * solve the linear system, where the result is the weight.
+             */
+            ColumnVector solution = linearSystem.solve(new ColumnVector(knownTerm), true);
+            double[] moltiplicativeFactor = solution.copyValues1D();
+
+            double h0 = 0.0;
+            double sum = 0.0;
+            for( int k = 0; k < n; k++ ) {
+                h0 = h0 + moltiplicativeFactor[k] * hs[k];
+                sum = sum + moltiplicativeFactor[k];
+            }
+
+            if (doLogarithmic) {
+                h0 = Math.exp(h0);
+            }
+            result[p] = h0;
+            if (Math.abs(sum - 1) >= TOLL) {
+                throw new ModelsRuntimeException("Error in the coffeicients calculation", this.getClass().getSimpleName());
+            }
+        }
+    }
+
+    private static boolean sameNeighbours( int[] neighbours, int[] previousNeighbours, int n ) {
+        for( int i = 0; i < n; i++ ) {
+            if (neighbours[i] != previousNeighbours[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Verify the input of the model.
      */
@@ -533,10 +674,11 @@ public class OmsKriging extends HMModel {
      * @throws SchemaException
      */
     private void storeResult( double[] result2, int[] id ) throws SchemaException {
-        outData = new HashMap<Integer, double[]>();
+        StationValues results = new StationValues(result2.length);
         for( int i = 0; i < result2.length; i++ ) {
-            outData.put(id[i], new double[]{checkResultValue(result2[i])});
+            results.put(id[i], checkResultValue(result2[i]));
         }
+        outData = results.asMap();
     }
 
     private void storeResult( double[] interpolatedValues, HashMap<Integer, Coordinate> interpolatedCoordinatesMap )
@@ -720,7 +862,7 @@ public class OmsKriging extends HMModel {
      *            the number of the stations points.
      * @return
      */
-    private double[][] covMatrixCalculating( double[] x, double[] y, double[] z, int n ) {
+    double[][] covMatrixCalculating( double[] x, double[] y, double[] z, int n ) {
         double[][] ap = new double[n + 1][n + 1];
         if (defaultVariogramMode == 0) {
             for( int j = 0; j < n; j++ ) {
@@ -776,23 +918,30 @@ public class OmsKriging extends HMModel {
      *            the z coordinates.
      * @param n
      *            the number of the stations points.
+     * @param xPoint
+     *            the x coordinate of the point to interpolate.
+     * @param yPoint
+     *            the y coordinate of the point to interpolate.
+     * @param zPoint
+     *            the z coordinate of the point to interpolate.
      * @return
      */
-    private double[] knownTermsCalculation( double[] x, double[] y, double[] z, int n ) {
+    double[] knownTermsCalculation( double[] x, double[] y, double[] z, int n, double xPoint, double yPoint,
+            double zPoint ) {
 
         double[] gamma = new double[n + 1];
         if (defaultVariogramMode == 0) {
             for( int i = 0; i < n; i++ ) {
-                double rx = x[i] - x[n];
-                double ry = y[i] - y[n];
-                double rz = z[i] - z[n];
+                double rx = x[i] - xPoint;
+                double ry = y[i] - yPoint;
+                double rz = z[i] - zPoint;
                 gamma[i] = variogram(rx, ry, rz);
             }
         } else if (defaultVariogramMode == 1) {
             for( int i = 0; i < n; i++ ) {
-                double rx = x[i] - x[n];
-                double ry = y[i] - y[n];
-                double rz = z[i] - z[n];
+                double rx = x[i] - xPoint;
+                double ry = y[i] - yPoint;
+                double rz = z[i] - zPoint;
                 gamma[i] = variogram(pNug, pA, pS, rx, ry, rz);
             }
 
@@ -0,0 +1,181 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.hmachine.modules.statistics.kriging;
+
+import java.util.Arrays;
+
+/**
+ * A bucket grid over the stations positions to find the k nearest stations of a point.
+ *
+ * <p>The search visits rings of cells around the cell of the point and stops
+ * as soon as the ring can't contain stations nearer than the ones already found.
+ * Between stations at the same distance the one with the lower index is taken,
+ * so the result doesn't depend on the grid layout.
+ * Once built the index is read only, so it can be queried from several threads.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+class StationsNeighboursIndex {
+    private final double[] x;
+    private final double[] y;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+    /**
+     * The start of each cell in {@link #cellStations}, the last one is the end.
+     */
+    private final int[] cellStart;
+    private final int[] cellStations;
+
+    /**
+     * Build the index.
+     *
+     * @param x the x coordinates of the stations.
+     * @param y the y coordinates of the stations.
+     * @param n the number of stations to use (the first n of the arrays).
+     */
+    StationsNeighboursIndex( double[] x, double[] y, int n ) {
+        this.x = x;
+        this.y = y;
+        double tmpMinX = Double.POSITIVE_INFINITY;
+        double tmpMinY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for( int i = 0; i < n; i++ ) {
+            tmpMinX = Math.min(tmpMinX, x[i]);
+            tmpMinY = Math.min(tmpMinY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        minX = tmpMinX;
+        minY = tmpMinY;
+        double width = Math.max(maxX - minX, 0);
+        double height = Math.max(maxY - minY, 0);
+        // about 2 stations per cell
+        double cellsNum = Math.max(n / 2.0, 1);
+        double size = Math.sqrt(width * height / cellsNum);
+        if (!(size > 0)) {
+            size = Math.max(Math.max(width, height) / cellsNum, 1);
+        }
+        cellSize = size;
+        cols = (int) (width / cellSize) + 1;
+        rows = (int) (height / cellSize) + 1;
+
+        int[] stationCell = new int[n];
+        cellStart = new int[cols * rows + 1];
+        for( int i = 0; i < n; i++ ) {
+            int cell = getRow(y[i]) * cols + getCol(x[i]);
+            stationCell[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for( int i = 0; i < cols * rows; i++ ) {
+            cellStart[i + 1] += cellStart[i];
+        }
+        cellStations = new int[n];
+        int[] fill = new int[cols * rows];
+        for( int i = 0; i < n; i++ ) {
+            int cell = stationCell[i];
+            cellStations[cellStart[cell] + fill[cell]++] = i;
+        }
+    }
+
+    private int getCol( double px ) {
+        int col = (int) Math.floor((px - minX) / cellSize);
+        return Math.min(Math.max(col, 0), cols - 1);
+    }
+
+    private int getRow( double py ) {
+        int row = (int) Math.floor((py - minY) / cellSize);
+        return Math.min(Math.max(row, 0), rows - 1);
+    }
+
+    /**
+     * Find the nearest stations of a point.
+     *
+     * @param px the x coordinate of the point.
+     * @param py the y coordinate of the point.
+     * @param k the number of stations to find.
+     * @param outIndexes the array into which the station indexes are put, sorted by index.
+     * @param distances a support array of size k.
+     * @return the number of stations found, less than k only if there are less stations.
+     */
+    int nearest( double px, double py, int k, int[] outIndexes, double[] distances ) {
+        int found = 0;
+        int col = getCol(px);
+        int row = getRow(py);
+        int maxRing = Math.max(Math.max(col, cols - 1 - col), Math.max(row, rows - 1 - row));
+        for( int ring = 0; ring <= maxRing; ring++ ) {
+            for( int r = row - ring; r <= row + ring; r++ ) {
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                boolean isBorderRow = r == row - ring || r == row + ring;
+                int step = isBorderRow ? 1 : 2 * ring;
+                for( int c = col - ring; c <= col + ring; c += step ) {
+                    if (c < 0 || c >= cols) {
+                        continue;
+                    }
+                    int cell = r * cols + c;
+                    for( int i = cellStart[cell]; i < cellStart[cell + 1]; i++ ) {
+                        int station = cellStations[i];
+                        double dx = x[station] - px;
+                        double dy = y[station] - py;
+                        found = insert(dx * dx + dy * dy, station, k, found, outIndexes, distances);
+                    }
+                }
+            }
+            if (found == k) {
+                // distance from the point to the border of the visited block
+                double covered = Math.min(//
+                        Math.min(px - (minX + (col - ring) * cellSize), (minX + (col + ring + 1) * cellSize) - px),
+                        Math.min(py - (minY + (row - ring) * cellSize), (minY + (row + ring + 1) * cellSize) - py));
+                // strictly, a station at the same distance could still have a lower index
+                if (covered > 0 && covered * covered > distances[k - 1]) {
+                    break;
+                }
+            }
+        }
+        Arrays.sort(outIndexes, 0, found);
+        return found;
+    }
+
+    /**
+     * Insert a station in the list of the nearest, kept ordered by distance and index.
+     */
+    private static int insert( double distance, int station, int k, int found, int[] indexes, double[] distances ) {
+        if (found == k && !isNearer(distance, station, distances[k - 1], indexes[k - 1])) {
+            return found;
+        }
+        int position = found < k ? found++ : k - 1;
+        while( position > 0 && isNearer(distance, station, distances[position - 1], indexes[position - 1]) ) {
+            distances[position] = distances[position - 1];
+            indexes[position] = indexes[position - 1];
+            position--;
+        }
+        distances[position] = distance;
+        indexes[position] = station;
+        return found;
+    }
+
+    private static boolean isNearer( double distance, int station, double otherDistance, int otherStation ) {
+        return distance < otherDistance || (distance == otherDistance && station < otherStation);
+    }
+
+}
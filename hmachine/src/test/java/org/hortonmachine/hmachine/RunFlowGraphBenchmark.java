@@ -0,0 +1,176 @@
+package org.hortonmachine.hmachine;
+
+import static org.hortonmachine.gears.libs.modules.HMConstants.doubleNovalue;
+import static org.hortonmachine.gears.libs.modules.HMConstants.isNovalue;
+
+import java.util.Random;
+
+import javax.media.jai.iterator.RandomIter;
+import javax.media.jai.iterator.RandomIterFactory;
+import javax.media.jai.iterator.WritableRandomIter;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.hortonmachine.gears.libs.modules.Direction;
+import org.hortonmachine.gears.libs.modules.FlowGraph;
+import org.hortonmachine.gears.libs.modules.FlowNode;
+import org.hortonmachine.gears.libs.modules.HMModel;
+import org.hortonmachine.gears.libs.modules.IFlowAccumulator;
+import org.hortonmachine.gears.libs.monitor.DummyProgressMonitor;
+import org.hortonmachine.gears.utils.RegionMap;
+import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
+import org.hortonmachine.gears.utils.coverage.HMDoubleRaster;
+import org.hortonmachine.hmachine.modules.geomorphology.tca.OmsTca;
+import org.hortonmachine.hmachine.utils.HMTestMaps;
+
+/**
+ * Compares the {@link FlowNode} walk previously used by {@link OmsTca} with the
+ * {@link FlowGraph} accumulation, single and multi threaded, on a large synthetic
+ * flow directions map.
+ * 
+ * <p>Usage: RunFlowGraphBenchmark [cols rows]</p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class RunFlowGraphBenchmark {
+
+    private static final double RES = 10.0;
+
+    public static void main( String[] args ) throws Exception {
+        int cols = 3000;
+        int rows = 3000;
+        if (args.length == 2) {
+            cols = Integer.parseInt(args[0]);
+            rows = Integer.parseInt(args[1]);
+        }
+        System.out.println("Synthetic flow map of " + cols + "x" + rows + " cells.");
+        HMDoubleRaster flow = createFlow(cols, rows);
+        int threads = HMModel.getDefaultThreadsNum();
+
+        for( int i = 0; i < 3; i++ ) {
+            System.out.println("Run " + (i + 1));
+            measure("FlowNode walk", () -> checksum(walkFlowNodes(flow)));
+            measure("FlowGraph 1 thread", () -> checksum(accumulate(flow, 1)));
+            measure("FlowGraph " + threads + " threads", () -> checksum(accumulate(flow, threads)));
+        }
+
+        RegionMap region = CoverageUtilities.makeRegionParamsMap(rows * RES, 0, 0, cols * RES, RES, RES, cols, rows);
+        GridCoverage2D flowCoverage = flow.buildCoverage("flow", region, HMTestMaps.getCrs());
+        measure("OmsTca", () -> {
+            OmsTca tca = new OmsTca();
+            tca.pm = new DummyProgressMonitor();
+            tca.inFlow = flowCoverage;
+            tca.process();
+            return 0;
+        });
+    }
+
+    /**
+     * Steepest descent directions of a surface with a main valley and
+     * many side valleys, so that paths are long and merge often.
+     */
+    private static HMDoubleRaster createFlow( int cols, int rows ) {
+        HMDoubleRaster dem = new HMDoubleRaster(cols, rows);
+        Random random = new Random(42);
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                double value = 1000.0 + 0.5 * Math.abs(c - cols / 2) - 0.1 * r + 20.0 * Math.abs(Math.sin(r / 97.0))
+                        + 0.01 * random.nextDouble();
+                dem.set(c, r, value);
+            }
+        }
+
+        HMDoubleRaster flow = new HMDoubleRaster(cols, rows);
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                double min = dem.get(c, r);
+                int flowValue = Direction.getOutletValue();
+                for( Direction direction : Direction.getOrderedDirs() ) {
+                    int col = c + direction.col;
+                    int row = r + direction.row;
+                    if (col < 0 || col >= cols || row < 0 || row >= rows) {
+                        continue;
+                    }
+                    double value = dem.get(col, row);
+                    if (value < min) {
+                        min = value;
+                        flowValue = direction.getFlow();
+                    }
+                }
+                flow.set(c, r, flowValue);
+            }
+        }
+        return flow;
+    }
+
+    /**
+     * The algorithm used by {@link OmsTca} before the {@link FlowGraph}.
+     */
+    private static double[] walkFlowNodes( HMDoubleRaster flow ) {
+        int cols = flow.cols;
+        int rows = flow.rows;
+        RandomIter flowIter = RandomIterFactory.create(flow.toWritableRaster(), null);
+        HMDoubleRaster tca = new HMDoubleRaster(cols, rows, doubleNovalue);
+        WritableRandomIter tcaIter = tca.getWritableRandomIterator();
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                FlowNode flowNode = new FlowNode(flowIter, cols, rows, c, r);
+                if (flowNode.isSource()) {
+                    double previousTcaValue = 0.0;
+                    while( flowNode != null && flowNode.isValid() ) {
+                        int col = flowNode.col;
+                        int row = flowNode.row;
+                        double tmpTca = tcaIter.getSampleDouble(col, row, 0);
+                        double newTcaValue;
+                        if (isNovalue(tmpTca)) {
+                            tmpTca = 1.0;
+                            newTcaValue = tmpTca + previousTcaValue;
+                            previousTcaValue = newTcaValue;
+                        } else {
+                            newTcaValue = tmpTca + previousTcaValue;
+                        }
+                        tcaIter.setSample(col, row, 0, newTcaValue);
+                        flowNode = flowNode.goDownstream();
+                    }
+                }
+            }
+        }
+        flowIter.done();
+        tcaIter.done();
+
+        double[] values = new double[cols * rows];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                values[c + r * cols] = tca.get(c, r);
+            }
+        }
+        return values;
+    }
+
+    private static double[] accumulate( HMDoubleRaster flow, int threads ) throws Exception {
+        RandomIter flowIter = RandomIterFactory.create(flow.toWritableRaster(), null);
+        FlowGraph graph = FlowGraph.fromFlowIter(flowIter, flow.cols, flow.rows);
+        flowIter.done();
+        return graph.accumulate(IFlowAccumulator.CELLS_COUNT, threads);
+    }
+
+    private static long checksum( double[] values ) {
+        long checksum = 0;
+        for( double value : values ) {
+            if (!isNovalue(value)) {
+                checksum += (long) value;
+            }
+        }
+        return checksum;
+    }
+
+    private static void measure( String name, Task task ) throws Exception {
+        long start = System.nanoTime();
+        long checksum = task.run();
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println("  " + name + ": " + millis + " ms, checksum " + checksum);
+    }
+
+    private interface Task {
+        long run() throws Exception;
+    }
+}
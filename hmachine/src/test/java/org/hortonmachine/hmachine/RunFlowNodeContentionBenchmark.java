@@ -0,0 +1,90 @@
+package org.hortonmachine.hmachine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.media.jai.iterator.RandomIter;
+import javax.media.jai.iterator.RandomIterFactory;
+
+import org.hortonmachine.gears.libs.modules.FlowNode;
+import org.hortonmachine.gears.libs.modules.HMModel;
+import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
+import org.hortonmachine.gears.utils.coverage.HMDoubleRaster;
+
+/**
+ * Measures how the creation of {@link FlowNode}s from several threads scales, reading
+ * the flow through a shared JAI iterator (locked) and through the lock free iterator
+ * of {@link HMDoubleRaster} (as returned by
+ * {@link CoverageUtilities#getThreadSafeRandomIterator(org.geotools.coverage.grid.GridCoverage2D)}).
+ * 
+ * <p>Usage: RunFlowNodeContentionBenchmark [cols rows]</p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class RunFlowNodeContentionBenchmark {
+
+    public static void main( String[] args ) throws Exception {
+        int cols = 3000;
+        int rows = 3000;
+        if (args.length == 2) {
+            cols = Integer.parseInt(args[0]);
+            rows = Integer.parseInt(args[1]);
+        }
+        System.out.println("Random flow map of " + cols + "x" + rows + " cells.");
+        HMDoubleRaster flow = new HMDoubleRaster(cols, rows);
+        Random random = new Random(42);
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                flow.set(c, r, 1 + random.nextInt(8));
+            }
+        }
+
+        RandomIter jaiIter = RandomIterFactory.create(flow.toWritableRaster(), null);
+        RandomIter lockFreeIter = flow.getWritableRandomIterator();
+
+        int maxThreads = HMModel.getDefaultThreadsNum();
+        for( int i = 0; i < 3; i++ ) {
+            System.out.println("Run " + (i + 1));
+            for( int threads = 1; threads <= maxThreads; threads *= 2 ) {
+                measure("JAI iterator, " + threads + " threads", jaiIter, cols, rows, threads);
+                measure("lock free iterator, " + threads + " threads", lockFreeIter, cols, rows, threads);
+            }
+        }
+    }
+
+    private static void measure( String name, RandomIter flowIter, int cols, int rows, int threads ) throws Exception {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> futures = new ArrayList<>();
+        int rowsPerThread = (int) Math.ceil(rows / (double) threads);
+        for( int t = 0; t < threads; t++ ) {
+            int fromRow = t * rowsPerThread;
+            int toRow = Math.min(fromRow + rowsPerThread, rows);
+            futures.add(pool.submit(() -> {
+                long checksum = 0;
+                for( int r = fromRow; r < toRow; r++ ) {
+                    for( int c = 0; c < cols; c++ ) {
+                        FlowNode node = new FlowNode(flowIter, cols, rows, c, r);
+                        checksum += node.flow;
+                        if (node.touchesBound()) {
+                            checksum++;
+                        }
+                    }
+                }
+                return checksum;
+            }));
+        }
+        long checksum = 0;
+        for( Future<Long> future : futures ) {
+            checksum += future.get();
+        }
+        pool.shutdown();
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println("  " + name + ": " + millis + " ms, checksum " + checksum);
+    }
+
+}
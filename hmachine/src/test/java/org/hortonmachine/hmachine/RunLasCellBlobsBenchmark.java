@@ -0,0 +1,153 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.hmachine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.geometry.jts.ReferencedEnvelope3D;
+import org.hortonmachine.dbs.compat.ASpatialDb;
+import org.hortonmachine.dbs.compat.EDb;
+import org.hortonmachine.gears.io.las.core.ALasReader;
+import org.hortonmachine.gears.io.las.core.ILasHeader;
+import org.hortonmachine.gears.io.las.databases.LasCell;
+import org.hortonmachine.gears.io.las.databases.LasCellBlobCodec;
+import org.hortonmachine.gears.io.las.databases.LasCellsTable;
+import org.hortonmachine.gears.io.las.databases.StreamingLasCellsBuilder;
+import org.hortonmachine.gears.libs.modules.HMModel;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Compares size and decoding speed of the plain, encoded and deflated
+ * blobs of the las cells built from a las file.
+ *
+ * <p>If a las database is given, the time to read all its cells is also measured,
+ * to compare databases written with and without compressed blobs.</p>
+ *
+ * <p>Usage: RunLasCellBlobsBenchmark lasFile [cellSize [lasDatabase]]</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class RunLasCellBlobsBenchmark {
+
+    public static void main( String[] args ) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: RunLasCellBlobsBenchmark lasFile [cellSize [lasDatabase]]");
+            return;
+        }
+        File lasFile = new File(args[0]);
+        double cellSize = 3.0;
+        if (args.length > 1) {
+            cellSize = Double.parseDouble(args[1]);
+        }
+
+        double[] scale;
+        ReferencedEnvelope3D envelope;
+        try (ALasReader reader = ALasReader.getReader(lasFile, null)) {
+            reader.open();
+            ILasHeader header = reader.getHeader();
+            scale = header.getXYZScale();
+            envelope = header.getDataEnvelope();
+        }
+        int cols = (int) Math.ceil(envelope.getWidth() / cellSize);
+        int rows = (int) Math.ceil(envelope.getHeight() / cellSize);
+        StreamingLasCellsBuilder builder = new StreamingLasCellsBuilder(1, envelope.getMinX(),
+                envelope.getMinX() + cols * cellSize, envelope.getMinY(), envelope.getMinY() + rows * cellSize, cols, rows,
+                cellSize);
+        builder.setThreads(HMModel.getDefaultThreadsNum());
+        List<LasCell> cells = new ArrayList<>();
+        builder.build(lasFile, null, batch -> cells.addAll(batch));
+        long points = 0;
+        for( LasCell cell : cells ) {
+            points += cell.pointsCount;
+        }
+        System.out.println(cells.size() + " cells with " + points + " points.");
+
+        LasCellBlobCodec codec = new LasCellBlobCodec(scale[0], scale[1], scale[2], false);
+        LasCellBlobCodec deflateCodec = new LasCellBlobCodec(scale[0], scale[1], scale[2], true);
+        List<LasCell> encoded = encode(cells, codec);
+        List<LasCell> deflated = encode(cells, deflateCodec);
+        long plainSize = size(cells);
+        System.out.println("Plain blobs: " + plainSize + " bytes");
+        printSize("Encoded blobs", size(encoded), plainSize);
+        printSize("Deflated blobs", size(deflated), plainSize);
+
+        for( int i = 0; i < 3; i++ ) {
+            System.out.println("Run " + (i + 1));
+            measure("decode plain", cells, points);
+            measure("decode encoded", encoded, points);
+            measure("decode deflated", deflated, points);
+        }
+
+        if (args.length > 2) {
+            try (ASpatialDb db = EDb.SPATIALITE.getSpatialDb()) {
+                db.open(args[2]);
+                for( int i = 0; i < 3; i++ ) {
+                    long start = System.nanoTime();
+                    List<LasCell> dbCells = LasCellsTable.getLasCells(db, (Geometry) null, true, true, true, true, true);
+                    long millis = (System.nanoTime() - start) / 1000000;
+                    System.out.println("Read " + dbCells.size() + " cells from the database in " + millis + " ms");
+                }
+            }
+        }
+    }
+
+    private static List<LasCell> encode( List<LasCell> cells, LasCellBlobCodec codec ) {
+        List<LasCell> encoded = new ArrayList<>(cells.size());
+        for( LasCell cell : cells ) {
+            encoded.add(codec.encode(cell));
+        }
+        return encoded;
+    }
+
+    private static long size( List<LasCell> cells ) {
+        long size = 0;
+        for( LasCell cell : cells ) {
+            size += length(cell.xyzs) + length(cell.intensitiesClassifications) + length(cell.returns)
+                    + length(cell.gpsTimes) + length(cell.colors);
+        }
+        return size;
+    }
+
+    private static int length( byte[] blob ) {
+        return blob == null ? 0 : blob.length;
+    }
+
+    private static void printSize( String name, long size, long plainSize ) {
+        System.out.println(String.format("%s: %d bytes (%.1f%% of plain)", name, size, 100.0 * size / plainSize));
+    }
+
+    private static void measure( String name, List<LasCell> cells, long points ) {
+        long start = System.nanoTime();
+        long checksum = 0;
+        for( LasCell cell : cells ) {
+            int count = cell.pointsCount;
+            checksum += length(LasCellBlobCodec.decodePositions(cell.xyzs, count));
+            checksum += length(LasCellBlobCodec.decodeIntensitiesClassifications(cell.intensitiesClassifications, count));
+            checksum += length(LasCellBlobCodec.decodeReturns(cell.returns, count));
+            checksum += length(LasCellBlobCodec.decodeGpsTimes(cell.gpsTimes, count));
+            checksum += length(LasCellBlobCodec.decodeColors(cell.colors, count));
+        }
+        long nanos = System.nanoTime() - start;
+        double pointsPerSecond = points * 1E9 / Math.max(nanos, 1);
+        System.out.println(String.format("  %s: %d ms, %.0f points/s, checksum %d", name, nanos / 1000000, pointsPerSecond,
+                checksum));
+    }
+}
@@ -0,0 +1,158 @@
+package org.hortonmachine.hmachine;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Random;
+
+import javax.media.jai.iterator.RandomIter;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.hortonmachine.gears.libs.modules.GridNode;
+import org.hortonmachine.gears.libs.modules.PackedGrid;
+import org.hortonmachine.gears.libs.monitor.DummyProgressMonitor;
+import org.hortonmachine.gears.utils.RegionMap;
+import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
+import org.hortonmachine.gears.utils.coverage.HMDoubleRaster;
+import org.hortonmachine.hmachine.modules.demmanipulation.pitfiller.OmsDePitter;
+import org.hortonmachine.hmachine.utils.HMTestMaps;
+
+/**
+ * Compares runtime and GC pressure of the {@link GridNode} and {@link PackedGrid} 
+ * neighbour navigation on a large synthetic DEM, then runs {@link OmsDePitter} on it.
+ * 
+ * <p>Usage: RunPackedGridBenchmark [cols rows]</p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class RunPackedGridBenchmark {
+
+    private static final double RES = 10.0;
+
+    public static void main( String[] args ) throws Exception {
+        int cols = 3000;
+        int rows = 3000;
+        if (args.length == 2) {
+            cols = Integer.parseInt(args[0]);
+            rows = Integer.parseInt(args[1]);
+        }
+        System.out.println("Synthetic DEM of " + cols + "x" + rows + " cells.");
+        HMDoubleRaster dem = createDem(cols, rows);
+
+        for( int i = 0; i < 3; i++ ) {
+            System.out.println("Run " + (i + 1));
+            measure("GridNode", () -> navigateGridNodes(dem));
+            measure("PackedGrid", () -> navigatePackedGrid(dem));
+        }
+
+        RegionMap region = CoverageUtilities.makeRegionParamsMap(rows * RES, 0, 0, cols * RES, RES, RES, cols, rows);
+        GridCoverage2D demCoverage = dem.buildCoverage("dem", region, HMTestMaps.getCrs());
+        measure("OmsDePitter", () -> {
+            OmsDePitter dePitter = new OmsDePitter();
+            dePitter.pm = new DummyProgressMonitor();
+            dePitter.inElev = demCoverage;
+            dePitter.process();
+            return 0;
+        });
+    }
+
+    /**
+     * A tilted surface with ripples and noise, which creates lots of pits.
+     */
+    private static HMDoubleRaster createDem( int cols, int rows ) {
+        HMDoubleRaster dem = new HMDoubleRaster(cols, rows);
+        Random random = new Random(42);
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                double value = 1000.0 - 0.05 * r - 0.02 * c + 5.0 * Math.sin(c / 37.0) * Math.cos(r / 53.0)
+                        + random.nextDouble();
+                dem.set(c, r, value);
+            }
+        }
+        return dem;
+    }
+
+    private static long navigateGridNodes( HMDoubleRaster dem ) {
+        RandomIter iter = dem.getWritableRandomIterator();
+        long checksum = 0;
+        for( int r = 0; r < dem.rows; r++ ) {
+            for( int c = 0; c < dem.cols; c++ ) {
+                GridNode node = new GridNode(iter, dem.cols, dem.rows, RES, RES, c, r);
+                List<GridNode> validNodes = node.getValidSurroundingNodes();
+                checksum += validNodes.size();
+                if (node.isPit()) {
+                    checksum++;
+                }
+                GridNode down = node.goDownstreamSP();
+                if (down != null) {
+                    checksum += down.col + down.row;
+                }
+            }
+        }
+        return checksum;
+    }
+
+    private static long navigatePackedGrid( HMDoubleRaster dem ) {
+        PackedGrid grid = PackedGrid.fromRaster(dem, RES, RES);
+        int[] neighbours = new int[PackedGrid.NEIGHBOURS];
+        long checksum = 0;
+        for( int r = 0; r < dem.rows; r++ ) {
+            for( int c = 0; c < dem.cols; c++ ) {
+                int index = grid.index(c, r);
+                checksum += grid.getValidNeighbours(index, neighbours);
+                if (grid.isPit(index)) {
+                    checksum++;
+                }
+                int down = grid.goDownstreamSP(index);
+                if (down >= 0) {
+                    checksum += grid.col(down) + grid.row(down);
+                }
+            }
+        }
+        return checksum;
+    }
+
+    private static void measure( String name, Task task ) throws Exception {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean = null;
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        }
+        long threadId = Thread.currentThread().getId();
+
+        long gcCount = getGcCount();
+        long gcTime = getGcTime();
+        long allocated = allocationBean != null ? allocationBean.getThreadAllocatedBytes(threadId) : 0;
+        long start = System.nanoTime();
+
+        long checksum = task.run();
+
+        long millis = (System.nanoTime() - start) / 1000000;
+        long allocatedMb = allocationBean != null
+                ? (allocationBean.getThreadAllocatedBytes(threadId) - allocated) / (1024 * 1024)
+                : -1;
+        System.out.println("  " + name + ": " + millis + " ms, allocated " + allocatedMb + " MB (calling thread), "
+                + (getGcCount() - gcCount) + " GCs taking " + (getGcTime() - gcTime) + " ms, checksum " + checksum);
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        for( GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans() ) {
+            count += Math.max(0, gcBean.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long getGcTime() {
+        long time = 0;
+        for( GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans() ) {
+            time += Math.max(0, gcBean.getCollectionTime());
+        }
+        return time;
+    }
+
+    private interface Task {
+        long run() throws Exception;
+    }
+}
@@ -74,6 +74,14 @@ public class TestDePitter extends HMTestCase {
 //
 //    }
      public void testPitfiller() throws Exception {
+         checkPitfiller(false);
+     }
+
+     public void testPitfillerPriorityFlood() throws Exception {
+         checkPitfiller(true);
+     }
+
+     private void checkPitfiller( boolean doPriorityFlood ) throws Exception {
      double[][] elevationData = new double[][]{//
      {800, 900, 1000, 1000, 1200, 1250, 1300, 1350, 1450, 1500}, //
      {600, ND, 750, 850, 860, 900, 1000, 1200, 1250, 1500}, //
@@ -91,6 +99,7 @@ public class TestDePitter extends HMTestCase {
     
      OmsDePitter pitfiller = new OmsDePitter();
      pitfiller.inElev = elevationCoverage;
+     pitfiller.doPriorityFlood = doPriorityFlood;
      pitfiller.pm = pm;
      pitfiller.process();
     
@@ -0,0 +1,179 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.hmachine.modules.statistics.kriging;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.hortonmachine.gears.utils.math.matrixes.ColumnVector;
+import org.hortonmachine.gears.utils.math.matrixes.LinearSystem;
+import org.hortonmachine.hmachine.utils.HMTestCase;
+
+/**
+ * Test that the kriging system factorized once gives the same estimates as the
+ * system built and solved for every point.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestKrigingSystem extends HMTestCase {
+
+    private static final int STATIONS = 12;
+    private static final int POINTS = 40;
+
+    private double[] xStation = new double[STATIONS];
+    private double[] yStation = new double[STATIONS];
+    private double[] zStation = new double[STATIONS];
+    private double[] hStation = new double[STATIONS];
+    private double[] xPoints = new double[POINTS];
+    private double[] yPoints = new double[POINTS];
+    private double[] zPoints = new double[POINTS];
+
+    @Override
+    protected void setUp() throws Exception {
+        Random random = new Random(3);
+        for( int i = 0; i < STATIONS; i++ ) {
+            xStation[i] = random.nextDouble() * 10000;
+            yStation[i] = random.nextDouble() * 10000;
+            zStation[i] = 200 + random.nextDouble() * 1500;
+            hStation[i] = random.nextDouble() * 30;
+        }
+        for( int p = 0; p < POINTS; p++ ) {
+            xPoints[p] = -1000 + random.nextDouble() * 12000;
+            yPoints[p] = -1000 + random.nextDouble() * 12000;
+            zPoints[p] = 200 + random.nextDouble() * 1500;
+        }
+        super.setUp();
+    }
+
+    public void testAllStationsSemivariogram() throws Exception {
+        OmsKriging kriging = semivariogramKriging();
+        checkAllStations(kriging);
+    }
+
+    public void testAllStationsIntegralScale() throws Exception {
+        OmsKriging kriging = new OmsKriging();
+        kriging.defaultVariogramMode = 0;
+        kriging.pMode = 0;
+        kriging.pVariance = 3.5;
+        kriging.pIntegralscale = new double[]{4000, 4000, 500};
+        checkAllStations(kriging);
+    }
+
+    public void testNearestStations() throws Exception {
+        OmsKriging kriging = semivariogramKriging();
+        for( int neighbours : new int[]{2, 5, STATIONS - 1} ) {
+            kriging.pNeighbours = neighbours;
+            double[] expected = new double[POINTS];
+            for( int p = 0; p < POINTS; p++ ) {
+                int[] nearest = bruteForceNearest(p, neighbours);
+                expected[p] = solvePerPoint(kriging, select(xStation, nearest), select(yStation, nearest),
+                        select(zStation, nearest), select(hStation, nearest), nearest.length, p);
+            }
+            StationsNeighboursIndex index = new StationsNeighboursIndex(xStation, yStation, STATIONS);
+            for( int threads : new int[]{1, 3} ) {
+                kriging.pMaxThreads = threads;
+                double[] result = new double[POINTS];
+                kriging.krige(xStation, yStation, zStation, hStation, STATIONS, xPoints, yPoints, zPoints, null, index, result);
+                assertEstimates(expected, result);
+            }
+        }
+    }
+
+    private void checkAllStations( OmsKriging kriging ) throws Exception {
+        double[] expected = new double[POINTS];
+        for( int p = 0; p < POINTS; p++ ) {
+            expected[p] = solvePerPoint(kriging, xStation, yStation, zStation, hStation, STATIONS, p);
+        }
+
+        LinearSystem linearSystem = new LinearSystem(kriging.covMatrixCalculating(xStation, yStation, zStation, STATIONS));
+        linearSystem.factorize();
+        for( int threads : new int[]{1, 3} ) {
+            kriging.pMaxThreads = threads;
+            double[] result = new double[POINTS];
+            kriging.krige(xStation, yStation, zStation, hStation, STATIONS, xPoints, yPoints, zPoints, linearSystem, null,
+                    result);
+            assertEstimates(expected, result);
+        }
+    }
+
+    private OmsKriging semivariogramKriging() {
+        OmsKriging kriging = new OmsKriging();
+        kriging.defaultVariogramMode = 1;
+        kriging.pMode = 1;
+        kriging.pSemivariogramType = 1;
+        kriging.pA = 5000;
+        kriging.pS = 1.7;
+        kriging.pNug = 0.1;
+        return kriging;
+    }
+
+    /**
+     * The estimate as it was done before the factorization was shared: a new
+     * system for the point, decomposed and solved.
+     */
+    private double solvePerPoint( OmsKriging kriging, double[] xs, double[] ys, double[] zs, double[] hs, int n, int p )
+            throws Exception {
+        LinearSystem linearSystem = new LinearSystem(kriging.covMatrixCalculating(xs, ys, zs, n));
+        double[] knownTerm = kriging.knownTermsCalculation(xs, ys, zs, n, xPoints[p], yPoints[p], zPoints[p]);
+        double[] weights = linearSystem.solve(new ColumnVector(knownTerm), true).copyValues1D();
+        double h0 = 0;
+        double sum = 0;
+        for( int i = 0; i < n; i++ ) {
+            h0 += weights[i] * hs[i];
+            sum += weights[i];
+        }
+        assertEquals(1.0, sum, 1E-6);
+        return h0;
+    }
+
+    private void assertEstimates( double[] expected, double[] result ) {
+        for( int p = 0; p < POINTS; p++ ) {
+            assertEquals("point " + p, expected[p], result[p], 1E-9 * Math.max(1, Math.abs(expected[p])));
+        }
+    }
+
+    /**
+     * The indexes of the nearest stations in 2D, sorted by index as the kriging uses them.
+     */
+    private int[] bruteForceNearest( int p, int k ) {
+        Integer[] order = new Integer[STATIONS];
+        double[] distances = new double[STATIONS];
+        for( int i = 0; i < STATIONS; i++ ) {
+            order[i] = i;
+            double dx = xStation[i] - xPoints[p];
+            double dy = yStation[i] - yPoints[p];
+            distances[i] = dx * dx + dy * dy;
+        }
+        Arrays.sort(order, ( a, b ) -> Double.compare(distances[a], distances[b]));
+        int[] nearest = new int[k];
+        for( int i = 0; i < k; i++ ) {
+            nearest[i] = order[i];
+        }
+        Arrays.sort(nearest);
+        return nearest;
+    }
+
+    private static double[] select( double[] values, int[] indexes ) {
+        double[] selected = new double[indexes.length];
+        for( int i = 0; i < indexes.length; i++ ) {
+            selected[i] = values[indexes[i]];
+        }
+        return selected;
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.hmachine.modules.statistics.kriging;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.hortonmachine.hmachine.utils.HMTestCase;
+
+/**
+ * Test the {@link StationsNeighboursIndex} against a brute force scan.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestStationsNeighboursIndex extends HMTestCase {
+
+    public void testRandomStations() throws Exception {
+        Random random = new Random(7);
+        for( int n : new int[]{1, 2, 5, 30, 200} ) {
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for( int i = 0; i < n; i++ ) {
+                x[i] = 1000 + random.nextDouble() * 5000;
+                y[i] = 2000 + random.nextDouble() * 800;
+            }
+            // points inside and outside the stations bounds
+            for( int p = 0; p < 200; p++ ) {
+                double px = -1000 + random.nextDouble() * 9000;
+                double py = 1000 + random.nextDouble() * 3000;
+                for( int k : new int[]{1, 3, 8, 250} ) {
+                    checkNearest(x, y, n, px, py, k);
+                }
+            }
+        }
+    }
+
+    public void testTies() throws Exception {
+        // a regular lattice, the points on the nodes and in the middle of the cells have many stations at the same distance
+        int side = 6;
+        int n = side * side;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for( int i = 0; i < n; i++ ) {
+            x[i] = (i % side) * 10.0;
+            y[i] = (i / side) * 10.0;
+        }
+        for( double px = -10; px <= 60; px += 5 ) {
+            for( double py = -10; py <= 60; py += 5 ) {
+                for( int k = 1; k <= 10; k++ ) {
+                    checkNearest(x, y, n, px, py, k);
+                }
+            }
+        }
+    }
+
+    public void testDuplicatedAndAlignedStations() throws Exception {
+        // all on one line, so the grid has a single row, and some on the same position
+        double[] x = {5, 5, 5, 1, 9, 3, 3, 7};
+        double[] y = {2, 2, 2, 2, 2, 2, 2, 2};
+        for( double px = 0; px <= 10; px += 0.5 ) {
+            for( int k = 1; k <= 9; k++ ) {
+                checkNearest(x, y, x.length, px, 2, k);
+                checkNearest(x, y, x.length, px, -3, k);
+            }
+        }
+        // all on the same position
+        double[] same = {4, 4, 4};
+        for( int k = 1; k <= 4; k++ ) {
+            checkNearest(same, same, same.length, 0, 0, k);
+        }
+    }
+
+    public void testOnlyFirstStationsUsed() throws Exception {
+        // the arrays can be longer than the stations, as in the kriging
+        double[] x = {0, 10, 20, 1};
+        double[] y = {0, 0, 0, 0};
+        StationsNeighboursIndex index = new StationsNeighboursIndex(x, y, 3);
+        int[] indexes = new int[2];
+        int found = index.nearest(1, 0, 2, indexes, new double[2]);
+        assertEquals(2, found);
+        assertEquals(0, indexes[0]);
+        assertEquals(1, indexes[1]);
+    }
+
+    private void checkNearest( double[] x, double[] y, int n, double px, double py, int k ) {
+        StationsNeighboursIndex index = new StationsNeighboursIndex(x, y, n);
+        int[] indexes = new int[k];
+        int found = index.nearest(px, py, k, indexes, new double[k]);
+
+        int[] expected = bruteForceNearest(x, y, n, px, py, k);
+        String message = "n=" + n + " k=" + k + " point=" + px + "/" + py;
+        assertEquals(message, Math.min(k, n), found);
+        assertEquals(message, Arrays.toString(expected), Arrays.toString(Arrays.copyOf(indexes, found)));
+    }
+
+    /**
+     * The k nearest stations, at the same distance the lower index first, sorted by index.
+     */
+    private static int[] bruteForceNearest( double[] x, double[] y, int n, double px, double py, int k ) {
+        Integer[] order = new Integer[n];
+        for( int i = 0; i < n; i++ ) {
+            order[i] = i;
+        }
+        Arrays.sort(order, ( a, b ) -> {
+            int cmp = Double.compare(distance(x[a], y[a], px, py), distance(x[b], y[b], px, py));
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        });
+        int[] nearest = new int[Math.min(k, n)];
+        for( int i = 0; i < nearest.length; i++ ) {
+            nearest[i] = order[i];
+        }
+        Arrays.sort(nearest);
+        return nearest;
+    }
+
+    private static double distance( double x1, double y1, double x2, double y2 ) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return dx * dx + dy * dy;
+    }
+
+}
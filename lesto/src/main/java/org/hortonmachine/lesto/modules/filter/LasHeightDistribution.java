@@ -23,7 +23,7 @@ import static org.hortonmachine.gears.libs.modules.HMConstants.isNovalue;
 import java.awt.image.WritableRaster;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.media.jai.iterator.RandomIter;
@@ -48,8 +48,7 @@ import org.geotools.geometry.DirectPosition2D;
 import org.geotools.geometry.Envelope2D;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.hortonmachine.gears.io.las.ALasDataManager;
-import org.hortonmachine.gears.io.las.core.LasRecord;
-import org.hortonmachine.gears.io.las.utils.LasRecordGroundElevationComparator;
+import org.hortonmachine.gears.io.las.core.LasPointColumns;
 import org.hortonmachine.gears.libs.modules.HMConstants;
 import org.hortonmachine.gears.libs.modules.HMModel;
 import org.hortonmachine.gears.modules.r.filter.OmsKernelFilter;
@@ -157,24 +156,21 @@ public class LasHeightDistribution extends HMModel {
                 RegionMap tileRegionMap = CoverageUtilities.getRegionParamsFromGridCoverage(tmp);
                 GridGeometry2D tileGridGeometry = tmp.getGridGeometry();
 
-                List<LasRecord> pointsListForTile = dataManager.getPointsInGeometry(tileGeom, true);
+                LasPointColumns pointsForTile = dataManager.getPointColumnsInGeometry(tileGeom, true);
                 // do something with the data
 
-                if (pointsListForTile.size() == 0) {
+                if (pointsForTile.size() == 0) {
                     pm.errorMessage("No points found in tile: " + id);
                     continue;
                 }
-                if (pointsListForTile.size() < 2) {
+                if (pointsForTile.size() < 2) {
                     pm.errorMessage("Not enough points found in tile: " + id);
                     continue;
                 }
-                List<double[]> negativeRanges = analyseNegativeLayerRanges(id, pointsListForTile);
+                List<double[]> negativeRanges = analyseNegativeLayerRanges(id, pointsForTile);
                 List<GridCoverage2D> rangeCoverages = new ArrayList<GridCoverage2D>();
 
                 for( double[] range : negativeRanges ) {
-                    List<LasRecord> pointsInVerticalRange = ALasDataManager.getPointsInVerticalRange(pointsListForTile, range[0],
-                            range[1], true);
-
                     WritableRaster[] wrH = new WritableRaster[1];
                     GridCoverage2D tmpCoverage = CoverageUtilities.createSubCoverageFromTemplate(inDemGC, tileEnvelope,
                             doubleNovalue, wrH);
@@ -183,8 +179,11 @@ public class LasHeightDistribution extends HMModel {
                     WritableRandomIter tmpIter = CoverageUtilities.getWritableRandomIterator(wrH[0]);
 
                     final DirectPosition2D wp = new DirectPosition2D();
-                    for( LasRecord lasRecord : pointsInVerticalRange ) {
-                        wp.setLocation(lasRecord.x, lasRecord.y);
+                    for( int p = 0; p < pointsForTile.size(); p++ ) {
+                        if (!NumericsUtilities.isBetween(pointsForTile.groundElevation[p], range[0], range[1])) {
+                            continue;
+                        }
+                        wp.setLocation(pointsForTile.x[p], pointsForTile.y[p]);
                         GridCoordinates2D gp = tileGridGeometry.worldToGrid(wp);
                         double count = tmpIter.getSampleDouble(gp.x, gp.y, 0);
                         if (isNovalue(count)) {
@@ -321,14 +320,9 @@ public class LasHeightDistribution extends HMModel {
         return false;
     }
 
-    private List<double[]> analyseNegativeLayerRanges( String id, List<LasRecord> pointsList ) throws Exception {
-        Collections.sort(pointsList, new LasRecordGroundElevationComparator());
-
-        double[] pointsArray = new double[pointsList.size()];
-        for( int i = 0; i < pointsArray.length; i++ ) {
-            LasRecord lasRecord = pointsList.get(i);
-            pointsArray[i] = lasRecord.groundElevation;
-        }
+    private List<double[]> analyseNegativeLayerRanges( String id, LasPointColumns points ) throws Exception {
+        double[] pointsArray = Arrays.copyOf(points.groundElevation, points.size());
+        Arrays.sort(pointsArray);
 
         double binSize = 0.5;
         double[][] bins = toBins(pointsArray, binSize);
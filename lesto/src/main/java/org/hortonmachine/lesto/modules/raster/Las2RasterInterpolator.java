@@ -24,7 +24,6 @@ import static org.hortonmachine.gears.i18n.GearsMessages.OMSHYDRO_DRAFT;
 import static org.hortonmachine.gears.i18n.GearsMessages.OMSHYDRO_LICENSE;
 
 import java.io.File;
-import java.util.List;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -42,7 +41,7 @@ import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.hortonmachine.gears.io.las.ALasDataManager;
-import org.hortonmachine.gears.io.las.core.LasRecord;
+import org.hortonmachine.gears.io.las.core.LasPointColumns;
 import org.hortonmachine.gears.libs.modules.HMConstants;
 import org.hortonmachine.gears.libs.modules.HMModel;
 import org.hortonmachine.gears.libs.modules.Variables;
@@ -116,7 +115,7 @@ public class Las2RasterInterpolator extends HMModel {
                 lasData.setImpulsesConstraint(new double[]{pImpulse});
             }
 
-            List<LasRecord> lasPoints = lasData.getPointsInGeometry(polygon, false);
+            LasPointColumns lasPoints = lasData.getPointColumnsInGeometry(polygon, false);
             if (lasPoints.size() == 0) {
                 pm.message("No points foudn in the given area. Check your input.");
                 return;
@@ -147,9 +146,9 @@ public class Las2RasterInterpolator extends HMModel {
             SimpleFeatureBuilder builder = new SimpleFeatureBuilder(featureType);
 
             pm.beginTask("Prepare points collection for interpolation...", lasPoints.size());
-            for( LasRecord r : lasPoints ) {
-                final Point point = gf.createPoint(new Coordinate(r.x, r.y));
-                final Object[] values = new Object[]{point, r.z,};
+            for( int i = 0; i < lasPoints.size(); i++ ) {
+                final Point point = gf.createPoint(new Coordinate(lasPoints.x[i], lasPoints.y[i]));
+                final Object[] values = new Object[]{point, lasPoints.z[i],};
                 builder.addAll(values);
                 final SimpleFeature feature = builder.buildFeature(null);
                 newCollection.add(feature);
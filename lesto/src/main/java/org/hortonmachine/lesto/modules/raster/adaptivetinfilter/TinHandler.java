@@ -23,6 +23,7 @@ import static org.hortonmachine.gears.utils.geometry.GeometryUtilities.getLineWi
 import static org.hortonmachine.gears.utils.geometry.GeometryUtilities.getTriangleCentroid;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentSkipListSet;
@@ -36,8 +37,12 @@ import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.hortonmachine.gears.io.las.ALasDataManager;
 import org.hortonmachine.gears.io.las.core.LasRecord;
+import org.hortonmachine.gears.libs.modules.HMConstants;
 import org.hortonmachine.gears.libs.modules.ThreadedRunnable;
 import org.hortonmachine.gears.libs.monitor.IHMProgressMonitor;
+import org.hortonmachine.gears.utils.RegionMap;
+import org.hortonmachine.gears.utils.coverage.HMDoubleRaster;
+import org.hortonmachine.gears.utils.coverage.TriangleRasterizer;
 import org.hortonmachine.gears.utils.geometry.GeometryUtilities;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -627,6 +632,76 @@ public class TinHandler {
         return tinTree;
     }
 
+    /**
+     * Rasterize the current tin, keeping only the elevations that are within the
+     * range of the tin points (see {@link #getMinMaxElev()}).
+     * 
+     * <p>Cells not covered by the tin are left untouched, unless extrapolation is
+     * requested: then the cells within {@link #POINTENVELOPE_EXPAND} of the envelope
+     * of a triangle, as along the hull of the tin, get the elevation of the plane of
+     * the nearest such triangle.</p>
+     * 
+     * @param raster the raster to fill.
+     * @param regionMap the region of the raster.
+     * @param doExtrapolate if <code>true</code>, extrapolate the cells near the tin.
+     * @throws Exception
+     */
+    public void rasterize( HMDoubleRaster raster, RegionMap regionMap, boolean doExtrapolate ) throws Exception {
+        checkTinGeometries();
+        double[] minMaxElev = getMinMaxElev();
+        HMDoubleRaster tinRaster = new HMDoubleRaster(raster.cols, raster.rows, HMConstants.doubleNovalue);
+        TriangleRasterizer rasterizer = new TriangleRasterizer(tinRaster, regionMap);
+        rasterizer.setThreads(threadsNum);
+        rasterizer.rasterize(TriangleRasterizer.toTrianglesArray(Arrays.asList(tinGeometries)), pm);
+        STRtree tinTree = doExtrapolate ? generateTinIndex(null) : null;
+        double west = regionMap.getWest();
+        double north = regionMap.getNorth();
+        double xres = regionMap.getXres();
+        double yres = regionMap.getYres();
+        for( int r = 0; r < raster.rows; r++ ) {
+            for( int c = 0; c < raster.cols; c++ ) {
+                double z = tinRaster.get(c, r);
+                if (HMConstants.isNovalue(z) && tinTree != null) {
+                    z = extrapolate(tinTree, west + (c + 0.5) * xres, north - (r + 0.5) * yres);
+                }
+                if (!HMConstants.isNovalue(z) && z >= minMaxElev[0] && z <= minMaxElev[1]) {
+                    raster.set(c, r, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the elevation of a point outside of the tin on the plane of the nearest triangle.
+     * 
+     * @return the elevation or novalue if no triangle is near.
+     */
+    private double extrapolate( STRtree tinTree, double x, double y ) {
+        Coordinate coordinate = new Coordinate(x, y);
+        Envelope e = new Envelope(coordinate);
+        e.expandBy(POINTENVELOPE_EXPAND);
+        List< ? > nearTinGeoms = tinTree.query(e);
+        if (nearTinGeoms.size() == 0) {
+            return HMConstants.doubleNovalue;
+        }
+        Point point = gf.createPoint(coordinate);
+        Geometry nearest = null;
+        double minDistance = Double.POSITIVE_INFINITY;
+        for( Object object : nearTinGeoms ) {
+            Geometry tinGeom = (Geometry) object;
+            double distance = tinGeom.distance(point);
+            if (distance < minDistance) {
+                minDistance = distance;
+                nearest = tinGeom;
+            }
+        }
+        Coordinate[] tinCoords = nearest.getCoordinates();
+        Coordinate c1 = new Coordinate(x, y, 1E6);
+        Coordinate c2 = new Coordinate(x, y, -1E6);
+        Coordinate intersection = getLineWithPlaneIntersection(c1, c2, tinCoords[0], tinCoords[1], tinCoords[2]);
+        return intersection != null ? intersection.z : HMConstants.doubleNovalue;
+    }
+
     /**
      * Checks if the tin is done. If not, it generates it with the available {@link #tinCoordinateList}.  
      */
@@ -38,7 +38,7 @@ import oms3.annotations.UI;
 
 import org.hortonmachine.gears.io.las.core.ALasReader;
 import org.hortonmachine.gears.io.las.core.ILasHeader;
-import org.hortonmachine.gears.io.las.core.LasRecord;
+import org.hortonmachine.gears.io.las.core.LasPointColumns;
 import org.hortonmachine.gears.io.las.utils.LasUtils;
 import org.hortonmachine.gears.libs.modules.HMConstants;
 import org.hortonmachine.gears.libs.modules.HMModel;
@@ -98,14 +98,11 @@ public class LasInfo extends HMModel {
                 pm.message("****************");
                 pm.message("*   SAMPLE DATA");
                 pm.message("****************");
-                int i = 1;
-                while( lasReader.hasNextPoint() ) {
-                    LasRecord dot = lasReader.getNextPoint();
-                    pm.message("Point " + i);
-                    pm.message(LasUtils.lasRecordToString(dot));
-                    if (++i > 3) {
-                        break;
-                    }
+                LasPointColumns sample = new LasPointColumns(3);
+                lasReader.readNextPoints(sample, 3, null);
+                for( int i = 0; i < sample.size(); i++ ) {
+                    pm.message("Point " + (i + 1));
+                    pm.message(LasUtils.lasRecordToString(sample.toLasRecord(i)));
                 }
             }
             pm.message("***********************************************");
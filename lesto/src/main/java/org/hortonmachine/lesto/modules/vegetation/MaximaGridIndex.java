@@ -0,0 +1,246 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.lesto.modules.vegetation;
+
+import static java.lang.Math.pow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.hortonmachine.gears.libs.monitor.IHMProgressMonitor;
+
+/**
+ * A uniform grid over the points of a cloud, used to find the points that are
+ * the highest within a radius.
+ *
+ * <p>The points are bucketed in square cells at least as large as the search
+ * radius and their coordinates are kept in primitive arrays ordered by cell,
+ * so that every point visits only the cells that touch its radius.</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class MaximaGridIndex {
+
+    /**
+     * The number of points checked by a single task.
+     */
+    private static final int CHUNK_SIZE = 4096;
+
+    private final int pointsCount;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int cols;
+    private final int rows;
+
+    /**
+     * The index in the sorted arrays of the first point of every cell, with one more
+     * entry closing the last cell.
+     */
+    private final int[] cellStart;
+    /**
+     * The original index of the sorted points.
+     */
+    private final int[] sortedIndexes;
+    private final double[] sortedX;
+    private final double[] sortedY;
+    private final double[] sortedElev;
+
+    /**
+     * Build the index.
+     *
+     * @param xs the x coordinates of the points.
+     * @param ys the y coordinates of the points.
+     * @param elevs the elevations the points are compared by.
+     * @param maxRadius the largest radius that will be searched.
+     */
+    public MaximaGridIndex( double[] xs, double[] ys, double[] elevs, double maxRadius ) {
+        pointsCount = xs.length;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for( int i = 0; i < pointsCount; i++ ) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        if (pointsCount == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        this.minX = minX;
+        this.minY = minY;
+
+        double cellSize = maxRadius > 0 ? maxRadius : 1.0;
+        double width = maxX - minX;
+        double height = maxY - minY;
+        // keep the number of cells in the order of the points, sparse clouds get larger cells
+        double maxCells = Math.max(1024.0, 2.0 * pointsCount);
+        double cellsCount = (width / cellSize + 1) * (height / cellSize + 1);
+        if (cellsCount > maxCells) {
+            cellSize = cellSize * Math.sqrt(cellsCount / maxCells);
+        }
+        this.cellSize = cellSize;
+        cols = (int) (width / cellSize) + 1;
+        rows = (int) (height / cellSize) + 1;
+
+        // counting sort of the points by cell
+        int[] pointCells = new int[pointsCount];
+        cellStart = new int[cols * rows + 1];
+        for( int i = 0; i < pointsCount; i++ ) {
+            int cell = getCell(xs[i], ys[i]);
+            pointCells[i] = cell;
+            cellStart[cell + 1]++;
+        }
+        for( int c = 0; c < cols * rows; c++ ) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = new int[cols * rows];
+        System.arraycopy(cellStart, 0, next, 0, next.length);
+        sortedIndexes = new int[pointsCount];
+        sortedX = new double[pointsCount];
+        sortedY = new double[pointsCount];
+        sortedElev = new double[pointsCount];
+        for( int i = 0; i < pointsCount; i++ ) {
+            int pos = next[pointCells[i]]++;
+            sortedIndexes[pos] = i;
+            sortedX[pos] = xs[i];
+            sortedY[pos] = ys[i];
+            sortedElev[pos] = elevs[i];
+        }
+    }
+
+    /**
+     * Get the radius within which a point has to be the highest to be a maximum.
+     *
+     * @param elevation the elevation of the point.
+     * @param maxRadius the maximum radius.
+     * @param doDynamicRadius if <code>true</code>, the radius is adapted to the elevation.
+     * @return the radius.
+     */
+    public static double getRadius( double elevation, double maxRadius, boolean doDynamicRadius ) {
+        double radius = maxRadius;
+        if (doDynamicRadius) {
+            // use Popescu lowered to 70% (Popescu & Kini 2004 for mixed pines and
+            // deciduous trees)
+            radius = (2.51503 + 0.00901 * pow(elevation, 2.0)) / 2.0 * 0.7;
+            if (radius > maxRadius) {
+                radius = maxRadius;
+            }
+        }
+        return radius;
+    }
+
+    /**
+     * Checks if no point within the radius is higher than the given point.
+     *
+     * @param x the x coordinate of the point.
+     * @param y the y coordinate of the point.
+     * @param elev the elevation of the point.
+     * @param radius the search radius.
+     * @return <code>true</code> if the point is a local maximum.
+     */
+    public boolean isLocalMaximum( double x, double y, double elev, double radius ) {
+        if (radius < 0 || pointsCount == 0) {
+            return true;
+        }
+        int fromCol = Math.max(0, (int) Math.floor((x - radius - minX) / cellSize));
+        int toCol = Math.min(cols - 1, (int) Math.floor((x + radius - minX) / cellSize));
+        int fromRow = Math.max(0, (int) Math.floor((y - radius - minY) / cellSize));
+        int toRow = Math.min(rows - 1, (int) Math.floor((y + radius - minY) / cellSize));
+        for( int r = fromRow; r <= toRow; r++ ) {
+            for( int c = fromCol; c <= toCol; c++ ) {
+                int cell = r * cols + c;
+                for( int j = cellStart[cell]; j < cellStart[cell + 1]; j++ ) {
+                    if (sortedElev[j] <= elev) {
+                        continue;
+                    }
+                    double dx = sortedX[j] - x;
+                    double dy = sortedY[j] - y;
+                    if (Math.sqrt(dx * dx + dy * dy) <= radius) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the local maxima among all the indexed points.
+     *
+     * @param maxRadius the maximum radius.
+     * @param doDynamicRadius if <code>true</code>, the radius is adapted to the elevation.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor, worked once per point.
+     * @return the flags marking the local maxima, in the original order of the points.
+     * @throws Exception
+     */
+    public boolean[] findLocalMaxima( final double maxRadius, final boolean doDynamicRadius, int threads,
+            final IHMProgressMonitor pm ) throws Exception {
+        final boolean[] isMaximum = new boolean[pointsCount];
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future< ? >> futures = new ArrayList<>();
+            // chunks follow the cell order, so that neighbours are checked by the same task
+            for( int start = 0; start < pointsCount; start += CHUNK_SIZE ) {
+                final int from = start;
+                final int to = Math.min(pointsCount, start + CHUNK_SIZE);
+                futures.add(executor.submit(new Runnable(){
+                    public void run() {
+                        for( int i = from; i < to; i++ ) {
+                            double elev = sortedElev[i];
+                            double radius = getRadius(elev, maxRadius, doDynamicRadius);
+                            isMaximum[sortedIndexes[i]] = isLocalMaximum(sortedX[i], sortedY[i], elev, radius);
+                        }
+                        if (pm != null) {
+                            synchronized (pm) {
+                                pm.worked(to - from);
+                            }
+                        }
+                    }
+                }));
+            }
+            for( Future< ? > future : futures ) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return isMaximum;
+    }
+
+    private int getCell( double x, double y ) {
+        int c = Math.min(cols - 1, (int) ((x - minX) / cellSize));
+        int r = Math.min(rows - 1, (int) ((y - minY) / cellSize));
+        return r * cols + c;
+    }
+}
@@ -18,7 +18,6 @@
 package org.hortonmachine.lesto.modules.vegetation;
 
 import static java.lang.Math.abs;
-import static java.lang.Math.pow;
 import static java.lang.Math.round;
 import static org.hortonmachine.gears.i18n.GearsMessages.OMSHYDRO_AUTHORCONTACTS;
 import static org.hortonmachine.gears.i18n.GearsMessages.OMSHYDRO_AUTHORNAMES;
@@ -27,9 +26,6 @@ import static org.hortonmachine.gears.i18n.GearsMessages.OMSHYDRO_LICENSE;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.media.jai.iterator.RandomIter;
@@ -169,11 +165,10 @@ public class OmsPointCloudMaximaFinder extends HMModel {
 
         try {
             doProcess(inLas, pMaxRadius, doDynamicRadius, helper, (DefaultFeatureCollection) outTops, lasBuilder, index, pm);
-        } catch (Exception e) {
-            e.printStackTrace();
+        } finally {
+            if (helper != null)
+                helper.dsmDtmDiffIter.done();
         }
-        if (helper != null)
-            helper.dsmDtmDiffIter.done();
 
     }
 
@@ -186,88 +181,58 @@ public class OmsPointCloudMaximaFinder extends HMModel {
          * - 0 = non maxima
          */
         final GeometryFactory gf = new GeometryFactory();
-        pm.beginTask("Mark local maxima...", pointsInTile.size());
-        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(getDefaultThreadsNum());
-        for( final LasRecord currentDot : pointsInTile ) {
-            Runnable runner = new Runnable(){
-                public void run() {
-                    try {
-                        // check if it is a local maxima
-                        boolean isLocalMaxima = true;
-                        for( LasRecord tmpDot : pointsInTile ) {
-                            double distance = LasUtils.distance(currentDot, tmpDot);
-                            double maxRadius = pMaxRadius;
-                            if (doDynamicRadius) {
-                                // use Popescu lowered to 70% (Popescu & Kini 2004 for mixed pines
-                                // and
-                                // deciduous trees)
-                                maxRadius = (2.51503 + 0.00901 * pow(currentDot.groundElevation, 2.0)) / 2.0 * 0.7;
-                                if (maxRadius > pMaxRadius) {
-                                    maxRadius = pMaxRadius;
-                                }
-                            }
-                            if (distance > maxRadius) {
-                                continue;
-                            }
-                            if (tmpDot.groundElevation > currentDot.groundElevation) {
-                                // not local maxima
-                                isLocalMaxima = false;
-                                break;
-                            }
-                        }
-                        // mark it
-                        if (isLocalMaxima) {
-                            if (helper != null) {
-                                // check if it is some border or noise
-                                GridCoordinates2D gridCoord = helper.gridGeometry.worldToGrid(new DirectPosition2D(currentDot.x,
-                                        currentDot.y));
-                                GridNode node = new GridNode(helper.dsmDtmDiffIter, helper.cols, helper.rows, helper.xres,
-                                        helper.yres, gridCoord.x, gridCoord.y);
-                                double topElevation = node.elevation;
-                                if (!node.isValid() || node.touchesBound()) {
-                                    isLocalMaxima = false;
-                                } else {
-                                    List<GridNode> validSurroundingNodes = node.getValidSurroundingNodes();
-                                    for( GridNode tmpNode : validSurroundingNodes ) {
-                                        double tmpElevation = tmpNode.elevation;
-                                        if (abs(topElevation - tmpElevation) > helper.pElevDiffThres) {
-                                            isLocalMaxima = false;
-                                        }
-                                    }
-                                }
-                            }
-                            if (isLocalMaxima) {
-                                synchronized (lasBuilder) {
-                                    final Point point = gf.createPoint(new Coordinate(currentDot.x, currentDot.y));
-                                    double groundElevation = currentDot.groundElevation;
-                                    // round to meter with 1 decimal
-                                    groundElevation = ((int) round(groundElevation * 10)) / 10.0;
-                                    final Object[] values = new Object[]{point, index.getAndIncrement(), groundElevation,
-                                            currentDot.intensity, currentDot.classification, currentDot.returnNumber,
-                                            currentDot.numberOfReturns};
-                                    lasBuilder.addAll(values);
-                                    final SimpleFeature feature = lasBuilder.buildFeature(null);
-                                    outTopsFC.add(feature);
-                                }
-                            }
+        int size = pointsInTile.size();
+        double[] xs = new double[size];
+        double[] ys = new double[size];
+        double[] elevs = new double[size];
+        for( int i = 0; i < size; i++ ) {
+            LasRecord dot = pointsInTile.get(i);
+            xs[i] = dot.x;
+            ys[i] = dot.y;
+            elevs[i] = dot.groundElevation;
+        }
+        MaximaGridIndex maximaIndex = new MaximaGridIndex(xs, ys, elevs, pMaxRadius);
+
+        pm.beginTask("Mark local maxima...", size);
+        boolean[] isMaximum = maximaIndex.findLocalMaxima(pMaxRadius, doDynamicRadius, getDefaultThreadsNum(), pm);
+        pm.done();
+
+        for( int i = 0; i < size; i++ ) {
+            if (!isMaximum[i]) {
+                continue;
+            }
+            LasRecord currentDot = pointsInTile.get(i);
+            boolean isLocalMaxima = true;
+            if (helper != null) {
+                // check if it is some border or noise
+                GridCoordinates2D gridCoord = helper.gridGeometry.worldToGrid(new DirectPosition2D(currentDot.x, currentDot.y));
+                GridNode node = new GridNode(helper.dsmDtmDiffIter, helper.cols, helper.rows, helper.xres, helper.yres,
+                        gridCoord.x, gridCoord.y);
+                double topElevation = node.elevation;
+                if (!node.isValid() || node.touchesBound()) {
+                    isLocalMaxima = false;
+                } else {
+                    List<GridNode> validSurroundingNodes = node.getValidSurroundingNodes();
+                    for( GridNode tmpNode : validSurroundingNodes ) {
+                        double tmpElevation = tmpNode.elevation;
+                        if (abs(topElevation - tmpElevation) > helper.pElevDiffThres) {
+                            isLocalMaxima = false;
                         }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    } finally {
-                        pm.worked(1);
                     }
                 }
-            };
-            fixedThreadPool.execute(runner);
-        }
-        try {
-            fixedThreadPool.shutdown();
-            fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
-            fixedThreadPool.shutdownNow();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            }
+            if (isLocalMaxima) {
+                final Point point = gf.createPoint(new Coordinate(currentDot.x, currentDot.y));
+                double groundElevation = currentDot.groundElevation;
+                // round to meter with 1 decimal
+                groundElevation = ((int) round(groundElevation * 10)) / 10.0;
+                final Object[] values = new Object[]{point, index.getAndIncrement(), groundElevation, currentDot.intensity,
+                        currentDot.classification, currentDot.returnNumber, currentDot.numberOfReturns};
+                lasBuilder.addAll(values);
+                final SimpleFeature feature = lasBuilder.buildFeature(null);
+                outTopsFC.add(feature);
+            }
         }
-        pm.done();
 
     }
 
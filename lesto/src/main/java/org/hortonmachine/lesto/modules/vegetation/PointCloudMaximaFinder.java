@@ -180,16 +180,13 @@ public class PointCloudMaximaFinder extends HMModel {
                     pm.errorMessage("No points processed in tile: " + regionPolygon);
                     continue;
                 }
-                try {
-                    doProcess(pointsInTile, pMaxRadius, doDynamicRadius, helper, outTopsFC, lasBuilder, featureIndex, pm);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+                doProcess(pointsInTile, pMaxRadius, doDynamicRadius, helper, outTopsFC, lasBuilder, featureIndex, pm);
             }
             dumpVector(outTopsFC, outTops);
+        } finally {
+            if (helper != null)
+                helper.dsmDtmDiffIter.done();
         }
-        if (helper != null)
-            helper.dsmDtmDiffIter.done();
     }
 
 }
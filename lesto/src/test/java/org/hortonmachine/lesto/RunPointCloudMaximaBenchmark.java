@@ -0,0 +1,199 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.lesto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.hortonmachine.gears.io.las.core.LasRecord;
+import org.hortonmachine.gears.io.las.utils.LasUtils;
+import org.hortonmachine.gears.libs.modules.HMModel;
+import org.hortonmachine.gears.libs.monitor.DummyProgressMonitor;
+import org.hortonmachine.lesto.modules.vegetation.MaximaGridIndex;
+
+/**
+ * Compares the local maxima search of the pointcloud maxima finder done
+ * by scanning all the points of the tile with the one done through the
+ * {@link MaximaGridIndex}, on synthetic canopy data.
+ *
+ * <p>The full scan is only run up to the given number of points, the index
+ * is then run alone on denser clouds.</p>
+ *
+ * <p>Usage: RunPointCloudMaximaBenchmark [maxScanPoints [maxPoints [maxRadius]]]</p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class RunPointCloudMaximaBenchmark {
+
+    /**
+     * The side of the synthetic tile in meters.
+     */
+    private static final double TILE_SIZE = 500.0;
+
+    public static void main( String[] args ) throws Exception {
+        int maxScanPoints = 100000;
+        int maxPoints = 4000000;
+        double maxRadius = 2.5;
+        if (args.length > 0) {
+            maxScanPoints = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            maxPoints = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2) {
+            maxRadius = Double.parseDouble(args[2]);
+        }
+        int threads = HMModel.getDefaultThreadsNum();
+        System.out.println("threads: " + threads + ", max radius: " + maxRadius);
+
+        for( int pointsCount = 25000; pointsCount <= maxPoints; pointsCount *= 2 ) {
+            List<LasRecord> points = createCanopy(pointsCount, 42);
+
+            long t0 = System.nanoTime();
+            double[] xs = new double[pointsCount];
+            double[] ys = new double[pointsCount];
+            double[] elevs = new double[pointsCount];
+            for( int i = 0; i < pointsCount; i++ ) {
+                LasRecord dot = points.get(i);
+                xs[i] = dot.x;
+                ys[i] = dot.y;
+                elevs[i] = dot.groundElevation;
+            }
+            MaximaGridIndex index = new MaximaGridIndex(xs, ys, elevs, maxRadius);
+            boolean[] indexMaxima = index.findLocalMaxima(maxRadius, true, threads, new DummyProgressMonitor());
+            long indexMillis = (System.nanoTime() - t0) / 1000000;
+            int maximaCount = 0;
+            for( boolean isMaximum : indexMaxima ) {
+                if (isMaximum) {
+                    maximaCount++;
+                }
+            }
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("points: %8d  maxima: %6d  index: %7d ms", pointsCount, maximaCount, indexMillis));
+            if (pointsCount <= maxScanPoints) {
+                t0 = System.nanoTime();
+                boolean[] scanMaxima = scan(points, maxRadius, true, threads);
+                long scanMillis = (System.nanoTime() - t0) / 1000000;
+                int differences = 0;
+                for( int i = 0; i < pointsCount; i++ ) {
+                    if (scanMaxima[i] != indexMaxima[i]) {
+                        differences++;
+                    }
+                }
+                sb.append(String.format("  scan: %8d ms  speedup: %7.1f  differences: %d", scanMillis,
+                        scanMillis / (double) Math.max(1, indexMillis), differences));
+            }
+            System.out.println(sb.toString());
+        }
+    }
+
+    /**
+     * The previous search, every point checked against all the points of the tile.
+     */
+    private static boolean[] scan( final List<LasRecord> pointsInTile, final double pMaxRadius, final boolean doDynamicRadius,
+            int threads ) throws InterruptedException {
+        final boolean[] isMaximum = new boolean[pointsInTile.size()];
+        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+        for( int i = 0; i < pointsInTile.size(); i++ ) {
+            final int currentIndex = i;
+            fixedThreadPool.execute(new Runnable(){
+                public void run() {
+                    LasRecord currentDot = pointsInTile.get(currentIndex);
+                    boolean isLocalMaxima = true;
+                    for( LasRecord tmpDot : pointsInTile ) {
+                        double distance = LasUtils.distance(currentDot, tmpDot);
+                        double maxRadius = MaximaGridIndex.getRadius(currentDot.groundElevation, pMaxRadius, doDynamicRadius);
+                        if (distance > maxRadius) {
+                            continue;
+                        }
+                        if (tmpDot.groundElevation > currentDot.groundElevation) {
+                            isLocalMaxima = false;
+                            break;
+                        }
+                    }
+                    isMaximum[currentIndex] = isLocalMaxima;
+                }
+            });
+        }
+        fixedThreadPool.shutdown();
+        fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
+        return isMaximum;
+    }
+
+    /**
+     * Points on a tile covered by trees with conic crowns.
+     */
+    private static List<LasRecord> createCanopy( int pointsCount, long seed ) {
+        Random random = new Random(seed);
+        int treesCount = (int) (TILE_SIZE * TILE_SIZE / 25.0);
+        double[] treeX = new double[treesCount];
+        double[] treeY = new double[treesCount];
+        double[] treeHeight = new double[treesCount];
+        for( int i = 0; i < treesCount; i++ ) {
+            treeX[i] = random.nextDouble() * TILE_SIZE;
+            treeY[i] = random.nextDouble() * TILE_SIZE;
+            treeHeight[i] = 8.0 + random.nextDouble() * 25.0;
+        }
+        int cellsPerSide = (int) (TILE_SIZE / 10.0);
+        List<List<Integer>> treeCells = new ArrayList<>();
+        for( int i = 0; i < cellsPerSide * cellsPerSide; i++ ) {
+            treeCells.add(new ArrayList<Integer>());
+        }
+        for( int i = 0; i < treesCount; i++ ) {
+            treeCells.get(getCell(treeX[i], treeY[i], cellsPerSide)).add(i);
+        }
+
+        List<LasRecord> points = new ArrayList<>(pointsCount);
+        for( int i = 0; i < pointsCount; i++ ) {
+            LasRecord dot = new LasRecord();
+            dot.x = random.nextDouble() * TILE_SIZE;
+            dot.y = random.nextDouble() * TILE_SIZE;
+            // the highest crown over the point, or the ground
+            double elevation = random.nextDouble() * 0.3;
+            int col = (int) (dot.x / 10.0);
+            int row = (int) (dot.y / 10.0);
+            for( int r = Math.max(0, row - 1); r <= Math.min(cellsPerSide - 1, row + 1); r++ ) {
+                for( int c = Math.max(0, col - 1); c <= Math.min(cellsPerSide - 1, col + 1); c++ ) {
+                    for( int tree : treeCells.get(r * cellsPerSide + c) ) {
+                        double distance = Math.hypot(dot.x - treeX[tree], dot.y - treeY[tree]);
+                        double crownRadius = treeHeight[tree] / 5.0;
+                        if (distance < crownRadius) {
+                            double crownElevation = treeHeight[tree] * (1.0 - 0.4 * distance / crownRadius);
+                            elevation = Math.max(elevation, crownElevation + random.nextGaussian() * 0.1);
+                        }
+                    }
+                }
+            }
+            dot.z = 1000.0 + elevation;
+            dot.groundElevation = elevation;
+            points.add(dot);
+        }
+        return points;
+    }
+
+    private static int getCell( double x, double y, int cellsPerSide ) {
+        int col = Math.min(cellsPerSide - 1, (int) (x / 10.0));
+        int row = Math.min(cellsPerSide - 1, (int) (y / 10.0));
+        return row * cellsPerSide + col;
+    }
+}
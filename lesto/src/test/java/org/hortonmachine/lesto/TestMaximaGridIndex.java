@@ -0,0 +1,157 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.lesto;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.hortonmachine.gears.libs.monitor.DummyProgressMonitor;
+import org.hortonmachine.lesto.modules.vegetation.MaximaGridIndex;
+
+import junit.framework.TestCase;
+
+/**
+ * Test {@link MaximaGridIndex} against a scan of all the points.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestMaximaGridIndex extends TestCase {
+
+    private static final double MAX_RADIUS = 3.0;
+
+    public void testFixedRadius() throws Exception {
+        Random random = new Random(1);
+        double[][] cloud = cloud(random, 3000, 50, 50, 30);
+        checkAgainstScan(cloud, MAX_RADIUS, false);
+        checkAgainstScan(cloud, 0.7, false);
+    }
+
+    public void testDynamicRadius() throws Exception {
+        Random random = new Random(2);
+        // elevations from 0 to 40 give radii from below 1 up to the cap
+        double[][] cloud = cloud(random, 3000, 50, 50, 40);
+        checkAgainstScan(cloud, MAX_RADIUS, true);
+        checkAgainstScan(cloud, 20, true);
+    }
+
+    public void testTies() throws Exception {
+        Random random = new Random(3);
+        // integer coordinates and few elevations, so that many points are at the same
+        // elevation and exactly on the radius of each other
+        double[][] cloud = cloud(random, 2000, 30, 30, 0);
+        for( int i = 0; i < cloud[0].length; i++ ) {
+            cloud[0][i] = Math.floor(cloud[0][i]);
+            cloud[1][i] = Math.floor(cloud[1][i]);
+            cloud[2][i] = random.nextInt(4);
+        }
+        checkAgainstScan(cloud, MAX_RADIUS, false);
+        checkAgainstScan(cloud, 1, false);
+
+        // two points at the same elevation within the radius are both maxima
+        double[] xs = {0, 1, 2.5};
+        double[] ys = {0, 0, 0};
+        double[] elevs = {10, 10, 9};
+        boolean[] isMaximum = new MaximaGridIndex(xs, ys, elevs, 2).findLocalMaxima(2, false, 1, null);
+        assertTrue(Arrays.equals(new boolean[]{true, true, false}, isMaximum));
+    }
+
+    public void testSparseCloud() throws Exception {
+        Random random = new Random(4);
+        // small groups of points over a large area, the cells get larger than the radius
+        double[][] cloud = cloud(random, 400, 8, 8, 30);
+        for( int i = 0; i < cloud[0].length; i++ ) {
+            int group = i / 10;
+            cloud[0][i] += (group * 7919) % 100000;
+            cloud[1][i] += (group * 104729) % 80000;
+        }
+        checkAgainstScan(cloud, MAX_RADIUS, false);
+        checkAgainstScan(cloud, MAX_RADIUS, true);
+
+        // three clusters far apart
+        double[][] clusters = cloud(random, 600, 10, 10, 30);
+        for( int i = 0; i < clusters[0].length; i++ ) {
+            int cluster = i % 3;
+            clusters[0][i] += cluster * 50000;
+            clusters[1][i] -= cluster * 30000;
+        }
+        checkAgainstScan(clusters, MAX_RADIUS, false);
+        checkAgainstScan(clusters, MAX_RADIUS, true);
+    }
+
+    public void testCoarseCells() throws Exception {
+        Random random = new Random(5);
+        // a radius much larger than the cloud, all the points are in one cell
+        double[][] cloud = cloud(random, 500, 20, 20, 30);
+        checkAgainstScan(cloud, 1000, false);
+        // a long and thin cloud
+        double[][] strip = cloud(random, 5000, 20000, 2, 30);
+        checkAgainstScan(strip, MAX_RADIUS, false);
+        checkAgainstScan(strip, MAX_RADIUS, true);
+    }
+
+    public void testEmptyAndSinglePoint() throws Exception {
+        MaximaGridIndex empty = new MaximaGridIndex(new double[0], new double[0], new double[0], MAX_RADIUS);
+        assertEquals(0, empty.findLocalMaxima(MAX_RADIUS, false, 2, null).length);
+        boolean[] isMaximum = new MaximaGridIndex(new double[]{5}, new double[]{5}, new double[]{1}, MAX_RADIUS)
+                .findLocalMaxima(MAX_RADIUS, true, 2, null);
+        assertTrue(Arrays.equals(new boolean[]{true}, isMaximum));
+    }
+
+    private static double[][] cloud( Random random, int count, double width, double height, double maxElev ) {
+        double[][] cloud = new double[3][count];
+        for( int i = 0; i < count; i++ ) {
+            cloud[0][i] = 1000 + random.nextDouble() * width;
+            cloud[1][i] = 5000 + random.nextDouble() * height;
+            cloud[2][i] = random.nextDouble() * maxElev;
+        }
+        return cloud;
+    }
+
+    private static void checkAgainstScan( double[][] cloud, double maxRadius, boolean doDynamicRadius ) throws Exception {
+        double[] xs = cloud[0];
+        double[] ys = cloud[1];
+        double[] elevs = cloud[2];
+        boolean[] expected = new boolean[xs.length];
+        int maximaCount = 0;
+        for( int i = 0; i < xs.length; i++ ) {
+            double radius = MaximaGridIndex.getRadius(elevs[i], maxRadius, doDynamicRadius);
+            expected[i] = true;
+            for( int j = 0; j < xs.length; j++ ) {
+                double dx = xs[j] - xs[i];
+                double dy = ys[j] - ys[i];
+                if (Math.sqrt(dx * dx + dy * dy) <= radius && elevs[j] > elevs[i]) {
+                    expected[i] = false;
+                    break;
+                }
+            }
+            if (expected[i]) {
+                maximaCount++;
+            }
+        }
+        // make sure the cloud is not trivial
+        assertTrue(maximaCount > 0);
+        assertTrue(maximaCount < xs.length);
+
+        MaximaGridIndex index = new MaximaGridIndex(xs, ys, elevs, maxRadius);
+        for( int threads : new int[]{1, 4} ) {
+            boolean[] isMaximum = index.findLocalMaxima(maxRadius, doDynamicRadius, threads, new DummyProgressMonitor());
+            assertTrue(Arrays.equals(expected, isMaximum));
+        }
+    }
+
+}
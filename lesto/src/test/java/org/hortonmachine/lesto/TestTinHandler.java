@@ -0,0 +1,97 @@
+/*
+ * This file is part of HortonMachine (http://www.hortonmachine.org)
+ * (C) HydroloGIS - www.hydrologis.com 
+ * 
+ * The HortonMachine is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.hortonmachine.lesto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hortonmachine.gears.libs.modules.HMConstants;
+import org.hortonmachine.gears.libs.monitor.DummyProgressMonitor;
+import org.hortonmachine.gears.utils.RegionMap;
+import org.hortonmachine.gears.utils.coverage.CoverageUtilities;
+import org.hortonmachine.gears.utils.coverage.HMDoubleRaster;
+import org.hortonmachine.lesto.modules.raster.adaptivetinfilter.TinHandler;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import junit.framework.TestCase;
+
+/**
+ * Test {@link TinHandler}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestTinHandler extends TestCase {
+
+    private static final double DELTA = 0.000001;
+
+    /**
+     * A tin on the plane z = 100 + x - y, with its hull just inside the outer cell centers
+     * of a 10x10 raster with 1m cells.
+     */
+    private TinHandler createTin() {
+        double[][] xy = {{0.55, 0.55}, {9.45, 0.55}, {9.45, 9.45}, {0.55, 9.45}, {5, 5}, {3, 7}, {7, 3}};
+        List<Coordinate> coordinates = new ArrayList<Coordinate>();
+        for( double[] p : xy ) {
+            coordinates.add(new Coordinate(p[0], p[1], plane(p[0], p[1])));
+        }
+        TinHandler tinHandler = new TinHandler(new DummyProgressMonitor(), null, 10, 1, null, 1);
+        tinHandler.setStartCoordinates(coordinates);
+        return tinHandler;
+    }
+
+    private static double plane( double x, double y ) {
+        return 100 + x - y;
+    }
+
+    public void testRasterizeHullEdge() throws Exception {
+        RegionMap regionMap = CoverageUtilities.makeRegionParamsMap(10, 0, 0, 10, 1, 1, 10, 10);
+
+        HMDoubleRaster covered = new HMDoubleRaster(10, 10, HMConstants.doubleNovalue);
+        createTin().rasterize(covered, regionMap, false);
+        HMDoubleRaster extrapolated = new HMDoubleRaster(10, 10, HMConstants.doubleNovalue);
+        createTin().rasterize(extrapolated, regionMap, true);
+
+        // the tin points range
+        double min = plane(0.55, 9.45);
+        double max = plane(9.45, 0.55);
+        int extrapolatedCount = 0;
+        for( int r = 0; r < 10; r++ ) {
+            for( int c = 0; c < 10; c++ ) {
+                double x = c + 0.5;
+                double y = 9.5 - r;
+                double z = plane(x, y);
+                boolean isInside = c > 0 && c < 9 && r > 0 && r < 9;
+                if (isInside) {
+                    assertEquals(z, covered.get(c, r), DELTA);
+                    assertEquals(z, extrapolated.get(c, r), DELTA);
+                } else {
+                    assertTrue(HMConstants.isNovalue(covered.get(c, r)));
+                    if (z >= min && z <= max) {
+                        // the outer ring gets the plane of the hull triangles, as it used to
+                        assertEquals("cell " + c + "/" + r, z, extrapolated.get(c, r), DELTA);
+                        extrapolatedCount++;
+                    } else {
+                        assertTrue(HMConstants.isNovalue(extrapolated.get(c, r)));
+                    }
+                }
+            }
+        }
+        assertEquals(34, extrapolatedCount);
+    }
+}
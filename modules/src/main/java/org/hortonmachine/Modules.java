@@ -1,23 +1,17 @@
 package org.hortonmachine;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import oms3.Access;
-import oms3.ComponentAccess;
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Documentation;
-import oms3.annotations.Execute;
 import oms3.annotations.Keywords;
 import oms3.annotations.Label;
 import oms3.annotations.License;
@@ -27,7 +21,7 @@ import oms3.annotations.UI;
 
 import org.hortonmachine.gears.JGrassGears;
 import org.hortonmachine.gears.libs.modules.ClassField;
-import org.scannotation.AnnotationDB;
+import org.hortonmachine.gears.libs.modules.ModulesIndex;
 import org.scannotation.ClasspathUrlFinder;
 
 public class Modules {
@@ -98,15 +92,9 @@ public class Modules {
             if (baseclassUrl == null) {
                 baseclassUrl = ClasspathUrlFinder.findClassBase(Modules.class);
             }
-            AnnotationDB db = new AnnotationDB();
-            db.scanArchives(baseclassUrl);
-
-            Map<String, Set<String>> annotationIndex = db.getAnnotationIndex();
-            Set<String> simpleClasses = annotationIndex.get(Execute.class.getName());
+            ModulesIndex modulesIndex = new ModulesIndex(baseclassUrl);
+            Set<String> simpleClasses = modulesIndex.getModuleClassNames("org.hortonmachine.modules");
             for( String className : simpleClasses ) {
-                if (!className.startsWith("org.hortonmachine.modules")) {
-                    continue;
-                }
                 int lastDot = className.lastIndexOf('.');
                 String name = className.substring(lastDot + 1);
                 Class< ? > clazz = null;
@@ -152,59 +140,11 @@ public class Modules {
 
                 classNames.add(moduleName);
 
-                List<ClassField> tmpfields = new ArrayList<ClassField>();
-                Object annotatedObject = moduleClass.newInstance();
-                ComponentAccess cA = new ComponentAccess(annotatedObject);
-                Collection<Access> inputs = cA.inputs();
-                for( Access access : inputs ) {
-                    Field field = access.getField();
-                    String name = field.getName();
-                    Description descriptionAnnot = field.getAnnotation(Description.class);
-                    String description = name;
-                    if (descriptionAnnot != null) {
-                        description = descriptionAnnot.value();
-                        if (description == null) {
-                            description = name;
-                        }
-                    }
-                    Class< ? > fieldClass = field.getType();
-                    ClassField cf = new ClassField();
-                    cf.isIn = true;
-                    cf.fieldName = name;
-                    cf.fieldDescription = description;
-                    cf.fieldClass = fieldClass;
-                    cf.parentClass = moduleClass;
-                    cf.parentClassStatus = statusString;
-                    if (!fieldNamesList.contains(name)) {
-                        fieldNamesList.add(name);
-                    }
-                    tmpfields.add(cf);
-
-                }
-                Collection<Access> outputs = cA.outputs();
-                for( Access access : outputs ) {
-                    Field field = access.getField();
-                    String name = field.getName();
-                    Description descriptionAnnot = field.getAnnotation(Description.class);
-                    String description = name;
-                    if (descriptionAnnot != null) {
-                        description = descriptionAnnot.value();
-                        if (description == null) {
-                            description = name;
-                        }
-                    }
-                    Class< ? > fieldClass = field.getType();
-                    ClassField cf = new ClassField();
-                    cf.isOut = true;
-                    cf.fieldName = name;
-                    cf.fieldDescription = description;
-                    cf.fieldClass = fieldClass;
-                    cf.parentClass = moduleClass;
-                    cf.parentClassStatus = statusString;
-                    if (!fieldNamesList.contains(name)) {
-                        fieldNamesList.add(name);
+                List<ClassField> tmpfields = modulesIndex.getFields(moduleClass, statusString);
+                for( ClassField classField : tmpfields ) {
+                    if (!fieldNamesList.contains(classField.fieldName)) {
+                        fieldNamesList.add(classField.fieldName);
                     }
-                    tmpfields.add(cf);
                 }
                 moduleName2Fields.put(moduleName, tmpfields);
             }
@@ -212,11 +152,7 @@ public class Modules {
             allFields = (String[]) fieldNamesList.toArray(new String[fieldNamesList.size()]);
             Collections.sort(classNames);
             allClasses = (String[]) classNames.toArray(new String[classNames.size()]);
-        } catch (InstantiationException e) {
-            e.printStackTrace();
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
+        } catch (Exception e) {
             e.printStackTrace();
         }
     }
@@ -25,6 +25,7 @@ import static org.hortonmachine.hmachine.modules.demmanipulation.pitfiller.OmsDe
 import static org.hortonmachine.hmachine.modules.demmanipulation.pitfiller.OmsDePitter.OMSDEPITTER_LICENSE;
 import static org.hortonmachine.hmachine.modules.demmanipulation.pitfiller.OmsDePitter.OMSDEPITTER_NAME;
 import static org.hortonmachine.hmachine.modules.demmanipulation.pitfiller.OmsDePitter.OMSDEPITTER_STATUS;
+import static org.hortonmachine.hmachine.modules.demmanipulation.pitfiller.OmsDePitter.OMSDEPITTER_doPriorityFlood_DESCRIPTION;
 import static org.hortonmachine.hmachine.modules.demmanipulation.pitfiller.OmsDePitter.OMSDEPITTER_inElev_DESCRIPTION;
 import static org.hortonmachine.hmachine.modules.demmanipulation.pitfiller.OmsDePitter.OMSDEPITTER_outFlow_DESCRIPTION;
 import static org.hortonmachine.hmachine.modules.demmanipulation.pitfiller.OmsDePitter.OMSDEPITTER_outPit_DESCRIPTION;
@@ -57,6 +58,10 @@ public class DePitter extends HMModel {
     @In
     public String inElev;
 
+    @Description(OMSDEPITTER_doPriorityFlood_DESCRIPTION)
+    @In
+    public boolean doPriorityFlood = false;
+
     @Description(OMSDEPITTER_outPit_DESCRIPTION)
     @UI(HMConstants.FILEOUT_UI_HINT)
     @In
@@ -71,6 +76,7 @@ public class DePitter extends HMModel {
     public void process() throws Exception {
         OmsDePitter pitfiller = new OmsDePitter();
         pitfiller.inElev = getRaster(inElev);
+        pitfiller.doPriorityFlood = doPriorityFlood;
         pitfiller.pm = pm;
         pitfiller.doProcess = doProcess;
         pitfiller.doReset = doReset;
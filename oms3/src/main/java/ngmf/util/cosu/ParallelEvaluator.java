@@ -0,0 +1,244 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package ngmf.util.cosu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/** Evaluates objective functions for sets of parameter points in parallel.
+ *
+ * <p>Every worker owns an {@link Evaluation}, created once by the
+ * {@link Factory} before any job runs. An evaluation is used by one job at
+ * the time, so it can keep its own model instance, parameter and output
+ * folder without synchronization.</p>
+ *
+ * <p>Results are returned in the order of the jobs, whatever the order they
+ * complete in. Algorithms that draw their points from a seeded generator
+ * before submitting them get the same results with any number of threads.</p>
+ *
+ * <p>With a single thread the jobs run in the calling thread.</p>
+ *
+ * @author od
+ */
+public class ParallelEvaluator {
+
+    /** A single objective function evaluation.
+     */
+    public interface Evaluation {
+
+        /** Evaluate the objective function.
+         *
+         * @param point the parameter values
+         * @return the objective function value
+         * @throws Exception
+         */
+        double evaluate(double[] point) throws Exception;
+    }
+
+    /** Creates the evaluation of a worker.
+     */
+    public interface Factory {
+
+        /** Create an evaluation.
+         *
+         * @param worker the index of the worker, from 0 to threads - 1.
+         * @return the evaluation used by the worker.
+         * @throws Exception
+         */
+        Evaluation create(int worker) throws Exception;
+    }
+
+    /** A task running one or more sequential evaluations on a worker.
+     *
+     * @param <T> the result type
+     */
+    public interface Job<T> {
+
+        T run(Evaluation evaluation) throws Exception;
+    }
+
+    final int threads;
+    final BlockingQueue<Evaluation> idle;
+    ExecutorService executor;
+
+    /** Create an evaluator.
+     *
+     * @param factory the factory of the worker evaluations
+     * @param threads the number of workers, at least 1.
+     * @throws Exception if an evaluation cannot be created.
+     */
+    public ParallelEvaluator(Factory factory, int threads) throws Exception {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
+        this.threads = threads;
+        idle = new ArrayBlockingQueue<Evaluation>(threads);
+        for (int i = 0; i < threads; i++) {
+            idle.add(factory.create(i));
+        }
+    }
+
+    /** Create a single threaded evaluator.
+     *
+     * @param evaluation the evaluation
+     * @return the evaluator
+     */
+    public static ParallelEvaluator of(final Evaluation evaluation) {
+        try {
+            return new ParallelEvaluator(new Factory() {
+
+                @Override
+                public Evaluation create(int worker) {
+                    return evaluation;
+                }
+            }, 1);
+        } catch (Exception E) {
+            throw new RuntimeException(E);
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /** Evaluate a single point.
+     *
+     * @param point the parameter values
+     * @return the objective function value
+     * @throws Exception
+     */
+    public double evaluate(double[] point) throws Exception {
+        return evaluate(new double[][]{point})[0];
+    }
+
+    /** Evaluate points, in parallel.
+     *
+     * @param points the parameter values
+     * @return the objective function values, in the order of the points.
+     * @throws Exception the first failure, in the order of the points.
+     */
+    public double[] evaluate(double[][] points) throws Exception {
+        List<Job<Double>> jobs = new ArrayList<Job<Double>>(points.length);
+        for (final double[] point : points) {
+            jobs.add(new Job<Double>() {
+
+                @Override
+                public Double run(Evaluation evaluation) throws Exception {
+                    return evaluation.evaluate(point);
+                }
+            });
+        }
+        List<Double> r = run(jobs);
+        double[] values = new double[r.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = r.get(i);
+        }
+        return values;
+    }
+
+    /** Run jobs, in parallel.
+     *
+     * @param <T> the result type
+     * @param jobs the jobs
+     * @return the results, in the order of the jobs.
+     * @throws Exception the first failure, in the order of the jobs.
+     */
+    public <T> List<T> run(List<? extends Job<T>> jobs) throws Exception {
+        List<T> results = new ArrayList<T>(jobs.size());
+        if (threads == 1 || jobs.size() < 2) {
+            Evaluation e = idle.take();
+            try {
+                for (Job<T> job : jobs) {
+                    results.add(job.run(e));
+                }
+            } finally {
+                idle.put(e);
+            }
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<Future<T>>(jobs.size());
+        for (final Job<T> job : jobs) {
+            futures.add(executor().submit(new Callable<T>() {
+
+                @Override
+                public T call() throws Exception {
+                    Evaluation e = idle.take();
+                    try {
+                        return job.run(e);
+                    } finally {
+                        idle.put(e);
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<T> f : futures) {
+                results.add(f.get());
+            }
+        } catch (ExecutionException E) {
+            for (Future<T> f : futures) {
+                f.cancel(true);
+            }
+            Throwable cause = E.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw E;
+        }
+        return results;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                int count = 0;
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "cosu-worker-" + count++);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /** Release the worker threads.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
@@ -1,12 +1,24 @@
 package ngmf.util.cosu.luca;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 import java.util.Vector;
+import ngmf.util.cosu.ParallelEvaluator;
 import oms3.dsl.cosu.Step;
 
 /**
+ * Shuffled Complex Evolution.
+ *
+ * <p>The points of the initial population and the complexes of every
+ * shuffling loop are evaluated in parallel by a {@link ParallelEvaluator}.
+ * Every complex evolves with its own random generator, seeded in order from
+ * the generator of the search, and its own share of the remaining model
+ * executions, so the search only depends on the seed and not on the number
+ * of threads.</p>
  */
 public class SCE {
 
@@ -47,14 +59,6 @@ public class SCE {
     double[] objFuncValueOfX;
     //COORDINATES OF A SINGLE POINT IN X
     double[] pointInX;
-    //COORDINATES OF POINTS IN A COMPLEX
-    double[][] pointsInComplex;
-    //FUNCTION VALUES OF CX(.,.)
-    double[] objFuncValuesOfComplex;
-    //COORDINATES OF POINTS IN THE CURRENT SIMPLEX
-    double[][] pointsInSimplex;
-    //FUNCTION VALUES OF S(.,.)
-    double[] objFuncValuesOfSimplex;
     //WORST POINT AT CURRENT SHUFFLING LOOP
     double[] worstPoint;
     //FUNCTION VALUE OF WORSTX(.)
@@ -63,8 +67,6 @@ public class SCE {
     double[] stdDevOfPopulation;
     //NORMALIZED GEOMETRIC MEAN OF PARAMETER RANGES
     double normalizedGeometricMean;
-    //INDICES LOCATING POSITION OF S(.,.) IN X(.,.)
-    int[] indicesOfSimplex;
     //BOUND ON ITH VARIABLE BEING OPTIMIZED
     double[] bound;
     //NUMBER OF COMPLEXES IN CURRENT POPULATION
@@ -78,8 +80,10 @@ public class SCE {
     double[] initialPoint; // initial point == initialParameterSet
     //
     private ExecutionHandle executionHandle;
+    private ParallelEvaluator evaluator;
     Step stepData;
     Step.Data data;
+    Random random;
     int NLOOP = 0;
     int LOOP = 0;
     int IGS = 0;
@@ -88,11 +92,35 @@ public class SCE {
 
     PrintStream out = System.out;
 
-    public SCE(ExecutionHandle executionHandle, Step stepData, Step.Data data)  {
+    /** Create a single threaded search, running the model through the execution handle.
+     */
+    public SCE(final ExecutionHandle executionHandle, final Step stepData, final Step.Data data) {
+        this(executionHandle, stepData, data, ParallelEvaluator.of(new ParallelEvaluator.Evaluation() {
+
+            @Override
+            public double evaluate(double[] point) throws Exception {
+                data.setParamValues(point);
+                executionHandle.execute(data);
+                return stepData.calculateObjectiveFunctionValue(executionHandle);
+            }
+        }), new Random().nextLong());
+    }
+
+    /** Create a search.
+     *
+     * @param executionHandle the handle writing the final parameter
+     * @param stepData the step
+     * @param data the data of the step in the current round
+     * @param evaluator the model executions
+     * @param seed the seed of the random generator
+     */
+    public SCE(ExecutionHandle executionHandle, Step stepData, Step.Data data, ParallelEvaluator evaluator, long seed) {
 
         this.executionHandle = executionHandle;
+        this.evaluator = evaluator;
         this.stepData = stepData; // stepData contains data needed for running SCE
         this.data = data;
+        this.random = new Random(seed);
 
         // get values
         numOfParams = data.getParamValues().length;
@@ -120,16 +148,9 @@ public class SCE {
         pointsX = new double[initTotalNumOfPoints][numOfParams];
         objFuncValueOfX = new double[initTotalNumOfPoints];
         pointInX = new double[numOfParams];
-
-        pointsInComplex = new double[numOfPointsInComplex][numOfParams];
-        objFuncValuesOfComplex = new double[numOfPointsInComplex];
-
-        pointsInSimplex = new double[numOfPointsInSubComplex][numOfParams];
-        objFuncValuesOfSimplex = new double[numOfPointsInSubComplex];
         worstPoint = new double[numOfParams];
 
         stdDevOfPopulation = new double[numOfParams];
-        indicesOfSimplex = new int[numOfPointsInSubComplex];
         bound = new double[numOfParams];
         bestCriterion = new double[10];
         initialPoint = new double[numOfParams];
@@ -174,7 +195,7 @@ public class SCE {
         } else {
 //            out.println("Initial point won't be included");
             for (int j = 0; j < numOfParams; j++) {
-                pointsX[0][j] = lowerBound[j] + bound[j] * Math.random();
+                pointsX[0][j] = lowerBound[j] + bound[j] * random.nextDouble();
                 pointInX[j] = pointsX[0][j];
             }
             // write pointInX in the 'newPARAMS' file, executes runMMS and SRobjfun()
@@ -185,20 +206,23 @@ public class SCE {
         data.setObjFuncValueOfBestPoint(objFuncValueOfX[0]);
         int outputType = 1;
         if (icall < maxNumOfTrials) {
-            for (int i = 1; i < totalNumOfPoints; i++) {
+            // draw the whole population first, then run it at once
+            int count = Math.min(totalNumOfPoints - 1, maxNumOfTrials - icall);
+            double[][] points = new double[count][];
+            for (int i = 1; i <= count; i++) {
                 for (int j = 0; j < numOfParams; j++) {
-                    pointsX[i][j] = lowerBound[j] + bound[j] * Math.random();
-                    pointInX[j] = pointsX[i][j];
-                }
-
-                objFuncValueOfX[i] = execute(pointInX);
-                //ICALL++;
-                if (icall >= maxNumOfTrials) {
-                    totalNumOfPoints = i + 1;
-                    pointsX = copy(pointsX, totalNumOfPoints);
-                    objFuncValueOfX = copy(objFuncValueOfX, totalNumOfPoints);
-                    break;
+                    pointsX[i][j] = lowerBound[j] + bound[j] * random.nextDouble();
                 }
+                points[i - 1] = pointsX[i].clone();
+            }
+            double[] values = execute(points);
+            for (int i = 1; i <= count; i++) {
+                objFuncValueOfX[i] = values[i - 1];
+            }
+            if (icall >= maxNumOfTrials) {
+                totalNumOfPoints = count + 1;
+                pointsX = copy(pointsX, totalNumOfPoints);
+                objFuncValueOfX = copy(objFuncValueOfX, totalNumOfPoints);
             }
 //            out.println("size of pointsX = " + totalNumOfPoints + " (max size is " + pointsX.length + ")" +
 //                    ", max size of objFuncValueOfX = " + objFuncValueOfX.length);
@@ -281,75 +305,33 @@ public class SCE {
         int outputType = 1; // different output will be displayed depending on the value of ouputTYpe
         while (true) {
             NLOOP++;
-            for (IGS = 0; IGS < currentNumOfComplexes; IGS++) {
+            // the complexes evolve independently, each with its share of the remaining executions
+            int budget = maxNumOfTrials - icall;
+            List<Complex> complexes = new ArrayList<Complex>(currentNumOfComplexes);
+            for (int igs = 0; igs < currentNumOfComplexes; igs++) {
+                int share = budget / currentNumOfComplexes + (igs < budget % currentNumOfComplexes ? 1 : 0);
+                Complex complex = new Complex(igs, share, random.nextLong());
                 for (int k1 = 0; k1 < numOfPointsInComplex; k1++) {
-                    int k2 = k1 * currentNumOfComplexes + IGS;
-                    for (int j = 0; j < numOfParams; j++) {
-                        pointsInComplex[k1][j] = pointsX[k2][j];
-                    }
-                    objFuncValuesOfComplex[k1] = objFuncValueOfX[k2];
+                    int k2 = k1 * currentNumOfComplexes + igs;
+                    complex.points[k1] = pointsX[k2].clone();
+                    complex.values[k1] = objFuncValueOfX[k2];
                 }
-                for (LOOP = 0; LOOP < numOfEvolutionSteps; LOOP++) {
-                    if (numOfPointsInSubComplex == numOfPointsInComplex) {
-                        for (int k = 0; k < numOfPointsInSubComplex; k++) {
-                            indicesOfSimplex[k] = k;
-                        }
-                    } else {
-                        //  k = 0 instead of k = 1 because the line above (indicesOfSimplex[0] = ....)
-                        // is removed.
-                        for (int k = 0; k < numOfPointsInSubComplex; k++) {
-                            boolean again = true;
-                            int lpos = -1;
-                            while (again) {
-                                again = false;
-                                lpos = (int) (numOfPointsInComplex + 0.5 -
-                                        Math.sqrt(Math.pow((numOfPointsInComplex + 0.5), 2) -
-                                        numOfPointsInComplex * (numOfPointsInComplex + 1) * Math.random()));
-                                // check if any element from indicesOfSimplex[0] to indicesOfSimplex[k-1]
-                                // is equal to LPOS. If not, get out of the for loop, finish the while(AGAIN) loop,
-                                // and set LPOS as a value of indicesOfSimplex[k]
-                                for (int k1 = 0; k1 < k; k1++) {
-                                    if (lpos == indicesOfSimplex[k1]) {
-                                        again = true;
-                                        break;
-                                    }
-                                }
-                            }
-                            indicesOfSimplex[k] = lpos;
-                        }
-                        // sort the indiciesOfSimplex array in increasing order
-                        Arrays.sort(indicesOfSimplex);
-                    }
-
-                    for (int k = 0; k < numOfPointsInSubComplex; k++) {
-                        for (int j = 0; j < numOfParams; j++) {
-                            pointsInSimplex[k][j] = pointsInComplex[indicesOfSimplex[k]][j];
-                        }
-                        objFuncValuesOfSimplex[k] = objFuncValuesOfComplex[indicesOfSimplex[k]];
-                    }
-                    cce();
-                    for (int k = 0; k < numOfPointsInSubComplex; k++) {
-                        for (int j = 0; j < numOfParams; j++) {
-                            pointsInComplex[indicesOfSimplex[k]][j] = pointsInSimplex[k][j];
-                        }
-                        objFuncValuesOfComplex[indicesOfSimplex[k]] = objFuncValuesOfSimplex[k];
-                    }
-                    sort_duan(pointsInComplex, objFuncValuesOfComplex);
-                    if (icall >= maxNumOfTrials) {
-                        break;
-                    }
-                } // end of loop with LOOP
+                complexes.add(complex);
+            }
+            evaluator.run(complexes);
+            for (Complex complex : complexes) {
                 for (int k1 = 0; k1 < numOfPointsInComplex; k1++) {
-                    int k2 = k1 * currentNumOfComplexes + IGS;
+                    int k2 = k1 * currentNumOfComplexes + complex.index;
                     for (int j = 0; j < numOfParams; j++) {
-                        pointsX[k2][j] = pointsInComplex[k1][j];
+                        pointsX[k2][j] = complex.points[k1][j];
                     }
-                    objFuncValueOfX[k2] = objFuncValuesOfComplex[k1];
+                    objFuncValueOfX[k2] = complex.values[k1];
                 }
-                if (icall >= maxNumOfTrials) {
-                    break;
+                if (complex.calls >= complex.budget) {
+                    IGS = complex.index;
+                    LOOP = Math.max(0, complex.loop - 1);
                 }
-            } // end of for loop with IGS
+            }
 
             sort_duan(pointsX, objFuncValueOfX);
             // set the best point and its objective function value
@@ -417,18 +399,42 @@ public class SCE {
     //##  Other functions
     //########################################################################
     double execute(double[] array) throws Exception {
-        data.setParamValues(array);
-        executionHandle.execute(data);
-        icall++;
-        double of = stepData.calculateObjectiveFunctionValue(executionHandle);
-         double distribution = normdistForBestPoint();
+        return execute(new double[][]{array})[0];
+    }
+
+    /* evaluates the points in parallel, the values are in the order of the points. */
+    double[] execute(double[][] points) throws Exception {
+        List<ParallelEvaluator.Job<Double>> jobs = new ArrayList<ParallelEvaluator.Job<Double>>(points.length);
+        for (final double[] point : points) {
+            jobs.add(new ParallelEvaluator.Job<Double>() {
+
+                @Override
+                public Double run(ParallelEvaluator.Evaluation evaluation) throws Exception {
+                    return execute(evaluation, point);
+                }
+            });
+        }
+        List<Double> r = evaluator.run(jobs);
+        double[] values = new double[r.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = r.get(i);
+        }
+        return values;
+    }
+
+    double execute(ParallelEvaluator.Evaluation evaluation, double[] array) throws Exception {
+        double of = evaluation.evaluate(array.clone());
+        synchronized (this) {
+            icall++;
+            double distribution = normdistForBestPoint();
 //          out.println("loop " + NLOOP + "  ICALL = " + icall);
 //            out.println("Number of complexes in a current population: " + currentNumOfComplexes);
 //            out.println("Objective Function value of best point: " + data.getObjFuncValueOfBestPoint());
 //            out.println("Objective Function value of worst point: " + objFuncValueOfWorstPoint);
 //            out.println("Normal Distribution of best point: " + distribution);
 
-        out.print("\n    " + icall + ": " + of + " [" + data.getObjFuncValueOfBestPoint() + "/" + objFuncValueOfWorstPoint+"]" + " c:" + currentNumOfComplexes + " d:" + distribution);
+            out.print("\n    " + icall + ": " + of + " [" + data.getObjFuncValueOfBestPoint() + "/" + objFuncValueOfWorstPoint+"]" + " c:" + currentNumOfComplexes + " d:" + distribution);
+        }
         return of;
     }
 
@@ -538,125 +544,208 @@ public class SCE {
         }
     }
 
-    void cce() throws Exception {
-        double[] worstPointSimplex = new double[numOfParams]; // WO(.)
-        double[] centroid = new double[numOfParams]; //CE(.)
-        double[] newPoint = new double[numOfParams]; //SNEW(.)
-        double[] vector = new double[numOfParams]; //STEP(.)
-        double worstObjFuncValue; //FW
-
-        for (int j = 0; j < numOfParams; j++) {
-            // pointsInSimplex[] is sorted based on the objective functions values,
-            // so the element in the last index is the worst point.
-            worstPointSimplex[j] = pointsInSimplex[numOfPointsInSubComplex - 1][j];
-            centroid[j] = 0;
-            // exclude the last point (worst point) in this loop
-            for (int i = 0; i < (numOfPointsInSubComplex - 1); i++) {
-                centroid[j] += pointsInSimplex[i][j];
-            }
-            centroid[j] = centroid[j] / ((double) (numOfPointsInSubComplex - 1));
-            vector[j] = centroid[j] - worstPointSimplex[j];
-        }
-        worstObjFuncValue = objFuncValuesOfSimplex[numOfPointsInSubComplex - 1];
-        for (int j = 0; j < numOfParams; j++) {
-            newPoint[j] = worstPointSimplex[j] + 2 * vector[j];
+    /* a complex of the population, evolved on a single worker by
+     *  competitive evolution of its simplexes. */
+    class Complex implements ParallelEvaluator.Job<Complex> {
+
+        final int index;
+        final int budget;
+        final Random random;
+        //COORDINATES OF POINTS IN A COMPLEX
+        final double[][] points = new double[numOfPointsInComplex][];
+        //FUNCTION VALUES OF CX(.,.)
+        final double[] values = new double[numOfPointsInComplex];
+        //COORDINATES OF POINTS IN THE CURRENT SIMPLEX
+        final double[][] pointsInSimplex = new double[numOfPointsInSubComplex][numOfParams];
+        //FUNCTION VALUES OF S(.,.)
+        final double[] objFuncValuesOfSimplex = new double[numOfPointsInSubComplex];
+        //INDICES LOCATING POSITION OF S(.,.) IN X(.,.)
+        final int[] indicesOfSimplex = new int[numOfPointsInSubComplex];
+        int calls = 0;
+        int loop = 0;
+
+        Complex(int index, int budget, long seed) {
+            this.index = index;
+            this.budget = budget;
+            this.random = new Random(seed);
         }
-        boolean outOfBOUND = false;
-        for (int j = 0; j < numOfParams; j++) {
-            if ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j])) {
-                outOfBOUND = true;
-                break;
-            }
+
+        @Override
+        public Complex run(ParallelEvaluator.Evaluation evaluation) throws Exception {
+            for (loop = 0; loop < numOfEvolutionSteps && calls < budget; loop++) {
+                if (numOfPointsInSubComplex == numOfPointsInComplex) {
+                    for (int k = 0; k < numOfPointsInSubComplex; k++) {
+                        indicesOfSimplex[k] = k;
+                    }
+                } else {
+                    //  k = 0 instead of k = 1 because the line above (indicesOfSimplex[0] = ....)
+                    // is removed.
+                    for (int k = 0; k < numOfPointsInSubComplex; k++) {
+                        boolean again = true;
+                        int lpos = -1;
+                        while (again) {
+                            again = false;
+                            lpos = (int) (numOfPointsInComplex + 0.5 -
+                                    Math.sqrt(Math.pow((numOfPointsInComplex + 0.5), 2) -
+                                    numOfPointsInComplex * (numOfPointsInComplex + 1) * random.nextDouble()));
+                            // check if any element from indicesOfSimplex[0] to indicesOfSimplex[k-1]
+                            // is equal to LPOS. If not, get out of the for loop, finish the while(AGAIN) loop,
+                            // and set LPOS as a value of indicesOfSimplex[k]
+                            for (int k1 = 0; k1 < k; k1++) {
+                                if (lpos == indicesOfSimplex[k1]) {
+                                    again = true;
+                                    break;
+                                }
+                            }
+                        }
+                        indicesOfSimplex[k] = lpos;
+                    }
+                    // sort the indiciesOfSimplex array in increasing order
+                    Arrays.sort(indicesOfSimplex);
+                }
+
+                for (int k = 0; k < numOfPointsInSubComplex; k++) {
+                    for (int j = 0; j < numOfParams; j++) {
+                        pointsInSimplex[k][j] = points[indicesOfSimplex[k]][j];
+                    }
+                    objFuncValuesOfSimplex[k] = values[indicesOfSimplex[k]];
+                }
+                cce(evaluation);
+                for (int k = 0; k < numOfPointsInSubComplex; k++) {
+                    for (int j = 0; j < numOfParams; j++) {
+                        points[indicesOfSimplex[k]][j] = pointsInSimplex[k][j];
+                    }
+                    values[indicesOfSimplex[k]] = objFuncValuesOfSimplex[k];
+                }
+                sort_duan(points, values);
+            } // end of loop with LOOP
+            return this;
         }
-        if (outOfBOUND) {
-            getNewPointAtRandom(newPoint);
+
+        double execute(ParallelEvaluator.Evaluation evaluation, double[] point) throws Exception {
+            calls++;
+            return SCE.this.execute(evaluation, point);
         }
-        double newObjFuncValue = execute(newPoint);
 
-        if ((stepData.maximizeObjectiveFunctionValue() && newObjFuncValue <= worstObjFuncValue) ||
-                (!stepData.maximizeObjectiveFunctionValue() && newObjFuncValue >= worstObjFuncValue)) {
-            if (icall >= maxNumOfTrials) {
-                return; //ICALL;
+        void cce(ParallelEvaluator.Evaluation evaluation) throws Exception {
+            double[] worstPointSimplex = new double[numOfParams]; // WO(.)
+            double[] centroid = new double[numOfParams]; //CE(.)
+            double[] newPoint = new double[numOfParams]; //SNEW(.)
+            double[] vector = new double[numOfParams]; //STEP(.)
+            double worstObjFuncValue; //FW
+
+            for (int j = 0; j < numOfParams; j++) {
+                // pointsInSimplex[] is sorted based on the objective functions values,
+                // so the element in the last index is the worst point.
+                worstPointSimplex[j] = pointsInSimplex[numOfPointsInSubComplex - 1][j];
+                centroid[j] = 0;
+                // exclude the last point (worst point) in this loop
+                for (int i = 0; i < (numOfPointsInSubComplex - 1); i++) {
+                    centroid[j] += pointsInSimplex[i][j];
+                }
+                centroid[j] = centroid[j] / ((double) (numOfPointsInSubComplex - 1));
+                vector[j] = centroid[j] - worstPointSimplex[j];
             }
+            worstObjFuncValue = objFuncValuesOfSimplex[numOfPointsInSubComplex - 1];
             for (int j = 0; j < numOfParams; j++) {
-                newPoint[j] = worstPointSimplex[j] + 0.5 * vector[j];
+                newPoint[j] = worstPointSimplex[j] + 2 * vector[j];
             }
-            newObjFuncValue = execute(newPoint);
-            if ((stepData.maximizeObjectiveFunctionValue() && newObjFuncValue < worstObjFuncValue) ||
-                    (!stepData.maximizeObjectiveFunctionValue() && newObjFuncValue > worstObjFuncValue)) {
-                if (icall >= maxNumOfTrials) {
-                    return;
+            boolean outOfBOUND = false;
+            for (int j = 0; j < numOfParams; j++) {
+                if ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j])) {
+                    outOfBOUND = true;
+                    break;
                 }
+            }
+            if (outOfBOUND) {
                 getNewPointAtRandom(newPoint);
-                newObjFuncValue = execute(newPoint);
+            }
+            double newObjFuncValue = execute(evaluation, newPoint);
 
-            }// end of the 2nd if ((newObjFuncValue > worstObjFuncValue) ... )
-        } // end of the 1st if ((newObjFuncValue > worstObjFuncValue) ... )
+            if ((stepData.maximizeObjectiveFunctionValue() && newObjFuncValue <= worstObjFuncValue) ||
+                    (!stepData.maximizeObjectiveFunctionValue() && newObjFuncValue >= worstObjFuncValue)) {
+                if (calls >= budget) {
+                    return; //ICALL;
+                }
+                for (int j = 0; j < numOfParams; j++) {
+                    newPoint[j] = worstPointSimplex[j] + 0.5 * vector[j];
+                }
+                newObjFuncValue = execute(evaluation, newPoint);
+                if ((stepData.maximizeObjectiveFunctionValue() && newObjFuncValue < worstObjFuncValue) ||
+                        (!stepData.maximizeObjectiveFunctionValue() && newObjFuncValue > worstObjFuncValue)) {
+                    if (calls >= budget) {
+                        return;
+                    }
+                    getNewPointAtRandom(newPoint);
+                    newObjFuncValue = execute(evaluation, newPoint);
 
-        for (int j = 0; j < numOfParams; j++) {
-            pointsInSimplex[numOfPointsInSubComplex - 1][j] = newPoint[j];
+                }// end of the 2nd if ((newObjFuncValue > worstObjFuncValue) ... )
+            } // end of the 1st if ((newObjFuncValue > worstObjFuncValue) ... )
+
+            for (int j = 0; j < numOfParams; j++) {
+                pointsInSimplex[numOfPointsInSubComplex - 1][j] = newPoint[j];
+            }
+            objFuncValuesOfSimplex[numOfPointsInSubComplex - 1] = newObjFuncValue;
         }
-        objFuncValuesOfSimplex[numOfPointsInSubComplex - 1] = newObjFuncValue;
-    }
 
-    /* a new point is assigned to newPoint based on stdDevOfPopulation[],
-     *  gasdev(), bound[], and etc.*/
-    void getNewPointAtRandom(double[] newPoint) {
-        for (int j = 0; j < numOfParams; j++) {
-            int nnn = 0;
-            do {
-                double R = gasdev();
-                newPoint[j] = pointsInSimplex[0][j] + stdDevOfPopulation[j] * R * bound[j];
-                nnn++;
-                if (nnn == 1001) {
-                    out.println("SCE: getNewPointAtRandom(): Having hard time generating a new point in a feasible region");
-                }
-                if (nnn > 1000) {
-                    newPoint[j] = lowerBound[j] + Math.abs(R) * (0.5 * bound[j]);
-                    if (nnn % 100 == 1) {
-                        out.print("Attempt " + nnn + ": new point = " + newPoint[j] +
-                                ", lower bound = " + lowerBound[j] + ", upper bound = " + upperBound[j]);
+        /* a new point is assigned to newPoint based on stdDevOfPopulation[],
+         *  gasdev(), bound[], and etc.*/
+        void getNewPointAtRandom(double[] newPoint) {
+            for (int j = 0; j < numOfParams; j++) {
+                int nnn = 0;
+                do {
+                    double R = gasdev();
+                    newPoint[j] = pointsInSimplex[0][j] + stdDevOfPopulation[j] * R * bound[j];
+                    nnn++;
+                    if (nnn == 1001) {
+                        out.println("SCE: getNewPointAtRandom(): Having hard time generating a new point in a feasible region");
                     }
-                    if ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j])) {
-                        out.println(" ---> out of bound");
-                    } else {
-                        out.println(" ---> in bound!!");
+                    if (nnn > 1000) {
+                        newPoint[j] = lowerBound[j] + Math.abs(R) * (0.5 * bound[j]);
+                        if (nnn % 100 == 1) {
+                            out.print("Attempt " + nnn + ": new point = " + newPoint[j] +
+                                    ", lower bound = " + lowerBound[j] + ", upper bound = " + upperBound[j]);
+                        }
+                        if ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j])) {
+                            out.println(" ---> out of bound");
+                        } else {
+                            out.println(" ---> in bound!!");
+                        }
                     }
-                }
-            } while ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j]));
+                } while ((newPoint[j] > upperBound[j]) || (newPoint[j] < lowerBound[j]));
+            }
         }
-    }
-    //
-    boolean calculateGASDEV = true; // if true, gasdev() returns gasdevValue1
-    double gasdevValue1; // one of the two values generated in gasdev()
-    double gasdevValue2; // one of the two values generated in gasdev()
-
-    /* returns a normally distributed deviate with zero mean and unit variance,
-     *  using random number generator, as the source of uniform deviates.
-     */
-    double gasdev() {
-        double R, v1, v2;
-        if (calculateGASDEV) {
-            // if we don't have an extra deviate handy
-            do {
-                // pick two uniform numbers in the square extending from -1 to +1
-                // in each direction
-                v1 = 2 * Math.random() - 1;
-                v2 = 2 * Math.random() - 1;
-                // check if v1 and v2 are in the unit circle
-                R = v1 * v1 + v2 * v2;
-            } while (R >= 1); // if v1 and v2 are not in the unit circle
-
-            // make the Box-Muller transformation to get two normal deviates
-            double fac = Math.sqrt((-1) * ((2 * Math.log(R)) / R));
-            gasdevValue2 = v1 * fac; // one of the two normal deviates. gasdevValue2 is returned
-            // next time this function is called
-            gasdevValue1 = v2 * fac; // the other normal deviate, which will be returned at this time
-            calculateGASDEV = false;
-            return gasdevValue1;
-        } else {
-            calculateGASDEV = true;
-            return gasdevValue2;
+        boolean calculateGASDEV = true; // if true, gasdev() returns gasdevValue1
+        double gasdevValue1; // one of the two values generated in gasdev()
+        double gasdevValue2; // one of the two values generated in gasdev()
+
+        /* returns a normally distributed deviate with zero mean and unit variance,
+         *  using random number generator, as the source of uniform deviates.
+         */
+        double gasdev() {
+            double R, v1, v2;
+            if (calculateGASDEV) {
+                // if we don't have an extra deviate handy
+                do {
+                    // pick two uniform numbers in the square extending from -1 to +1
+                    // in each direction
+                    v1 = 2 * random.nextDouble() - 1;
+                    v2 = 2 * random.nextDouble() - 1;
+                    // check if v1 and v2 are in the unit circle
+                    R = v1 * v1 + v2 * v2;
+                } while (R >= 1); // if v1 and v2 are not in the unit circle
+
+                // make the Box-Muller transformation to get two normal deviates
+                double fac = Math.sqrt((-1) * ((2 * Math.log(R)) / R));
+                gasdevValue2 = v1 * fac; // one of the two normal deviates. gasdevValue2 is returned
+                // next time this function is called
+                gasdevValue1 = v2 * fac; // the other normal deviate, which will be returned at this time
+                calculateGASDEV = false;
+                return gasdevValue1;
+            } else {
+                calculateGASDEV = true;
+                return gasdevValue2;
+            }
         }
     }
 
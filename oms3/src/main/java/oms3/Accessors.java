@@ -0,0 +1,277 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/** Field accessors and lifecycle method invokers of a component class.
+ *
+ * <p>Accessors are built once per class and field, invokers once per class
+ * and annotation, and kept for the lifetime of the class. Fields are read
+ * and written through method handles. Annotated methods are called through
+ * a class implementing {@link Invoker} spun by the {@link LambdaMetafactory},
+ * or through a method handle if the component class is not visible from
+ * here.</p>
+ *
+ * @author od
+ */
+final class Accessors {
+
+    /** Calls a lifecycle method of a component.
+     */
+    interface Invoker {
+
+        /** Call the method.
+         *
+         * @param target the component
+         * @throws Exception whatever the method throws.
+         */
+        void invoke(Object target) throws Exception;
+    }
+
+    /** Reads and writes a field of a component.
+     */
+    static final class FieldAccessor {
+
+        final Field field;
+        /** The class of the values that are set without conversion, the
+         *  wrapper class for primitive fields. */
+        final Class<?> valueType;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        FieldAccessor(Field field) throws IllegalAccessException {
+            this.field = field;
+            this.valueType = MethodType.methodType(field.getType()).wrap().returnType();
+            field.setAccessible(true);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            getter = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+            setter = Modifier.isFinal(field.getModifiers()) ? null
+                    : lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class));
+        }
+
+        Object get(Object target) throws Exception {
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (Exception E) {
+                throw E;
+            } catch (Error E) {
+                throw E;
+            } catch (Throwable T) {
+                throw new RuntimeException(T);
+            }
+        }
+
+        /** Set the field value. Fails as <code>Field.set</code> would, with an
+         * <code>IllegalArgumentException</code> for values of the wrong type.
+         * Final fields are set reflectively.
+         */
+        void set(Object target, Object value) throws Exception {
+            if (setter == null) {
+                field.set(target, value);
+                return;
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (ClassCastException E) {
+                throw new IllegalArgumentException("Cannot set " + field + " to " + value.getClass().getName());
+            } catch (NullPointerException E) {
+                if (target == null) {
+                    throw E;
+                }
+                throw new IllegalArgumentException("Cannot set " + field + " to null");
+            } catch (Exception E) {
+                throw E;
+            } catch (Error E) {
+                throw E;
+            } catch (Throwable T) {
+                throw new RuntimeException(T);
+            }
+        }
+    }
+    //
+    private static final ClassValue<Accessors> CACHE = new ClassValue<Accessors>() {
+
+        @Override
+        protected Accessors computeValue(Class<?> type) {
+            return new Accessors(type);
+        }
+    };
+    /** No annotated method. */
+    private static final Object NONE = new Object();
+    //
+    final Class<?> type;
+    private final ConcurrentMap<Field, FieldAccessor> fields = new ConcurrentHashMap<Field, FieldAccessor>();
+    private final ConcurrentMap<Class<? extends Annotation>, Object> invokers = new ConcurrentHashMap<Class<? extends Annotation>, Object>();
+
+    private Accessors(Class<?> type) {
+        this.type = type;
+    }
+
+    /** Get the accessors of a class.
+     *
+     * @param type the component class
+     * @return the accessors, shared by all instances of the class.
+     */
+    static Accessors of(Class<?> type) {
+        return CACHE.get(type);
+    }
+
+    /** Get the accessor of a field.
+     *
+     * @param field a field of the class, or of one of its super classes.
+     * @return the accessor
+     */
+    FieldAccessor field(Field field) {
+        FieldAccessor a = fields.get(field);
+        if (a == null) {
+            try {
+                a = new FieldAccessor(field);
+            } catch (IllegalAccessException E) {
+                throw new ComponentException("Cannot find/access field: " + field);
+            }
+            FieldAccessor prev = fields.putIfAbsent(field, a);
+            if (prev != null) {
+                a = prev;
+            }
+        }
+        return a;
+    }
+
+    /** Get the accessor of a public field.
+     *
+     * @param name the field name
+     * @return the accessor
+     * @throws NoSuchFieldException if there is no such public field.
+     */
+    FieldAccessor field(String name) throws NoSuchFieldException {
+        return field(type.getField(name));
+    }
+
+    /** Get the invoker of the method annotated with <code>ann</code>.
+     *  The annotation is looked up in the info class of the component, the
+     *  method has to be public, without arguments and return value.
+     *
+     * @param ann the annotation
+     * @return the invoker, or null if there is no such method.
+     * @throws IllegalArgumentException if the method signature is invalid.
+     */
+    Invoker invoker(Class<? extends Annotation> ann) {
+        Object i = invokers.get(ann);
+        if (i == null) {
+            try {
+                Method m = annotatedMethod(ann);
+                i = (m == null) ? NONE : invoker(m);
+            } catch (IllegalArgumentException E) {
+                // keep the failure, it is reported on every call
+                i = E.getMessage();
+            }
+            invokers.putIfAbsent(ann, i);
+        }
+        if (i instanceof String) {
+            throw new IllegalArgumentException((String) i);
+        }
+        return (i == NONE) ? null : (Invoker) i;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Method annotatedMethod(Class<? extends Annotation> ann) {
+        Class<?> infoClass = ComponentAccess.infoClass(type);
+        for (Method m : infoClass.getMethods()) {
+            if (m.getAnnotation(ann) != null) {
+                if (m.getReturnType() != Void.TYPE || m.getParameterTypes().length > 0) {
+                    throw new IllegalArgumentException("Invalid Method signature: " + m);
+                }
+                try {
+                    return type.getMethod(m.getName());
+                } catch (Exception ex) {
+                    throw new ComponentException("Cannot find/access method: " + m);
+                }
+            }
+        }
+        return null;
+    }
+
+    private Invoker invoker(Method m) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle h;
+        try {
+            m.setAccessible(true);
+            h = lookup.unreflect(m);
+        } catch (Exception E) {
+            throw new ComponentException("Cannot find/access method: " + m);
+        }
+        if (isVisible(m.getDeclaringClass())) {
+            try {
+                CallSite site = LambdaMetafactory.metafactory(lookup, "invoke",
+                        MethodType.methodType(Invoker.class),
+                        MethodType.methodType(void.class, Object.class), h,
+                        MethodType.methodType(void.class, m.getDeclaringClass()));
+                return (Invoker) site.getTarget().invoke();
+            } catch (Throwable T) {
+                // fall back to the handle.
+            }
+        }
+        final MethodHandle call = h.asType(MethodType.methodType(void.class, Object.class));
+        return new Invoker() {
+
+            @Override
+            public void invoke(Object target) throws Exception {
+                try {
+                    call.invokeExact(target);
+                } catch (Exception E) {
+                    throw E;
+                } catch (Error E) {
+                    throw E;
+                } catch (Throwable T) {
+                    throw new RuntimeException(T);
+                }
+            }
+        };
+    }
+
+    /** A generated invoker links against the component class from the
+     *  class loader of this class, which may not see classes of models
+     *  loaded later.
+     */
+    private static boolean isVisible(Class<?> c) {
+        if (!Modifier.isPublic(c.getModifiers())) {
+            return false;
+        }
+        try {
+            return Class.forName(c.getName(), false, Accessors.class.getClassLoader()) == c;
+        } catch (ClassNotFoundException E) {
+            return false;
+        }
+    }
+}
@@ -238,53 +238,63 @@ public class CLI {
                 invoke(target, "build");
             }
         } catch (Throwable E) {
-            // Throwable origE = E;
-            System.err.println();
-            System.err.println("ERROR");
-            System.err.println("---------------------------------------------");
-            Level level = log.getLevel();
-            if (level != Level.OFF) {
-                // print the whole stack
-                E.printStackTrace(System.err);
+            printError(E);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Print the error of a failed simulation to the error stream, in full
+     * only if the log level is not OFF.
+     * 
+     * @param E the error.
+     */
+    static void printError( Throwable E ) {
+        // Throwable origE = E;
+        System.err.println();
+        System.err.println("ERROR");
+        System.err.println("---------------------------------------------");
+        Level level = log.getLevel();
+        if (level != Level.OFF) {
+            // print the whole stack
+            E.printStackTrace(System.err);
+        } else {
+            Throwable cause = E.getCause();
+            String localizedMessage;
+            if (cause != null) {
+                localizedMessage = cause.getLocalizedMessage();
             } else {
-                Throwable cause = E.getCause();
-                String localizedMessage;
-                if (cause != null) {
-                    localizedMessage = cause.getLocalizedMessage();
-                } else {
-                    localizedMessage = E.getLocalizedMessage();
-                }
-                String[] split = localizedMessage.split(":");
-                if (split.length > 1) {
-                    if (split[0].contains(".")) {
-                        StringBuilder sb = new StringBuilder();
-                        for( int i = 1; i < split.length; i++ ) {
-                            sb.append(":").append(split[i]);
-                        }
-                        localizedMessage = sb.substring(1);
+                localizedMessage = E.getLocalizedMessage();
+            }
+            String[] split = localizedMessage.split(":");
+            if (split.length > 1) {
+                if (split[0].contains(".")) {
+                    StringBuilder sb = new StringBuilder();
+                    for( int i = 1; i < split.length; i++ ) {
+                        sb.append(":").append(split[i]);
                     }
+                    localizedMessage = sb.substring(1);
                 }
-                System.err.println(localizedMessage);
-                // // ..or
-                // while (!(E instanceof ComponentException) && E != null) {
-                // E = E.getCause();
-                // }
-                // if (E == null) {
-                // System.err.println("Internal Problem, please report to http://oms.javaforge.com");
-                // origE.printStackTrace(System.err);
-                // System.exit(1);
-                // }
-                // ComponentException ce = (ComponentException) E;
-                // if (ce.getCause() != null) {
-                // // Exception within the model
-                // System.err.println("Exception in component '" + ce.getSource() + "':");
-                // ce.getCause().printStackTrace(System.err);
-                // } else {
-                // // Exception within the system
-                // System.err.println(ce.getMessage());
-                // }
             }
-            System.exit(1);
+            System.err.println(localizedMessage);
+            // // ..or
+            // while (!(E instanceof ComponentException) && E != null) {
+            // E = E.getCause();
+            // }
+            // if (E == null) {
+            // System.err.println("Internal Problem, please report to http://oms.javaforge.com");
+            // origE.printStackTrace(System.err);
+            // System.exit(1);
+            // }
+            // ComponentException ce = (ComponentException) E;
+            // if (ce.getCause() != null) {
+            // // Exception within the model
+            // System.err.println("Exception in component '" + ce.getSource() + "':");
+            // ce.getCause().printStackTrace(System.err);
+            // } else {
+            // // Exception within the system
+            // System.err.println(ce.getMessage());
+            // }
         }
     }
 }
@@ -0,0 +1,225 @@
+/*
+ * $Id$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.logging.Level;
+
+/**
+ * A long lived process running simulations one after the other, so that
+ * tools can avoid starting a new JVM (as with {@link CLI}) for every run.
+ *
+ * <p>Commands are read one per line from the standard input:</p>
+ * <pre>
+ * RUN &lt;tab&gt; loglevel &lt;tab&gt; simfile
+ * CANCEL
+ * EXIT
+ * </pre>
+ * <p>Everything written to {@link System#out} and {@link System#err} during a run
+ * is sent to the standard output one line per frame, a frame being a line
+ * starting with {@link #FRAME} and the frame type ({@link #OUT}, {@link #ERR}).
+ * At the end of a run a {@link #DONE} frame with the exit code is sent. Lines
+ * without the frame marker are written by native code straight to the standard
+ * output and should be treated as output of the current run.</p>
+ *
+ * <p>A run is cancelled by interrupting its thread, components that don't
+ * react to interruption have to be stopped by killing the process. After a
+ * run that ran out of memory the process exits with {@link #OUT_OF_MEMORY}.</p>
+ *
+ * @author od
+ */
+public class CLIWorker {
+
+    public static final char FRAME = '\u0001';
+    public static final char READY = 'R';
+    public static final char OUT = 'O';
+    public static final char ERR = 'E';
+    public static final char DONE = 'D';
+
+    public static final String RUN = "RUN";
+    public static final String CANCEL = "CANCEL";
+    public static final String EXIT = "EXIT";
+
+    /** The exit code of a run that ran out of memory. */
+    public static final int OUT_OF_MEMORY = 3;
+
+    private final PrintStream control;
+    private final FrameOutputStream out;
+    private final FrameOutputStream err;
+    private volatile Thread runThread;
+
+    CLIWorker(PrintStream control) {
+        this.control = control;
+        out = new FrameOutputStream(OUT);
+        err = new FrameOutputStream(ERR);
+        System.setOut(new PrintStream(out, true));
+        System.setErr(new PrintStream(err, true));
+    }
+
+    public static void main(String[] args) throws IOException {
+        CLIWorker worker = new CLIWorker(System.out);
+        worker.serve(new BufferedReader(new InputStreamReader(System.in)));
+        System.exit(0);
+    }
+
+    /** Execute the commands until EXIT or the end of the input.
+     * A run still going on is not waited for.
+     *
+     * @param commands the commands, one per line
+     * @throws IOException
+     */
+    void serve(BufferedReader commands) throws IOException {
+        sendFrame(READY, "");
+        String line;
+        while ((line = commands.readLine()) != null) {
+            String[] split = line.split("\t");
+            if (split[0].equals(RUN) && split.length == 3) {
+                run(split[1], split[2]);
+            } else if (split[0].equals(CANCEL)) {
+                Thread thread = runThread;
+                if (thread != null) {
+                    thread.interrupt();
+                }
+            } else if (split[0].equals(EXIT)) {
+                break;
+            }
+        }
+    }
+
+    /** Run a simulation, called in the run thread.
+     *
+     * @param ll the log level
+     * @param file the simulation file
+     * @throws Exception
+     */
+    void simulate(String ll, String file) throws Exception {
+        CLI.log.setLevel(Level.parse(ll));
+        boolean isgroovy = !CLI.isSim(file);
+        Object target = CLI.createSim(CLI.readFile(file), isgroovy, ll, file);
+        if (!isgroovy) {
+            CLI.invoke(target, "run");
+        }
+    }
+
+    /** Terminate the process.
+     *
+     * @param code the exit code
+     */
+    void exit(int code) {
+        System.exit(code);
+    }
+
+    private synchronized void run(final String ll, final String file) {
+        if (runThread != null) {
+            System.err.println("A simulation is already running.");
+            sendFrame(DONE, "1");
+            return;
+        }
+        runThread = new Thread("oms3 worker run") {
+            @Override
+            public void run() {
+                int exitCode = 0;
+                try {
+                    simulate(ll, file);
+                } catch (OutOfMemoryError E) {
+                    exitCode = OUT_OF_MEMORY;
+                    CLI.printError(E);
+                } catch (Throwable E) {
+                    exitCode = 1;
+                    CLI.printError(E);
+                } finally {
+                    System.out.flush();
+                    System.err.flush();
+                    out.flushLine();
+                    err.flushLine();
+                    synchronized (CLIWorker.this) {
+                        runThread = null;
+                    }
+                    sendFrame(DONE, String.valueOf(exitCode));
+                    if (exitCode == OUT_OF_MEMORY) {
+                        // the heap can't be trusted any more
+                        exit(OUT_OF_MEMORY);
+                    }
+                }
+            }
+        };
+        runThread.start();
+    }
+
+    private void sendFrame(char type, String text) {
+        synchronized (control) {
+            control.print(FRAME);
+            control.print(type);
+            control.print(text);
+            control.print('\n');
+            control.flush();
+        }
+    }
+
+    /**
+     * Stream sending every line written to it as a frame.
+     */
+    private class FrameOutputStream extends OutputStream {
+
+        private final char type;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        FrameOutputStream(char type) {
+            this.type = type;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                sendLine();
+            } else if (b != '\r') {
+                line.write(b);
+            }
+        }
+
+        /**
+         * Send what is left of an unterminated line.
+         */
+        synchronized void flushLine() {
+            if (line.size() > 0) {
+                sendLine();
+            }
+        }
+
+        private void sendLine() {
+            synchronized (control) {
+                control.print(FRAME);
+                control.print(type);
+                control.write(line.toByteArray(), 0, line.size());
+                control.print('\n');
+                control.flush();
+            }
+            line.reset();
+        }
+    }
+}
@@ -28,7 +28,6 @@ import java.io.PrintWriter;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -46,7 +45,6 @@ import oms3.annotations.In;
 import oms3.annotations.Out;
 import oms3.annotations.Range;
 import oms3.annotations.Role;
-import oms3.gen.MethodInvoker;
 import oms3.util.Annotations;
 
 /** 
@@ -70,7 +68,7 @@ public class ComponentAccess {
     // execution notification.
     Notification ens;
     /** Execute method. */
-    final MethodInvoker exec;
+    final Accessors.Invoker exec;
 
 //    public static int counter;
 //    static final Object lock = new Object();
@@ -88,8 +86,7 @@ public class ComponentAccess {
         this.comp = comp;
         this.ens = ens;
         
-        Method execute = getMethodOfInterest(comp, Execute.class);
-        exec = Utils.reflective(comp, execute);
+        exec = getInvokerOfInterest(comp, Execute.class);
 //        exec = Utils.compiled(comp, execute);
         findAll(comp, ins, outs, ens);
     }
@@ -163,7 +160,7 @@ public class ComponentAccess {
                 }
             }
             ens.fireStart(this);
-            exec.invoke();                           // execute the object's exec method
+            invoke(exec, comp);                      // execute the object's exec method
             ens.fireFinnish(this);
 
             // unsynchronized out
@@ -185,44 +182,33 @@ public class ComponentAccess {
         }
     }
 
-    void callAnnotatedMethod(Class<? extends Annotation> ann, boolean lazy) {
+    /** Call a lifecycle method. Whatever the method throws, errors included,
+     *  comes back wrapped as it did with <code>Method.invoke</code>.
+     */
+    private static void invoke(Accessors.Invoker invoker, Object target) throws InvocationTargetException {
         try {
-            getMethodOfInterest(comp, ann).invoke(comp);
-        } catch (IllegalAccessException ex) {
-            throw new RuntimeException(ex);
-        } catch (InvocationTargetException ex) {
-            throw new RuntimeException(ex.getCause());
-        } catch (IllegalArgumentException ex) {
-            if (!lazy) {
-                throw new RuntimeException(ex.getMessage());
-            }
+            invoker.invoke(target);
+        } catch (Throwable T) {
+            throw new InvocationTargetException(T);
         }
     }
 
-    /** Find the execute method.
-     *   @Execute or execute() will match in this order.
+    void callAnnotatedMethod(Class<? extends Annotation> ann, boolean lazy) {
+        callAnnotated(comp, ann, lazy);
+    }
+
+    /** Find the invoker of an annotated method.
+     *  The invokers are looked up once per class and cached.
      *  
      * @param cmp the Object where to look for
-     * @return the method
+     * @return the invoker
      */
-    @SuppressWarnings("unchecked")
-    private static Method getMethodOfInterest(Object cmp, Class<? extends Annotation> ann) {
-        Class cmpClass = cmp.getClass();
-        Class infoClass = infoClass(cmpClass);
-        Method[] ms = infoClass.getMethods();
-        for (Method m : ms) {
-            if (m.getAnnotation(ann) != null) {
-                if (m.getReturnType() != Void.TYPE || m.getParameterTypes().length > 0) {
-                    throw new IllegalArgumentException("Invalid Method signature: " + m);
-                }
-                try {
-                    return cmpClass.getMethod(m.getName());
-                } catch (Exception ex) {
-                    throw new ComponentException("Cannot find/access method: " + m);
-                }
-            }
+    private static Accessors.Invoker getInvokerOfInterest(Object cmp, Class<? extends Annotation> ann) {
+        Accessors.Invoker invoker = Accessors.of(cmp.getClass()).invoker(ann);
+        if (invoker == null) {
+            throw new IllegalArgumentException("No " + ann.getCanonicalName() + " found in " + cmp.getClass());
         }
-        throw new IllegalArgumentException("No " + ann.getCanonicalName() + " found in " + cmp.getClass());
+        return invoker;
     }
 
     private static void findAll(Object cmp, Map<String, Access> ins, Map<String, Access> outs, Notification ens) {
@@ -253,16 +239,25 @@ public class ComponentAccess {
      *        the annotation has to be present or a Runtime exception is thrown.
      */
     public static void callAnnotated(Object o, Class<? extends Annotation> ann, boolean lazy) {
+        Accessors.Invoker invoker;
         try {
-            getMethodOfInterest(o, ann).invoke(o);
-        } catch (IllegalAccessException ex) {
-            throw new RuntimeException(ex);
-        } catch (InvocationTargetException ex) {
-            throw new RuntimeException(ex.getCause());
+            invoker = Accessors.of(o.getClass()).invoker(ann);
         } catch (IllegalArgumentException ex) {
             if (!lazy) {
                 throw new RuntimeException(ex.getMessage());
             }
+            return;
+        }
+        if (invoker == null) {
+            if (!lazy) {
+                throw new RuntimeException("No " + ann.getCanonicalName() + " found in " + o.getClass());
+            }
+            return;
+        }
+        try {
+            invoke(invoker, o);
+        } catch (InvocationTargetException ex) {
+            throw new RuntimeException(ex.getCause());
         }
     }
 
@@ -74,6 +74,24 @@ public  class Compound {
         Controller.reload();
     }
 
+    /** Set how the components of this compound are executed.
+     *
+     * @param strategy the execution strategy, the default is
+     *        {@link ExecutionStrategy#PARALLEL} unless the system property
+     *        <code>oms.execution.strategy</code> says otherwise.
+     */
+    public void setExecutionStrategy(ExecutionStrategy strategy) {
+        controller.setExecutionStrategy(strategy);
+    }
+
+    /** Get how the components of this compound are executed.
+     *
+     * @return the execution strategy
+     */
+    public ExecutionStrategy getExecutionStrategy() {
+        return controller.getExecutionStrategy();
+    }
+
 
     /** Connects two internal components with respect to their fields.
      *
@@ -26,6 +26,7 @@ import java.lang.annotation.Annotation;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import oms3.util.Threads;
@@ -38,6 +39,7 @@ import oms3.util.Threads;
 class Controller {
 
     static boolean checkCircular = Boolean.getBoolean("oms.check.circular");
+    static ExecutionStrategy defaultStrategy = ExecutionStrategy.fromSystem();
     //
     private static final Logger log = Logger.getLogger("oms3.sim");
     /** Execution event Notification */
@@ -50,6 +52,10 @@ class Controller {
     ComponentAccess ca;
     // optional skipping the integrity checking.
     Validator validator;
+    /* component -> components reading its outputs */
+    Map<ComponentAccess, Set<ComponentAccess>> successors = new HashMap<ComponentAccess, Set<ComponentAccess>>();
+    /* How to execute the components */
+    ExecutionStrategy strategy = defaultStrategy;
 
     Controller(Object compound) {
         if (checkCircular) {
@@ -68,10 +74,22 @@ class Controller {
         ComponentAccess w = oMap.get(cmd);
         if (w == null) {
             oMap.put(cmd, w = new ComponentAccess(cmd, ens));
+            resetSchedule();
         }
         return w;
     }
 
+    void setExecutionStrategy(ExecutionStrategy strategy) {
+        if (strategy == null) {
+            throw new ComponentException("null execution strategy.");
+        }
+        this.strategy = strategy;
+    }
+
+    ExecutionStrategy getExecutionStrategy() {
+        return strategy;
+    }
+
     Notification getNotification() {
         return ens;
     }
@@ -244,6 +262,14 @@ class Controller {
         dataSet.add(data);
         to_access.setData(data);                       // connect the two
 
+        Set<ComponentAccess> tos = successors.get(ca_from);
+        if (tos == null) {
+            tos = new LinkedHashSet<ComponentAccess>();
+            successors.put(ca_from, tos);
+        }
+        tos.add(ca_to);
+        resetSchedule();
+
         if (checkCircular) {
             validator.addConnection(from, to);
             validator.checkCircular();
@@ -334,18 +360,23 @@ class Controller {
     // something internal.
     ComponentException E;
     static ExecutorService executor = Executors.newCachedThreadPool();
+    static ForkJoinPool workStealing = new ForkJoinPool();
 
     static void reload() {
         executor = Executors.newCachedThreadPool();
+        workStealing = new ForkJoinPool();
         Threads.e = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() + 1);
     }
 
     public static void shutdown() {
         executor.shutdown();
+        workStealing.shutdown();
         Threads.e.shutdown();
     }
 
-    static private class Latch {
+    /* Also a blocker, so that waiting in a work stealing thread (a compound
+     * run by a component task) lets the pool compensate with another thread. */
+    static private class Latch implements ForkJoinPool.ManagedBlocker {
 
         private int count;
         final Object lock = new Object();
@@ -376,6 +407,19 @@ class Controller {
                 }
             }
         }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            await();
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            synchronized (lock) {
+                return count <= 0;
+            }
+        }
     }
     Latch latch = new Latch();
     Runnable[] rc;
@@ -398,9 +442,44 @@ class Controller {
             dataRef.invalidate();
         }
 
+        ens.fireStart(ca);
+        switch (strategy) {
+            case SEQUENTIAL:
+                execSequential();
+                break;
+            case WORK_STEALING:
+                execWorkStealing();
+                break;
+            default:
+                execParallel(comps);
+        }
+
+        // some of the components left an
+        // exception.
+        if (E != null) {
+            ens.fireException(E);
+            throw E;
+        }
+
+        try {
+            ens.fireFinnish(ca);
+            // map the outputs.
+//            System.out.println("Comp " + ca.getComponent() + ": " + ca.outputs());
+            for (Access a : ca.outputs()) {
+                a.in();
+            }
+        } catch (Exception Ex) {
+            throw new ComponentException(Ex, ca.getComponent());
+        }
+    }
+
+    /**
+     * One thread per component, the components block until their
+     * inputs are available.
+     */
+    private void execParallel(Collection<ComponentAccess> comps) {
 //        final CountDownLatch latch = new CountDownLatch(comps.size());
         latch.reload(comps.size());
-        ens.fireStart(ca);
         if (rc == null) {
             rc = new Runnable[comps.size()];
             int i = 0;
@@ -456,24 +535,159 @@ class Controller {
         } catch (InterruptedException IE) {
             // nothing to do here.
         }
+    }
 
-        // some of the components left an
-        // exception.
-        if (E != null) {
-            ens.fireException(E);
-            throw E;
+    /**
+     * Run the components in topological order on the calling thread. All the
+     * inputs of a component are produced before it runs, so no one waits.
+     */
+    private void execSequential() {
+        schedule();
+        try {
+            for (ComponentAccess co : order) {
+                co.exec();
+            }
+        } catch (ComponentException ce) {
+            E = ce;
         }
+    }
 
+    /**
+     * Run the components on the work stealing pool. A component is forked
+     * only when the last of its upstream components is done.
+     */
+    private void execWorkStealing() {
+        schedule();
+        final AtomicIntegerArray pending = new AtomicIntegerArray(predecessors);
+        latch.reload(order.length);
+        for (int i = 0; i < order.length; i++) {
+            if (predecessors[i] == 0) {
+                workStealing.execute(new ComponentTask(i, pending));
+            }
+        }
         try {
-            ens.fireFinnish(ca);
-            // map the outputs.
-//            System.out.println("Comp " + ca.getComponent() + ": " + ca.outputs());
-            for (Access a : ca.outputs()) {
-                a.in();
+            ForkJoinPool.managedBlock(latch);
+        } catch (InterruptedException IE) {
+            // nothing to do here.
+        }
+    }
+
+    private class ComponentTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final int index;
+        final AtomicIntegerArray pending;
+
+        ComponentTask(int index, AtomicIntegerArray pending) {
+            this.index = index;
+            this.pending = pending;
+        }
+
+        @Override
+        protected void compute() {
+            if (E != null) {
+                return;
             }
-        } catch (Exception Ex) {
-            throw new ComponentException(Ex, ca.getComponent());
+            try {
+                order[index].exec();
+            } catch (ComponentException ce) {
+                synchronized (l) {
+                    if (E == null) {
+                        E = ce;
+                    }
+                }
+                latch.open();
+                return;
+            }
+            for (int next : successorIndexes[index]) {
+                if (pending.decrementAndGet(next) == 0) {
+                    new ComponentTask(next, pending).fork();
+                }
+            }
+            latch.countDown();
+        }
+    }
+
+    /* topological order of the components */
+    ComponentAccess[] order;
+    /* for each component in order, the positions of its successors */
+    int[][] successorIndexes;
+    /* for each component in order, the number of its predecessors */
+    int[] predecessors;
+
+    private void resetSchedule() {
+        rc = null;
+        order = null;
+    }
+
+    /**
+     * Compute the static schedule from the connections, keeping the order
+     * in which the components were added where the data flow allows it.
+     */
+    private void schedule() {
+        if (order != null) {
+            return;
+        }
+        Collection<ComponentAccess> comps = oMap.values();
+        Map<ComponentAccess, Integer> inDegree = new HashMap<ComponentAccess, Integer>();
+        for (ComponentAccess co : comps) {
+            inDegree.put(co, 0);
+        }
+        for (Set<ComponentAccess> tos : successors.values()) {
+            for (ComponentAccess to : tos) {
+                inDegree.put(to, inDegree.get(to) + 1);
+            }
+        }
+        Map<ComponentAccess, Integer> incoming = new HashMap<ComponentAccess, Integer>(inDegree);
+
+        List<ComponentAccess> sorted = new ArrayList<ComponentAccess>(comps.size());
+        Deque<ComponentAccess> ready = new ArrayDeque<ComponentAccess>();
+        for (ComponentAccess co : comps) {
+            if (inDegree.get(co) == 0) {
+                ready.add(co);
+            }
+        }
+        while (!ready.isEmpty()) {
+            ComponentAccess co = ready.poll();
+            sorted.add(co);
+            Set<ComponentAccess> tos = successors.get(co);
+            if (tos != null) {
+                for (ComponentAccess to : tos) {
+                    int d = inDegree.get(to) - 1;
+                    inDegree.put(to, d);
+                    if (d == 0) {
+                        ready.add(to);
+                    }
+                }
+            }
+        }
+        if (sorted.size() != comps.size()) {
+            throw new ComponentException("Circular reference in the connections of: " + ca.getComponent()
+                    + ", use a feedback connection or the " + ExecutionStrategy.PARALLEL + " strategy.");
+        }
+
+        Map<ComponentAccess, Integer> position = new HashMap<ComponentAccess, Integer>();
+        for (int i = 0; i < sorted.size(); i++) {
+            position.put(sorted.get(i), i);
+        }
+        ComponentAccess[] o = sorted.toArray(new ComponentAccess[sorted.size()]);
+        int[][] succ = new int[o.length][];
+        int[] pred = new int[o.length];
+        for (int i = 0; i < o.length; i++) {
+            Set<ComponentAccess> tos = successors.get(o[i]);
+            succ[i] = new int[tos == null ? 0 : tos.size()];
+            int k = 0;
+            if (tos != null) {
+                for (ComponentAccess to : tos) {
+                    succ[i][k++] = position.get(to);
+                }
+            }
+            pred[i] = incoming.get(o[i]);
         }
+        successorIndexes = succ;
+        predecessors = pred;
+        order = o;
     }
 
     /**
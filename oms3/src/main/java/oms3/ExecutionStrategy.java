@@ -0,0 +1,66 @@
+/*
+ * $Id$
+ * 
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ * 
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ * 
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ * 
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ * 
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3;
+
+/**
+ * How a {@link Compound} runs its components on every execution.
+ *
+ * @author od
+ * @version $Id$
+ */
+public enum ExecutionStrategy {
+
+    /**
+     * Every component is started on its own thread and waits for its
+     * inputs to arrive. This is the original behavior.
+     */
+    PARALLEL,
+    /**
+     * Components are submitted to a shared work stealing pool only once
+     * all the components they read from are done, so no thread is ever
+     * blocked waiting for an input.
+     */
+    WORK_STEALING,
+    /**
+     * Components run one after the other on the calling thread, in an
+     * order computed once from the connections between their fields.
+     */
+    SEQUENTIAL;
+
+    /**
+     * Get the strategy set with the system property <code>oms.execution.strategy</code>.
+     *
+     * @return the configured strategy, {@link #PARALLEL} if not set.
+     */
+    static ExecutionStrategy fromSystem() {
+        String name = System.getProperty("oms.execution.strategy");
+        if (name == null || name.trim().isEmpty()) {
+            return PARALLEL;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ComponentException("Unknown execution strategy: " + name);
+        }
+    }
+}
@@ -16,6 +16,7 @@ class FieldAccess implements Access {
     Notification ens;
     Field field;
     Object comp;
+    Accessors.FieldAccessor accessor;
     FieldContent data;
     private static final Logger log = Logger.getLogger("oms3.sim");
 
@@ -26,6 +27,7 @@ class FieldAccess implements Access {
         this.comp = target;
         this.ens = ens;
         field.setAccessible(true);   // just in case
+        accessor = Accessors.of(target.getClass()).field(field);
 //        access = Utils.compiled(comp, field);
     }
 
@@ -84,7 +86,7 @@ class FieldAccess implements Access {
         
         // type conversion
         
-        if (val != null && field.getType() != val.getClass() && !field.getType().isAssignableFrom(val.getClass())) {
+        if (val != null && accessor.valueType != val.getClass() && !field.getType().isAssignableFrom(val.getClass())) {
 //            // default type conversion fails, we need to convert.
 //            // this will use the Conversions SPI.
             val = Conversions.convert(val, field.getType());
@@ -144,7 +146,7 @@ class FieldAccess implements Access {
      */
     @Override
     final public Object getFieldValue() throws Exception {
-        return field.get(comp);
+        return accessor.get(comp);
     }
 
     /**
@@ -155,7 +157,7 @@ class FieldAccess implements Access {
      */
     @Override
     final public void setFieldValue(Object o) throws Exception {
-        field.set(comp, o);
+        accessor.set(comp, o);
     }
 
     @Override
@@ -37,18 +37,20 @@ public class FieldContent {
 
         Field field;
         Object obj;
+        Accessors.FieldAccessor accessor;
 
         FA(Object obj, String name) throws Exception {
             this.obj = obj;
-            field = obj.getClass().getField(name);
+            accessor = Accessors.of(obj.getClass()).field(name);
+            field = accessor.field;
         }
 
         Object getFieldValue() throws Exception {
-            return field.get(obj);
+            return accessor.get(obj);
         }
 
         void setFieldValue(Object o) throws Exception {
-            field.set(obj, o);
+            accessor.set(obj, o);
         }
     }
 
@@ -148,6 +148,24 @@ public class Output implements Buildable {
         return LEAF;
     }
 
+    /** Copy this output definition. The copy keeps its own writer and
+     * values, so it can be set up on another component at the same time.
+     *
+     * @return the copy
+     */
+    public Output copy() {
+        Output o = new Output();
+        o.file = file;
+        o.fformat = fformat;
+        o.dformat = dformat;
+        o.dfmt = (SimpleDateFormat) dfmt.clone();
+        for (V v : vars) {
+            o.vars.add(o.new V(v.token, v.name, v.idx));
+        }
+        o.d.addAll(d);
+        return o;
+    }
+
     public void setup(Object comp, File dir, final String header) throws IOException {
         printHeader = true;
         if (!dir.exists()) {
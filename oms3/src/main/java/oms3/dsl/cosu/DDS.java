@@ -16,12 +16,9 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import oms3.Notification.*;
 import ngmf.util.OutputStragegy;
+import ngmf.util.cosu.ParallelEvaluator;
 import ngmf.util.cosu.luca.ParameterData;
-import oms3.ComponentAccess;
 import oms3.Conversions;
-import oms3.annotations.Execute;
-import oms3.annotations.Finalize;
-import oms3.annotations.Initialize;
 import oms3.io.CSTable;
 import oms3.io.DataIO;
 
@@ -36,6 +33,7 @@ public class DDS extends AbstractSimulation {
     Params params = new Params();
     Date sens_start;
     Date sens_end;
+    int threads = 1;
     
      List<ObjFunc> ofs = new ArrayList<ObjFunc>();
 
@@ -57,6 +55,11 @@ public class DDS extends AbstractSimulation {
             if (terms != 4 && terms != 6) {
                 throw new IllegalArgumentException("terms 4 or 6 !");
             }
+        } else if (name.equals("threads")) {
+            threads = (Integer) value;
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads: " + threads);
+            }
         } else if (name.equals("sens_start")) {
             sens_start = Conversions.convert(value, Date.class);
         } else if (name.equals("sens_end")) {
@@ -136,53 +139,60 @@ public class DDS extends AbstractSimulation {
         double[] Vex = new double[npar];
         double[] Sex_par = new double[npar];
 
-        for (int h = 0; h < npar; h++) {
-            // Compute realizations
-            for (int j = 0; j < N; j++) {
-                for (int i = 0; i < npar; i++) {
-                    double p = 0.5 + Math.asin(Math.sin(w2[h][i] * s[j])) / Math.PI;
-                    Param par = pList.get(i);
-                    x[j][i] = p * (par.getUpper() - par.getLower()) + par.getLower();
+        ParallelEvaluator evaluator = evaluator(model, out, folder, name);
+        try {
+            for (int h = 0; h < npar; h++) {
+                // Compute realizations, the model runs of a parameter are independent
+                for (int j = 0; j < N; j++) {
+                    for (int i = 0; i < npar; i++) {
+                        double p = 0.5 + Math.asin(Math.sin(w2[h][i] * s[j])) / Math.PI;
+                        Param par = pList.get(i);
+                        x[j][i] = p * (par.getUpper() - par.getLower()) + par.getLower();
+                    }
                 }
-                y[j] = run_model(model, out, folder, name, x[j]);
-                System.out.println("par:" + h + " N:" + j + " of:" + y[j]);
-            }
-            // Compute total variance
-            V[h] = 0;
-            for (int k = 1; k <= ((N - 1) / 2); k++) {
-                double A = 0, B = 0;
+                y = evaluator.evaluate(x);
                 for (int j = 0; j < N; j++) {
-                    A += y[j] * Math.cos(s[j] * k);
-                    B += y[j] * Math.sin(s[j] * k);
+                    System.out.println("par:" + h + " N:" + j + " of:" + y[j]);
                 }
-                double ak = A * 2 / N;
-                double bk = B * 2 / N;
-                Ak[k - 1] = ak;
-                Bk[k - 1] = bk;
-                V[h] += ak * ak + bk * bk;
-            }
-            VT[h] = V[h] / 2;
-            //Compute partial variance
-            V[h] = 0;
-            for (int q = 1; q <= M; q++) {
-                int idx = (int) (q * w2[h][h]) - 1;
-                V[h] += Ak[idx] * Ak[idx] + Bk[idx] * Bk[idx];
-            }
-            V[h] /= 2;
-            S_par[h] = V[h] / VT[h];
-
-            //Compute Extended partial variance
-            Vex[h] = 0;
-            for (int q = 1; q <= M; q++) {
-                for (int c = 0; c < npar; c++) {
-                    if (c != h) {
-                        int idx = (int) (q * w2[h][c]) - 1;
-                        Vex[h] += Ak[idx] * Ak[idx] + Bk[idx] * Bk[idx];
+                // Compute total variance
+                V[h] = 0;
+                for (int k = 1; k <= ((N - 1) / 2); k++) {
+                    double A = 0, B = 0;
+                    for (int j = 0; j < N; j++) {
+                        A += y[j] * Math.cos(s[j] * k);
+                        B += y[j] * Math.sin(s[j] * k);
                     }
+                    double ak = A * 2 / N;
+                    double bk = B * 2 / N;
+                    Ak[k - 1] = ak;
+                    Bk[k - 1] = bk;
+                    V[h] += ak * ak + bk * bk;
+                }
+                VT[h] = V[h] / 2;
+                //Compute partial variance
+                V[h] = 0;
+                for (int q = 1; q <= M; q++) {
+                    int idx = (int) (q * w2[h][h]) - 1;
+                    V[h] += Ak[idx] * Ak[idx] + Bk[idx] * Bk[idx];
                 }
+                V[h] /= 2;
+                S_par[h] = V[h] / VT[h];
+
+                //Compute Extended partial variance
+                Vex[h] = 0;
+                for (int q = 1; q <= M; q++) {
+                    for (int c = 0; c < npar; c++) {
+                        if (c != h) {
+                            int idx = (int) (q * w2[h][c]) - 1;
+                            Vex[h] += Ak[idx] * Ak[idx] + Bk[idx] * Bk[idx];
+                        }
+                    }
+                }
+                Vex[h] /= 2;
+                Sex_par[h] = 1 - Vex[h] / VT[h];
             }
-            Vex[h] /= 2;
-            Sex_par[h] = 1 - Vex[h] / VT[h];
+        } finally {
+            evaluator.shutdown();
         }
 
         System.out.println();
@@ -205,55 +215,36 @@ public class DDS extends AbstractSimulation {
         System.out.println(b.toString());
     }
 
-    private double run_model(Model model, List<Output> out, File folder, String simName, double[] x) throws Exception {
-
-        Map<String, Object> parameter = model.getParameter();
-        Object comp = model.getComponent();
-
-        // spatial params
-        ParameterData[] pd = Step.create(params, parameter);
-        for (int i = 0; i < pd.length; i++) {
-            pd[i].generateValues(x[i]);
-        }
-
-        for (int i = 0; i < pd.length; i++) {
-            String name = pd[i].getName();
-            double[] val = pd[i].getDataValue();
-            parameter.put(name, toValue(name, val, parameter));
-        }
-
-        ComponentAccess.callAnnotated(comp, Initialize.class, true);
-
-        // setting the input data;
-        boolean success = ComponentAccess.setInputData(parameter, comp, log);
-        if (!success) {
-            throw new RuntimeException("There are Parameter problems. Simulation exits.");
-        }
-
-        ComponentAccess.adjustOutputPath(folder, comp, log);
-        for (Output e : out) {
-            e.setup(comp, folder, simName);
-        }
-        // execute phases and be done.
-        log.config("Exec ...");
-        ComponentAccess.callAnnotated(comp, Execute.class, false);
-        log.config("Finalize ...");
-        ComponentAccess.callAnnotated(comp, Finalize.class, true);
-
-        for (Output e : out) {
-            e.done();
-        }
-
-        return ObjFunc.calculateObjectiveFunctionValue(ofs, sens_start, sens_end, folder);
-    }
+    private ParallelEvaluator evaluator(final Model model, final List<Output> out, final File folder, final String simName) throws Exception {
+        // the values are always generated from the original parameter
+        final Map<String, Object> original = model.getParameter();
+        return new ParallelEvaluator(new ParallelEvaluator.Factory() {
+
+            @Override
+            public ParallelEvaluator.Evaluation create(int worker) throws Exception {
+                return new ModelRun(model, original, out, ModelRun.workerFolder(folder, worker, threads), simName, log) {
+
+                    @Override
+                    void setParameter(double[] x, Map<String, Object> parameter) {
+                        // spatial params
+                        ParameterData[] pd = Step.create(params, original);
+                        for (int i = 0; i < pd.length; i++) {
+                            pd[i].generateValues(x[i]);
+                        }
+
+                        for (int i = 0; i < pd.length; i++) {
+                            String name = pd[i].getName();
+                            double[] val = pd[i].getDataValue();
+                            parameter.put(name, toValue(name, val, parameter));
+                        }
+                    }
 
-    private Object toValue(String name, double[] vals, Map<String, Object> parameter) {
-        Object orig = parameter.get(name);
-        if (orig.toString().indexOf('{') > -1) {
-            // this is an array (hopefully 1dim)
-            return Conversions.convert(vals, String.class);
-        } else {
-            return Double.toString(vals[0]);
-        }
+                    @Override
+                    double objectiveFunction(File folder) {
+                        return ObjFunc.calculateObjectiveFunctionValue(ofs, sens_start, sens_end, folder);
+                    }
+                };
+            }
+        }, threads);
     }
 }
@@ -9,9 +9,11 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import ngmf.util.OutputStragegy;
+import ngmf.util.cosu.ParallelEvaluator;
 import ngmf.util.cosu.luca.ExecutionHandle;
 import ngmf.util.cosu.luca.ParameterData;
 import ngmf.util.cosu.luca.SCE;
@@ -35,6 +37,8 @@ public class Luca extends AbstractSimulation {
     //
     Date calib_start;           // Calibration start date
     int rounds = 1;             // number of rounds
+    int threads = 1;            // number of parallel model executions
+    Long seed;                  // seed of the random generator, none for a random seed
 
     @Override
     public Buildable create(Object name, Object value) {
@@ -47,6 +51,13 @@ public class Luca extends AbstractSimulation {
             if (rounds < 1) {
                 throw new ComponentException("Illegal 'rounds': " + rounds);
             }
+        } else if (name.equals("threads")) {
+            threads = (Integer) value;
+            if (threads < 1) {
+                throw new ComponentException("Illegal 'threads': " + threads);
+            }
+        } else if (name.equals("seed")) {
+            seed = Conversions.convert(value, Long.class);
         } else if (name.equals("calibration_start")) {
             calib_start = Conversions.convert(value, Date.class);
         } else {
@@ -77,13 +88,28 @@ public class Luca extends AbstractSimulation {
             step.init(exec, calib_start, endTime, rounds);
         }
 
+        String libPath = getModel().getLibpath();
+        if (libPath != null) {
+            System.setProperty("jna.library.path", libPath);
+            if (log.isLoggable(Level.CONFIG)) {
+                log.config("Setting jna.library.path to " + libPath);
+            }
+        }
+
+        Random random = seed == null ? new Random() : new Random(seed);
+
         for (int r = 0; r < rounds; r++) {
             for (int s = 0; s < steps.size(); s++) {
                 Step step = steps.get(s);
                 Data stepData = step.round()[r];
                 System.out.println("\n\n>>>>>>>>>>>>>>  Round [" + (r + 1) + "]  Step [" + step.getName() + "] <<<<<<<<<<<<<<");
-                SCE sce = new SCE(exec, step, stepData);
-                sce.run();
+                ParallelEvaluator evaluator = exec.evaluator(step, stepData);
+                try {
+                    SCE sce = new SCE(exec, step, stepData, evaluator, random.nextLong());
+                    sce.run();
+                } finally {
+                    evaluator.shutdown();
+                }
                 exec.writeParameterCopy(step, r);
                 step.post(r, stepData);
                 Runtime.getRuntime().gc();
@@ -156,6 +182,46 @@ public class Luca extends AbstractSimulation {
 
         @Override
         public void writeParameterFile(Step.Data step) {
+            writeParameter(step, parameter);
+        }
+
+        /** Create the parallel model executions of a step, every worker
+         * runs on its own copy of the step data.
+         */
+        ParallelEvaluator evaluator(final Step step, final Step.Data data) throws Exception {
+            return new ParallelEvaluator(new ParallelEvaluator.Factory() {
+
+                @Override
+                public ParallelEvaluator.Evaluation create(int worker) throws Exception {
+                    final Step.Data workerData = data.copy();
+                    File folder = ModelRun.workerFolder(lastFolder, worker, threads);
+                    return new ModelRun(getModel(), parameter, getOut(), folder, getName(), log) {
+
+                        @Override
+                        void setParameter(double[] point, Map<String, Object> parameter) {
+                            workerData.setParamValues(point);
+                            writeParameter(workerData, parameter);
+                        }
+
+                        @Override
+                        double objectiveFunction(File folder) {
+                            return step.calculateObjectiveFunctionValue(folder);
+                        }
+                    };
+                }
+            }, threads);
+        }
+        
+
+        public void writeParameterCopy(Step step, int round) throws FileNotFoundException {
+            File params = new File(lastFolder, "round-" + (round + 1) + "_step-" + step.getName() + ".csv");
+            System.out.println(" Final parameter file: '" + params + "'");
+            PrintWriter pw = new PrintWriter(params);
+            DataIO.print(parameter, "Parameter", pw);
+            pw.close();
+        }
+
+        private void writeParameter(Step.Data step, Map<String, Object> parameter) {
             ParameterData[] paramData = step.paramData;
             for (int i = 0; i < paramData.length; i++) {
                 String name = paramData[i].getName();
@@ -168,42 +234,12 @@ public class Luca extends AbstractSimulation {
                     for (int j=0; j< val.length; j++) {
                         ival[j] = (int) val[j];
                     }
-                    parameter.put(name, toValueI(name,ival));
+                    parameter.put(name, ModelRun.toValue(name, ival, parameter));
                 }
                 else {      
-                    parameter.put(name, toValue(name, val));
+                    parameter.put(name, ModelRun.toValue(name, val, parameter));
                 }
             }
         }
-        
-
-        public void writeParameterCopy(Step step, int round) throws FileNotFoundException {
-            File params = new File(lastFolder, "round-" + (round + 1) + "_step-" + step.getName() + ".csv");
-            System.out.println(" Final parameter file: '" + params + "'");
-            PrintWriter pw = new PrintWriter(params);
-            DataIO.print(parameter, "Parameter", pw);
-            pw.close();
-        }
-
-        private Object toValue(String name, double[] vals) {
-            Object orig = parameter.get(name);
-            if (orig.toString().indexOf('{') > -1) {
-                // this is an array (hopefully 1dim)
-                return Conversions.convert(vals, String.class);
-            } else {
-                return Double.toString(vals[0]);
-            }
-        }
-        
-        private Object toValueI(String name, int[] vals) {
-            Object orig = parameter.get(name);
-            if (orig.toString().indexOf('{') > -1) {
-                // this is an array (hopefully 1dim)
-                return Conversions.convert(vals, String.class);
-            } else {
-                return Integer.toString(vals[0]);
-            }
-        }
-        
     }
 }
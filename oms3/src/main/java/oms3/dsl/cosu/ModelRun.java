@@ -0,0 +1,160 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3.dsl.cosu;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import ngmf.util.cosu.ParallelEvaluator;
+import oms3.ComponentAccess;
+import oms3.Conversions;
+import oms3.annotations.Execute;
+import oms3.annotations.Finalize;
+import oms3.annotations.Initialize;
+import oms3.dsl.Model;
+import oms3.dsl.Output;
+import oms3.io.CSProperties;
+import oms3.io.DataIO;
+
+/** A model execution isolated from the other workers of a
+ * {@link ParallelEvaluator}.
+ *
+ * <p>Every run uses a new instance of the model component. The parameter
+ * map, the outputs and the output folder belong to this worker only, so
+ * runs of different workers can execute at the same time.</p>
+ *
+ * @author od
+ */
+abstract class ModelRun implements ParallelEvaluator.Evaluation {
+
+    final Class<?> componentClass;
+    final CSProperties parameter;
+    final List<Output> out = new ArrayList<Output>();
+    final File folder;
+    final String simName;
+    final Logger log;
+
+    /** Create a worker.
+     *
+     * @param model the model
+     * @param parameter the model parameter, copied.
+     * @param out the outputs, copied.
+     * @param folder the output folder of the worker
+     * @param simName the simulation name
+     * @param log the logger
+     * @throws Exception
+     */
+    ModelRun(Model model, Map<String, Object> parameter, List<Output> out, File folder, String simName, Logger log) throws Exception {
+        this.componentClass = model.getComponent().getClass();
+        this.parameter = DataIO.properties(parameter);
+        for (Output o : out) {
+            this.out.add(o.copy());
+        }
+        this.folder = folder;
+        this.simName = simName;
+        this.log = log;
+        folder.mkdirs();
+    }
+
+    /** Put the values of a point into the parameter of the worker.
+     *
+     * @param point the parameter values
+     * @param parameter the parameter map of this worker
+     */
+    abstract void setParameter(double[] point, Map<String, Object> parameter);
+
+    /** Calculate the objective function on the output of a run.
+     *
+     * @param folder the output folder of this worker
+     * @return the objective function value
+     */
+    abstract double objectiveFunction(File folder);
+
+    @Override
+    public double evaluate(double[] point) throws Exception {
+        setParameter(point, parameter);
+        Object comp = componentClass.newInstance();
+
+        ComponentAccess.callAnnotated(comp, Initialize.class, true);
+
+        // setting the input data;
+        boolean success = ComponentAccess.setInputData(parameter, comp, log);
+        if (!success) {
+            throw new RuntimeException("There are Parameter problems. Simulation exits.");
+        }
+
+        ComponentAccess.adjustOutputPath(folder, comp, log);
+        for (Output e : out) {
+            e.setup(comp, folder, simName);
+        }
+        // execute phases and be done.
+        ComponentAccess.callAnnotated(comp, Execute.class, false);
+        ComponentAccess.callAnnotated(comp, Finalize.class, true);
+
+        for (Output e : out) {
+            e.done();
+        }
+        return objectiveFunction(folder);
+    }
+
+    /** The output folder of a worker. A single worker writes into the
+     * simulation folder.
+     *
+     * @param folder the simulation output folder
+     * @param worker the worker index
+     * @param threads the number of workers
+     * @return the folder of the worker.
+     */
+    static File workerFolder(File folder, int worker, int threads) {
+        return threads == 1 ? folder : new File(folder, "worker-" + (worker + 1));
+    }
+
+    /** Convert parameter values to the format of the original parameter.
+     *
+     * @param name the parameter name
+     * @param vals the values
+     * @param parameter the parameter map
+     * @return the value to put in the map
+     */
+    static Object toValue(String name, double[] vals, Map<String, Object> parameter) {
+        Object orig = parameter.get(name);
+        if (orig.toString().indexOf('{') > -1) {
+            // this is an array (hopefully 1dim)
+            return Conversions.convert(vals, String.class);
+        } else {
+            return Double.toString(vals[0]);
+        }
+    }
+
+    static Object toValue(String name, int[] vals, Map<String, Object> parameter) {
+        Object orig = parameter.get(name);
+        if (orig.toString().indexOf('{') > -1) {
+            // this is an array (hopefully 1dim)
+            return Conversions.convert(vals, String.class);
+        } else {
+            return Integer.toString(vals[0]);
+        }
+    }
+}
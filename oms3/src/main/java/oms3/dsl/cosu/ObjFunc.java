@@ -17,6 +17,7 @@ import oms3.ObjectiveFunction;
 import oms3.SimConst;
 import oms3.dsl.Buildable;
 import oms3.io.CSTable;
+import oms3.io.ColumnTable;
 import oms3.io.DataIO;
 
 /** Objective function handling. 
@@ -164,11 +165,12 @@ public class ObjFunc implements Buildable {
                 else if(timeStepString.equals(SimConst.PERIOD_STANDARD_DEVIATION)) timeStep = DataIO.PERIOD_STANDARD_DEVIATION;
                 else throw new IllegalArgumentException("TimeStep " + timeStepString + "unknown.");
                 
-                CSTable tobs = DataIO.table(resolve(obs.getFile(), folder), obs.getTable());
+                // observations are the same at every run, the parsed table is cached
+                CSTable tobs = DataIO.columnTable(resolve(obs.getFile(), folder), obs.getTable());
                 double[] obsval = DataIO.getColumnDoubleValuesInterval(start, end, tobs, obs.getColumn(), timeStep);
                 
                 CSVColumn sim = of.getSimulated();
-                CSTable tsim = DataIO.table(resolve(sim.getFile(), folder), sim.getTable());
+                CSTable tsim = ColumnTable.load(resolve(sim.getFile(), folder), sim.getTable(), false);
                 double[] simval = DataIO.getColumnDoubleValuesInterval(start, end, tsim, sim.getColumn(), timeStep);
 
                 weight += of.getWeight();
@@ -191,6 +191,17 @@ public class Step implements Buildable {
             bestOFPoint = 0.0;
             }
 
+        /** A copy of the parameter data, to be changed independently
+         * from this one.
+         */
+        Data copy() {
+            Data d = new Data();
+            d.round = round;
+            d.init(paramData);
+            d.createBestParamData();
+            return d;
+        }
+
         public void setObjFuncValueOfBestPoint(double d) {
             bestOFPoint = d;
         }
@@ -348,6 +359,15 @@ public class Step implements Buildable {
         return ObjFunc.calculateObjectiveFunctionValue(ofs, calibStart, calibEnd, outFolder);
     }
 
+    /** Calculate the objective function on the output of a run in the given folder.
+     *
+     * @param folder the output folder of the run
+     * @return the objective function value
+     */
+    public double calculateObjectiveFunctionValue(File folder) {
+        return ObjFunc.calculateObjectiveFunctionValue(ofs, calibStart, calibEnd, folder);
+    }
+
 //    public static void main(String[] args) {
 //       ParameterData p = new ParameterData("ggg");
 //       p.set(new double[] {2.3}, 0, 4, ParameterData.MEAN, new boolean[] {true});
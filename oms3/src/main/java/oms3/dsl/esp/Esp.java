@@ -7,6 +7,13 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import ngmf.util.OutputStragegy;
@@ -28,6 +35,9 @@ public class Esp extends AbstractSimulation {
     //
     int fc;
     Calendar fc_end;
+    // ensemble
+    int threads = 1;
+    String trace_var;
 
     @Override
     public Buildable create(Object name, Object value) {
@@ -44,6 +54,13 @@ public class Esp extends AbstractSimulation {
             first_year = (Integer) value;
         } else if (name.equals("last_year")) {
             last_year = (Integer) value;
+        } else if (name.equals("threads")) {
+            threads = (Integer) value;
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads < 1");
+            }
+        } else if (name.equals("trace_var")) {
+            trace_var = value.toString();
         } else {
             return super.create(name, value);
         }
@@ -77,82 +94,162 @@ public class Esp extends AbstractSimulation {
         }
 
         OutputStragegy st = getOutput().getOutputStrategy(getName());
-        File lastFolder = st.nextOutputFolder();
+        final File lastFolder = st.nextOutputFolder();
         if (log.isLoggable(Level.CONFIG)) {
             log.config("Simulation output folder: " + lastFolder);
         }
         lastFolder.mkdirs();
-        PrintWriter res = new PrintWriter(new File(lastFolder, "result.csv"));
-        res.println("@S, Result");
 
-        Calendar start = null;
-        Calendar end = null;
+        // the parameter is parsed once, the first member sets up the forecast period.
+        final Map<String, Object> parameter = getModel().getParameter();
+        final Class<?> compClass = getModel().getComponent().getClass();
+        final Object first = setup(compClass, parameter, traceFolder(lastFolder, first_year));
+        if (first == null) {
+            System.out.println("There are Parameter problems. Simulation exits.");
+            return null;
+        }
 
-        System.out.print(" Running ESP Traces ");
-        for (int year = first_year; year <= last_year; year++) {
-            System.out.print(" " + year);
-
-            Object comp = getModel().getComponent();
-            log.config("Init ...");
-            ComponentAccess.callAnnotated(comp, Initialize.class, true);
-
-            // setting the input data;
-            Map<String, Object> parameter = getModel().getParameter();
-            boolean success = ComponentAccess.setInputData(parameter, comp, log);
-            if (!success) {
-                System.out.println("There are Parameter problems. Simulation exits.");
-                return null;
-            }
+        final Calendar start = (Calendar) compClass.getField("startTime").get(first);
+        final Calendar end = (Calendar) compClass.getField("endTime").get(first);
+        final File input_file = (File) compClass.getField("inputFile").get(first);
+        if (start.after(end)) {
+            throw new IllegalArgumentException("illegal startTime/endTime.");
+        }
 
-            boolean adjusted = ComponentAccess.adjustOutputPath(lastFolder, comp, log);
-            if (adjusted) {
-                lastFolder.mkdirs();
-            }
+        if (fc == 0) {
+            fc = (int) Times.diffDayPeriods(end, fc_end);
+        } else {
+            fc_end = new GregorianCalendar();
+            fc_end.setTime(end.getTime());
+            fc_end.add(Calendar.DATE, fc);
+        }
 
-            start = (Calendar) comp.getClass().getField("startTime").get(comp);
-            end = (Calendar) comp.getClass().getField("endTime").get(comp);
-            File input_file = (File) comp.getClass().getField("inputFile").get(comp);
-            File out_file = (File) comp.getClass().getField("outFile").get(comp);
-            if (start.after(end)) {
-                throw new IllegalArgumentException("illegal startTime/endTime.");
-            }
+        // the historical input, shared by all members
+        final CSTable t = DataIO.columnTable(input_file, "obs");
+
+        Calendar fc_start = new GregorianCalendar();
+        fc_start.setTime(end.getTime());
+        fc_start.add(Calendar.DATE, 1);
+        final EspEnsemble ensemble = trace_var == null ? null
+                : new EspEnsemble(trace_var, fc_start.getTime(), fc_end.getTime());
 
-            if (fc == 0) {
-                fc = (int) Times.diffDayPeriods(end, fc_end);
-            } else {
-                fc_end = new GregorianCalendar();
-                fc_end.setTime(end.getTime());
-                fc_end.add(Calendar.DATE, fc);
+        System.out.print(" Running ESP Traces ");
+        Map<Integer, File> traces = new TreeMap<Integer, File>();
+        int members = last_year - first_year + 1;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, members)));
+        try {
+            CompletionService<Object[]> done = new ExecutorCompletionService<Object[]>(executor);
+            for (int year = first_year; year <= last_year; year++) {
+                final int y = year;
+                final Object comp = (year == first_year) ? first : null;
+                done.submit(new Callable<Object[]>() {
+
+                    @Override
+                    public Object[] call() throws Exception {
+                        File folder = traceFolder(lastFolder, y);
+                        Object c = comp;
+                        if (c == null) {
+                            c = setup(compClass, parameter, folder);
+                            if (c == null) {
+                                throw new RuntimeException("There are Parameter problems. Simulation exits.");
+                            }
+                        }
+                        File outFile = runTrace(c, t, start, end, input_file, folder, y);
+                        if (ensemble != null) {
+                            ensemble.add(y, outFile);
+                        }
+                        return new Object[]{y, outFile};
+                    }
+                });
+            }
+            for (int i = 0; i < members; i++) {
+                try {
+                    Object[] trace = done.take().get();
+                    System.out.print(" " + trace[0]);
+                    traces.put((Integer) trace[0], (File) trace[1]);
+                } catch (ExecutionException E) {
+                    Throwable cause = E.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw E;
+                }
             }
+        } finally {
+            executor.shutdownNow();
+        }
 
-            CSTable t = DataIO.table(input_file, "obs");
-            CSTable esp = DataIO.synthESPInput(t, start.getTime(), end.getTime(), fc, year);
-            File new_input_file = new File(lastFolder, "esp-" + year + "-" + input_file.getName());
-            PrintWriter w = new PrintWriter(new_input_file);
-            DataIO.print(esp, w);
-            w.close();
-
-            File new_outFile = new File(out_file.getParent(), "esp-" + year + "-" + out_file.getName());
-
-            comp.getClass().getField("inputFile").set(comp, new_input_file);
-            comp.getClass().getField("outFile").set(comp, new_outFile);
-            comp.getClass().getField("endTime").set(comp, fc_end);
-
-            // execute phases and be done.
-            log.config("Exec ...");
-            ComponentAccess.callAnnotated(comp, Execute.class, false);
-            log.config("Finalize ...");
-            ComponentAccess.callAnnotated(comp, Finalize.class, true);
-            res.println(" trace." + year + ", \"" + new_outFile.toString() + "\"");
+        PrintWriter res = new PrintWriter(new File(lastFolder, "result.csv"));
+        res.println("@S, Result");
+        for (Map.Entry<Integer, File> trace : traces.entrySet()) {
+            res.println(" trace." + trace.getKey() + ", \"" + trace.getValue().toString() + "\"");
         }
         res.println(" initstart, " + Conversions.formatISO(start.getTime()));
         res.println(" initend, " + Conversions.formatISO(end.getTime()));
         res.println(" forecastend, " + Conversions.formatISO(fc_end.getTime()));
         res.println(" firstyear, " + first_year);
         res.println(" lastyear, " + last_year);
+        if (ensemble != null) {
+            File ens = new File(lastFolder, "esp-traces.csv");
+            ensemble.write(ens);
+            res.println(" ensemble, \"" + ens.toString() + "\"");
+        }
         res.close();
         System.out.println();
         Compound.shutdown();
         return null;
     }
+
+    /** The output folder of a trace. Traces running in parallel get
+     * their own folder, so that the model outputs do not collide.
+     */
+    File traceFolder(File folder, int year) {
+        return threads == 1 ? folder : new File(folder, "trace-" + year);
+    }
+
+    /** Create and initialize a member component.
+     *
+     * @return the component, or null if the parameter cannot be set.
+     */
+    Object setup(Class<?> compClass, Map<String, Object> parameter, File folder) throws Exception {
+        Object comp = compClass.newInstance();
+        log.config("Init ...");
+        ComponentAccess.callAnnotated(comp, Initialize.class, true);
+
+        // setting the input data;
+        boolean success = ComponentAccess.setInputData(DataIO.properties(parameter), comp, log);
+        if (!success) {
+            return null;
+        }
+        folder.mkdirs();
+        ComponentAccess.adjustOutputPath(folder, comp, log);
+        return comp;
+    }
+
+    /** Run a member on the input of a historical year.
+     *
+     * @return the output file of the trace.
+     */
+    File runTrace(Object comp, CSTable t, Calendar start, Calendar end, File input_file, File folder, int year) throws Exception {
+        File out_file = (File) comp.getClass().getField("outFile").get(comp);
+
+        CSTable esp = DataIO.synthESPInput(t, start.getTime(), end.getTime(), fc, year);
+        File new_input_file = new File(folder, "esp-" + year + "-" + input_file.getName());
+        PrintWriter w = new PrintWriter(new_input_file);
+        DataIO.print(esp, w);
+        w.close();
+
+        File new_outFile = new File(out_file.getParent(), "esp-" + year + "-" + out_file.getName());
+
+        comp.getClass().getField("inputFile").set(comp, new_input_file);
+        comp.getClass().getField("outFile").set(comp, new_outFile);
+        comp.getClass().getField("endTime").set(comp, fc_end.clone());
+
+        // execute phases and be done.
+        log.config("Exec ...");
+        ComponentAccess.callAnnotated(comp, Execute.class, false);
+        log.config("Finalize ...");
+        ComponentAccess.callAnnotated(comp, Finalize.class, true);
+        return new_outFile;
+    }
 }
@@ -0,0 +1,192 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3.dsl.esp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import oms3.Conversions;
+import oms3.io.CSTable;
+import oms3.io.DataIO;
+import org.omscentral.modules.analysis.esp.ESPTimeSeries;
+import org.omscentral.modules.analysis.esp.EnsembleData;
+import org.omscentral.modules.analysis.esp.EnsembleListLabel;
+import org.omscentral.modules.analysis.esp.ModelDateTime;
+
+/** The traces of an ESP run, collected while the members finish.
+ *
+ * <p>Every trace is kept as a column of values, all of them sharing the
+ * dates of the first trace added. Volume, peak and time to peak over the
+ * forecast period are computed when a trace is added, ranks and exceedance
+ * probabilities once all the traces are in.</p>
+ *
+ * @author od
+ */
+class EspEnsemble {
+
+    static final String TRACES = "traces";
+    static final String ANALYSIS = "analysis";
+    //
+    final String var;
+    final Date forecastStart;
+    final Date forecastEnd;
+    //
+    Date[] dates;
+    final Map<Integer, double[]> traces = new TreeMap<Integer, double[]>();
+    final Map<Integer, EnsembleListLabel> stats = new TreeMap<Integer, EnsembleListLabel>();
+    final Map<Integer, Date> peakDates = new TreeMap<Integer, Date>();
+
+    /** Create an ensemble.
+     *
+     * @param var the output variable of the traces
+     * @param forecastStart the first day of the forecast
+     * @param forecastEnd the last day of the forecast
+     */
+    EspEnsemble(String var, Date forecastStart, Date forecastEnd) {
+        this.var = var;
+        this.forecastStart = forecastStart;
+        this.forecastEnd = forecastEnd;
+    }
+
+    /** Add the trace of a member from its output file.
+     *
+     * @param year the historical year of the member
+     * @param outFile the output file, with an 'efc' table.
+     * @throws IOException
+     */
+    void add(int year, File outFile) throws IOException {
+        CSTable table = DataIO.table(outFile, "efc");
+        Date[] d = DataIO.getColumnDateValues(table, "date");
+        Double[] v = DataIO.getColumnDoubleValues(table, var);
+        double[] values = new double[v.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = v[i];
+        }
+        add(year, d, values);
+    }
+
+    /** Add the trace of a member.
+     *
+     * @param year the historical year of the member
+     * @param d the dates
+     * @param values the values of the trace variable
+     */
+    synchronized void add(int year, Date[] d, double[] values) {
+        if (dates == null) {
+            dates = d;
+        } else if (d.length != dates.length) {
+            throw new IllegalArgumentException("trace " + year + ": " + d.length + " values, expected " + dates.length);
+        }
+        traces.put(year, values);
+
+        double[] julian = new double[d.length];
+        ModelDateTime current = new ModelDateTime();
+        for (int i = 0; i < d.length; i++) {
+            current.setTime(d[i]);
+            julian[i] = current.getJulian();
+        }
+        EnsembleListLabel l = new EnsembleListLabel(new ESPTimeSeries(Integer.toString(year), julian, values), null);
+        double volume = 0.0;
+        double peak = 0.0;
+        Date peakDate = forecastStart;
+        for (int i = 0; i < d.length; i++) {
+            if (d[i].before(forecastStart) || d[i].after(forecastEnd)) {
+                continue;
+            }
+            volume += values[i];
+            if (peak < values[i]) {
+                peak = values[i];
+                peakDate = d[i];
+                l.setTimeToPeak(julian[i]);
+            }
+        }
+        l.setTraceVolume(volume);
+        l.setTracePeak(peak);
+        stats.put(year, l);
+        peakDates.put(year, peakDate);
+    }
+
+    /** Rank the traces by volume and by peak.
+     */
+    synchronized void rank() {
+        EnsembleData.sort(new ArrayList<EnsembleListLabel>(stats.values()),
+                new ArrayList<EnsembleListLabel>(stats.values()));
+    }
+
+    /** Write the traces and their analysis.
+     *
+     * @param file the file
+     * @throws IOException
+     */
+    synchronized void write(File file) throws IOException {
+        rank();
+        String pattern = Conversions.ISO().toPattern();
+        PrintWriter w = new PrintWriter(file);
+        w.println("@T, " + TRACES);
+        w.println(" " + DataIO.KEY_CREATED_AT + ", \"" + new Date() + "\"");
+        w.println(" " + DataIO.DATE_FORMAT + ", " + pattern);
+        w.println(" var, " + var);
+        w.print("@H, date");
+        for (Integer year : traces.keySet()) {
+            w.print(", trace." + year);
+        }
+        w.println();
+        w.print(" " + DataIO.KEY_TYPE + ", Date");
+        for (int i = 0; i < traces.size(); i++) {
+            w.print(", Double");
+        }
+        w.println();
+        int rows = dates == null ? 0 : dates.length;
+        for (int i = 0; i < rows; i++) {
+            w.print(", " + Conversions.formatISO(dates[i]));
+            for (double[] values : traces.values()) {
+                w.print(", " + String.format(Locale.US, "%f", values[i]));
+            }
+            w.println();
+        }
+        w.println();
+
+        w.println("@T, " + ANALYSIS);
+        w.println(" " + DataIO.DATE_FORMAT + ", " + pattern);
+        w.println(" forecaststart, " + Conversions.formatISO(forecastStart));
+        w.println(" forecastend, " + Conversions.formatISO(forecastEnd));
+        w.println("@H, year, volume, volume_rank, volume_prob, peak, peak_date, peak_rank, peak_prob");
+        w.println(" " + DataIO.KEY_TYPE + ", Integer, Double, Integer, Double, Double, Date, Integer, Double");
+        for (EnsembleListLabel l : stats.values()) {
+            w.println(", " + l.getTraceYear()
+                    + ", " + String.format(Locale.US, "%f", l.getTraceVolume())
+                    + ", " + l.getVolumeRank()
+                    + ", " + String.format(Locale.US, "%.1f", l.getActVolumeProb())
+                    + ", " + String.format(Locale.US, "%f", l.getTracePeak())
+                    + ", " + Conversions.formatISO(peakDates.get(l.getTraceYear()))
+                    + ", " + l.getPeakRank()
+                    + ", " + String.format(Locale.US, "%.1f", l.getActPeakProb()));
+        }
+        w.close();
+    }
+}
@@ -0,0 +1,891 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import ngmf.util.Validation;
+import oms3.Conversions;
+
+/** Column oriented, typed table.
+ *
+ * <p>The table is parsed once into typed columns: numbers go into
+ * <code>double[]</code>, dates into <code>long[]</code> (epoch millis) and
+ * everything else stays text. The rows are still available as
+ * <code>String[]</code> and are the same as in the source table, so this can be
+ * used wherever a {@link CSTable} is expected. Date columns in ascending order
+ * can be sliced by binary search.</p>
+ *
+ * <p>Tables loaded from files with {@link #load(File, String)} are cached in a
+ * binary file next to the table file. The cache is keyed by the digest of the
+ * table file and by the default time zone the dates were parsed in, and is
+ * memory mapped when loaded.</p>
+ *
+ * @author od
+ */
+public class ColumnTable implements CSTable {
+
+    /** Extension of the binary cache files. */
+    public static final String CACHE_EXT = "ctc";
+
+    public static final int NUMBER = 0;
+    public static final int DATE = 1;
+    public static final int TEXT = 2;
+    static final int UNKNOWN = -1;
+
+    /** the format of the cache, bumped when it changes */
+    private static final int MAGIC = 0x4f435402;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    String name;
+    Map<Integer, Map<String, String>> info = new HashMap<Integer, Map<String, String>>();
+    String[] columnNames;
+    Column[] columns;
+    int rowCount;
+    /** rows with more or less values than columns, as found in the file */
+    Map<Integer, String[]> ragged = new HashMap<Integer, String[]>();
+
+    private ColumnTable() {
+    }
+
+    /** Parse a table into columns.
+     *
+     * @param src the table to parse.
+     */
+    public ColumnTable(CSTable src) {
+        name = src.getName();
+        int colCount = src.getColumnCount();
+        info.put(-1, new LinkedHashMap<String, String>(src.getInfo()));
+        columnNames = new String[colCount + 1];
+        columnNames[0] = "ROW";
+        columns = new Column[colCount + 1];
+        for (int i = 1; i <= colCount; i++) {
+            columnNames[i] = src.getColumnName(i);
+            info.put(i, new LinkedHashMap<String, String>(src.getColumnInfo(i)));
+            columns[i] = new Column(dateFormat(src, i));
+        }
+        for (String[] row : src.rows()) {
+            for (int i = 1; i <= colCount; i++) {
+                columns[i].add(rowCount, i < row.length ? row[i] : null);
+            }
+            if (row.length != colCount + 1) {
+                ragged.put(rowCount, row.clone());
+            }
+            rowCount++;
+        }
+        for (int i = 1; i <= colCount; i++) {
+            columns[i].done(rowCount);
+        }
+    }
+
+    /** Load a table from a file, using the binary cache.
+     *
+     * @param file the table file
+     * @param name the table name, <code>null</code> for the first table.
+     * @return the table
+     * @throws IOException
+     */
+    public static ColumnTable load(File file, String name) throws IOException {
+        return load(file, name, true);
+    }
+
+    /** Load a table from a file.
+     *
+     * @param file the table file
+     * @param name the table name, <code>null</code> for the first table.
+     * @param useCache if <code>true</code> the binary cache is read, and
+     *  written if missing or out of date. Files that change at every run,
+     *  as simulation outputs, are better read without.
+     * @return the table
+     * @throws IOException
+     */
+    public static ColumnTable load(File file, String name, boolean useCache) throws IOException {
+        if (!useCache) {
+            return new ColumnTable(DataIO.table(file, name));
+        }
+        File cache = cacheFile(file, name);
+        String digest = null;
+        if (cache.exists()) {
+            try {
+                CacheHeader header = readCacheHeader(cache);
+                // dates are kept as millis of the time zone they were parsed in
+                if (header != null && TimeZone.getDefault().getID().equals(header.timeZone)) {
+                    if (header.length != file.length() || header.modified != file.lastModified()) {
+                        // touched, or really changed
+                        digest = Validation.hexDigest(DIGEST_ALGORITHM, new File[]{file});
+                    }
+                    if (digest == null || digest.equals(header.digest)) {
+                        if (digest != null) {
+                            // only touched, not to be hashed again at every load
+                            updateCacheHeader(cache, file);
+                        }
+                        return readCache(cache);
+                    }
+                }
+            } catch (IOException E) {
+                // rebuild it
+            }
+        }
+        ColumnTable table = new ColumnTable(DataIO.table(file, name));
+        if (digest == null) {
+            digest = Validation.hexDigest(DIGEST_ALGORITHM, new File[]{file});
+        }
+        try {
+            table.writeCache(cache, file, digest);
+        } catch (IOException E) {
+            // read only folder, live without
+            cache.delete();
+        }
+        return table;
+    }
+
+    /** Get the cache file of a table.
+     *
+     * @param file the table file
+     * @param name the table name
+     * @return the cache file
+     */
+    public static File cacheFile(File file, String name) {
+        String suffix = name == null ? "" : "." + name.replaceAll("[^A-Za-z0-9_\\-]", "_");
+        return new File(file.getAbsoluteFile().getParentFile(), file.getName() + suffix + "." + CACHE_EXT);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Map<String, String> getInfo() {
+        return getColumnInfo(-1);
+    }
+
+    @Override
+    public Map<String, String> getColumnInfo(int column) {
+        return Collections.unmodifiableMap(info.get(column));
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length - 1;
+    }
+
+    /** Get the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /** Get the type of a column.
+     *
+     * @param column the column, starting at 1
+     * @return {@link #NUMBER}, {@link #DATE} or {@link #TEXT}
+     */
+    public int getColumnType(int column) {
+        return columns[column].type;
+    }
+
+    /** Get the values of a number column. Empty values are NaN.
+     *
+     * @param column the column, starting at 1
+     * @return the values, the array of the table, not a copy.
+     */
+    public double[] getNumbers(int column) {
+        Column c = columns[column];
+        if (c.type != NUMBER) {
+            throw new IllegalArgumentException("Not a number column: " + columnNames[column]);
+        }
+        return c.numbers;
+    }
+
+    /** Get the values of a date column.
+     *
+     * @param column the column, starting at 1
+     * @return the times in epoch millis, the array of the table, not a copy.
+     */
+    public long[] getTimes(int column) {
+        Column c = columns[column];
+        if (c.type != DATE) {
+            throw new IllegalArgumentException("Not a date column: " + columnNames[column]);
+        }
+        return c.times;
+    }
+
+    /** Get a value as found in the table file.
+     *
+     * @param row the row, starting at 0
+     * @param column the column, starting at 1
+     * @return the value text
+     */
+    public String getText(int row, int column) {
+        String[] r = ragged.get(row);
+        if (r != null && column < r.length) {
+            return r[column];
+        }
+        return columns[column].text(row, columns[column].newFormat());
+    }
+
+    /** Check if some rows have more or less values than the columns.
+     *
+     * @return true if the rows are not all as wide as the table.
+     */
+    public boolean hasRaggedRows() {
+        return !ragged.isEmpty();
+    }
+
+    /** Check if a date column is in ascending order, so that it can be searched.
+     *
+     * @param column the column, starting at 1
+     * @return true if the times never decrease.
+     */
+    public boolean isSorted(int column) {
+        return columns[column].type == DATE && columns[column].sorted;
+    }
+
+    /** Find the row of a time.
+     *
+     * @param column the date column
+     * @param time the time in epoch millis
+     * @return the first row with that time, -1 if there is none.
+     */
+    public int findRow(int column, long time) {
+        long[] times = getTimes(column);
+        if (columns[column].sorted) {
+            int row = lowerBound(times, rowCount, time);
+            return (row < rowCount && times[row] == time) ? row : -1;
+        }
+        for (int i = 0; i < rowCount; i++) {
+            if (times[i] == time) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Get the first row at or after a time, of a sorted date column.
+     *
+     * @param column the date column
+     * @param time the time in epoch millis
+     * @return the first row with a time &gt;= time, the row count if there is none.
+     */
+    public int lowerBound(int column, long time) {
+        if (!isSorted(column)) {
+            throw new IllegalArgumentException("Not a sorted date column: " + columnNames[column]);
+        }
+        return lowerBound(columns[column].times, rowCount, time);
+    }
+
+    /** Get the first row after a time, of a sorted date column.
+     *
+     * @param column the date column
+     * @param time the time in epoch millis
+     * @return the first row with a time &gt; time, the row count if there is none.
+     */
+    public int upperBound(int column, long time) {
+        if (time == Long.MAX_VALUE) {
+            return rowCount;
+        }
+        return lowerBound(column, time + 1);
+    }
+
+    private static int lowerBound(long[] times, int size, long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (times[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public Iterable<String[]> rows() {
+        return rows(0);
+    }
+
+    @Override
+    public Iterable<String[]> rows(final int startRow) {
+        if (startRow < 0) {
+            throw new IllegalArgumentException("startRow<0");
+        }
+        return new Iterable<String[]>() {
+
+            @Override
+            public Iterator<String[]> iterator() {
+                final SimpleDateFormat[] formats = new SimpleDateFormat[columns.length];
+                for (int i = 1; i < columns.length; i++) {
+                    formats[i] = columns[i].newFormat();
+                }
+                return new TableIterator<String[]>() {
+
+                    int row = startRow;
+
+                    @Override
+                    public boolean hasNext() {
+                        return row < rowCount;
+                    }
+
+                    @Override
+                    public String[] next() {
+                        String[] r = ragged.get(row);
+                        if (r != null) {
+                            r = r.clone();
+                            r[0] = Integer.toString(++row);
+                            return r;
+                        }
+                        String[] s = new String[columns.length];
+                        s[0] = Integer.toString(row + 1);
+                        for (int i = 1; i < columns.length; i++) {
+                            s[i] = columns[i].text(row, formats[i]);
+                        }
+                        row++;
+                        return s;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    @Override
+                    public void skip(int n) {
+                        if (n < 1) {
+                            throw new IllegalArgumentException("n<1 : " + n);
+                        }
+                        row += n;
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * The format of a date column: the column format, the table date format,
+     * the ISO format if the column is declared as date. Keys are looked up as
+     * in {@link DataIO#lookupDateFormat(CSTable, int)} first, then ignoring the case.
+     */
+    private static String dateFormat(CSTable table, int col) {
+        Map<String, String> colInfo = table.getColumnInfo(col);
+        String format = colInfo.get(DataIO.KEY_FORMAT);
+        if (format == null) {
+            format = table.getInfo().get(DataIO.DATE_FORMAT);
+        }
+        if (format == null) {
+            format = lookupIgnoreCase(colInfo, DataIO.KEY_FORMAT);
+        }
+        if (format == null) {
+            format = lookupIgnoreCase(table.getInfo(), DataIO.DATE_FORMAT);
+        }
+        if (format == null) {
+            format = lookupIgnoreCase(table.getInfo(), "dateformat");
+        }
+        if (format == null && DataIO.VAL_DATE.equalsIgnoreCase(lookupIgnoreCase(colInfo, DataIO.KEY_TYPE))) {
+            format = Conversions.ISO().toPattern();
+        }
+        return format == null || format.trim().isEmpty() ? null : format.trim();
+    }
+
+    private static String lookupIgnoreCase(Map<String, String> map, String key) {
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            if (e.getKey() != null && e.getKey().trim().equalsIgnoreCase(key)) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A typed column. Values that the typed value would not reproduce
+     * exactly (empty values, "1.50", ...) are kept as text overrides.
+     */
+    static class Column {
+
+        int type = UNKNOWN;
+        String pattern;
+        /** numbers written as integers */
+        boolean integral;
+        boolean sorted = true;
+        double[] numbers;
+        long[] times;
+        /** the text of every row for TEXT columns, the overrides for the others */
+        String[] texts;
+        /** parse format, only while building */
+        private SimpleDateFormat format;
+
+        Column(String pattern) {
+            this.pattern = pattern;
+        }
+
+        SimpleDateFormat newFormat() {
+            if (type != DATE) {
+                return null;
+            }
+            SimpleDateFormat f = new SimpleDateFormat(pattern);
+            f.setLenient(false);
+            return f;
+        }
+
+        void add(int row, String value) {
+            if (value == null) {
+                value = "";
+            }
+            if (type == UNKNOWN) {
+                guessType(row, value);
+                if (type == UNKNOWN) {
+                    // empty so far, kept as override
+                    setOverride(row, value);
+                    return;
+                }
+            }
+            if (type == NUMBER) {
+                addNumber(row, value);
+            } else if (type == DATE) {
+                addDate(row, value);
+            }
+            if (type == TEXT) {
+                texts = grow(texts, row);
+                texts[row] = value;
+            }
+        }
+
+        private void guessType(int row, String value) {
+            String v = value.trim();
+            if (v.isEmpty()) {
+                return;
+            }
+            if (parseNumber(v) != null) {
+                type = NUMBER;
+                integral = isIntegral(v);
+                numbers = new double[Math.max(16, row + 1)];
+                Arrays.fill(numbers, 0, row, Double.NaN);
+            } else if (pattern != null && parseDate(value) != null) {
+                type = DATE;
+                times = new long[Math.max(16, row + 1)];
+                Arrays.fill(times, 0, row, Long.MIN_VALUE);
+            } else {
+                type = TEXT;
+            }
+        }
+
+        private void addNumber(int row, String value) {
+            numbers = grow(numbers, row);
+            String v = value.trim();
+            if (v.isEmpty()) {
+                numbers[row] = Double.NaN;
+                setOverride(row, value);
+                return;
+            }
+            Double d = parseNumber(v);
+            if (d == null) {
+                toText(row);
+                return;
+            }
+            numbers[row] = d;
+            if (!formatNumber(d, integral).equals(value)) {
+                setOverride(row, value);
+            }
+        }
+
+        private void addDate(int row, String value) {
+            times = grow(times, row);
+            if (value.trim().isEmpty()) {
+                times[row] = Long.MIN_VALUE;
+                setOverride(row, value);
+                return;
+            }
+            Date d = parseDate(value);
+            if (d == null) {
+                toText(row);
+                return;
+            }
+            times[row] = d.getTime();
+            if (!format.format(d).equals(value)) {
+                setOverride(row, value);
+            }
+        }
+
+        private void setOverride(int row, String value) {
+            texts = grow(texts, row);
+            texts[row] = value;
+        }
+
+        /**
+         * The type guess was wrong, turn the rows so far into text.
+         */
+        private void toText(int row) {
+            SimpleDateFormat f = type == DATE ? format : null;
+            String[] t = new String[Math.max(16, row + 1)];
+            for (int i = 0; i < row; i++) {
+                t[i] = text(i, f);
+            }
+            type = TEXT;
+            texts = t;
+            numbers = null;
+            times = null;
+        }
+
+        void done(int rowCount) {
+            if (type == UNKNOWN) {
+                // all empty, the values are in the overrides
+                type = TEXT;
+                if (texts == null) {
+                    texts = new String[rowCount];
+                }
+            }
+            if (type == NUMBER) {
+                numbers = Arrays.copyOf(numbers, rowCount);
+            } else if (type == DATE) {
+                times = Arrays.copyOf(times, rowCount);
+                for (int i = 1; i < rowCount && sorted; i++) {
+                    sorted = times[i - 1] <= times[i];
+                }
+            }
+            if (texts != null) {
+                texts = Arrays.copyOf(texts, rowCount);
+            }
+            format = null;
+        }
+
+        String text(int row, SimpleDateFormat f) {
+            if (texts != null && texts[row] != null) {
+                return texts[row];
+            }
+            if (type == NUMBER) {
+                return formatNumber(numbers[row], integral);
+            } else if (type == DATE) {
+                return f.format(new Date(times[row]));
+            }
+            return "";
+        }
+
+        private Double parseNumber(String v) {
+            try {
+                return Double.parseDouble(v);
+            } catch (NumberFormatException E) {
+                return null;
+            }
+        }
+
+        private Date parseDate(String v) {
+            if (format == null) {
+                format = new SimpleDateFormat(pattern);
+                format.setLenient(false);
+            }
+            ParsePosition pos = new ParsePosition(0);
+            Date d = format.parse(v, pos);
+            if (d == null || pos.getIndex() != v.length()) {
+                return null;
+            }
+            return d;
+        }
+
+        private static boolean isIntegral(String v) {
+            for (int i = 0; i < v.length(); i++) {
+                char c = v.charAt(i);
+                if (!(Character.isDigit(c) || (i == 0 && c == '-'))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        static String formatNumber(double d, boolean integral) {
+            if (integral && d == Math.rint(d) && Math.abs(d) < 1e15) {
+                return Long.toString((long) d);
+            }
+            return Double.toString(d);
+        }
+
+        private static double[] grow(double[] a, int row) {
+            return row < a.length ? a : Arrays.copyOf(a, Math.max(row + 1, a.length * 2));
+        }
+
+        private static long[] grow(long[] a, int row) {
+            return row < a.length ? a : Arrays.copyOf(a, Math.max(row + 1, a.length * 2));
+        }
+
+        private static String[] grow(String[] a, int row) {
+            if (a == null) {
+                return new String[Math.max(16, row + 1)];
+            }
+            return row < a.length ? a : Arrays.copyOf(a, Math.max(row + 1, a.length * 2));
+        }
+    }
+
+    // binary cache
+
+    static class CacheHeader {
+
+        long length;
+        long modified;
+        String digest;
+        String timeZone;
+    }
+
+    private void writeCache(File cache, File source, String digest) throws IOException {
+        // unique, so that runs loading the same table at the same time don't clash
+        File tmp = File.createTempFile(cache.getName(), ".tmp", cache.getAbsoluteFile().getParentFile());
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+            writeString(out, digest);
+            writeString(out, TimeZone.getDefault().getID());
+            writeString(out, name);
+            writeMap(out, info.get(-1));
+            out.writeInt(getColumnCount());
+            out.writeInt(rowCount);
+            for (int i = 1; i < columns.length; i++) {
+                Column c = columns[i];
+                writeString(out, columnNames[i]);
+                writeMap(out, info.get(i));
+                out.writeByte(c.type);
+                out.writeBoolean(c.integral);
+                out.writeBoolean(c.sorted);
+                writeString(out, c.pattern);
+                if (c.type == NUMBER) {
+                    for (int r = 0; r < rowCount; r++) {
+                        out.writeDouble(c.numbers[r]);
+                    }
+                } else if (c.type == DATE) {
+                    for (int r = 0; r < rowCount; r++) {
+                        out.writeLong(c.times[r]);
+                    }
+                }
+                int texts = 0;
+                if (c.texts != null) {
+                    for (String t : c.texts) {
+                        if (t != null) {
+                            texts++;
+                        }
+                    }
+                }
+                out.writeInt(texts);
+                for (int r = 0; texts > 0 && r < rowCount; r++) {
+                    if (c.texts[r] != null) {
+                        out.writeInt(r);
+                        writeString(out, c.texts[r]);
+                    }
+                }
+            }
+            out.writeInt(ragged.size());
+            for (Map.Entry<Integer, String[]> e : ragged.entrySet()) {
+                out.writeInt(e.getKey());
+                out.writeInt(e.getValue().length);
+                for (int i = 1; i < e.getValue().length; i++) {
+                    writeString(out, e.getValue()[i]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        cache.delete();
+        if (!tmp.renameTo(cache)) {
+            tmp.delete();
+            throw new IOException("Cannot write " + cache);
+        }
+    }
+
+    /** Set the size and time of the source file in the header of a cache still valid.
+     */
+    private static void updateCacheHeader(File cache, File source) {
+        try {
+            RandomAccessFile f = new RandomAccessFile(cache, "rw");
+            try {
+                // after the magic
+                f.seek(4);
+                f.writeLong(source.length());
+                f.writeLong(source.lastModified());
+            } finally {
+                f.close();
+            }
+        } catch (IOException E) {
+            // read only folder, the digest is checked again next time
+        }
+    }
+
+    static CacheHeader readCacheHeader(File cache) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(cache, "r");
+        try {
+            if (f.length() < 24 || f.readInt() != MAGIC) {
+                return null;
+            }
+            CacheHeader h = new CacheHeader();
+            h.length = f.readLong();
+            h.modified = f.readLong();
+            int len = f.readInt();
+            if (len < 0 || len > 1024) {
+                return null;
+            }
+            byte[] b = new byte[len];
+            f.readFully(b);
+            h.digest = new String(b, StandardCharsets.UTF_8);
+            len = f.readInt();
+            if (len < 0 || len > 1024) {
+                return null;
+            }
+            b = new byte[len];
+            f.readFully(b);
+            h.timeZone = new String(b, StandardCharsets.UTF_8);
+            return h;
+        } finally {
+            f.close();
+        }
+    }
+
+    private static ColumnTable readCache(File cache) throws IOException {
+        RandomAccessFile f = new RandomAccessFile(cache, "r");
+        try {
+            FileChannel ch = f.getChannel();
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if (b.getInt() != MAGIC) {
+                throw new IOException("Not a table cache: " + cache);
+            }
+            b.getLong();
+            b.getLong();
+            readString(b);
+            readString(b);
+            ColumnTable t = new ColumnTable();
+            t.name = readString(b);
+            t.info.put(-1, readMap(b));
+            int colCount = b.getInt();
+            t.rowCount = b.getInt();
+            t.columnNames = new String[colCount + 1];
+            t.columnNames[0] = "ROW";
+            t.columns = new Column[colCount + 1];
+            for (int i = 1; i <= colCount; i++) {
+                t.columnNames[i] = readString(b);
+                t.info.put(i, readMap(b));
+                Column c = new Column(null);
+                c.type = b.get();
+                c.integral = b.get() != 0;
+                c.sorted = b.get() != 0;
+                c.pattern = readString(b);
+                if (c.type == NUMBER) {
+                    c.numbers = new double[t.rowCount];
+                    b.asDoubleBuffer().get(c.numbers);
+                    b.position(b.position() + t.rowCount * 8);
+                } else if (c.type == DATE) {
+                    c.times = new long[t.rowCount];
+                    b.asLongBuffer().get(c.times);
+                    b.position(b.position() + t.rowCount * 8);
+                }
+                int texts = b.getInt();
+                if (texts > 0) {
+                    c.texts = new String[t.rowCount];
+                    for (int k = 0; k < texts; k++) {
+                        int r = b.getInt();
+                        c.texts[r] = readString(b);
+                    }
+                }
+                t.columns[i] = c;
+            }
+            int raggedRows = b.getInt();
+            for (int k = 0; k < raggedRows; k++) {
+                int r = b.getInt();
+                String[] row = new String[b.getInt()];
+                for (int i = 1; i < row.length; i++) {
+                    row[i] = readString(b);
+                }
+                t.ragged.put(r, row);
+            }
+            return t;
+        } catch (RuntimeException E) {
+            // truncated or corrupted
+            throw new IOException("Invalid table cache: " + cache, E);
+        } finally {
+            f.close();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(ByteBuffer b) {
+        int len = b.getInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] s = new byte[len];
+        b.get(s);
+        return new String(s, StandardCharsets.UTF_8);
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+        }
+    }
+
+    private static Map<String, String> readMap(ByteBuffer b) {
+        int size = b.getInt();
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        for (int i = 0; i < size; i++) {
+            map.put(readString(b), readString(b));
+        }
+        return map;
+    }
+}
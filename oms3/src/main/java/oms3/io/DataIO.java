@@ -117,30 +117,12 @@ public class DataIO {
             throw new IllegalArgumentException("No such column: " + columnName);
         }
 
-        DateFormat fmt = lookupDateFormat(t, 1);
+        // the dates and values within start and end, parsed once
+        List<Date> dates = new ArrayList<Date>();
+        double[] values = valuesInInterval(start, end, t, col, dates);
 
-        boolean useOrigDaily = false;
         switch (timeStep) {
             case DAILY:
-                if (useOrigDaily) {
-                    List<Double> l = new ArrayList<Double>();
-                    for (String[] row : t.rows()) {
-                        try {
-                            Date d = fmt.parse(row[1]);
-                            if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                                l.add(new Double(row[col]));
-                            }
-                        } catch (ParseException ex) {
-                            throw new RuntimeException(ex);
-                        }
-                    }
-                    double[] arr = new double[l.size()];
-                    for (int i = 0; i < arr.length; i++) {
-                        arr[i] = l.get(i);
-                    }
-                    return arr;
-                }
-
             case ANNUAL_MEAN:
             case MONTHLY_MEAN:
             case PERIOD_MEAN: {
@@ -150,7 +132,6 @@ public class DataIO {
                 int previousYear = -1;
                 int previousDay = -1;
                 boolean previousValid = false;
-                boolean lastRow = false;
 
                 boolean useYear = (timeStep == DAILY) || (timeStep == MONTHLY_MEAN) || (timeStep == ANNUAL_MEAN);
                 boolean useMonth = (timeStep == DAILY) || (timeStep == MONTHLY_MEAN);
@@ -161,41 +142,30 @@ public class DataIO {
                 int count = 0;
 
 
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            int month = d.getMonth();
-                            int year = d.getYear();
-                            int day = d.getDay();
-                            double data = Double.parseDouble(row[col]);
-
-
+                for (int i = 0; i < values.length; i++) {
+                    Date d = dates.get(i);
+                    int month = d.getMonth();
+                    int year = d.getYear();
+                    int day = d.getDay();
+                    double data = values[i];
 
-                            boolean newEntry = (previousValid && ((useYear && (year != previousYear))
-                                    || (useMonth && (month != previousMonth))
-                                    || (useDay && (day != previousDay))));
+                    boolean newEntry = (previousValid && ((useYear && (year != previousYear))
+                            || (useMonth && (month != previousMonth))
+                            || (useDay && (day != previousDay))));
 
-
-
-                            if (newEntry) {
-                                l.add(sum / count);
-                                sum = 0;
-                                count = 0;
-                            }
-
-                            sum += data;
-                            count++;
-
-                            previousValid = true;
-                            previousDay = day;
-                            previousMonth = month;
-                            previousYear = year;
-                        }
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
+                    if (newEntry) {
+                        l.add(sum / count);
+                        sum = 0;
+                        count = 0;
                     }
 
+                    sum += data;
+                    count++;
+
+                    previousValid = true;
+                    previousDay = day;
+                    previousMonth = month;
+                    previousYear = year;
                 }
                 l.add(sum / count); // add the final entry which wasn't yet added
                 // since it never hit a newEntry.
@@ -220,22 +190,10 @@ public class DataIO {
                     count[i] = 0;
                 }
 
-
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            int month = d.getMonth();
-                            double data = Double.parseDouble(row[col]);
-                            arr[month] = arr[month] + data;
-                            count[month] = count[month] + 1;
-                            if (month > 11) {
-                                throw new RuntimeException("Month > 11 = " + month);
-                            }
-                        }
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
-                    }
+                for (int i = 0; i < values.length; i++) {
+                    int month = dates.get(i).getMonth();
+                    arr[month] = arr[month] + values[i];
+                    count[month] = count[month] + 1;
                 }
 
                 for (int i = 0; i < 12; i++) {
@@ -252,25 +210,16 @@ public class DataIO {
                 double max = -1;
                 boolean previousValid = false;
 
-
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            double data = Double.parseDouble(row[col]);
-                            if (!previousValid) {
-                                min = data;
-                                max = data;
-                            } else if ((timeStep == PERIOD_MIN) && (data < min)) {
-                                min = data;
-                            } else if ((timeStep == PERIOD_MAX) && (data > max)) {
-                                max = data;
-                            }
-                            previousValid = true;
-                        }
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
+                for (double data : values) {
+                    if (!previousValid) {
+                        min = data;
+                        max = data;
+                    } else if ((timeStep == PERIOD_MIN) && (data < min)) {
+                        min = data;
+                    } else if ((timeStep == PERIOD_MAX) && (data > max)) {
+                        max = data;
                     }
+                    previousValid = true;
                 }
                 double[] arr = new double[1];
                 arr[0] = (timeStep == PERIOD_MIN) ? min : max;
@@ -279,30 +228,11 @@ public class DataIO {
             }
 
             case PERIOD_MEDIAN: {
-                // Put entire table into ArrayList
-                List<Double> l = new ArrayList<Double>();
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            l.add(new Double(row[col]));
-                        }
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
-                    }
-                }
-
-                //Copy to array of double
-                int lSize = l.size();
+                int lSize = values.length;
                 if (lSize == 0) {
                     throw new RuntimeException("No data in file matched the specified period " + start + " to " + end);
                 }
-                double[] arr = new double[lSize];
-                for (int i = 0; i < arr.length; i++) {
-                    arr[i] = l.get(i);
-                }
-
-                l.clear();  // Don't need l anymore so clear it.
+                double[] arr = values.clone();
 
                 // Sort the Array
                 Arrays.sort(arr);
@@ -326,28 +256,13 @@ public class DataIO {
             }
 
             case PERIOD_STANDARD_DEVIATION: {
-                // kmolson TODO- is it better to read the file twice, or read
-                //   it once and store the data for the 2nd pass while
-                //   computing the mean?
-
-                // Read file to get mean.
                 double sum = 0;
                 double sq_sum = 0;
-                double data = 0;
                 int count = 0;
-                for (String[] row : t.rows()) {
-                    try {
-                        Date d = fmt.parse(row[1]);
-                        if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
-                            data = Double.parseDouble(row[col]);
-                            sum += data;
-                            sq_sum += (data * data);
-                            count++;
-                        }
-
-                    } catch (ParseException ex) {
-                        throw new RuntimeException(ex);
-                    }
+                for (double data : values) {
+                    sum += data;
+                    sq_sum += (data * data);
+                    count++;
                 }
 
                 double mean = sum / count;
@@ -365,6 +280,62 @@ public class DataIO {
         }
     }
 
+    /** Get the values of a column within a time interval, dates in the first column.
+     *
+     * <p>Typed {@link ColumnTable}s are sliced by binary search, other tables
+     * are parsed row by row.</p>
+     *
+     * @param start the start, inclusive
+     * @param end the end, inclusive
+     * @param t the table
+     * @param col the value column
+     * @param dates the dates of the values are added to this list.
+     * @return the values
+     */
+    private static double[] valuesInInterval(Date start, Date end, CSTable t, int col, List<Date> dates) {
+        if (t instanceof ColumnTable) {
+            ColumnTable ct = (ColumnTable) t;
+            if (ct.getColumnType(1) == ColumnTable.DATE && ct.getColumnType(col) == ColumnTable.NUMBER) {
+                long[] times = ct.getTimes(1);
+                double[] numbers = ct.getNumbers(col);
+                if (ct.isSorted(1)) {
+                    int first = ct.lowerBound(1, start.getTime());
+                    int last = ct.upperBound(1, end.getTime());
+                    for (int i = first; i < last; i++) {
+                        dates.add(new Date(times[i]));
+                    }
+                    return Arrays.copyOfRange(numbers, first, Math.max(first, last));
+                }
+                double[] values = new double[times.length];
+                for (int i = 0; i < times.length; i++) {
+                    if (times[i] >= start.getTime() && times[i] <= end.getTime()) {
+                        values[dates.size()] = numbers[i];
+                        dates.add(new Date(times[i]));
+                    }
+                }
+                return Arrays.copyOf(values, dates.size());
+            }
+        }
+        DateFormat fmt = lookupDateFormat(t, 1);
+        List<Double> l = new ArrayList<Double>();
+        for (String[] row : t.rows()) {
+            try {
+                Date d = fmt.parse(row[1]);
+                if ((d.equals(start) || d.after(start)) && (d.equals(end) || d.before(end))) {
+                    dates.add(d);
+                    l.add(Double.parseDouble(row[col]));
+                }
+            } catch (ParseException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        double[] arr = new double[l.size()];
+        for (int i = 0; i < arr.length; i++) {
+            arr[i] = l.get(i);
+        }
+        return arr;
+    }
+
     public static SimpleDateFormat lookupDateFormat(CSTable table, int col) {
         if (col < 0 || col > table.getColumnCount()) {
             throw new IllegalArgumentException("invalid column: " + col);
@@ -385,6 +356,14 @@ public class DataIO {
             throw new IllegalArgumentException();
         }
 
+        if (table instanceof ColumnTable && ((ColumnTable) table).getColumnType(dateColumn) == ColumnTable.DATE) {
+            int row = ((ColumnTable) table).findRow(dateColumn, date.getTime());
+            if (row == -1) {
+                throw new IllegalArgumentException(date.toString());
+            }
+            return row;
+        }
+
         DateFormat fmt = lookupDateFormat(table, dateColumn);
 
         int rowNo = 0;
@@ -416,8 +395,10 @@ public class DataIO {
 
         // get the initialization period
         MemoryTable t = new MemoryTable(table);
-        int iniStartRow = findRowByDate(iniStart, dateColumn, t);
-        int iniEndRow = findRowByDate(iniEnd, dateColumn, t);
+        // typed tables are searched faster than the copy
+        CSTable lookup = (table instanceof ColumnTable) ? table : t;
+        int iniStartRow = findRowByDate(iniStart, dateColumn, lookup);
+        int iniEndRow = findRowByDate(iniEnd, dateColumn, lookup);
         List<String[]> iniRows = t.getRows(iniStartRow, iniEndRow);
 
         // set the historical date to the forcast date, but use the
@@ -427,7 +408,7 @@ public class DataIO {
         histStart.set(Calendar.YEAR, year);
 
         // get the historical data
-        int histStartRow = findRowByDate(histStart.getTime(), dateColumn, t);
+        int histStartRow = findRowByDate(histStart.getTime(), dateColumn, lookup);
         int histEndRow = histStartRow + (fcDays - 1);
         List<String[]> histRows = t.getRows(histStartRow, histEndRow);
 
@@ -472,6 +453,13 @@ public class DataIO {
         if (timeCol < 0) {
             throw new IllegalArgumentException("timeCol :" + timeCol);
         }
+        if (table instanceof ColumnTable && ((ColumnTable) table).isSorted(timeCol)) {
+            ColumnTable ct = (ColumnTable) table;
+            int s = ct.lowerBound(timeCol, start.getTime());
+            int e = ct.lowerBound(timeCol, end.getTime());
+            int rows = ct.getRowCount();
+            return new int[]{s == rows ? -1 : s, e == rows ? -1 : e};
+        }
         int s = -1;
         int e = -1;
         int i = -1;
@@ -1186,6 +1174,18 @@ public class DataIO {
         return new FileTable(file, name);
     }
 
+    /** Load a typed table from a file, parsing it once. The parsed table is
+     * cached next to the file, see {@link ColumnTable#load(File, String)}.
+     *
+     * @param file the file to parse
+     * @param name the name of the table, <code>null</code> for the first one.
+     * @return the ColumnTable
+     * @throws IOException
+     */
+    public static ColumnTable columnTable(File file, String name) throws IOException {
+        return ColumnTable.load(file, name);
+    }
+
     /** Parse a table from a Reader. Find the first table
      * 
      * @param s the Reader to read from
@@ -0,0 +1,269 @@
+/*
+ * $Id$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * The index of the components of a jar (or class folder), written at
+ * compile time by {@link ComponentIndexProcessor}.
+ *
+ * <p>It lists the classes with an {@link oms3.annotations.Execute} method
+ * together with their label, status, UI hint, description and their public
+ * {@link oms3.annotations.In}/{@link oms3.annotations.Out} fields, so that
+ * tools can find the components without scanning the classpath.</p>
+ *
+ * <p>The index is a UTF-8 text file, one tab separated record per line:</p>
+ * <pre>
+ * C  className  label  status  ui  description
+ * F  i|o|io     name   type    ui  description
+ * </pre>
+ * <p>where the field records belong to the previous component. Tabs,
+ * newlines and backslashes in the values are escaped.</p>
+ *
+ * @author od
+ * @version $Id$
+ */
+public class ComponentIndex {
+
+    /** The location of the index in a jar or class folder. */
+    public static final String RESOURCE = "META-INF/oms3/components.idx";
+
+    private static final String COMPONENT = "C";
+    private static final String FIELD = "F";
+
+    /**
+     * A component of the index.
+     */
+    public static class Component {
+
+        public String className;
+        public String label;
+        public int status = -1;
+        public String ui;
+        public String description;
+        public final List<ComponentField> fields = new ArrayList<ComponentField>();
+
+        /**
+         * @return the simple name of the class.
+         */
+        public String getName() {
+            int index = Math.max(className.lastIndexOf('.'), className.lastIndexOf('$'));
+            return className.substring(index + 1);
+        }
+    }
+
+    /**
+     * An input or output field of a component.
+     */
+    public static class ComponentField {
+
+        public String name;
+        public String type;
+        public boolean isIn;
+        public boolean isOut;
+        public String ui;
+        public String description;
+    }
+
+    private ComponentIndex() {
+    }
+
+    /**
+     * Read the index of a single jar or class folder.
+     *
+     * @param classBase the url of the jar or class folder.
+     * @return the components or <code>null</code> if there is no index.
+     * @throws IOException
+     */
+    public static List<Component> read(URL classBase) throws IOException {
+        URLClassLoader loader = new URLClassLoader(new URL[]{classBase}, null);
+        try {
+            URL resource = loader.findResource(RESOURCE);
+            if (resource == null) {
+                return null;
+            }
+            InputStream in = resource.openStream();
+            try {
+                return read(in);
+            } finally {
+                in.close();
+            }
+        } finally {
+            loader.close();
+        }
+    }
+
+    /**
+     * Read the indexes of all the jars visible to a class loader.
+     *
+     * @param loader the class loader.
+     * @return the components, empty if there are no indexes.
+     * @throws IOException
+     */
+    public static List<Component> readAll(ClassLoader loader) throws IOException {
+        List<Component> components = new ArrayList<Component>();
+        Enumeration<URL> resources = loader.getResources(RESOURCE);
+        while (resources.hasMoreElements()) {
+            InputStream in = resources.nextElement().openStream();
+            try {
+                components.addAll(read(in));
+            } finally {
+                in.close();
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Read an index.
+     *
+     * @param in the stream of the index, not closed.
+     * @return the components.
+     * @throws IOException if the index is malformed.
+     */
+    public static List<Component> read(InputStream in) throws IOException {
+        List<Component> components = new ArrayList<Component>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Component component = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] values = line.split("\t", -1);
+            if (values[0].equals(COMPONENT) && values.length == 6) {
+                component = new Component();
+                component.className = unescape(values[1]);
+                component.label = unescape(values[2]);
+                component.status = Integer.parseInt(values[3]);
+                component.ui = unescape(values[4]);
+                component.description = unescape(values[5]);
+                components.add(component);
+            } else if (values[0].equals(FIELD) && values.length == 6 && component != null) {
+                ComponentField field = new ComponentField();
+                field.isIn = values[1].contains("i");
+                field.isOut = values[1].contains("o");
+                field.name = unescape(values[2]);
+                field.type = unescape(values[3]);
+                field.ui = unescape(values[4]);
+                field.description = unescape(values[5]);
+                component.fields.add(field);
+            } else {
+                throw new IOException("Malformed component index line: " + line);
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Write an index.
+     *
+     * @param out the writer, not closed.
+     * @param components the components to write.
+     * @throws IOException
+     */
+    public static void write(Writer out, Collection<Component> components) throws IOException {
+        out.write("# oms3 components index\n");
+        for (Component component : components) {
+            out.write(COMPONENT + "\t" + escape(component.className) + "\t" + escape(component.label) + "\t"
+                    + component.status + "\t" + escape(component.ui) + "\t" + escape(component.description) + "\n");
+            for (ComponentField field : component.fields) {
+                String flags = (field.isIn ? "i" : "") + (field.isOut ? "o" : "");
+                out.write(FIELD + "\t" + flags + "\t" + escape(field.name) + "\t" + escape(field.type) + "\t"
+                        + escape(field.ui) + "\t" + escape(field.description) + "\n");
+            }
+        }
+        out.flush();
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                switch (next) {
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    default:
+                        sb.append(next);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
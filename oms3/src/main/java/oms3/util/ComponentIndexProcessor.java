@@ -0,0 +1,247 @@
+/*
+ * $Id$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import oms3.annotations.Description;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Label;
+import oms3.annotations.Out;
+import oms3.annotations.Status;
+import oms3.annotations.UI;
+import oms3.util.ComponentIndex.Component;
+import oms3.util.ComponentIndex.ComponentField;
+
+/**
+ * Annotation processor writing the {@link ComponentIndex} of the compiled
+ * classes.
+ *
+ * <p>It is registered as a service, so it runs whenever this jar is on the
+ * compile classpath. Every class declaring an {@link oms3.annotations.Execute}
+ * method goes into the index, with the public input and output fields of
+ * the class and of its super classes.</p>
+ *
+ * <p>On incremental builds only some classes are compiled, so the index
+ * already in the class output is merged in: its components are kept unless
+ * their class was compiled again or does not exist anymore. For this the
+ * processor runs on every compilation, also without Execute methods.</p>
+ *
+ * @author od
+ * @version $Id$
+ */
+@SupportedAnnotationTypes("*")
+public class ComponentIndexProcessor extends AbstractProcessor {
+
+    private final Map<String, Component> components = new LinkedHashMap<String, Component>();
+    /** The binary names of all the classes compiled, with or without an Execute method. */
+    private final Set<String> compiled = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element root : roundEnv.getRootElements()) {
+            addCompiled(root);
+        }
+        TypeElement execute = processingEnv.getElementUtils().getTypeElement(Execute.class.getName());
+        if (execute != null) {
+            for (Element method : roundEnv.getElementsAnnotatedWith(execute)) {
+                Element type = method.getEnclosingElement();
+                if (type.getKind() != ElementKind.CLASS) {
+                    continue;
+                }
+                TypeElement typeElement = (TypeElement) type;
+                String className = processingEnv.getElementUtils().getBinaryName(typeElement).toString();
+                if (!components.containsKey(className)) {
+                    components.put(className, toComponent(className, typeElement));
+                }
+            }
+        }
+        if (roundEnv.processingOver()) {
+            List<Component> previous = readPreviousIndex();
+            if (previous != null) {
+                merge(previous);
+            }
+            if (previous != null || !components.isEmpty()) {
+                writeIndex();
+            }
+        }
+        return false;
+    }
+
+    private void addCompiled(Element element) {
+        if (element.getKind().isClass() || element.getKind().isInterface()) {
+            compiled.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+            for (Element enclosed : element.getEnclosedElements()) {
+                addCompiled(enclosed);
+            }
+        }
+    }
+
+    /**
+     * @return the components of the index in the class output, or null if
+     *         there is none.
+     */
+    private List<Component> readPreviousIndex() {
+        try {
+            FileObject file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+                    ComponentIndex.RESOURCE);
+            InputStream in = file.openInputStream();
+            try {
+                return ComponentIndex.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // no previous index, a full build.
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /** Add the components of a previous index not compiled in this build,
+     * if their class still exists.
+     */
+    private void merge(List<Component> previous) {
+        Map<String, Component> merged = new LinkedHashMap<String, Component>();
+        for (Component component : previous) {
+            String className = component.className;
+            if (components.containsKey(className)) {
+                merged.put(className, components.get(className));
+            } else if (!compiled.contains(className)
+                    && processingEnv.getElementUtils().getTypeElement(className.replace('$', '.')) != null) {
+                merged.put(className, component);
+            }
+        }
+        merged.putAll(components);
+        components.clear();
+        components.putAll(merged);
+    }
+
+    private Component toComponent(String className, TypeElement type) {
+        Component component = new Component();
+        component.className = className;
+        Label label = type.getAnnotation(Label.class);
+        if (label != null) {
+            component.label = label.value();
+        }
+        Status status = type.getAnnotation(Status.class);
+        if (status != null) {
+            component.status = status.value();
+        }
+        UI ui = type.getAnnotation(UI.class);
+        if (ui != null) {
+            component.ui = ui.value();
+        }
+        Description description = type.getAnnotation(Description.class);
+        if (description != null) {
+            component.description = description.value();
+        }
+
+        // own fields first, then the inherited ones, as Class.getFields
+        Set<String> names = new HashSet<String>();
+        TypeElement current = type;
+        while (current != null) {
+            for (Element element : current.getEnclosedElements()) {
+                if (element.getKind() != ElementKind.FIELD || !element.getModifiers().contains(Modifier.PUBLIC)) {
+                    continue;
+                }
+                VariableElement variable = (VariableElement) element;
+                boolean isIn = variable.getAnnotation(In.class) != null;
+                boolean isOut = variable.getAnnotation(Out.class) != null;
+                String name = variable.getSimpleName().toString();
+                if ((!isIn && !isOut) || !names.add(name)) {
+                    continue;
+                }
+                ComponentField field = new ComponentField();
+                field.name = name;
+                field.type = processingEnv.getTypeUtils().erasure(variable.asType()).toString();
+                field.isIn = isIn;
+                field.isOut = isOut;
+                UI fieldUi = variable.getAnnotation(UI.class);
+                if (fieldUi != null) {
+                    field.ui = fieldUi.value();
+                }
+                Description fieldDescription = variable.getAnnotation(Description.class);
+                if (fieldDescription != null) {
+                    field.description = fieldDescription.value();
+                }
+                component.fields.add(field);
+            }
+            TypeMirror superclass = current.getSuperclass();
+            if (superclass.getKind() == TypeKind.DECLARED) {
+                current = (TypeElement) ((DeclaredType) superclass).asElement();
+            } else {
+                current = null;
+            }
+        }
+        return component;
+    }
+
+    private void writeIndex() {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                    ComponentIndex.RESOURCE);
+            Writer out = new OutputStreamWriter(file.openOutputStream(), StandardCharsets.UTF_8);
+            try {
+                ComponentIndex.write(out, components.values());
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Could not write the component index: " + e.getMessage());
+        }
+    }
+}
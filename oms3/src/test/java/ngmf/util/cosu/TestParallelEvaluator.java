@@ -0,0 +1,183 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package ngmf.util.cosu;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/** Tests the order of the results and the failures of the {@link ParallelEvaluator}.
+ *
+ * @author od
+ */
+public class TestParallelEvaluator extends TestCase {
+
+    static final int THREADS = 4;
+
+    /** Every job waits for the next one, so they complete in reverse order.
+     */
+    public void testResultsInJobOrder() throws Exception {
+        final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch[] done = new CountDownLatch[THREADS];
+        for (int i = 0; i < THREADS; i++) {
+            done[i] = new CountDownLatch(1);
+        }
+        ParallelEvaluator evaluator = new ParallelEvaluator(new ParallelEvaluator.Factory() {
+
+            @Override
+            public ParallelEvaluator.Evaluation create(final int worker) {
+                return new ParallelEvaluator.Evaluation() {
+
+                    @Override
+                    public double evaluate(double[] point) throws Exception {
+                        int job = (int) point[0];
+                        if (job + 1 < THREADS) {
+                            assertTrue(done[job + 1].await(10, TimeUnit.SECONDS));
+                        }
+                        completed.add(job);
+                        done[job].countDown();
+                        return job * 10.0 + worker / 100.0;
+                    }
+                };
+            }
+        }, THREADS);
+        try {
+            double[][] points = new double[THREADS][];
+            for (int i = 0; i < THREADS; i++) {
+                points[i] = new double[]{i};
+            }
+            double[] values = evaluator.evaluate(points);
+            assertEquals(THREADS, values.length);
+            for (int i = 0; i < THREADS; i++) {
+                assertEquals(i * 10.0, values[i], 0.1);
+                assertEquals(THREADS - 1 - i, completed.get(i).intValue());
+            }
+        } finally {
+            evaluator.shutdown();
+        }
+    }
+
+    public void testEvaluationUsedByOneJobAtTheTime() throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+        ParallelEvaluator evaluator = new ParallelEvaluator(new ParallelEvaluator.Factory() {
+
+            @Override
+            public ParallelEvaluator.Evaluation create(int worker) {
+                assertEquals(created.getAndIncrement(), worker);
+                final AtomicInteger running = new AtomicInteger();
+                return new ParallelEvaluator.Evaluation() {
+
+                    @Override
+                    public double evaluate(double[] point) throws Exception {
+                        assertEquals(1, running.incrementAndGet());
+                        Thread.sleep(1);
+                        running.decrementAndGet();
+                        return point[0] * 2;
+                    }
+                };
+            }
+        }, THREADS);
+        try {
+            assertEquals(THREADS, created.get());
+            double[][] points = new double[200][];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = new double[]{i};
+            }
+            double[] values = evaluator.evaluate(points);
+            for (int i = 0; i < points.length; i++) {
+                assertEquals(i * 2.0, values[i], 0.0);
+            }
+        } finally {
+            evaluator.shutdown();
+        }
+    }
+
+    /** The failure of the first failing job is rethrown, even if a later job
+     * failed before.
+     */
+    public void testFirstFailureRethrown() throws Exception {
+        final Exception first = new Exception("job 1");
+        final Exception later = new IllegalStateException("job 3");
+        final CountDownLatch laterFailed = new CountDownLatch(1);
+        ParallelEvaluator evaluator = new ParallelEvaluator(new ParallelEvaluator.Factory() {
+
+            @Override
+            public ParallelEvaluator.Evaluation create(int worker) {
+                return new ParallelEvaluator.Evaluation() {
+
+                    @Override
+                    public double evaluate(double[] point) throws Exception {
+                        int job = (int) point[0];
+                        if (job == 1) {
+                            laterFailed.await(10, TimeUnit.SECONDS);
+                            throw first;
+                        } else if (job == 3) {
+                            laterFailed.countDown();
+                            throw later;
+                        }
+                        return job;
+                    }
+                };
+            }
+        }, THREADS);
+        try {
+            evaluator.evaluate(new double[][]{{0}, {1}, {2}, {3}});
+            fail("no failure");
+        } catch (Exception E) {
+            assertSame(first, E);
+        } finally {
+            evaluator.shutdown();
+        }
+    }
+
+    public void testSingleThreadInCallingThread() throws Exception {
+        final Thread caller = Thread.currentThread();
+        ParallelEvaluator evaluator = ParallelEvaluator.of(new ParallelEvaluator.Evaluation() {
+
+            @Override
+            public double evaluate(double[] point) throws Exception {
+                assertSame(caller, Thread.currentThread());
+                if (point[0] < 0) {
+                    throw new IllegalArgumentException("negative");
+                }
+                return point[0] + 1;
+            }
+        });
+        assertEquals(1, evaluator.getThreads());
+        double[] values = evaluator.evaluate(new double[][]{{1}, {2}, {3}});
+        assertEquals(2.0, values[0], 0.0);
+        assertEquals(4.0, values[2], 0.0);
+        try {
+            evaluator.evaluate(new double[][]{{1}, {-1}});
+            fail("no failure");
+        } catch (IllegalArgumentException E) {
+            assertEquals("negative", E.getMessage());
+        }
+        // the evaluation is back for the next run
+        assertEquals(5.0, evaluator.evaluate(new double[]{4}), 0.0);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Out;
+
+/** Measures the per time step overhead of accessing component fields and
+ * calling <code>@Execute</code> on a chain of components.
+ *
+ * <p>The access pattern of a step (set the input, execute, get the output)
+ * is timed with <code>java.lang.reflect</code> and with the cached
+ * {@link Accessors}, then a whole {@link Compound} of the same components is
+ * executed sequentially, step after step.</p>
+ *
+ * <p>Usage: AccessBenchmark [components [steps]]</p>
+ *
+ * @author od
+ */
+public class AccessBenchmark {
+
+    public static class Node {
+
+        @In
+        public double in;
+        @Out
+        public double out;
+
+        @Execute
+        public void execute() {
+            out = in + 1.0;
+        }
+    }
+
+    public static class Chain extends Compound {
+
+        final Node[] nodes;
+
+        Chain(int size) {
+            nodes = new Node[size];
+            for (int i = 0; i < size; i++) {
+                nodes[i] = new Node();
+            }
+            val2in(0.0, nodes[0], "in");
+            for (int i = 1; i < size; i++) {
+                out2in(nodes[i - 1], "out", nodes[i], "in");
+            }
+            setExecutionStrategy(ExecutionStrategy.SEQUENTIAL);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int components = 100;
+        int steps = 100000;
+        if (args.length > 0) {
+            components = Integer.parseInt(args[0]);
+        }
+        if (args.length > 1) {
+            steps = Integer.parseInt(args[1]);
+        }
+        Node[] nodes = new Node[components];
+        for (int i = 0; i < components; i++) {
+            nodes[i] = new Node();
+        }
+        System.out.println(components + " components, " + steps + " steps, java " + System.getProperty("java.version"));
+        for (int run = 0; run < 3; run++) {
+            System.out.println("Run " + (run + 1));
+            report("reflection", reflective(nodes, steps), steps);
+            report("cached accessors", cached(nodes, steps), steps);
+            report("compound step", compound(components, steps), steps);
+        }
+        Compound.shutdown();
+    }
+
+    static long reflective(Node[] nodes, int steps) throws Exception {
+        Field in = Node.class.getField("in");
+        Field out = Node.class.getField("out");
+        Method execute = Node.class.getMethod("execute");
+        long start = System.nanoTime();
+        Object value = 0.0;
+        for (int s = 0; s < steps; s++) {
+            for (Node n : nodes) {
+                in.set(n, value);
+                execute.invoke(n);
+                value = out.get(n);
+            }
+            value = 0.0;
+        }
+        return System.nanoTime() - start;
+    }
+
+    static long cached(Node[] nodes, int steps) throws Exception {
+        Accessors a = Accessors.of(Node.class);
+        Accessors.FieldAccessor in = a.field("in");
+        Accessors.FieldAccessor out = a.field("out");
+        Accessors.Invoker execute = a.invoker(Execute.class);
+        long start = System.nanoTime();
+        Object value = 0.0;
+        for (int s = 0; s < steps; s++) {
+            for (Node n : nodes) {
+                in.set(n, value);
+                execute.invoke(n);
+                value = out.get(n);
+            }
+            value = 0.0;
+        }
+        return System.nanoTime() - start;
+    }
+
+    static long compound(int components, int steps) throws Exception {
+        Chain c = new Chain(components);
+        c.initializeComponents();
+        long start = System.nanoTime();
+        for (int s = 0; s < steps; s++) {
+            c.execute();
+        }
+        long time = System.nanoTime() - start;
+        c.finalizeComponents();
+        if (c.nodes[components - 1].out != components) {
+            throw new IllegalStateException("wrong result: " + c.nodes[components - 1].out);
+        }
+        return time;
+    }
+
+    static void report(String name, long nanos, int steps) {
+        System.out.println(String.format("  %-18s %10.1f ns/step %8d ms", name, (double) nanos / steps, nanos / 1000000));
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import junit.framework.TestCase;
+import oms3.annotations.Execute;
+import oms3.annotations.Finalize;
+import oms3.annotations.Initialize;
+
+/** Tests the field accessors and lifecycle invokers of {@link Accessors},
+ * and the error handling of the component calls using them.
+ *
+ * @author od
+ */
+public class TestAccessors extends TestCase {
+
+    public static class Fields {
+
+        public int i;
+        public Integer w;
+        public double d;
+        public String s;
+        public final Integer fin = Integer.valueOf(1);
+    }
+
+    public static class Lifecycle {
+
+        public int executed;
+        public int initialized;
+
+        @Initialize
+        public void init() {
+            initialized++;
+        }
+
+        @Execute
+        public void execute() {
+            executed++;
+        }
+    }
+
+    public static class Failing {
+
+        public Exception exception;
+        public Error error;
+
+        @Initialize
+        public void init() throws Exception {
+            raise();
+        }
+
+        @Execute
+        public void execute() throws Exception {
+            raise();
+        }
+
+        void raise() throws Exception {
+            if (exception != null) {
+                throw exception;
+            }
+            throw error;
+        }
+    }
+
+    public static class InvalidSignature {
+
+        @Execute
+        public void execute() {
+        }
+
+        @Finalize
+        public int done() {
+            return 1;
+        }
+    }
+
+    static class NotPublic {
+
+        public int executed;
+
+        @Execute
+        public void execute() {
+            executed++;
+        }
+    }
+
+    public void testPrimitiveAndWrapperFields() throws Exception {
+        Fields f = new Fields();
+        Accessors a = Accessors.of(Fields.class);
+        assertSame(a, Accessors.of(Fields.class));
+
+        Accessors.FieldAccessor i = a.field("i");
+        assertSame(i, a.field(Fields.class.getField("i")));
+        assertEquals(Integer.class, i.valueType);
+        i.set(f, 42);
+        assertEquals(42, f.i);
+        assertEquals(Integer.valueOf(42), i.get(f));
+
+        Accessors.FieldAccessor w = a.field("w");
+        assertEquals(Integer.class, w.valueType);
+        assertNull(w.get(f));
+        w.set(f, 7);
+        assertEquals(Integer.valueOf(7), f.w);
+        w.set(f, null);
+        assertNull(f.w);
+
+        Accessors.FieldAccessor d = a.field("d");
+        assertEquals(Double.class, d.valueType);
+        d.set(f, 1.5);
+        assertEquals(1.5, f.d, 0.0);
+        assertEquals(Double.valueOf(1.5), d.get(f));
+
+        Accessors.FieldAccessor s = a.field("s");
+        assertEquals(String.class, s.valueType);
+        s.set(f, "v");
+        assertEquals("v", s.get(f));
+
+        try {
+            a.field("none");
+            fail();
+        } catch (NoSuchFieldException E) {
+        }
+    }
+
+    public void testFinalField() throws Exception {
+        Fields f = new Fields();
+        Accessors.FieldAccessor fin = Accessors.of(Fields.class).field("fin");
+        assertEquals(Integer.valueOf(1), fin.get(f));
+        // set reflectively, there is no setter handle for final fields
+        fin.set(f, 2);
+        assertEquals(Integer.valueOf(2), fin.get(f));
+        try {
+            fin.set(f, "2");
+            fail();
+        } catch (IllegalArgumentException E) {
+        }
+    }
+
+    public void testWrongType() throws Exception {
+        Fields f = new Fields();
+        Accessors a = Accessors.of(Fields.class);
+        try {
+            a.field("i").set(f, "42");
+            fail();
+        } catch (IllegalArgumentException E) {
+        }
+        try {
+            a.field("i").set(f, 42.0);
+            fail();
+        } catch (IllegalArgumentException E) {
+        }
+        try {
+            // a primitive can't be null
+            a.field("d").set(f, null);
+            fail();
+        } catch (IllegalArgumentException E) {
+        }
+        try {
+            a.field("s").set(f, 1);
+            fail();
+        } catch (IllegalArgumentException E) {
+        }
+        assertEquals(0, f.i);
+        assertNull(f.s);
+    }
+
+    public void testFieldAccessConversion() throws Exception {
+        Fields f = new Fields();
+        FieldContent.FA fa = new FieldContent.FA(f, "i");
+        fa.setFieldValue(3);
+        assertEquals(3, f.i);
+        assertEquals(Integer.valueOf(3), fa.getFieldValue());
+    }
+
+    public void testCallAnnotated() throws Exception {
+        Lifecycle l = new Lifecycle();
+        ComponentAccess.callAnnotated(l, Initialize.class, false);
+        ComponentAccess.callAnnotated(l, Initialize.class, true);
+        assertEquals(2, l.initialized);
+        assertNotNull(Accessors.of(Lifecycle.class).invoker(Execute.class));
+
+        // missing
+        assertNull(Accessors.of(Lifecycle.class).invoker(Finalize.class));
+        ComponentAccess.callAnnotated(l, Finalize.class, true);
+        try {
+            ComponentAccess.callAnnotated(l, Finalize.class, false);
+            fail();
+        } catch (RuntimeException E) {
+            assertTrue(E.getMessage(), E.getMessage().startsWith("No oms3.annotations.Finalize found"));
+        }
+
+        // invalid signature, reported on every call
+        InvalidSignature inv = new InvalidSignature();
+        ComponentAccess.callAnnotated(inv, Finalize.class, true);
+        for (int k = 0; k < 2; k++) {
+            try {
+                ComponentAccess.callAnnotated(inv, Finalize.class, false);
+                fail();
+            } catch (RuntimeException E) {
+                assertTrue(E.getMessage(), E.getMessage().startsWith("Invalid Method signature"));
+            }
+        }
+    }
+
+    public void testExceptionWrapping() throws Exception {
+        Failing f = new Failing();
+        f.exception = new Exception("checked");
+        try {
+            ComponentAccess.callAnnotated(f, Initialize.class, false);
+            fail();
+        } catch (RuntimeException E) {
+            assertSame(f.exception, E.getCause());
+        }
+        try {
+            new ComponentAccess(f, new Notification(null)).exec();
+            fail();
+        } catch (ComponentException E) {
+            assertSame(f.exception, E.getCause());
+            assertSame(f, E.getSource());
+        }
+
+        f.exception = new IllegalStateException("unchecked");
+        try {
+            ComponentAccess.callAnnotated(f, Initialize.class, true);
+            fail();
+        } catch (RuntimeException E) {
+            assertSame(f.exception, E.getCause());
+        }
+        try {
+            new ComponentAccess(f, new Notification(null)).exec();
+            fail();
+        } catch (ComponentException E) {
+            assertSame(f.exception, E.getCause());
+        }
+
+        // errors come back wrapped as well
+        f.exception = null;
+        f.error = new AssertionError("error");
+        try {
+            ComponentAccess.callAnnotated(f, Initialize.class, false);
+            fail();
+        } catch (RuntimeException E) {
+            assertSame(f.error, E.getCause());
+        }
+        try {
+            new ComponentAccess(f, new Notification(null)).exec();
+            fail();
+        } catch (ComponentException E) {
+            assertSame(f.error, E.getCause());
+        }
+    }
+
+    public void testGeneratedInvoker() throws Exception {
+        Lifecycle l = new Lifecycle();
+        Accessors.Invoker invoker = Accessors.of(Lifecycle.class).invoker(Execute.class);
+        assertSame(invoker, Accessors.of(Lifecycle.class).invoker(Execute.class));
+        // spun by the lambda metafactory
+        assertTrue(invoker.getClass().isSynthetic());
+        invoker.invoke(l);
+        assertEquals(1, l.executed);
+    }
+
+    public void testNotPublicClassFallback() throws Exception {
+        NotPublic n = new NotPublic();
+        Accessors.Invoker invoker = Accessors.of(NotPublic.class).invoker(Execute.class);
+        assertFalse(invoker.getClass().isSynthetic());
+        invoker.invoke(n);
+        new ComponentAccess(n, new Notification(null)).exec();
+        assertEquals(2, n.executed);
+    }
+
+    public void testOtherClassLoaderFallback() throws Exception {
+        // the same public class, but not the one the oms3 class loader sees
+        Class<?> c = new IsolatingLoader(Lifecycle.class.getName()).loadClass(Lifecycle.class.getName());
+        assertNotSame(Lifecycle.class, c);
+        Object l = c.newInstance();
+        Accessors.Invoker invoker = Accessors.of(c).invoker(Execute.class);
+        assertFalse(invoker.getClass().isSynthetic());
+        invoker.invoke(l);
+        ComponentAccess.callAnnotated(l, Initialize.class, false);
+        Accessors.FieldAccessor executed = Accessors.of(c).field("executed");
+        assertEquals(Integer.valueOf(1), executed.get(l));
+        assertEquals(Integer.valueOf(1), Accessors.of(c).field("initialized").get(l));
+        executed.set(l, 5);
+        assertEquals(Integer.valueOf(5), executed.get(l));
+    }
+
+    /** Defines one class itself, delegates all the others. */
+    static class IsolatingLoader extends ClassLoader {
+
+        final String name;
+
+        IsolatingLoader(String name) {
+            super(TestAccessors.class.getClassLoader());
+            this.name = name;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String n, boolean resolve) throws ClassNotFoundException {
+            if (!n.equals(name)) {
+                return super.loadClass(n, resolve);
+            }
+            Class<?> c = findLoadedClass(n);
+            if (c == null) {
+                try {
+                    InputStream in = getParent().getResourceAsStream(n.replace('.', '/') + ".class");
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] b = new byte[4096];
+                    int len;
+                    while ((len = in.read(b)) > 0) {
+                        out.write(b, 0, len);
+                    }
+                    in.close();
+                    byte[] bytes = out.toByteArray();
+                    c = defineClass(n, bytes, 0, bytes.length);
+                } catch (Exception E) {
+                    throw new ClassNotFoundException(n, E);
+                }
+            }
+            return c;
+        }
+    }
+}
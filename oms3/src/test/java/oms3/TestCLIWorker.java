@@ -0,0 +1,220 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/** Tests the command parsing and the output framing of the {@link CLIWorker}
+ * on in-memory streams.
+ *
+ * @author od
+ */
+public class TestCLIWorker extends TestCase {
+
+    PrintStream sysOut;
+    PrintStream sysErr;
+    ByteArrayOutputStream control;
+
+    /** Records the runs instead of running simulations. */
+    static class Worker extends CLIWorker {
+
+        final List<String> runs = new ArrayList<String>();
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile Throwable failure;
+        volatile int exitCode = -1;
+
+        Worker(PrintStream control) {
+            super(control);
+        }
+
+        @Override
+        void simulate(String ll, String file) throws Exception {
+            synchronized (runs) {
+                runs.add(ll + " " + file);
+            }
+            if (file.equals("output")) {
+                System.out.print("line 1\r\nline 2\n");
+                System.err.println("warning");
+                System.out.print("partial");
+            } else if (file.equals("blocking")) {
+                release.await();
+            } else if (file.equals("long")) {
+                Thread.sleep(60000);
+            }
+            if (failure instanceof Exception) {
+                throw (Exception) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+
+        @Override
+        void exit(int code) {
+            exitCode = code;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        sysOut = System.out;
+        sysErr = System.err;
+        control = new ByteArrayOutputStream();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        System.setOut(sysOut);
+        System.setErr(sysErr);
+    }
+
+    Worker worker() {
+        return new Worker(new PrintStream(control, true));
+    }
+
+    static BufferedReader commands(String... lines) {
+        StringBuilder b = new StringBuilder();
+        for (String line : lines) {
+            b.append(line).append('\n');
+        }
+        return new BufferedReader(new StringReader(b.toString()));
+    }
+
+    /** The frames sent so far, as type and text. */
+    List<String> frames() {
+        String[] lines = control.toString().split("\n");
+        List<String> frames = new ArrayList<String>();
+        for (String line : lines) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            assertEquals(line, CLIWorker.FRAME, line.charAt(0));
+            frames.add(line.substring(1));
+        }
+        return frames;
+    }
+
+    /** Wait for the given number of DONE frames. */
+    List<String> awaitDone(int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < end) {
+            List<String> frames = frames();
+            int done = 0;
+            for (String frame : frames) {
+                if (frame.charAt(0) == CLIWorker.DONE) {
+                    done++;
+                }
+            }
+            if (done >= count) {
+                return frames;
+            }
+            Thread.sleep(10);
+        }
+        fail("no done frame: " + frames());
+        return null;
+    }
+
+    public void testOutputFramed() throws Exception {
+        Worker w = worker();
+        w.serve(commands(CLIWorker.RUN + "\tINFO\toutput", CLIWorker.EXIT, CLIWorker.RUN + "\tINFO\tafter"));
+        List<String> frames = awaitDone(1);
+        assertEquals("R", frames.get(0));
+        assertEquals("Oline 1", frames.get(1));
+        assertEquals("Oline 2", frames.get(2));
+        assertEquals("Ewarning", frames.get(3));
+        // the unterminated line is sent at the end of the run
+        assertEquals("Opartial", frames.get(4));
+        assertEquals("D0", frames.get(5));
+        assertEquals(6, frames.size());
+        // nothing after EXIT
+        assertEquals("[INFO output]", w.runs.toString());
+        assertEquals(-1, w.exitCode);
+    }
+
+    public void testMalformedCommandsIgnored() throws Exception {
+        Worker w = worker();
+        w.serve(commands("", CLIWorker.RUN + "\tINFO", CLIWorker.RUN + "\tINFO\ta\tb", "run\tINFO\ta", "FOO",
+                CLIWorker.CANCEL));
+        assertEquals("[R]", frames().toString());
+        assertTrue(w.runs.isEmpty());
+    }
+
+    public void testFailure() throws Exception {
+        Worker w = worker();
+        w.failure = new IllegalStateException("failed");
+        w.serve(commands(CLIWorker.RUN + "\tOFF\tfailing"));
+        List<String> frames = awaitDone(1);
+        assertTrue(frames.toString(), frames.contains("EERROR"));
+        assertEquals("D1", frames.get(frames.size() - 1));
+        assertEquals(-1, w.exitCode);
+    }
+
+    public void testOutOfMemoryExits() throws Exception {
+        Worker w = worker();
+        w.failure = new OutOfMemoryError("test");
+        w.serve(commands(CLIWorker.RUN + "\tOFF\tfailing"));
+        List<String> frames = awaitDone(1);
+        assertTrue(frames.toString(), frames.contains("EERROR"));
+        assertEquals("D" + CLIWorker.OUT_OF_MEMORY, frames.get(frames.size() - 1));
+        long end = System.currentTimeMillis() + 10000;
+        while (w.exitCode == -1 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(CLIWorker.OUT_OF_MEMORY, w.exitCode);
+    }
+
+    public void testAlreadyRunning() throws Exception {
+        Worker w = worker();
+        try {
+            w.serve(commands(CLIWorker.RUN + "\tINFO\tblocking", CLIWorker.RUN + "\tINFO\tsecond"));
+            List<String> frames = awaitDone(1);
+            assertEquals("[R, EA simulation is already running., D1]", frames.toString());
+        } finally {
+            w.release.countDown();
+        }
+        assertEquals("D0", awaitDone(2).get(3));
+
+        // the next run is accepted again
+        w.serve(commands(CLIWorker.RUN + "\tINFO\tthird"));
+        assertEquals("D0", awaitDone(3).get(5));
+        assertEquals("[INFO blocking, INFO third]", w.runs.toString());
+    }
+
+    public void testCancel() throws Exception {
+        Worker w = worker();
+        long start = System.currentTimeMillis();
+        w.serve(commands(CLIWorker.RUN + "\tOFF\tlong", CLIWorker.CANCEL, CLIWorker.EXIT));
+        List<String> frames = awaitDone(1);
+        assertTrue(System.currentTimeMillis() - start < 30000);
+        assertTrue(frames.toString(), frames.contains("EERROR"));
+        assertEquals("D1", frames.get(frames.size() - 1));
+        assertEquals(-1, w.exitCode);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3;
+
+import junit.framework.TestCase;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Out;
+
+/** Tests the work stealing execution of nested compounds.
+ *
+ * @author od
+ */
+public class TestWorkStealing extends TestCase {
+
+    public static class Node {
+
+        @In
+        public double in;
+        @Out
+        public double out;
+
+        @Execute
+        public void execute() {
+            out = in + 1.0;
+        }
+    }
+
+    public static class Inner extends Compound {
+
+        @In
+        public double in;
+        @Out
+        public double out;
+        Node a = new Node();
+        Node b = new Node();
+
+        public Inner() {
+            in2in("in", a, "in");
+            out2in(a, "out", b, "in");
+            out2out("out", b, "out");
+            setExecutionStrategy(ExecutionStrategy.WORK_STEALING);
+        }
+    }
+
+    public static class Outer extends Compound {
+
+        Inner[] inners = new Inner[2 * Runtime.getRuntime().availableProcessors() + 2];
+
+        public Outer() {
+            for (int i = 0; i < inners.length; i++) {
+                inners[i] = new Inner();
+                val2in((double) i, inners[i], "in");
+            }
+            setExecutionStrategy(ExecutionStrategy.WORK_STEALING);
+        }
+    }
+
+    public void testNestedCompounds() throws Exception {
+        // the inner compounds wait for their components in pool threads
+        final Outer outer = new Outer();
+        final Throwable[] failure = new Throwable[1];
+        Thread run = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    outer.initializeComponents();
+                    for (int step = 0; step < 100; step++) {
+                        outer.execute();
+                    }
+                    outer.finalizeComponents();
+                } catch (Throwable T) {
+                    failure[0] = T;
+                }
+            }
+        };
+        run.setDaemon(true);
+        run.start();
+        run.join(30000);
+        assertFalse("the nested compounds are deadlocked", run.isAlive());
+        assertNull(failure[0]);
+        for (int i = 0; i < outer.inners.length; i++) {
+            assertEquals(i + 2.0, outer.inners[i].out);
+        }
+    }
+}
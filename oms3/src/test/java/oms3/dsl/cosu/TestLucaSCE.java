@@ -0,0 +1,143 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3.dsl.cosu;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import ngmf.util.cosu.ParallelEvaluator;
+import ngmf.util.cosu.luca.ExecutionHandle;
+import ngmf.util.cosu.luca.ParameterData;
+import ngmf.util.cosu.luca.SCE;
+import oms3.SimConst;
+
+/** Tests the parallel Luca SCE search on the Rosenbrock function.
+ *
+ * @author od
+ */
+public class TestLucaSCE extends TestCase {
+
+    static final int PARAMS = 3;
+
+    /** The result of a search. */
+    static class Result {
+
+        double[] best;
+        double of;
+        int executions;
+    }
+
+    public void testSameSeedSameResult() throws Exception {
+        for (long seed : new long[]{1L, 42L, -7L}) {
+            Result single = search(seed, 400, 1);
+            Result parallel = search(seed, 400, 4);
+            assertTrue(Arrays.equals(single.best, parallel.best));
+            assertEquals(Double.doubleToLongBits(single.of), Double.doubleToLongBits(parallel.of));
+            assertEquals(single.executions, parallel.executions);
+            // and it did search
+            assertTrue(single.of < rosenbrock(new double[]{0.5, 0.5, 0.5}));
+        }
+    }
+
+    public void testMaxExecNotExceeded() throws Exception {
+        for (int maxExec : new int[]{1, 2, 5, 14, 15, 16, 37, 100, 251}) {
+            for (int threads : new int[]{1, 4}) {
+                Result r = search(11L, maxExec, threads);
+                assertTrue(maxExec + " " + threads + ": " + r.executions, r.executions <= maxExec);
+            }
+        }
+    }
+
+    static Result search(long seed, int maxExec, int threads) throws Exception {
+        Step step = new Step(1);
+        step.create("max_exec", maxExec);
+        step.create("init_complexes", 3);
+        step.create("min_complexes", 2);
+        ObjFunc of = new ObjFunc();
+        of.setMethod(SimConst.RMSE); // minimize
+        step.ofs.add(of);
+
+        ParameterData[] params = new ParameterData[PARAMS];
+        for (int i = 0; i < PARAMS; i++) {
+            params[i] = new ParameterData("p" + i);
+            params[i].set(new double[]{0.5}, -2.0, 2.0, ParameterData.INDIVIDUAL, new boolean[]{true});
+        }
+        Step.Data data = new Step.Data();
+        data.init(params);
+        data.createBestParamData();
+        step.NumOfParams = data.getParamValues().length;
+
+        final AtomicInteger executions = new AtomicInteger();
+        ParallelEvaluator evaluator = new ParallelEvaluator(new ParallelEvaluator.Factory() {
+
+            @Override
+            public ParallelEvaluator.Evaluation create(int worker) {
+                return new ParallelEvaluator.Evaluation() {
+
+                    @Override
+                    public double evaluate(double[] point) {
+                        executions.incrementAndGet();
+                        return rosenbrock(point);
+                    }
+                };
+            }
+        }, threads);
+        try {
+            SCE sce = new SCE(new ExecutionHandle() {
+
+                @Override
+                public void execute(Step.Data stepData) {
+                    fail("runs go through the evaluator");
+                }
+
+                @Override
+                public void writeParameterFile(Step.Data stepData) {
+                }
+            }, step, data, evaluator, seed);
+            sce.setOut(new PrintStream(new OutputStream() {
+
+                @Override
+                public void write(int b) {
+                }
+            }));
+            sce.run();
+        } finally {
+            evaluator.shutdown();
+        }
+        Result r = new Result();
+        r.best = data.getBestParamDataArray();
+        r.of = data.getObjFuncValueOfBestPoint();
+        r.executions = executions.get();
+        return r;
+    }
+
+    static double rosenbrock(double[] x) {
+        double f = 0;
+        for (int i = 0; i < x.length - 1; i++) {
+            f += 100 * (x[i + 1] - x[i] * x[i]) * (x[i + 1] - x[i] * x[i]) + (1 - x[i]) * (1 - x[i]);
+        }
+        return f;
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3.dsl.esp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Role;
+import oms3.io.CSTable;
+import oms3.io.DataIO;
+
+/** Tests the output layout of the ESP traces.
+ *
+ * @author od
+ */
+public class TestEsp extends TestCase {
+
+    /** Writes the 'efc' table of its input, doubled. */
+    public static class Member {
+
+        @Role(Role.OUTPUT)
+        @In public File outFile;
+        public File inputFile;
+        public Calendar startTime;
+        public Calendar endTime;
+
+        @Execute
+        public void execute() throws IOException {
+            CSTable in = DataIO.table(inputFile, "obs");
+            Date[] d = DataIO.getColumnDateValues(in, "date");
+            Double[] v = DataIO.getColumnDoubleValues(in, "precip");
+            SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd");
+            PrintWriter w = new PrintWriter(outFile);
+            w.println("@T, efc");
+            w.println(" " + DataIO.DATE_FORMAT + ", yyyy-MM-dd");
+            w.println("@H, date, runoff");
+            w.println(" " + DataIO.KEY_TYPE + ", Date, Double");
+            for (int i = 0; i < d.length; i++) {
+                w.println(", " + f.format(d[i]) + ", " + v[i] * 2);
+            }
+            w.close();
+        }
+    }
+
+    static final int[] YEARS = {1990, 1991};
+    //
+    File folder;
+    File input;
+    Calendar start;
+    Calendar end;
+
+    @Override
+    protected void setUp() throws Exception {
+        folder = File.createTempFile("esp", "");
+        folder.delete();
+        folder.mkdirs();
+
+        // ten days of every year, the value tells year and day
+        input = File.createTempFile("obs", ".csv");
+        SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd");
+        PrintWriter w = new PrintWriter(input);
+        w.println("@T, obs");
+        w.println(" " + DataIO.DATE_FORMAT + ", yyyy-MM-dd");
+        w.println("@H, date, precip");
+        w.println(" " + DataIO.KEY_TYPE + ", Date, Double");
+        for (int year : new int[]{1990, 1991, 2000}) {
+            Calendar c = new GregorianCalendar(year, Calendar.MARCH, 1);
+            for (int day = 1; day <= 10; day++) {
+                w.println(", " + f.format(c.getTime()) + ", " + (year * 100 + day));
+                c.add(Calendar.DATE, 1);
+            }
+        }
+        w.close();
+        start = new GregorianCalendar(2000, Calendar.MARCH, 1);
+        end = new GregorianCalendar(2000, Calendar.MARCH, 5);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(folder);
+        input.delete();
+    }
+
+    public void testSingleThreadLayout() throws Exception {
+        Esp esp = esp(1);
+        for (int year : YEARS) {
+            assertEquals(folder, esp.traceFolder(folder, year));
+            runTrace(esp, year, folder);
+        }
+        // all the traces side by side, as before the ensemble mode
+        assertEquals(2 * YEARS.length, folder.list().length);
+    }
+
+    public void testParallelLayout() throws Exception {
+        Esp esp = esp(3);
+        for (int year : YEARS) {
+            File traceFolder = esp.traceFolder(folder, year);
+            assertEquals(new File(folder, "trace-" + year), traceFolder);
+            runTrace(esp, year, traceFolder);
+            assertEquals(2, traceFolder.list().length);
+        }
+        assertEquals(YEARS.length, folder.list().length);
+    }
+
+    public void testThreadsChecked() throws Exception {
+        try {
+            esp(0);
+            fail();
+        } catch (IllegalArgumentException E) {
+        }
+    }
+
+    Esp esp(int threads) {
+        Esp esp = new Esp();
+        esp.create("threads", threads);
+        esp.create("forecast_days", 3);
+        esp.fc_end = new GregorianCalendar();
+        esp.fc_end.setTime(end.getTime());
+        esp.fc_end.add(Calendar.DATE, esp.fc);
+        return esp;
+    }
+
+    /** Run a member as the ESP run does and check where its files are. */
+    void runTrace(Esp esp, int year, File expectedFolder) throws Exception {
+        Map<String, Object> parameter = new HashMap<String, Object>();
+        parameter.put("outFile", "out.csv");
+        File traceFolder = esp.traceFolder(folder, year);
+        Object comp = esp.setup(Member.class, parameter, traceFolder);
+        assertNotNull(comp);
+        assertEquals(new File(expectedFolder, "out.csv"), ((Member) comp).outFile);
+
+        CSTable t = DataIO.columnTable(input, "obs");
+        File outFile = esp.runTrace(comp, t, start, end, input, traceFolder, year);
+        assertEquals(new File(expectedFolder, "esp-" + year + "-out.csv"), outFile);
+        assertTrue(new File(expectedFolder, "esp-" + year + "-" + input.getName()).exists());
+
+        // initialization from 2000, the forecast from the historical year
+        Double[] runoff = DataIO.getColumnDoubleValues(DataIO.table(outFile, "efc"), "runoff");
+        assertEquals(8, runoff.length);
+        assertEquals(2 * 200001.0, runoff[0], 0.0);
+        assertEquals(2 * 200005.0, runoff[4], 0.0);
+        assertEquals(2 * (year * 100 + 6.0), runoff[5], 0.0);
+        assertEquals(2 * (year * 100 + 8.0), runoff[7], 0.0);
+    }
+
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3.dsl.esp;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import junit.framework.TestCase;
+import oms3.io.CSTable;
+import oms3.io.DataIO;
+import org.omscentral.modules.analysis.esp.ESPTimeSeries;
+import org.omscentral.modules.analysis.esp.EnsembleData;
+import org.omscentral.modules.analysis.esp.EnsembleListLabel;
+
+/** Tests the statistics, the ranks and the output of the {@link EspEnsemble}.
+ *
+ * @author od
+ */
+public class TestEspEnsemble extends TestCase {
+
+    static final int DAYS = 10;
+    // the forecast is day 3 to day 7
+    static final int FC_FIRST = 3;
+    static final int FC_LAST = 7;
+    // same volume: 1990 and 1993, 1992 and 1994. Same peak: 1991 and 1993
+    static final int[] YEARS = {1990, 1991, 1992, 1993, 1994, 1995};
+    static final double[][] VALUES = {
+        {9, 9, 9, 1, 2, 3, 2, 1, 9, 9},
+        {0, 0, 0, 5, 5, 5, 5, 5, 0, 0},
+        {0, 0, 0, 4, 8, 4, 2, 2, 0, 0},
+        {0, 0, 0, 5, 1, 1, 1, 1, 0, 0},
+        {0, 0, 0, 2, 2, 6, 6, 4, 0, 0},
+        {0, 0, 0, 0, 0, 0, 0, 0, 0, 0},};
+    static final int[] ADD_ORDER = {3, 0, 5, 1, 4, 2};
+    //
+    Date[] dates;
+
+    @Override
+    protected void setUp() throws Exception {
+        dates = new Date[DAYS];
+        Calendar c = new GregorianCalendar(2000, Calendar.MARCH, 1);
+        for (int i = 0; i < DAYS; i++) {
+            dates[i] = c.getTime();
+            c.add(Calendar.DATE, 1);
+        }
+    }
+
+    EspEnsemble ensemble(int[] order) {
+        EspEnsemble e = new EspEnsemble("runoff", dates[FC_FIRST], dates[FC_LAST]);
+        for (int i : order) {
+            e.add(YEARS[i], dates, VALUES[i]);
+        }
+        return e;
+    }
+
+    public void testStatsOverForecastPeriod() throws Exception {
+        EspEnsemble e = ensemble(ADD_ORDER);
+        assertEquals(YEARS.length, e.stats.size());
+        for (int i = 0; i < YEARS.length; i++) {
+            double volume = 0;
+            double peak = 0;
+            Date peakDate = dates[FC_FIRST];
+            for (int d = FC_FIRST; d <= FC_LAST; d++) {
+                volume += VALUES[i][d];
+                if (peak < VALUES[i][d]) {
+                    peak = VALUES[i][d];
+                    peakDate = dates[d];
+                }
+            }
+            EnsembleListLabel l = e.stats.get(YEARS[i]);
+            assertEquals(YEARS[i], l.getTraceYear());
+            assertEquals(volume, l.getTraceVolume(), 0.0);
+            assertEquals(peak, l.getTracePeak(), 0.0);
+            assertEquals(peakDate, e.peakDates.get(YEARS[i]));
+        }
+        // the first maximum is the peak, the last days are out of the period
+        assertEquals(dates[5], e.peakDates.get(1994));
+        assertEquals(9.0, e.stats.get(1990).getTraceVolume(), 0.0);
+        assertEquals(3.0, e.stats.get(1990).getTracePeak(), 0.0);
+        // all zero, no peak in the period
+        assertEquals(dates[FC_FIRST], e.peakDates.get(1995));
+        assertEquals(0.0, e.stats.get(1995).getTracePeak(), 0.0);
+    }
+
+    public void testRanksAsEnsembleData() throws Exception {
+        // labels as the ESP analysis gets them, in year order
+        ArrayList<EnsembleListLabel> expected = new ArrayList<EnsembleListLabel>();
+        EspEnsemble inOrder = ensemble(new int[]{0, 1, 2, 3, 4, 5});
+        for (int year : YEARS) {
+            ESPTimeSeries ts = new ESPTimeSeries(Integer.toString(year), new double[]{0}, new double[]{0});
+            EnsembleListLabel l = new EnsembleListLabel(ts, null);
+            l.setTraceVolume(inOrder.stats.get(year).getTraceVolume());
+            l.setTracePeak(inOrder.stats.get(year).getTracePeak());
+            expected.add(l);
+        }
+        EnsembleData.sort(new ArrayList<EnsembleListLabel>(expected), new ArrayList<EnsembleListLabel>(expected));
+
+        EspEnsemble e = ensemble(ADD_ORDER);
+        e.rank();
+        inOrder.rank();
+        for (EnsembleListLabel x : expected) {
+            for (EspEnsemble ens : new EspEnsemble[]{e, inOrder}) {
+                EnsembleListLabel l = ens.stats.get(x.getTraceYear());
+                assertEquals(x.getTraceYear() + "", x.getVolumeRank(), l.getVolumeRank());
+                assertEquals(x.getTraceYear() + "", x.getPeakRank(), l.getPeakRank());
+                assertEquals(x.getActVolumeProb(), l.getActVolumeProb(), 0.0);
+                assertEquals(x.getActPeakProb(), l.getActPeakProb(), 0.0);
+            }
+        }
+        assertEquals(1, e.stats.get(1991).getVolumeRank());
+        assertEquals(6, e.stats.get(1995).getVolumeRank());
+        assertEquals(1, e.stats.get(1992).getPeakRank());
+        assertEquals(2, e.stats.get(1994).getPeakRank());
+        assertEquals(6, e.stats.get(1995).getPeakRank());
+    }
+
+    public void testWrittenTablesParse() throws Exception {
+        EspEnsemble e = ensemble(ADD_ORDER);
+        File file = File.createTempFile("esp-traces", ".csv");
+        try {
+            e.write(file);
+
+            CSTable traces = DataIO.table(file, EspEnsemble.TRACES);
+            assertEquals("runoff", traces.getInfo().get("var"));
+            assertEquals(1 + YEARS.length, traces.getColumnCount());
+            Date[] d = DataIO.getColumnDateValues(traces, "date");
+            assertEquals(DAYS, d.length);
+            for (int i = 0; i < DAYS; i++) {
+                assertEquals(dates[i], d[i]);
+            }
+            for (int i = 0; i < YEARS.length; i++) {
+                // in year order
+                assertEquals("trace." + YEARS[i], traces.getColumnName(2 + i));
+                Double[] v = DataIO.getColumnDoubleValues(traces, "trace." + YEARS[i]);
+                for (int k = 0; k < DAYS; k++) {
+                    assertEquals(VALUES[i][k], v[k], 1e-6);
+                }
+            }
+
+            CSTable analysis = DataIO.table(file, EspEnsemble.ANALYSIS);
+            assertEquals(dates[FC_FIRST], DataIO.lookupDateFormat(analysis, 1).parse(analysis.getInfo().get("forecaststart")));
+            assertEquals(dates[FC_LAST], DataIO.lookupDateFormat(analysis, 1).parse(analysis.getInfo().get("forecastend")));
+            Double[] years = DataIO.getColumnDoubleValues(analysis, "year");
+            Double[] volumes = DataIO.getColumnDoubleValues(analysis, "volume");
+            Double[] volumeRanks = DataIO.getColumnDoubleValues(analysis, "volume_rank");
+            Double[] volumeProbs = DataIO.getColumnDoubleValues(analysis, "volume_prob");
+            Double[] peaks = DataIO.getColumnDoubleValues(analysis, "peak");
+            Date[] peakDates = DataIO.getColumnDateValues(analysis, "peak_date");
+            Double[] peakRanks = DataIO.getColumnDoubleValues(analysis, "peak_rank");
+            Double[] peakProbs = DataIO.getColumnDoubleValues(analysis, "peak_prob");
+            assertEquals(YEARS.length, years.length);
+            for (int i = 0; i < YEARS.length; i++) {
+                EnsembleListLabel l = e.stats.get(YEARS[i]);
+                assertEquals(YEARS[i], years[i].intValue());
+                assertEquals(l.getTraceVolume(), volumes[i], 1e-6);
+                assertEquals(l.getVolumeRank(), volumeRanks[i].intValue());
+                assertEquals(l.getActVolumeProb(), volumeProbs[i], 0.05);
+                assertEquals(l.getTracePeak(), peaks[i], 1e-6);
+                assertEquals(e.peakDates.get(YEARS[i]), peakDates[i]);
+                assertEquals(l.getPeakRank(), peakRanks[i].intValue());
+                assertEquals(l.getActPeakProb(), peakProbs[i], 0.05);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testAddFromOutputFile() throws Exception {
+        File file = File.createTempFile("esp-out", ".csv");
+        try {
+            SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd");
+            PrintWriter w = new PrintWriter(file);
+            w.println("@T, efc");
+            w.println(" " + DataIO.DATE_FORMAT + ", yyyy-MM-dd");
+            w.println("@H, date, other, runoff");
+            w.println(" " + DataIO.KEY_TYPE + ", Date, Double, Double");
+            for (int i = 0; i < DAYS; i++) {
+                w.println(", " + f.format(dates[i]) + ", -1, " + VALUES[2][i]);
+            }
+            w.close();
+
+            EspEnsemble e = new EspEnsemble("runoff", dates[FC_FIRST], dates[FC_LAST]);
+            e.add(1992, file);
+            assertTrue(Arrays.equals(VALUES[2], e.traces.get(1992)));
+            assertEquals(20.0, e.stats.get(1992).getTraceVolume(), 0.0);
+            assertEquals(8.0, e.stats.get(1992).getTracePeak(), 0.0);
+            assertEquals(dates[FC_FIRST + 1], e.peakDates.get(1992));
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testTraceLengthChecked() throws Exception {
+        EspEnsemble e = ensemble(new int[]{0});
+        try {
+            e.add(1991, new Date[]{dates[0]}, new double[]{1});
+            fail();
+        } catch (IllegalArgumentException E) {
+        }
+        assertEquals(1, e.traces.size());
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3.io;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+import junit.framework.TestCase;
+
+/** Tests the typed columns of {@link ColumnTable} and its binary cache.
+ *
+ * @author od
+ */
+public class TestColumnTable extends TestCase {
+
+    static final String TABLE = "@T, test\n"
+            + "date_format, yyyy-MM-dd\n"
+            + "@H, date, count, value, name, mixed, empty\n"
+            + "type, Date, Integer, Double, String, Double, Double\n"
+            + ", 2000-01-01, 1, 1.5, a, 1.0, \n"
+            + ", 2000-01-02, 2, 1.50, b, 2.0, \n"
+            + ", 2000-1-3, 007, 1e3, c, x, \n"
+            + ", 2000-01-04, -0, , d, 4.0, \n"
+            + ", 2000-01-05, 5,  2.25, e, 5.0, \n";
+
+    public void testTypes() throws Exception {
+        ColumnTable t = new ColumnTable(DataIO.table(TABLE, null));
+        assertEquals(6, t.getColumnCount());
+        assertEquals(5, t.getRowCount());
+        assertEquals(ColumnTable.DATE, t.getColumnType(1));
+        assertEquals(ColumnTable.NUMBER, t.getColumnType(2));
+        assertEquals(ColumnTable.NUMBER, t.getColumnType(3));
+        assertEquals(ColumnTable.TEXT, t.getColumnType(4));
+        // turned to text at the third row
+        assertEquals(ColumnTable.TEXT, t.getColumnType(5));
+        assertEquals(ColumnTable.TEXT, t.getColumnType(6));
+
+        assertTrue(Arrays.equals(new double[]{1, 2, 7, -0.0, 5}, t.getNumbers(2)));
+        double[] values = t.getNumbers(3);
+        assertEquals(1.5, values[0]);
+        assertEquals(1.5, values[1]);
+        assertEquals(1000.0, values[2]);
+        assertTrue(Double.isNaN(values[3]));
+        assertEquals(2.25, values[4]);
+
+        SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd");
+        long[] times = t.getTimes(1);
+        assertEquals(f.parse("2000-01-01").getTime(), times[0]);
+        assertEquals(f.parse("2000-01-03").getTime(), times[2]);
+        assertTrue(t.isSorted(1));
+        assertFalse(t.hasRaggedRows());
+
+        try {
+            t.getNumbers(4);
+            fail();
+        } catch (IllegalArgumentException E) {
+        }
+        try {
+            t.getTimes(2);
+            fail();
+        } catch (IllegalArgumentException E) {
+        }
+    }
+
+    public void testTextRoundTrip() throws Exception {
+        CSTable src = DataIO.table(TABLE, null);
+        ColumnTable t = new ColumnTable(src);
+        // non canonical values come back as found in the file
+        assertEquals("1.50", t.getText(1, 3));
+        assertEquals("1e3", t.getText(2, 3));
+        assertEquals("007", t.getText(2, 2));
+        assertEquals("-0", t.getText(3, 2));
+        assertEquals("2000-1-3", t.getText(2, 1));
+        assertEquals("x", t.getText(2, 5));
+        assertRows(src, t);
+        assertRows(src, new ColumnTable(t));
+    }
+
+    public void testRaggedRows() throws Exception {
+        String s = "@T, ragged\n"
+                + "date_format, yyyy-MM-dd\n"
+                + "@H, date, a, b\n"
+                + ", 2000-01-01, 1, 2\n"
+                + ", 2000-01-02, 3\n"
+                + ", 2000-01-03, 4, 5, 6, 7\n"
+                + ", 2000-01-04, 8, 9\n";
+        CSTable src = DataIO.table(s, null);
+        ColumnTable t = new ColumnTable(src);
+        assertTrue(t.hasRaggedRows());
+        assertEquals(4, t.getRowCount());
+        assertEquals(ColumnTable.NUMBER, t.getColumnType(3));
+        assertEquals("6", t.getText(2, 4));
+        assertRows(src, t);
+
+        List<String[]> skipped = rows(t.rows(2));
+        assertEquals(2, skipped.size());
+        assertEquals("3", skipped.get(0)[0]);
+        assertEquals(6, skipped.get(0).length);
+    }
+
+    public void testCache() throws Exception {
+        File file = File.createTempFile("columntable", ".csv");
+        File cache = ColumnTable.cacheFile(file, null);
+        try {
+            write(file, TABLE);
+            ColumnTable t = ColumnTable.load(file, null);
+            assertTrue(cache.exists());
+            assertRows(t, ColumnTable.load(file, null, false));
+
+            // touched but unchanged: the digest matches, the cache is used
+            // and only its header gets the new time of the file
+            Object key = fileKey(cache);
+            file.setLastModified(file.lastModified() - 10000);
+            ColumnTable.CacheHeader header = ColumnTable.readCacheHeader(cache);
+            assertTrue(header.modified != file.lastModified());
+            String digest = header.digest;
+            assertRows(t, ColumnTable.load(file, null));
+            header = ColumnTable.readCacheHeader(cache);
+            assertEquals(file.lastModified(), header.modified);
+            assertEquals(file.length(), header.length);
+            assertEquals(digest, header.digest);
+            assertEquals(key, fileKey(cache));
+            assertRows(t, ColumnTable.load(file, null));
+            long old = (System.currentTimeMillis() / 1000 - 3600) * 1000;
+            cache.setLastModified(old);
+
+            // changed: the cache is rebuilt
+            write(file, TABLE.replace("2.25", "3.25"));
+            file.setLastModified(file.lastModified() + 20000);
+            ColumnTable changed = ColumnTable.load(file, null);
+            assertEquals(3.25, changed.getNumbers(3)[4]);
+            assertTrue(old != cache.lastModified());
+            assertRows(changed, ColumnTable.load(file, null));
+            assertRows(ColumnTable.load(file, null, false), changed);
+        } finally {
+            cache.delete();
+            file.delete();
+        }
+    }
+
+    public void testCacheTimeZone() throws Exception {
+        TimeZone zone = TimeZone.getDefault();
+        File file = File.createTempFile("columntable", ".csv");
+        File cache = ColumnTable.cacheFile(file, null);
+        try {
+            write(file, TABLE);
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/Rome"));
+            long rome = ColumnTable.load(file, null).getTimes(1)[0];
+            TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+            ColumnTable t = ColumnTable.load(file, null);
+            // the millis of the cache were those of Rome
+            assertEquals(6 * 3600 * 1000L, t.getTimes(1)[0] - rome);
+            assertEquals("2000-01-01", t.getText(0, 1));
+        } finally {
+            TimeZone.setDefault(zone);
+            cache.delete();
+            file.delete();
+        }
+    }
+
+    /** The identity of a file, changes if the cache is written again. */
+    static Object fileKey(File file) throws IOException {
+        Object key = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        return key == null ? file.length() : key;
+    }
+
+    static void write(File file, String content) throws IOException {
+        FileWriter w = new FileWriter(file);
+        try {
+            w.write(content);
+        } finally {
+            w.close();
+        }
+    }
+
+    static List<String[]> rows(Iterable<String[]> rows) {
+        List<String[]> l = new ArrayList<String[]>();
+        for (String[] row : rows) {
+            l.add(row);
+        }
+        return l;
+    }
+
+    static void assertRows(CSTable expected, CSTable actual) {
+        List<String[]> e = rows(expected.rows());
+        List<String[]> a = rows(actual.rows());
+        assertEquals(e.size(), a.size());
+        for (int i = 0; i < e.size(); i++) {
+            assertEquals("row " + i, Arrays.asList(e.get(i)), Arrays.asList(a.get(i)));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * $Id:$
+ *
+ * This software is provided 'as-is', without any express or implied
+ * warranty. In no event will the authors be held liable for any damages
+ * arising from the use of this software.
+ *
+ * Permission is granted to anyone to use this software for any purpose,
+ * including commercial applications, and to alter it and redistribute it
+ * freely, subject to the following restrictions:
+ *
+ *  1. The origin of this software must not be misrepresented; you must not
+ *     claim that you wrote the original software. If you use this software
+ *     in a product, an acknowledgment in the product documentation would be
+ *     appreciated but is not required.
+ *
+ *  2. Altered source versions must be plainly marked as such, and must not be
+ *     misrepresented as being the original software.
+ *
+ *  3. This notice may not be removed or altered from any source
+ *     distribution.
+ */
+package oms3.io;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import junit.framework.TestCase;
+
+/** Tests the {@link DataIO} searches and intervals on a {@link ColumnTable}
+ * against the row by row parsing of the same table.
+ *
+ * @author od
+ */
+public class TestDataIOColumnTable extends TestCase {
+
+    SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd");
+    CSTable rows;
+    ColumnTable typed;
+
+    @Override
+    protected void setUp() throws Exception {
+        rows = DataIO.table(table(false), null);
+        typed = new ColumnTable(rows);
+        assertTrue(typed.isSorted(1));
+    }
+
+    /** Daily values over two years, with a repeated day. */
+    static String table(boolean shuffle) {
+        StringBuilder b = new StringBuilder();
+        b.append("@T, daily\n");
+        b.append("date_format, yyyy-MM-dd\n");
+        b.append("@H, date, value\n");
+        b.append("type, Date, Double\n");
+        SimpleDateFormat f = new SimpleDateFormat("yyyy-MM-dd");
+        long day = 24 * 3600 * 1000L;
+        long start = f.parse("2000-01-01", new java.text.ParsePosition(0)).getTime();
+        int days = 730;
+        for (int i = 0; i < days; i++) {
+            int d = shuffle ? (i * 7) % days : i;
+            // midday, so that daylight saving doesn't move the day
+            String date = f.format(new Date(start + d * day + day / 2));
+            b.append(", ").append(date).append(", ").append(d % 37 * 0.5).append("\n");
+            if (d == 100) {
+                b.append(", ").append(date).append(", ").append(-1.0).append("\n");
+            }
+        }
+        return b.toString();
+    }
+
+    public void testBounds() throws Exception {
+        long[] times = typed.getTimes(1);
+        int n = typed.getRowCount();
+        assertEquals(0, typed.lowerBound(1, Long.MIN_VALUE));
+        assertEquals(0, typed.lowerBound(1, times[0]));
+        assertEquals(1, typed.upperBound(1, times[0]));
+        assertEquals(n - 1, typed.lowerBound(1, times[n - 1]));
+        assertEquals(n, typed.upperBound(1, times[n - 1]));
+        assertEquals(n, typed.lowerBound(1, times[n - 1] + 1));
+        assertEquals(n, typed.upperBound(1, Long.MAX_VALUE));
+        // the repeated day
+        assertEquals(100, typed.lowerBound(1, times[100]));
+        assertEquals(102, typed.upperBound(1, times[100]));
+        assertEquals(102, typed.lowerBound(1, times[100] + 1));
+        assertEquals(100, typed.upperBound(1, times[100] - 1));
+        for (int i = 0; i < n; i++) {
+            int lower = typed.lowerBound(1, times[i]);
+            assertTrue(times[lower] == times[i] && (lower == 0 || times[lower - 1] < times[i]));
+            int upper = typed.upperBound(1, times[i]);
+            assertTrue(times[upper - 1] == times[i] && (upper == n || times[upper] > times[i]));
+        }
+    }
+
+    public void testFindRowByDate() throws Exception {
+        for (String date : new String[]{"2000-01-01", "2000-01-02", "2000-04-10", "2000-04-11", "2001-12-30"}) {
+            Date d = f.parse(date);
+            assertEquals(date, DataIO.findRowByDate(d, 1, rows), DataIO.findRowByDate(d, 1, typed));
+        }
+        for (String date : new String[]{"1999-12-31", "2002-01-01", "2000-01-01"}) {
+            Date d = f.parse(date);
+            if (date.equals("2000-01-01")) {
+                d = new Date(d.getTime() + 1);
+            }
+            try {
+                DataIO.findRowByDate(d, 1, typed);
+                fail(date);
+            } catch (IllegalArgumentException E) {
+            }
+            try {
+                DataIO.findRowByDate(d, 1, rows);
+                fail(date);
+            } catch (IllegalArgumentException E) {
+            }
+        }
+    }
+
+    public void testSliceByTime() throws Exception {
+        String[] dates = {"1999-06-01", "1999-12-31", "2000-01-01", "2000-02-29", "2000-04-10", "2000-04-11",
+            "2001-06-15", "2001-12-30", "2001-12-31", "2003-01-01"};
+        for (int i = 0; i < dates.length; i++) {
+            for (int j = i; j < dates.length; j++) {
+                Date start = f.parse(dates[i]);
+                Date end = f.parse(dates[j]);
+                int[] expected = DataIO.sliceByTime(rows, 1, start, end);
+                int[] actual = DataIO.sliceByTime(typed, 1, start, end);
+                assertEquals(dates[i] + " " + dates[j], Arrays.toString(expected), Arrays.toString(actual));
+            }
+        }
+    }
+
+    public void testValuesInInterval() throws Exception {
+        ColumnTable unsorted = new ColumnTable(DataIO.table(table(true), null));
+        assertFalse(unsorted.isSorted(1));
+        CSTable unsortedRows = DataIO.table(table(true), null);
+        String[][] intervals = {{"2000-01-01", "2001-12-30"}, {"2000-03-15", "2000-04-11"}, {"2000-04-10", "2000-04-10"},
+            {"1999-01-01", "2000-01-10"}, {"2001-12-01", "2003-01-01"}};
+        int[] steps = {DataIO.DAILY, DataIO.MEAN_MONTHLY, DataIO.MONTHLY_MEAN, DataIO.ANNUAL_MEAN, DataIO.PERIOD_MEAN,
+            DataIO.PERIOD_MEDIAN, DataIO.PERIOD_STANDARD_DEVIATION, DataIO.PERIOD_MIN, DataIO.PERIOD_MAX};
+        for (String[] interval : intervals) {
+            Date start = f.parse(interval[0]);
+            Date end = f.parse(interval[1]);
+            for (int step : steps) {
+                String msg = interval[0] + " " + interval[1] + " " + step;
+                double[] expected = DataIO.getColumnDoubleValuesInterval(start, end, rows, "value", step);
+                assertTrue(msg, Arrays.equals(expected, DataIO.getColumnDoubleValuesInterval(start, end, typed, "value", step)));
+                assertTrue(msg, Arrays.equals(DataIO.getColumnDoubleValuesInterval(start, end, unsortedRows, "value", step),
+                        DataIO.getColumnDoubleValuesInterval(start, end, unsorted, "value", step)));
+            }
+        }
+    }
+}